@@ -222,6 +222,66 @@ public final class Globals {
             org.apache.coyote.Constants.SENDFILE_FILE_END_ATTR;
 
 
+    /**
+     * The request attribute that is set to the value of {@code Boolean.TRUE}
+     * if connector processing this request supports use of sendfile with
+     * {@link #SENDFILE_BUFFER_ATTR}.
+     *
+     * Duplicated here for neater code in the catalina packages.
+     */
+    public static final String SENDFILE_BUFFER_SUPPORTED_ATTR =
+            org.apache.coyote.Constants.SENDFILE_BUFFER_SUPPORTED_ATTR;
+
+
+    /**
+     * The request attribute that can be used by a servlet to pass
+     * to the connector a buffer, typically a direct or memory mapped
+     * {@code java.nio.ByteBuffer}, containing the content to be served by
+     * sendfile. It is used instead of {@link #SENDFILE_FILENAME_ATTR} and the
+     * start and end attributes are offsets within the buffer.
+     *
+     * Duplicated here for neater code in the catalina packages.
+     */
+    public static final String SENDFILE_BUFFER_ATTR =
+            org.apache.coyote.Constants.SENDFILE_BUFFER_ATTR;
+
+
+    /**
+     * The request attribute that is set to the value of {@code Boolean.TRUE}
+     * if connector processing this request supports use of sendfile with
+     * {@link #SENDFILE_RANGES_ATTR}.
+     *
+     * Duplicated here for neater code in the catalina packages.
+     */
+    public static final String SENDFILE_RANGES_SUPPORTED_ATTR =
+            org.apache.coyote.Constants.SENDFILE_RANGES_SUPPORTED_ATTR;
+
+
+    /**
+     * The request attribute that can be used by a servlet to pass
+     * to the connector several parts of a file, or of the buffer passed with
+     * {@link #SENDFILE_BUFFER_ATTR}, that are to be served by sendfile. The
+     * value should be a {@code long[]} containing the start offset and the
+     * end offset (not including) of each part in turn.
+     *
+     * Duplicated here for neater code in the catalina packages.
+     */
+    public static final String SENDFILE_RANGES_ATTR =
+            org.apache.coyote.Constants.SENDFILE_RANGES_ATTR;
+
+
+    /**
+     * The request attribute that can be used by a servlet to pass
+     * to the connector the data to write before each of the parts passed with
+     * {@link #SENDFILE_RANGES_ATTR}. The value should be a {@code byte[][]}
+     * with one more element than there are parts.
+     *
+     * Duplicated here for neater code in the catalina packages.
+     */
+    public static final String SENDFILE_DELIMITERS_ATTR =
+            org.apache.coyote.Constants.SENDFILE_DELIMITERS_ATTR;
+
+
     /**
      *
      */
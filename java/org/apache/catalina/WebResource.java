@@ -18,6 +18,7 @@ package org.apache.catalina;
 
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
 /**
  * Represents a file or directory within a web application. It borrows heavily
@@ -119,9 +120,36 @@ public interface WebResource {
 
     /**
      * Obtain the cached binary content of this resource.
+     *
+     * @return  The content of this resource or <code>null</code> if it is not
+     *          available, e.g. because it is held outside of the Java heap
+     *          and is only available from {@link #getContentBuffer()}
      */
     byte[] getContent();
 
+    /**
+     * Obtain the binary content of this resource if it is held outside of the
+     * Java heap, e.g. in a direct buffer or a memory mapped region of the
+     * underlying file.
+     *
+     * @return  A read-only buffer containing the content of this resource with
+     *          its own position and limit or <code>null</code> if the content
+     *          is not held outside of the Java heap
+     */
+    ByteBuffer getContentBuffer();
+
+    /**
+     * Obtain the content of this resource compressed with gzip. The
+     * compressed content is cached along with the resource and is only valid
+     * for the current {@link #getETag() ETag}.
+     *
+     * @return  The gzip compressed content of this resource or
+     *          <code>null</code> if no compressed content can be cached for it,
+     *          e.g. because the resource is not cached or compression would not
+     *          reduce its size
+     */
+    byte[] getGzipContent();
+
     /**
      * The time the file was created. If not available, the result of
      * {@link #getLastModified()} will be returned.
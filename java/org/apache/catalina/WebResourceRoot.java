@@ -322,6 +322,56 @@ public interface WebResourceRoot extends Lifecycle {
      */
     long getCacheMaxObjectSize();
 
+    /**
+     * Set whether the files and directories that provide resources should be
+     * watched for changes so that changed resources are removed from the cache
+     * immediately. If all changes can be detected, cached resources are not
+     * revalidated once their TTL expires.
+     *
+     * @param cacheWatchFiles   <code>true</code> if files should be watched
+     */
+    void setCacheWatchFiles(boolean cacheWatchFiles);
+
+    /**
+     * Are the files and directories that provide resources watched for
+     * changes?
+     *
+     * @return  <code>true</code> if files are watched
+     */
+    boolean getCacheWatchFiles();
+
+    /**
+     * Set the maximum permitted size of the off-heap cache. If greater than
+     * zero, the content of file based resources is cached outside of the heap
+     * rather than on the heap.
+     *
+     * @param cacheMaxOffHeapSize   Maximum off-heap cache size in kilobytes
+     */
+    void setCacheMaxOffHeapSize(long cacheMaxOffHeapSize);
+
+    /**
+     * Get the maximum permitted size of the off-heap cache.
+     *
+     * @return  Maximum off-heap cache size in kilobytes
+     */
+    long getCacheMaxOffHeapSize();
+
+    /**
+     * Set whether off-heap cache content is held in memory mapped regions of
+     * the files rather than copied into direct buffers. Mapping is not used on
+     * Windows as a mapped file can't be modified or deleted there.
+     *
+     * @param cacheMapFiles <code>true</code> if files should be mapped
+     */
+    void setCacheMapFiles(boolean cacheMapFiles);
+
+    /**
+     * Is off-heap cache content held in memory mapped regions of the files?
+     *
+     * @return  <code>true</code> if files are mapped
+     */
+    boolean getCacheMapFiles();
+
     /**
      * This method will be invoked by the context on a periodic basis and allows
      * the implementation a method that executes periodic tasks, such as purging
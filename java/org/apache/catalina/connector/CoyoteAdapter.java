@@ -42,7 +42,9 @@ import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.B2CConverter;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.CharChunk;
+import org.apache.tomcat.util.buf.HexUtils;
 import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.buf.UDecoder;
 import org.apache.tomcat.util.http.Cookies;
 import org.apache.tomcat.util.http.ServerCookie;
 import org.apache.tomcat.util.net.SSLSupport;
@@ -662,34 +664,38 @@ public class CoyoteAdapter implements Adapter {
             //   - convert the decodedURI to bytes
             parsePathParameters(req, request);
 
-            // URI decoding
-            // %xx decoding of the URL
-            try {
-                req.getURLDecoder().convert(decodedURI, false);
-            } catch (IOException ioe) {
-                res.setStatus(400);
-                res.setMessage("Invalid URI: " + ioe.getMessage());
-                connector.getService().getContainer().logAccess(
-                        request, response, 0, true);
-                return false;
-            }
-            // Normalization
-            if (!normalize(req.decodedURI())) {
-                res.setStatus(400);
-                res.setMessage("Invalid URI");
-                connector.getService().getContainer().logAccess(
-                        request, response, 0, true);
-                return false;
-            }
-            // Character decoding
-            convertURI(decodedURI, request);
-            // Check that the URI is still normalized
-            if (!checkNormalize(req.decodedURI())) {
-                res.setStatus(400);
-                res.setMessage("Invalid URI character encoding");
-                connector.getService().getContainer().logAccess(
-                        request, response, 0, true);
-                return false;
+            // Single pass fast path for US-ASCII URIs, otherwise decode,
+            // normalize and convert separately
+            if (!isASCIIURIEncoding() || !convertASCIIURI(decodedURI)) {
+                // URI decoding
+                // %xx decoding of the URL
+                try {
+                    req.getURLDecoder().convert(decodedURI, false);
+                } catch (IOException ioe) {
+                    res.setStatus(400);
+                    res.setMessage("Invalid URI: " + ioe.getMessage());
+                    connector.getService().getContainer().logAccess(
+                            request, response, 0, true);
+                    return false;
+                }
+                // Normalization
+                if (!normalize(req.decodedURI())) {
+                    res.setStatus(400);
+                    res.setMessage("Invalid URI");
+                    connector.getService().getContainer().logAccess(
+                            request, response, 0, true);
+                    return false;
+                }
+                // Character decoding
+                convertURI(decodedURI, request);
+                // Check that the URI is still normalized
+                if (!checkNormalize(req.decodedURI())) {
+                    res.setStatus(400);
+                    res.setMessage("Invalid URI character encoding");
+                    connector.getService().getContainer().logAccess(
+                            request, response, 0, true);
+                    return false;
+                }
             }
         } else {
             // The URL is chars or String, and has been sent using an in-memory
@@ -1115,6 +1121,132 @@ public class CoyoteAdapter implements Adapter {
     }
 
 
+    /**
+     * Is the URI encoding of the connector one for which US-ASCII bytes are
+     * always decoded to the same US-ASCII characters?
+     */
+    private boolean isASCIIURIEncoding() {
+        String enc = connector.getURIEncodingLower();
+        return enc == null || "iso-8859-1".equals(enc) ||
+                "utf-8".equals(enc) || "us-ascii".equals(enc);
+    }
+
+
+    /**
+     * %xx decoding, normalization and character conversion of a URI that only
+     * contains US-ASCII characters, in a single pass over the bytes. For such
+     * URIs, and any URI encoding that is a superset of US-ASCII, the result is
+     * the same as that of {@link UDecoder#convert(MessageBytes, boolean)}
+     * followed by {@link #normalize(MessageBytes)} and
+     * {@link #convertURI(MessageBytes, Request)}.
+     * <p>
+     * The bytes of the URI are never modified. If the URI contains anything
+     * that is not US-ASCII, is invalid or needs special handling (such as a
+     * %-encoded '/', a '\' or a null byte) <code>false</code> is returned
+     * without converting the URI so that it can be processed, and any error
+     * reported, in the usual way.
+     *
+     * @param uriMB URI to be converted (should be bytes)
+     * @return <code>true</code> if the URI has been converted to chars
+     */
+    public static boolean convertASCIIURI(MessageBytes uriMB) {
+
+        ByteChunk uriBC = uriMB.getByteChunk();
+        final byte[] b = uriBC.getBytes();
+        final int start = uriBC.getStart();
+        final int end = uriBC.getEnd();
+
+        // The URL must start with '/'. This also excludes the empty URL and
+        // the URL *, both of which are left to normalize()
+        if (start == end || b[start] != (byte) '/') {
+            return false;
+        }
+
+        // The result is never longer than the original URI
+        CharChunk uriCC = uriMB.getCharChunk();
+        uriCC.allocate(end - start, -1);
+        final char[] c = uriCC.getBuffer();
+        c[0] = '/';
+        int pos = 1;
+        int segment = 1;
+
+        for (int i = start + 1; i < end; i++) {
+            int ch = b[i];
+            if (ch == '%') {
+                if (i + 2 >= end) {
+                    return false;
+                }
+                int high = HexUtils.getDec(b[i + 1]);
+                int low = HexUtils.getDec(b[i + 2]);
+                if (high < 0 || low < 0) {
+                    return false;
+                }
+                ch = (high << 4) + low;
+                if (ch == '/' || ch > 0x7F) {
+                    return false;
+                }
+                i += 2;
+            } else if (ch < 0) {
+                // Not US-ASCII
+                return false;
+            }
+            if (ch == '/') {
+                // Resolve "/./" and "/../" as the end of each segment is
+                // reached and replace "//" with "/"
+                pos = endSegment(c, segment, pos);
+                if (pos < 0) {
+                    return false;
+                }
+                if (c[pos - 1] != '/') {
+                    c[pos++] = '/';
+                }
+                segment = pos;
+            } else if (ch == '\\' || ch == 0) {
+                return false;
+            } else {
+                c[pos++] = (char) ch;
+            }
+        }
+
+        // A final "/." or "/.." is treated as if it were followed by "/"
+        pos = endSegment(c, segment, pos);
+        if (pos < 0) {
+            return false;
+        }
+
+        uriMB.setChars(c, 0, pos);
+        return true;
+
+    }
+
+
+    /**
+     * Remove the path segment that starts at <code>segment</code> and ends at
+     * <code>pos</code> if it is "." and both it and the previous segment if it
+     * is "..".
+     *
+     * @return the new end of the URI or -1 if the URI would go above the root
+     */
+    private static int endSegment(char[] c, int segment, int pos) {
+        int length = pos - segment;
+        if (length == 1 && c[segment] == '.') {
+            return segment;
+        }
+        if (length == 2 && c[segment] == '.' && c[segment + 1] == '.') {
+            // Prevent from going outside our context
+            if (segment == 1) {
+                return -1;
+            }
+            int previous = segment - 1;
+            while (c[previous - 1] != '/') {
+                previous--;
+            }
+            return previous;
+        }
+        return pos;
+    }
+
+
     /**
      * Character conversion of the a US-ASCII MessageBytes.
      */
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.DispatcherType;
+
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.deploy.FilterMap;
+
+/**
+ * Cache of the filters resolved by {@link ApplicationFilterFactory} for the
+ * wrappers of a single context. A cache is only ever populated from one set of
+ * filter definitions and mappings: the context replaces it with a new, empty
+ * instance whenever either of those changes rather than removing individual
+ * entries.
+ */
+final class ApplicationFilterCache {
+
+    /**
+     * The maximum number of distinct request paths for which the filters are
+     * cached for a single wrapper and dispatcher type. Only applies when a
+     * matching filter mapping uses URL patterns other than <code>/*</code>.
+     */
+    static final int MAX_PATHS = 256;
+
+    private static final int DISPATCHER_TYPES = DispatcherType.values().length;
+
+    private final ConcurrentMap<Wrapper,Entry[]> entries =
+            new ConcurrentHashMap<>();
+
+
+    /**
+     * Return the filters resolved for the given wrapper and dispatcher type or
+     * <code>null</code> if they have not been resolved yet.
+     */
+    Entry get(Wrapper wrapper, DispatcherType dispatcher) {
+        Entry[] byDispatcher = entries.get(wrapper);
+        if (byDispatcher == null) {
+            return null;
+        }
+        return byDispatcher[dispatcher.ordinal()];
+    }
+
+
+    void put(Wrapper wrapper, DispatcherType dispatcher, Entry entry) {
+        Entry[] byDispatcher = entries.get(wrapper);
+        if (byDispatcher == null) {
+            byDispatcher = new Entry[DISPATCHER_TYPES];
+            Entry[] existing = entries.putIfAbsent(wrapper, byDispatcher);
+            if (existing != null) {
+                byDispatcher = existing;
+            }
+        }
+        // Racing writers compute identical entries so last one wins
+        byDispatcher[dispatcher.ordinal()] = entry;
+    }
+
+
+    // ------------------------------------------------------ Entry Inner Class
+
+
+    /**
+     * The filter mappings that apply to one wrapper and dispatcher type,
+     * resolved to their filter configurations. The arrays returned by this
+     * class are shared between requests and must not be modified.
+     */
+    static final class Entry {
+
+        /**
+         * Filter mappings that match the dispatcher type and may match a
+         * request path, in mapping order, with their filter configurations.
+         * Empty if the filters do not depend on the request path.
+         */
+        final FilterMap[] urlMaps;
+        final ApplicationFilterConfig[] urlConfigs;
+
+        /**
+         * Filters mapped to the servlet name, applied after the URL mapped
+         * filters.
+         */
+        final ApplicationFilterConfig[] servletConfigs;
+
+        /**
+         * The filters for any request path, or <code>null</code> if they
+         * depend on the request path.
+         */
+        final ApplicationFilterConfig[] fixedFilters;
+
+        /**
+         * The filters when there is no request path, as is the case for named
+         * dispatches.
+         */
+        final ApplicationFilterConfig[] nullPathFilters;
+
+        private final ConcurrentMap<String,ApplicationFilterConfig[]> paths;
+
+        Entry(FilterMap[] urlMaps, ApplicationFilterConfig[] urlConfigs,
+                ApplicationFilterConfig[] servletConfigs,
+                ApplicationFilterConfig[] fixedFilters,
+                ApplicationFilterConfig[] nullPathFilters) {
+            this.urlMaps = urlMaps;
+            this.urlConfigs = urlConfigs;
+            this.servletConfigs = servletConfigs;
+            this.fixedFilters = fixedFilters;
+            this.nullPathFilters = nullPathFilters;
+            if (fixedFilters == null) {
+                paths = new ConcurrentHashMap<>();
+            } else {
+                paths = null;
+            }
+        }
+
+        boolean isPathDependent() {
+            return paths != null;
+        }
+
+        ApplicationFilterConfig[] getPathFilters(String requestPath) {
+            return paths.get(requestPath);
+        }
+
+        void putPathFilters(String requestPath,
+                ApplicationFilterConfig[] filters) {
+            // Don't allow an unbounded set of request paths to fill the cache
+            if (paths.size() < MAX_PATHS) {
+                paths.put(requestPath, filters);
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.catalina.core;
 import java.io.IOException;
 import java.security.Principal;
 import java.security.PrivilegedActionException;
+import java.util.Arrays;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -76,6 +77,10 @@ final class ApplicationFilterChain implements FilterChain, CometFilterChain {
     public static final int INCREMENT = 10;
 
 
+    private static final ApplicationFilterConfig[] NO_FILTERS =
+        new ApplicationFilterConfig[0];
+
+
     // ----------------------------------------------------------- Constructors
 
 
@@ -95,8 +100,14 @@ final class ApplicationFilterChain implements FilterChain, CometFilterChain {
     /**
      * Filters.
      */
-    private ApplicationFilterConfig[] filters =
-        new ApplicationFilterConfig[0];
+    private ApplicationFilterConfig[] filters = NO_FILTERS;
+
+
+    /**
+     * Is {@link #filters} an array shared with other chains that must not be
+     * modified?
+     */
+    private boolean filtersShared = false;
 
 
     /**
@@ -530,7 +541,10 @@ final class ApplicationFilterChain implements FilterChain, CometFilterChain {
             if(filter==filterConfig)
                 return;
 
-        if (n == filters.length) {
+        if (filtersShared) {
+            filters = Arrays.copyOf(filters, n + INCREMENT);
+            filtersShared = false;
+        } else if (n == filters.length) {
             ApplicationFilterConfig[] newFilters =
                 new ApplicationFilterConfig[n + INCREMENT];
             System.arraycopy(filters, 0, newFilters, 0, n);
@@ -546,8 +560,13 @@ final class ApplicationFilterChain implements FilterChain, CometFilterChain {
      */
     void release() {
 
-        for (int i = 0; i < n; i++) {
-            filters[i] = null;
+        if (filtersShared) {
+            filters = NO_FILTERS;
+            filtersShared = false;
+        } else {
+            for (int i = 0; i < n; i++) {
+                filters[i] = null;
+            }
         }
         n = 0;
         pos = 0;
@@ -557,6 +576,28 @@ final class ApplicationFilterChain implements FilterChain, CometFilterChain {
     }
 
 
+    /**
+     * Set the filters that will be executed in this chain, replacing any
+     * previously added. The array is used as is and will not be modified by
+     * this chain so it may be shared between chains.
+     *
+     * @param filters The FilterConfigs of the filters to be executed, in order
+     */
+    void setFilters(ApplicationFilterConfig[] filters) {
+
+        if (!filtersShared) {
+            for (int i = 0; i < n; i++) {
+                this.filters[i] = null;
+            }
+        }
+        this.filters = filters;
+        this.filtersShared = true;
+        n = filters.length;
+        pos = 0;
+
+    }
+
+
     /**
      * Prepare for reuse of the filters and wrapper executed by this chain.
      */
@@ -16,6 +16,9 @@
  */
 package org.apache.catalina.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.servlet.DispatcherType;
 import javax.servlet.Servlet;
 import javax.servlet.ServletRequest;
@@ -118,14 +121,24 @@ public final class ApplicationFilterFactory {
         filterChain.setSupport
             (((StandardWrapper)wrapper).getInstanceSupport());
 
-        // Acquire the filter mappings for this Context
+        // Acquire the filter mappings for this Context. The cache must be
+        // obtained first as it is replaced after the mappings change.
         StandardContext context = (StandardContext) wrapper.getParent();
+        ApplicationFilterCache cache = context.getFilterCache();
         FilterMap filterMaps[] = context.findFilterMaps();
 
         // If there are no filter mappings, we are done
         if ((filterMaps == null) || (filterMaps.length == 0))
             return (filterChain);
 
+        // Use the previously resolved filters unless only the Comet filters
+        // are required
+        if (!comet && dispatcher != null) {
+            filterChain.setFilters(findFilters(cache, context, wrapper,
+                    dispatcher, requestPath, filterMaps));
+            return (filterChain);
+        }
+
         // Acquire the information we will need to match filter mappings
         String servletName = wrapper.getName();
 
@@ -200,6 +213,161 @@ public final class ApplicationFilterFactory {
     // -------------------------------------------------------- Private Methods
 
 
+    /**
+     * Return the filters to apply to a request for the given wrapper, resolving
+     * and caching them if this is the first such request since the filter
+     * definitions or mappings of the context last changed.
+     *
+     * @param cache The filter cache of the context
+     * @param context The context the wrapper belongs to
+     * @param wrapper The wrapper the request has been mapped to
+     * @param dispatcher The dispatcher type of the request
+     * @param requestPath Context-relative request path of this request
+     * @param filterMaps The filter mappings of the context
+     */
+    private ApplicationFilterConfig[] findFilters(ApplicationFilterCache cache,
+            StandardContext context, Wrapper wrapper, DispatcherType dispatcher,
+            String requestPath, FilterMap[] filterMaps) {
+
+        ApplicationFilterCache.Entry entry = cache.get(wrapper, dispatcher);
+        if (entry == null) {
+            entry = resolveFilters(context, wrapper.getName(), dispatcher,
+                    filterMaps);
+            cache.put(wrapper, dispatcher, entry);
+        }
+
+        if (requestPath == null) {
+            return entry.nullPathFilters;
+        }
+        if (entry.fixedFilters != null) {
+            return entry.fixedFilters;
+        }
+
+        ApplicationFilterConfig[] filters = entry.getPathFilters(requestPath);
+        if (filters == null) {
+            List<ApplicationFilterConfig> matched = new ArrayList<>();
+            for (int i = 0; i < entry.urlMaps.length; i++) {
+                if (matchFiltersURL(entry.urlMaps[i], requestPath)) {
+                    addFilter(matched, entry.urlConfigs[i]);
+                }
+            }
+            for (ApplicationFilterConfig filterConfig : entry.servletConfigs) {
+                addFilter(matched, filterConfig);
+            }
+            filters = matched.toArray(
+                    new ApplicationFilterConfig[matched.size()]);
+            entry.putPathFilters(requestPath, filters);
+        }
+        return filters;
+    }
+
+
+    /**
+     * Resolve the filter mappings that apply to the given servlet and
+     * dispatcher type. Everything that does not depend on the request path is
+     * determined here so that only mappings with URL patterns other than
+     * <code>/*</code> have to be matched against each request path.
+     */
+    private ApplicationFilterCache.Entry resolveFilters(StandardContext context,
+            String servletName, DispatcherType dispatcher,
+            FilterMap[] filterMaps) {
+
+        List<FilterMap> urlMaps = new ArrayList<>();
+        List<ApplicationFilterConfig> urlConfigs = new ArrayList<>();
+        List<ApplicationFilterConfig> fixedFilters = new ArrayList<>();
+        List<ApplicationFilterConfig> nullPathFilters = new ArrayList<>();
+        boolean pathDependent = false;
+
+        for (int i = 0; i < filterMaps.length; i++) {
+            if (!matchDispatcher(filterMaps[i] ,dispatcher)) {
+                continue;
+            }
+            boolean matchAll = filterMaps[i].getMatchAllUrlPatterns();
+            if (!matchAll && filterMaps[i].getURLPatterns().length == 0) {
+                continue;
+            }
+            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
+                context.findFilterConfig(filterMaps[i].getFilterName());
+            if (filterConfig == null) {
+                // FIXME - log configuration problem
+                continue;
+            }
+            urlMaps.add(filterMaps[i]);
+            urlConfigs.add(filterConfig);
+            if (matchAll) {
+                addFilter(fixedFilters, filterConfig);
+                addFilter(nullPathFilters, filterConfig);
+            } else if (matchAnyPath(filterMaps[i])) {
+                addFilter(fixedFilters, filterConfig);
+            } else {
+                pathDependent = true;
+            }
+        }
+
+        List<ApplicationFilterConfig> servletConfigs = new ArrayList<>();
+        for (int i = 0; i < filterMaps.length; i++) {
+            if (!matchDispatcher(filterMaps[i] ,dispatcher)) {
+                continue;
+            }
+            if (!matchFiltersServlet(filterMaps[i], servletName))
+                continue;
+            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
+                context.findFilterConfig(filterMaps[i].getFilterName());
+            if (filterConfig == null) {
+                // FIXME - log configuration problem
+                continue;
+            }
+            addFilter(servletConfigs, filterConfig);
+            addFilter(fixedFilters, filterConfig);
+            addFilter(nullPathFilters, filterConfig);
+        }
+
+        if (pathDependent) {
+            return new ApplicationFilterCache.Entry(
+                    urlMaps.toArray(new FilterMap[urlMaps.size()]),
+                    toArray(urlConfigs), toArray(servletConfigs), null,
+                    toArray(nullPathFilters));
+        } else {
+            return new ApplicationFilterCache.Entry(new FilterMap[0],
+                    new ApplicationFilterConfig[0], toArray(servletConfigs),
+                    toArray(fixedFilters), toArray(nullPathFilters));
+        }
+    }
+
+
+    /**
+     * Return <code>true</code> if the specified filter mapping matches every
+     * non-null request path.
+     */
+    private static boolean matchAnyPath(FilterMap filterMap) {
+        String[] testPaths = filterMap.getURLPatterns();
+        for (int i = 0; i < testPaths.length; i++) {
+            if ("/*".equals(testPaths[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Add a filter to a list, ignoring it if it is already present, in the same
+     * way as {@link ApplicationFilterChain#addFilter(ApplicationFilterConfig)}.
+     */
+    private static void addFilter(List<ApplicationFilterConfig> filters,
+            ApplicationFilterConfig filterConfig) {
+        if (!filters.contains(filterConfig)) {
+            filters.add(filterConfig);
+        }
+    }
+
+
+    private static ApplicationFilterConfig[] toArray(
+            List<ApplicationFilterConfig> filters) {
+        return filters.toArray(new ApplicationFilterConfig[filters.size()]);
+    }
+
+
     /**
      * Return <code>true</code> if the context-relative request path
      * matches the requirements of the specified filter mapping;
@@ -393,6 +393,15 @@ public class StandardContext extends ContainerBase
      */
     private final ContextFilterMaps filterMaps = new ContextFilterMaps();
 
+
+    /**
+     * The filters resolved for each wrapper and dispatcher type. Replaced with
+     * an empty cache whenever the filter definitions, configurations or
+     * mappings change.
+     */
+    private volatile ApplicationFilterCache filterCache =
+            new ApplicationFilterCache();
+
     /**
      * Ignore annotations.
      */
@@ -650,6 +659,24 @@ public class StandardContext extends ContainerBase
     protected int cacheObjectMaxSize = 512; // 512K
 
 
+    /**
+     * Off-heap cache max size in KB.
+     */
+    protected int cacheMaxOffHeapSize = 0; // Disabled
+
+
+    /**
+     * Hold off-heap cache content in memory mapped regions of the files.
+     */
+    protected boolean cacheMapFiles = false;
+
+
+    /**
+     * Watch resource files for changes rather than revalidating cache entries.
+     */
+    protected boolean cacheWatchFiles = false;
+
+
     /**
      * Cache TTL in ms.
      */
@@ -1143,6 +1170,60 @@ public class StandardContext extends ContainerBase
     }
 
 
+    /**
+     * Return the maximum size of the off-heap cache in KB.
+     */
+    public int getCacheMaxOffHeapSize() {
+        return cacheMaxOffHeapSize;
+    }
+
+
+    /**
+     * Set the maximum size of the off-heap cache in KB. Zero disables the
+     * off-heap cache.
+     */
+    public void setCacheMaxOffHeapSize(int cacheMaxOffHeapSize) {
+        this.cacheMaxOffHeapSize = cacheMaxOffHeapSize;
+    }
+
+
+    /**
+     * Return whether off-heap cache content is held in memory mapped regions
+     * of the files.
+     */
+    public boolean getCacheMapFiles() {
+        return cacheMapFiles;
+    }
+
+
+    /**
+     * Set whether off-heap cache content is held in memory mapped regions of
+     * the files rather than copied into direct buffers. Mapping is never used
+     * on Windows.
+     */
+    public void setCacheMapFiles(boolean cacheMapFiles) {
+        this.cacheMapFiles = cacheMapFiles;
+    }
+
+
+    /**
+     * Return whether resource files are watched for changes.
+     */
+    public boolean getCacheWatchFiles() {
+        return cacheWatchFiles;
+    }
+
+
+    /**
+     * Set whether resource files are watched for changes so that changed
+     * resources are removed from the cache immediately rather than when their
+     * cache entry is next revalidated.
+     */
+    public void setCacheWatchFiles(boolean cacheWatchFiles) {
+        this.cacheWatchFiles = cacheWatchFiles;
+    }
+
+
     /**
      * Add a ServletContainerInitializer instance to this web application.
      *
@@ -2868,6 +2949,7 @@ public class StandardContext extends ContainerBase
         synchronized (filterDefs) {
             filterDefs.put(filterDef.getFilterName(), filterDef);
         }
+        invalidateFilterCache();
         fireContainerEvent("addFilterDef", filterDef);
 
     }
@@ -2888,6 +2970,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // Add this filter mapping to our registered set
         filterMaps.add(filterMap);
+        invalidateFilterCache();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -2907,6 +2990,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // Add this filter mapping to our registered set
         filterMaps.addBefore(filterMap);
+        invalidateFilterCache();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -3919,6 +4003,7 @@ public class StandardContext extends ContainerBase
         }
 
         super.removeChild(child);
+        invalidateFilterCache();
 
     }
 
@@ -3998,6 +4083,7 @@ public class StandardContext extends ContainerBase
         synchronized (filterDefs) {
             filterDefs.remove(filterDef.getFilterName());
         }
+        invalidateFilterCache();
         fireContainerEvent("removeFilterDef", filterDef);
 
     }
@@ -4011,6 +4097,7 @@ public class StandardContext extends ContainerBase
     @Override
     public void removeFilterMap(FilterMap filterMap) {
         filterMaps.remove(filterMap);
+        invalidateFilterCache();
         // Inform interested listeners
         fireContainerEvent("removeFilterMap", filterMap);
     }
@@ -4632,6 +4719,7 @@ public class StandardContext extends ContainerBase
                 }
             }
         }
+        invalidateFilterCache();
 
         return (ok);
 
@@ -4660,11 +4748,31 @@ public class StandardContext extends ContainerBase
             }
             filterConfigs.clear();
         }
+        invalidateFilterCache();
         return (true);
 
     }
 
 
+    /**
+     * Return the cache of the filters resolved for the wrappers of this
+     * Context. Callers must obtain the cache before reading the filter
+     * mappings they use to populate it.
+     */
+    ApplicationFilterCache getFilterCache() {
+        return filterCache;
+    }
+
+
+    /**
+     * Discard the resolved filters after a change to the filter definitions,
+     * configurations or mappings.
+     */
+    private void invalidateFilterCache() {
+        filterCache = new ApplicationFilterCache();
+    }
+
+
     /**
      * Find and return the initialized <code>FilterConfig</code> for the
      * specified filter name, if any; otherwise return <code>null</code>.
@@ -4869,6 +4977,9 @@ public class StandardContext extends ContainerBase
         resources.setCacheTtl(getCacheTTL());
         resources.setCacheMaxSize(getCacheMaxSize());
         resources.setCacheMaxObjectSize(getCacheObjectMaxSize());
+        resources.setCacheMaxOffHeapSize(getCacheMaxOffHeapSize());
+        resources.setCacheMapFiles(getCacheMapFiles());
+        resources.setCacheWatchFiles(getCacheWatchFiles());
 
         // May have been started (but not fully configured) in init() so no need
         // to start the resources if they are already available
@@ -0,0 +1,455 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.catalina.Executor;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.util.LifecycleMBeanBase;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.ResizableExecutor;
+
+/**
+ * An {@link Executor} that runs every task on a new virtual thread rather than
+ * on a pooled platform thread. Since virtual threads are cheap to create and
+ * to block, the number of threads is not the limiting factor. Instead, the
+ * number of tasks that may run concurrently is limited by
+ * <code>maxConcurrency</code>, which takes the place of the
+ * <code>maxThreads</code> attribute of {@link StandardThreadExecutor}. Tasks
+ * submitted while the limit is reached are queued and started as running tasks
+ * complete.
+ * <p>
+ * Connectors using this executor report <code>maxConcurrency</code> as their
+ * maximum thread count and the number of running tasks as their busy thread
+ * count. The number of connections is still limited by the connector's
+ * <code>maxConnections</code> attribute, which also bounds the number of tasks
+ * that can be queued for a single connector.
+ * <p>
+ * Virtual threads require Java 21 or later. They are obtained via reflection
+ * and, on older JVMs, the executor fails to start.
+ */
+public class VirtualThreadExecutor extends LifecycleMBeanBase
+        implements Executor, ResizableExecutor {
+
+    private static final Log log =
+        LogFactory.getLog(VirtualThreadExecutor.class);
+
+    private static final StringManager sm =
+        StringManager.getManager(Constants.Package);
+
+    // ---------------------------------------------- Properties
+
+    /**
+     * The name of this executor
+     */
+    protected String name;
+
+    /**
+     * Default name prefix for the thread name
+     */
+    protected String namePrefix = "tomcat-virt-";
+
+    /**
+     * The maximum number of tasks that may run concurrently
+     */
+    protected volatile int maxConcurrency = 10000;
+
+    /**
+     * The maximum number of elements that can queue up before we reject them
+     */
+    protected int maxQueueSize = Integer.MAX_VALUE;
+
+    // ---------------------------------------------- Internal state
+
+    private volatile ThreadFactory threadFactory = null;
+
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicInteger largestActiveCount = new AtomicInteger(0);
+    private final AtomicLong completedTaskCount = new AtomicLong(0);
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger(0);
+
+    /**
+     * The threads currently running a task, so they can be interrupted when
+     * the executor is stopped.
+     */
+    private final Set<Thread> threads =
+        Collections.newSetFromMap(new ConcurrentHashMap<Thread,Boolean>());
+
+
+    // ---------------------------------------------- Constructors
+    public VirtualThreadExecutor() {
+        //empty constructor for the digester
+    }
+
+
+    // ---------------------------------------------- Public Methods
+
+    /**
+     * Start the component and implement the requirements
+     * of {@link org.apache.catalina.util.LifecycleBase#startInternal()}.
+     *
+     * @exception LifecycleException if this component detects a fatal error
+     *  that prevents this component from being used
+     */
+    @Override
+    protected void startInternal() throws LifecycleException {
+
+        ThreadFactory tf = createThreadFactory();
+        if (tf == null) {
+            // Starting a platform thread per task instead would allow up to
+            // maxConcurrency platform threads
+            throw new LifecycleException(
+                    sm.getString("virtualThreadExecutor.unsupported", getName()));
+        }
+        threadFactory = tf;
+
+        setState(LifecycleState.STARTING);
+    }
+
+
+    /**
+     * Stop the component and implement the requirements
+     * of {@link org.apache.catalina.util.LifecycleBase#stopInternal()}.
+     *
+     * @exception LifecycleException if this component detects a fatal error
+     *  that needs to be reported
+     */
+    @Override
+    protected void stopInternal() throws LifecycleException {
+
+        setState(LifecycleState.STOPPING);
+        threadFactory = null;
+        while (poll() != null) {
+            // Discard tasks that have not started
+        }
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+    }
+
+
+    @Override
+    public void execute(Runnable command, long timeout, TimeUnit unit) {
+        // Tasks are queued rather than waiting for a thread to become
+        // available so there is nothing to wait for
+        execute(command);
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (threadFactory == null) {
+            throw new IllegalStateException(
+                    sm.getString("virtualThreadExecutor.notStarted", getName()));
+        }
+        if (tryAcquire()) {
+            start(command);
+            return;
+        }
+        if (queueSize.incrementAndGet() > maxQueueSize) {
+            queueSize.decrementAndGet();
+            throw new RejectedExecutionException(
+                    sm.getString("virtualThreadExecutor.queueFull", getName()));
+        }
+        queue.offer(command);
+        // A running task may have completed after the check above and before
+        // the command was queued. Make sure the command is not stranded.
+        if (tryAcquire()) {
+            Runnable next = poll();
+            if (next == null) {
+                release();
+            } else {
+                start(next);
+            }
+        }
+    }
+
+
+    /*
+     * Start a new thread for the given task. The caller must hold a permit
+     * which will be released (or handed on to the next queued task) when the
+     * task completes.
+     */
+    private void start(Runnable task) {
+        ThreadFactory tf = threadFactory;
+        Thread t = null;
+        try {
+            if (tf != null) {
+                t = tf.newThread(new Task(task));
+            }
+            if (t == null) {
+                throw new RejectedExecutionException(
+                        sm.getString("virtualThreadExecutor.notStarted", getName()));
+            }
+            t.start();
+        } catch (RejectedExecutionException e) {
+            release();
+            throw e;
+        } catch (Throwable e) {
+            ExceptionUtils.handleThrowable(e);
+            release();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+
+    /*
+     * Start queued tasks for as long as there are permits available.
+     */
+    private void startQueued() {
+        while (!queue.isEmpty() && tryAcquire()) {
+            Runnable next = poll();
+            if (next == null) {
+                release();
+                return;
+            }
+            try {
+                start(next);
+            } catch (RejectedExecutionException e) {
+                // Only happens if the executor has been stopped
+                log.debug(e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = activeCount.get();
+            if (current >= maxConcurrency) {
+                return false;
+            }
+            if (activeCount.compareAndSet(current, current + 1)) {
+                int largest = largestActiveCount.get();
+                while (current + 1 > largest &&
+                        !largestActiveCount.compareAndSet(largest, current + 1)) {
+                    largest = largestActiveCount.get();
+                }
+                return true;
+            }
+        }
+    }
+
+
+    private void release() {
+        activeCount.decrementAndGet();
+    }
+
+
+    private Runnable poll() {
+        Runnable result = queue.poll();
+        if (result != null) {
+            queueSize.decrementAndGet();
+        }
+        return result;
+    }
+
+
+    private class Task implements Runnable {
+
+        private final Runnable task;
+
+        public Task(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            threads.add(current);
+            try {
+                task.run();
+            } finally {
+                threads.remove(current);
+                completedTaskCount.incrementAndGet();
+                Runnable next = null;
+                if (threadFactory != null) {
+                    next = poll();
+                }
+                if (next == null) {
+                    release();
+                } else {
+                    // Hand the permit on to the next queued task
+                    try {
+                        start(next);
+                    } catch (RejectedExecutionException e) {
+                        // Only happens if the executor has been stopped
+                        log.debug(e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Create the factory for the threads that run the tasks.
+     *
+     * @return  A factory for named virtual threads or <code>null</code> if
+     *          virtual threads are not supported
+     */
+    protected ThreadFactory createThreadFactory() {
+        return createVirtualThreadFactory(namePrefix);
+    }
+
+
+    /**
+     * Use <code>Thread.ofVirtual()</code> via reflection so this class can be
+     * compiled and loaded on JVMs that pre-date virtual threads.
+     *
+     * @return  A factory for named virtual threads or <code>null</code> if
+     *          virtual threads are not supported
+     */
+    private static ThreadFactory createVirtualThreadFactory(String prefix) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, prefix, Long.valueOf(1));
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            // Virtual threads not available
+            return null;
+        }
+    }
+
+
+    // ---------------------------------------------- Properties
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        if (threadFactory != null) {
+            // Tasks queued under the old limit must not wait for a running
+            // task to complete before they are started
+            startQueued();
+        }
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int size) {
+        this.maxQueueSize = size;
+    }
+
+    // Statistics
+
+    /**
+     * @return <code>maxConcurrency</code> so that connectors treat it as
+     *         their maximum thread count
+     */
+    @Override
+    public int getMaxThreads() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return the number of running tasks since each task has its own thread
+     */
+    @Override
+    public int getPoolSize() {
+        return activeCount.get();
+    }
+
+    public int getLargestPoolSize() {
+        return largestActiveCount.get();
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+
+    @Override
+    public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        setMaxConcurrency(maximumPoolSize);
+        return true;
+    }
+
+
+    @Override
+    public boolean resizeQueue(int capacity) {
+        return false;
+    }
+
+
+    @Override
+    protected String getDomainInternal() {
+        // No way to navigate to Engine. Needs to have domain set.
+        return null;
+    }
+
+    @Override
+    protected String getObjectNameKeyProperties() {
+        StringBuilder name = new StringBuilder("type=Executor,name=");
+        name.append(getName());
+        return name.toString();
+    }
+}
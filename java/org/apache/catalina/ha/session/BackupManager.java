@@ -75,6 +75,8 @@ public class BackupManager extends ClusterManagerBase
      */
     public BackupManager() {
         super();
+        // Sessions are added to the replicated map by other nodes
+        useExpiryIndex = false;
     }
 
 
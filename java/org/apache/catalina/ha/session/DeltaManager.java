@@ -128,6 +128,8 @@ public class DeltaManager extends ClusterManagerBase{
     private int counterSend_EVT_ALL_SESSION_TRANSFERCOMPLETE = 0 ;
     private long counterSend_EVT_CHANGE_SESSION_ID = 0;
     private int counterNoStateTransfered = 0 ;
+    private long counterSendAttributeDiffs = 0;
+    private long counterAttributeDiffBytesSaved = 0;
 
 
     // ------------------------------------------------------------- Constructor
@@ -292,6 +294,21 @@ public class DeltaManager extends ClusterManagerBase{
         return counterNoStateTransfered;
     }
 
+    /**
+     * @return Returns the number of attributes sent as a diff.
+     */
+    public long getCounterSendAttributeDiffs() {
+        return counterSendAttributeDiffs;
+    }
+
+    /**
+     * @return Returns the estimated number of bytes saved by sending
+     *         attributes as a diff.
+     */
+    public long getCounterAttributeDiffBytesSaved() {
+        return counterAttributeDiffBytesSaved;
+    }
+
     public int getReceivedQueueSize() {
         return receivedMessageQueue.size() ;
     }
@@ -424,6 +441,20 @@ public class DeltaManager extends ClusterManagerBase{
 
     // --------------------------------------------------------- Public Methods
 
+    /**
+     * Backup sessions are kept for twice the maximum inactive interval, see
+     * {@link DeltaSession#isValid()}.
+     */
+    @Override
+    protected long getExpiryTime(Session session) {
+        long expiryTime = super.getExpiryTime(session);
+        if (expiryTime >= 0 && session instanceof DeltaSession &&
+                !((DeltaSession) session).isPrimarySession()) {
+            expiryTime += session.getMaxInactiveInterval() * 1000L;
+        }
+        return expiryTime;
+    }
+
     /**
      * Construct and return a new session object, based on the default settings
      * specified by this Manager's properties. The session id will be assigned
@@ -1067,6 +1098,9 @@ public class DeltaManager extends ClusterManagerBase{
                 if (isDeltaRequest) {
                     counterSend_EVT_SESSION_DELTA++;
                     byte[] data = serializeDeltaRequest(session,deltaRequest);
+                    counterSendAttributeDiffs += deltaRequest.getAttributeDiffs();
+                    counterAttributeDiffBytesSaved +=
+                            deltaRequest.getAttributeDiffBytesSaved();
                     msg = new SessionMessageImpl(getName(),
                                                  SessionMessage.EVT_SESSION_DELTA,
                                                  data,
@@ -1167,6 +1201,8 @@ public class DeltaManager extends ClusterManagerBase{
         counterSend_EVT_SESSION_EXPIRED = 0 ;
         counterSend_EVT_ALL_SESSION_TRANSFERCOMPLETE = 0;
         counterSend_EVT_CHANGE_SESSION_ID = 0;
+        counterSendAttributeDiffs = 0;
+        counterAttributeDiffBytesSaved = 0;
 
     }
 
@@ -32,7 +32,9 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.security.Principal;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 import org.apache.catalina.realm.GenericPrincipal;
 import org.apache.tomcat.util.res.StringManager;
@@ -57,6 +59,7 @@ public class DeltaRequest implements Externalizable {
 
     public static final int ACTION_SET = 0;
     public static final int ACTION_REMOVE = 1;
+    public static final int ACTION_DIFF = 2;
 
     public static final String NAME_PRINCIPAL = "__SET__PRINCIPAL__";
     public static final String NAME_MAXINTERVAL = "__SET__MAXINTERVAL__";
@@ -69,6 +72,15 @@ public class DeltaRequest implements Externalizable {
 
     private boolean recordAllActions = false;
 
+    /**
+     * The size of the last full replication of each attribute whose value
+     * implements {@link DiffableAttribute}, used to estimate the bytes saved
+     * by sending diffs.
+     */
+    private final Map<String,Integer> replicatedSizes = new HashMap<>();
+    private int attributeDiffs = 0;
+    private long attributeDiffBytesSaved = 0;
+
     public DeltaRequest() {
 
     }
@@ -81,8 +93,21 @@ public class DeltaRequest implements Externalizable {
 
 
     public void setAttribute(String name, Object value) {
+        setAttribute(name, value, false);
+    }
+
+    /**
+     * Record that an attribute has been set.
+     *
+     * @param name Attribute name
+     * @param value Attribute value
+     * @param update <code>true</code> if the value was already bound to the
+     *        session under this name, in which case a value that implements
+     *        {@link DiffableAttribute} may be replicated as a diff
+     */
+    public void setAttribute(String name, Object value, boolean update) {
         int action = (value==null)?ACTION_REMOVE:ACTION_SET;
-        addAction(TYPE_ATTRIBUTE,action,name,value);
+        addAction(TYPE_ATTRIBUTE,action,name,value,update);
     }
 
     public void removeAttribute(String name) {
@@ -129,6 +154,14 @@ public class DeltaRequest implements Externalizable {
                              int action,
                              String name,
                              Object value) {
+        addAction(type, action, name, value, false);
+    }
+
+    protected void addAction(int type,
+                             int action,
+                             String name,
+                             Object value,
+                             boolean update) {
         AttributeInfo info = null;
         if ( this.actionPool.size() > 0 ) {
             try {
@@ -141,13 +174,17 @@ public class DeltaRequest implements Externalizable {
         } else {
             info = new AttributeInfo(type, action, name, value);
         }
+        info.setUpdate(update);
         //if we have already done something to this attribute, make sure
         //we don't send multiple actions across the wire
         if ( !recordAllActions) {
-            try {
-                actions.remove(info);
-            } catch (java.util.NoSuchElementException x) {
-                //do nothing, we wanted to remove it anyway
+            int index = actions.indexOf(info);
+            if (index >= 0) {
+                AttributeInfo previous = actions.remove(index);
+                //the other nodes only have the value if it was already bound
+                //before this request
+                if (previous.getAction() != ACTION_SET || !previous.isUpdate())
+                    info.setUpdate(false);
             }
         }
         //add the action
@@ -165,6 +202,9 @@ public class DeltaRequest implements Externalizable {
                     if ( info.getAction() == ACTION_SET ) {
                         if ( log.isTraceEnabled() ) log.trace("Session.setAttribute('"+info.getName()+"', '"+info.getValue()+"')");
                         session.setAttribute(info.getName(), info.getValue(),notifyListeners,false);
+                    } else if ( info.getAction() == ACTION_DIFF ) {
+                        if ( log.isTraceEnabled() ) log.trace("Session.applyDiff('"+info.getName()+"')");
+                        applyDiff(session, info, notifyListeners);
                     }  else {
                         if ( log.isTraceEnabled() ) log.trace("Session.removeAttribute('"+info.getName()+"')");
                         session.removeAttribute(info.getName(),notifyListeners,false);
@@ -202,6 +242,30 @@ public class DeltaRequest implements Externalizable {
         reset();
     }
 
+    /**
+     * Apply a diff to the value of an attribute that implements
+     * {@link DiffableAttribute} and set the attribute again, as was done on
+     * the node that sent the diff.
+     */
+    private void applyDiff(DeltaSession session, AttributeInfo info,
+            boolean notifyListeners) {
+        Object value = session.getAttribute(info.getName());
+        if (!(value instanceof DiffableAttribute)) {
+            log.warn(sm.getString("deltaRequest.diffNotApplied",
+                    info.getName(), getSessionId()));
+            return;
+        }
+        byte[] diff = (byte[]) info.getValue();
+        try {
+            ((DiffableAttribute) value).applyDiff(diff, 0, diff.length);
+        } catch (IOException | ClassNotFoundException e) {
+            log.error(sm.getString("deltaRequest.applyDiffFailed",
+                    info.getName(), getSessionId()), e);
+            return;
+        }
+        session.setAttribute(info.getName(), value, notifyListeners, false);
+    }
+
     public void reset() {
         while ( actions.size() > 0 ) {
             try {
@@ -213,6 +277,8 @@ public class DeltaRequest implements Externalizable {
             }
         }
         actions.clear();
+        attributeDiffs = 0;
+        attributeDiffBytesSaved = 0;
     }
 
     public String getSessionId() {
@@ -228,9 +294,27 @@ public class DeltaRequest implements Externalizable {
         return actions.size();
     }
 
+    /**
+     * Return the number of attributes that were sent as a diff by the last
+     * call to {@link #serialize()}.
+     */
+    public int getAttributeDiffs() {
+        return attributeDiffs;
+    }
+
+    /**
+     * Return an estimate of the number of bytes saved by sending diffs rather
+     * than full values in the last call to {@link #serialize()}, based on the
+     * size of the last full replication of each attribute.
+     */
+    public long getAttributeDiffBytesSaved() {
+        return attributeDiffBytesSaved;
+    }
+
     public void clear() {
         actions.clear();
         actionPool.clear();
+        replicatedSizes.clear();
     }
 
     @Override
@@ -268,16 +352,72 @@ public class DeltaRequest implements Externalizable {
 
     @Override
     public void writeExternal(java.io.ObjectOutput out ) throws java.io.IOException {
+        writeExternal(out, null);
+    }
+
+    /**
+     * Write the actions, replacing the values of updated attributes that
+     * implement {@link DiffableAttribute} with diffs.
+     *
+     * @param out The stream to write to
+     * @param bos The stream <code>out</code> writes to, if the size of the
+     *        attributes should be measured to estimate the bytes saved by
+     *        diffs, or <code>null</code>
+     */
+    private void writeExternal(java.io.ObjectOutput out,
+            ByteArrayOutputStream bos) throws java.io.IOException {
         //sessionId - String
         //recordAll - boolean
         //size - int
         //AttributeInfo - in an array
+        attributeDiffs = 0;
+        attributeDiffBytesSaved = 0;
         out.writeUTF(getSessionId());
         out.writeBoolean(recordAllActions);
         out.writeInt(getSize());
         for ( int i=0; i<getSize(); i++ ) {
             AttributeInfo info = actions.get(i);
-            info.writeExternal(out);
+            if (info.getType() != TYPE_ATTRIBUTE) {
+                info.writeExternal(out);
+                continue;
+            }
+            if (info.getAction() == ACTION_REMOVE) {
+                replicatedSizes.remove(info.getName());
+                info.writeExternal(out);
+                continue;
+            }
+            if (!(info.getValue() instanceof DiffableAttribute)) {
+                info.writeExternal(out);
+                continue;
+            }
+            DiffableAttribute value = (DiffableAttribute) info.getValue();
+            int start = 0;
+            if (bos != null) {
+                out.flush();
+                start = bos.size();
+            }
+            if (info.isUpdate() && value.isDiffable()) {
+                AttributeInfo diff = new AttributeInfo(TYPE_ATTRIBUTE,
+                        ACTION_DIFF, info.getName(), value.getDiff());
+                diff.writeExternal(out);
+                attributeDiffs++;
+                if (bos != null) {
+                    out.flush();
+                    Integer fullSize = replicatedSizes.get(info.getName());
+                    if (fullSize != null) {
+                        attributeDiffBytesSaved +=
+                                fullSize.intValue() - (bos.size() - start);
+                    }
+                }
+            } else {
+                info.writeExternal(out);
+                if (bos != null) {
+                    out.flush();
+                    replicatedSizes.put(info.getName(),
+                            Integer.valueOf(bos.size() - start));
+                }
+            }
+            value.resetDiff();
         }
     }
 
@@ -291,7 +431,7 @@ public class DeltaRequest implements Externalizable {
     protected byte[] serialize() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(bos);
-        writeExternal(oos);
+        writeExternal(oos, bos);
         oos.flush();
         oos.close();
         return bos.toByteArray();
@@ -302,6 +442,7 @@ public class DeltaRequest implements Externalizable {
         private Object value = null;
         private int action;
         private int type;
+        private boolean update = false;
 
         public AttributeInfo() {
             this(-1, -1, null, null);
@@ -323,6 +464,19 @@ public class DeltaRequest implements Externalizable {
             this.value = value;
             this.action = action;
             this.type = type;
+            this.update = false;
+        }
+
+        /**
+         * Was the value already bound under this name before it was set.
+         * Only used by the node that records the action.
+         */
+        public boolean isUpdate() {
+            return update;
+        }
+
+        public void setUpdate(boolean update) {
+            this.update = update;
         }
 
         public int getType() {
@@ -350,6 +504,7 @@ public class DeltaRequest implements Externalizable {
             value = null;
             type=-1;
             action=-1;
+            update=false;
         }
 
         @Override
@@ -266,6 +266,10 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
     @Override
     public void setPrimarySession(boolean primarySession) {
         this.isPrimarySession = primarySession;
+        if (primarySession && manager instanceof ManagerBase) {
+            // Primary sessions expire sooner than backup sessions
+            ((ManagerBase) manager).scheduleExpiry(this);
+        }
     }
 
 
@@ -529,10 +533,10 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     @Override
     public void readObjectData(ObjectInputStream stream) throws ClassNotFoundException, IOException {
-        doReadObject((ObjectInput)stream);
+        getSessionSerializer().readSession(this, stream);
     }
     public void readObjectData(ObjectInput stream) throws ClassNotFoundException, IOException {
-        doReadObject(stream);
+        doReadObject(stream, stream.readObject());
     }
 
     /**
@@ -548,7 +552,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     @Override
     public void writeObjectData(ObjectOutputStream stream) throws IOException {
-        writeObjectData((ObjectOutput)stream);
+        getSessionSerializer().writeSession(this, stream);
     }
     public void writeObjectData(ObjectOutput stream) throws IOException {
         doWriteObject(stream);
@@ -675,9 +679,10 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
         try {
             lock();
+            boolean update = attributes.get(name) == value;
             super.setAttribute(name,value, notify);
             if (addDeltaRequest && deltaRequest != null && !exclude(name)) {
-                deltaRequest.setAttribute(name, value);
+                deltaRequest.setAttribute(name, value, update);
             }
         } finally {
             unlock();
@@ -704,14 +709,19 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
      */
     @Override
     protected void doReadObject(ObjectInputStream stream) throws ClassNotFoundException, IOException {
-        doReadObject((ObjectInput)stream);
+        doReadObject((ObjectInput)stream, stream.readObject());
+    }
+
+    @Override
+    protected void doReadObject(ObjectInputStream stream, Object creationTime) throws ClassNotFoundException, IOException {
+        doReadObject((ObjectInput)stream, creationTime);
     }
 
-    private void doReadObject(ObjectInput stream) throws ClassNotFoundException, IOException {
+    private void doReadObject(ObjectInput stream, Object creationTime) throws ClassNotFoundException, IOException {
 
         // Deserialize the scalar instance variables (except Manager)
         authType = null; // Transient only
-        creationTime = ( (Long) stream.readObject()).longValue();
+        this.creationTime = ( (Long) creationTime).longValue();
         lastAccessedTime = ( (Long) stream.readObject()).longValue();
         maxInactiveInterval = ( (Integer) stream.readObject()).intValue();
         isNew = ( (Boolean) stream.readObject()).booleanValue();
@@ -839,6 +849,35 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
     }
 
 
+    @Override
+    protected void writeExtraData(ObjectOutputStream stream) throws IOException {
+        stream.writeLong(version);
+        stream.writeBoolean(getPrincipal() != null);
+        if (getPrincipal() != null) {
+            SerializablePrincipal.writePrincipal((GenericPrincipal) principal,stream);
+        }
+    }
+
+
+    @Override
+    protected void readExtraData(ObjectInputStream stream) throws ClassNotFoundException, IOException {
+        version = stream.readLong();
+        boolean hasPrincipal = stream.readBoolean();
+        principal = null;
+        if (hasPrincipal) {
+            principal = SerializablePrincipal.readPrincipal(stream);
+        }
+        // The attributes have already been read
+        activate();
+    }
+
+
+    @Override
+    protected void attributeNotSerialized(String name) {
+        // The attribute is still valid on this node so it is not removed
+    }
+
+
     // -------------------------------------------------------- Private Methods
 
     protected void removeAttributeInternal(String name, boolean notify,
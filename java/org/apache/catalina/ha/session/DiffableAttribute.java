@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.ha.session;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A session attribute value can implement this interface so that changes
+ * made to it are replicated by the {@link DeltaManager} as a diff against
+ * the state that was last replicated rather than by serializing the whole
+ * value again.
+ * <p>
+ * A diff is only sent when the value is set again under the same name with
+ * <code>setAttribute</code>. A value set under a name for the first time, or
+ * in place of another value, is always serialized in full. After a value has
+ * been replicated, in full or as a diff, {@link #resetDiff()} is called and
+ * the value should track its changes from that point.
+ * <p>
+ * On the receiving node the diff is passed to {@link #applyDiff(byte[], int,
+ * int)} of the value currently bound under that name, which must leave the
+ * value ready to produce diffs against its new state in case it becomes the
+ * primary copy of the session.
+ */
+public interface DiffableAttribute extends Serializable {
+
+    /**
+     * If this returns true, the changes made since the value was last
+     * replicated will be extracted with {@link #getDiff()}. Otherwise the
+     * value will be serialized in full. A value that has not been replicated
+     * yet, including one that was received in full from another node, should
+     * return false.
+     *
+     * @return boolean
+     */
+    public boolean isDiffable();
+
+    /**
+     * Returns the changes made to this value since it was last replicated.
+     *
+     * @return byte[]
+     * @throws IOException
+     */
+    public byte[] getDiff() throws IOException;
+
+    /**
+     * Applies a diff to this value.
+     *
+     * @param diff byte[]
+     * @param offset int
+     * @param length int
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public void applyDiff(byte[] diff, int offset, int length)
+            throws IOException, ClassNotFoundException;
+
+    /**
+     * Marks the current state of this value as the state that was last
+     * replicated.
+     */
+    public void resetDiff();
+}
@@ -64,6 +64,8 @@ import org.apache.catalina.LifecycleListener;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.webresources.JarIndex;
+import org.apache.catalina.webresources.StandardRoot;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.IntrospectionUtils;
 import org.apache.tomcat.util.res.StringManager;
@@ -332,6 +334,13 @@ public class WebappClassLoader
     protected File[] jarRealFiles = new File[0];
 
 
+    /**
+     * The index of the entries in {@link #jarRealFiles}, built when this class
+     * loader starts. <code>null</code> if the JARs have to be searched.
+     */
+    protected volatile JarIndex jarIndex = null;
+
+
     /**
      * The path which will be monitored for added Jar files.
      */
@@ -829,6 +838,16 @@ public class WebappClassLoader
         }
         result4[jarRealFiles.length] = file;
         jarRealFiles = result4;
+
+        // Lookups only search the JARs in the index so, once started, it
+        // has to include the new JAR
+        if (jarIndex != null) {
+            jarIndex = buildJarIndex();
+        }
+        // Resources that were not found may be in the new JAR
+        synchronized (notFoundResources) {
+            notFoundResources.clear();
+        }
     }
 
 
@@ -1095,17 +1114,20 @@ public class WebappClassLoader
         }
 
         // Looking at the JAR files
-        synchronized (jarFiles) {
-            if (openJARs()) {
-                for (int i = 0; i < jarFilesLength; i++) {
-                    JarEntry jarEntry = jarFiles[i].getJarEntry(name);
-                    if (jarEntry != null) {
-                        try {
-                            String jarFakeUrl = getURI(jarRealFiles[i]).toString();
-                            jarFakeUrl = "jar:" + jarFakeUrl + "!/" + name;
-                            result.add(new URL(jarFakeUrl));
-                        } catch (MalformedURLException e) {
-                            // Ignore
+        int[] jarLocations = getJarLocations(name, jarFilesLength);
+        if (jarLocations.length > 0) {
+            synchronized (jarFiles) {
+                if (openJARs()) {
+                    for (int i : jarLocations) {
+                        JarEntry jarEntry = jarFiles[i].getJarEntry(name);
+                        if (jarEntry != null) {
+                            try {
+                                String jarFakeUrl = getURI(jarRealFiles[i]).toString();
+                                jarFakeUrl = "jar:" + jarFakeUrl + "!/" + name;
+                                result.add(new URL(jarFakeUrl));
+                            } catch (MalformedURLException e) {
+                                // Ignore
+                            }
                         }
                     }
                 }
@@ -1609,6 +1631,8 @@ public class WebappClassLoader
     @Override
     public void start() throws LifecycleException {
 
+        jarIndex = buildJarIndex();
+
         started = true;
         String encoding = null;
         try {
@@ -1641,6 +1665,8 @@ public class WebappClassLoader
 
         started = false;
 
+        jarIndex = null;
+
         file = null;
 
         int length = jarFiles.length;
@@ -2509,6 +2535,45 @@ public class WebappClassLoader
     }
 
 
+    /**
+     * Index the JARs of this class loader, reusing the index of /WEB-INF/lib
+     * built by the web resources where it covers the same JARs.
+     */
+    private JarIndex buildJarIndex() {
+        File[] files = jarRealFiles;
+        if (resources instanceof StandardRoot) {
+            JarIndex sharedIndex = ((StandardRoot) resources).getJarIndex();
+            if (sharedIndex != null && sharedIndex.matches(files)) {
+                return sharedIndex;
+            }
+        }
+        try {
+            return JarIndex.build(files);
+        } catch (IOException e) {
+            log.warn(sm.getString("webappClassLoader.jarIndexFail",
+                    getContextName()), e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Obtain the positions in {@link #jarFiles} of the JARs that may contain
+     * the given entry.
+     */
+    private int[] getJarLocations(String path, int jarFilesLength) {
+        JarIndex jarIndex = this.jarIndex;
+        if (jarIndex != null) {
+            return jarIndex.getLocations(path);
+        }
+        int[] locations = new int[jarFilesLength];
+        for (int i = 0; i < jarFilesLength; i++) {
+            locations[i] = i;
+        }
+        return locations;
+    }
+
+
     /**
      * Used to periodically signal to the classloader to release JAR resources.
      */
@@ -2741,6 +2806,15 @@ public class WebappClassLoader
         if ((entry == null) && (notFoundResources.containsKey(name)))
             return null;
 
+        int[] jarLocations = getJarLocations(path, jarFilesLength);
+        if ((entry == null) && (jarLocations.length == 0)) {
+            // Not in any JAR so there is no need to lock and open the JARs
+            synchronized (notFoundResources) {
+                notFoundResources.put(name, name);
+            }
+            return null;
+        }
+
         JarEntry jarEntry = null;
 
         synchronized (jarFiles) {
@@ -2749,8 +2823,9 @@ public class WebappClassLoader
                 if (!openJARs()) {
                     return null;
                 }
-                for (int i = 0; (entry == null) && (i < jarFilesLength); i++) {
+                for (int j = 0; (entry == null) && (j < jarLocations.length); j++) {
 
+                    int i = jarLocations[j];
                     jarEntry = jarFiles[i].getJarEntry(path);
 
                     if (jarEntry != null) {
@@ -365,10 +365,7 @@ public final class Mapper {
                     new MappedWrapper[oldWrappers.length + 1];
                 if (insertMap(oldWrappers, newWrappers, newWrapper)) {
                     context.wildcardWrappers = newWrappers;
-                    int slashCount = slashCount(newWrapper.name);
-                    if (slashCount > context.nesting) {
-                        context.nesting = slashCount;
-                    }
+                    rebuildWrapperTree(context);
                 }
             } else if (path.startsWith("*.")) {
                 // Extension wrapper
@@ -378,6 +375,7 @@ public final class Mapper {
                     new MappedWrapper[oldWrappers.length + 1];
                 if (insertMap(oldWrappers, newWrappers, newWrapper)) {
                     context.extensionWrappers = newWrappers;
+                    rebuildWrapperTree(context);
                 }
             } else if (path.equals("/")) {
                 // Default wrapper
@@ -397,6 +395,7 @@ public final class Mapper {
                     new MappedWrapper[oldWrappers.length + 1];
                 if (insertMap(oldWrappers, newWrappers, newWrapper)) {
                     context.exactWrappers = newWrappers;
+                    rebuildWrapperTree(context);
                 }
             }
         }
@@ -456,15 +455,8 @@ public final class Mapper {
                 MappedWrapper[] newWrappers =
                     new MappedWrapper[oldWrappers.length - 1];
                 if (removeMap(oldWrappers, newWrappers, name)) {
-                    // Recalculate nesting
-                    context.nesting = 0;
-                    for (int i = 0; i < newWrappers.length; i++) {
-                        int slashCount = slashCount(newWrappers[i].name);
-                        if (slashCount > context.nesting) {
-                            context.nesting = slashCount;
-                        }
-                    }
                     context.wildcardWrappers = newWrappers;
+                    rebuildWrapperTree(context);
                 }
             } else if (path.startsWith("*.")) {
                 // Extension wrapper
@@ -477,6 +469,7 @@ public final class Mapper {
                     new MappedWrapper[oldWrappers.length - 1];
                 if (removeMap(oldWrappers, newWrappers, name)) {
                     context.extensionWrappers = newWrappers;
+                    rebuildWrapperTree(context);
                 }
             } else if (path.equals("/")) {
                 // Default wrapper
@@ -492,12 +485,26 @@ public final class Mapper {
                     new MappedWrapper[oldWrappers.length - 1];
                 if (removeMap(oldWrappers, newWrappers, name)) {
                     context.exactWrappers = newWrappers;
+                    rebuildWrapperTree(context);
                 }
             }
         }
     }
 
 
+    /**
+     * Replace the compiled wrapper tree of the given context version with one
+     * built from its current wrapper arrays. The tree is never modified after
+     * it has been published so requests being mapped concurrently continue to
+     * use the previous tree until they next read the field. Callers must hold
+     * the context version's lock.
+     */
+    private static void rebuildWrapperTree(ContextVersion context) {
+        context.wrapperTree = WrapperTree.build(context.exactWrappers,
+                context.wildcardWrappers, context.extensionWrappers);
+    }
+
+
     /**
      * Add a welcome file to the given context.
      *
@@ -828,16 +835,18 @@ public final class Mapper {
 
         path.setOffset(servletPath);
 
+        // Rules 1 to 3 are resolved with a single walk of the compiled tree
+        WrapperTree wrapperTree = contextVersion.wrapperTree;
+        WrapperTree.Match match = mappingData.wrapperMatch;
+        wrapperTree.map(path.getBuffer(), servletPath, pathEnd, match);
+
         // Rule 1 -- Exact Match
-        MappedWrapper[] exactWrappers = contextVersion.exactWrappers;
-        internalMapExactWrapper(exactWrappers, path, mappingData);
+        internalMapExactWrapper(match.exact, path, mappingData);
 
         // Rule 2 -- Prefix Match
         boolean checkJspWelcomeFiles = false;
-        MappedWrapper[] wildcardWrappers = contextVersion.wildcardWrappers;
         if (mappingData.wrapper == null) {
-            internalMapWildcardWrapper(wildcardWrappers, contextVersion.nesting,
-                                       path, mappingData);
+            internalMapWildcardWrapper(match, path, mappingData);
             if (mappingData.wrapper != null && mappingData.jspWildCard) {
                 char[] buf = path.getBuffer();
                 if (buf[pathEnd - 1] == '/') {
@@ -869,9 +878,8 @@ public final class Mapper {
         }
 
         // Rule 3 -- Extension Match
-        MappedWrapper[] extensionWrappers = contextVersion.extensionWrappers;
         if (mappingData.wrapper == null && !checkJspWelcomeFiles) {
-            internalMapExtensionWrapper(extensionWrappers, path, mappingData,
+            internalMapExtensionWrapper(match.extension, path, mappingData,
                     true);
         }
 
@@ -890,15 +898,15 @@ public final class Mapper {
                     path.append(contextVersion.welcomeResources[i], 0,
                             contextVersion.welcomeResources[i].length());
                     path.setOffset(servletPath);
+                    wrapperTree.map(path.getBuffer(), path.getStart(),
+                            path.getEnd(), match);
 
                     // Rule 4a -- Welcome resources processing for exact macth
-                    internalMapExactWrapper(exactWrappers, path, mappingData);
+                    internalMapExactWrapper(match.exact, path, mappingData);
 
                     // Rule 4b -- Welcome resources processing for prefix match
                     if (mappingData.wrapper == null) {
-                        internalMapWildcardWrapper
-                            (wildcardWrappers, contextVersion.nesting,
-                             path, mappingData);
+                        internalMapWildcardWrapper(match, path, mappingData);
                     }
 
                     // Rule 4c -- Welcome resources processing
@@ -909,7 +917,7 @@ public final class Mapper {
                         WebResource file =
                                 contextVersion.resources.getResource(pathStr);
                         if (file != null && file.isFile()) {
-                            internalMapExtensionWrapper(extensionWrappers, path,
+                            internalMapExtensionWrapper(match.extension, path,
                                                         mappingData, true);
                             if (mappingData.wrapper == null
                                 && contextVersion.defaultWrapper != null) {
@@ -955,7 +963,9 @@ public final class Mapper {
                     path.append(contextVersion.welcomeResources[i], 0,
                                 contextVersion.welcomeResources[i].length());
                     path.setOffset(servletPath);
-                    internalMapExtensionWrapper(extensionWrappers, path,
+                    wrapperTree.map(path.getBuffer(), path.getStart(),
+                            path.getEnd(), match);
+                    internalMapExtensionWrapper(match.extension, path,
                                                 mappingData, false);
                 }
 
@@ -1005,11 +1015,10 @@ public final class Mapper {
      * Exact mapping.
      */
     private final void internalMapExactWrapper
-        (MappedWrapper[] wrappers, CharChunk path, MappingData mappingData) {
-        int pos = find(wrappers, path);
-        if ((pos != -1) && (path.equals(wrappers[pos].name))) {
-            mappingData.requestPath.setString(wrappers[pos].name);
-            mappingData.wrapper = wrappers[pos].object;
+        (MappedWrapper wrapper, CharChunk path, MappingData mappingData) {
+        if (wrapper != null) {
+            mappingData.requestPath.setString(wrapper.name);
+            mappingData.wrapper = wrapper.object;
             if (path.equals("/")) {
                 // Special handling for Context Root mapped servlet
                 mappingData.pathInfo.setString("/");
@@ -1017,7 +1026,7 @@ public final class Mapper {
                 // This seems wrong but it is what the spec says...
                 mappingData.contextPath.setString("");
             } else {
-                mappingData.wrapperPath.setString(wrappers[pos].name);
+                mappingData.wrapperPath.setString(wrapper.name);
             }
         }
     }
@@ -1027,49 +1036,21 @@ public final class Mapper {
      * Wildcard mapping.
      */
     private final void internalMapWildcardWrapper
-        (MappedWrapper[] wrappers, int nesting, CharChunk path,
-         MappingData mappingData) {
-
-        int pathEnd = path.getEnd();
-
-        int lastSlash = -1;
-        int length = -1;
-        int pos = find(wrappers, path);
-        if (pos != -1) {
-            boolean found = false;
-            while (pos >= 0) {
-                if (path.startsWith(wrappers[pos].name)) {
-                    length = wrappers[pos].name.length();
-                    if (path.getLength() == length) {
-                        found = true;
-                        break;
-                    } else if (path.startsWithIgnoreCase("/", length)) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (lastSlash == -1) {
-                    lastSlash = nthSlash(path, nesting + 1);
-                } else {
-                    lastSlash = lastSlash(path);
-                }
-                path.setEnd(lastSlash);
-                pos = find(wrappers, path);
-            }
-            path.setEnd(pathEnd);
-            if (found) {
-                mappingData.wrapperPath.setString(wrappers[pos].name);
-                if (path.getLength() > length) {
-                    mappingData.pathInfo.setChars
-                        (path.getBuffer(),
-                         path.getOffset() + length,
-                         path.getLength() - length);
-                }
-                mappingData.requestPath.setChars
-                    (path.getBuffer(), path.getOffset(), path.getLength());
-                mappingData.wrapper = wrappers[pos].object;
-                mappingData.jspWildCard = wrappers[pos].jspWildCard;
+        (WrapperTree.Match match, CharChunk path, MappingData mappingData) {
+        MappedWrapper wrapper = match.wildcard;
+        if (wrapper != null) {
+            int length = match.wildcardLength;
+            mappingData.wrapperPath.setString(wrapper.name);
+            if (path.getLength() > length) {
+                mappingData.pathInfo.setChars
+                    (path.getBuffer(),
+                     path.getOffset() + length,
+                     path.getLength() - length);
             }
+            mappingData.requestPath.setChars
+                (path.getBuffer(), path.getOffset(), path.getLength());
+            mappingData.wrapper = wrapper.object;
+            mappingData.jspWildCard = wrapper.jspWildCard;
         }
     }
 
@@ -1077,46 +1058,23 @@ public final class Mapper {
     /**
      * Extension mappings.
      *
-     * @param wrappers          Set of wrappers to check for matches
+     * @param wrapper           Wrapper mapped to the extension of the path, if
+     *                          any
      * @param path              Path to map
      * @param mappingData       Mapping data for result
      * @param resourceExpected  Is this mapping expecting to find a resource
      */
-    private final void internalMapExtensionWrapper(MappedWrapper[] wrappers,
+    private final void internalMapExtensionWrapper(MappedWrapper wrapper,
             CharChunk path, MappingData mappingData, boolean resourceExpected) {
-        char[] buf = path.getBuffer();
-        int pathEnd = path.getEnd();
-        int servletPath = path.getOffset();
-        int slash = -1;
-        for (int i = pathEnd - 1; i >= servletPath; i--) {
-            if (buf[i] == '/') {
-                slash = i;
-                break;
-            }
-        }
-        if (slash >= 0) {
-            int period = -1;
-            for (int i = pathEnd - 1; i > slash; i--) {
-                if (buf[i] == '.') {
-                    period = i;
-                    break;
-                }
-            }
-            if (period >= 0) {
-                path.setOffset(period + 1);
-                path.setEnd(pathEnd);
-                int pos = find(wrappers, path);
-                if ((pos != -1) && (path.equals(wrappers[pos].name)) &&
-                        (resourceExpected || !wrappers[pos].resourceOnly)) {
-                    mappingData.wrapperPath.setChars
-                        (buf, servletPath, pathEnd - servletPath);
-                    mappingData.requestPath.setChars
-                        (buf, servletPath, pathEnd - servletPath);
-                    mappingData.wrapper = wrappers[pos].object;
-                }
-                path.setOffset(servletPath);
-                path.setEnd(pathEnd);
-            }
+        if (wrapper != null && (resourceExpected || !wrapper.resourceOnly)) {
+            char[] buf = path.getBuffer();
+            int servletPath = path.getOffset();
+            int pathEnd = path.getEnd();
+            mappingData.wrapperPath.setChars
+                (buf, servletPath, pathEnd - servletPath);
+            mappingData.requestPath.setChars
+                (buf, servletPath, pathEnd - servletPath);
+            mappingData.wrapper = wrapper.object;
         }
     }
 
@@ -1479,7 +1437,7 @@ public final class Mapper {
         public MappedWrapper[] exactWrappers = new MappedWrapper[0];
         public MappedWrapper[] wildcardWrappers = new MappedWrapper[0];
         public MappedWrapper[] extensionWrappers = new MappedWrapper[0];
-        public int nesting = 0;
+        volatile WrapperTree wrapperTree = WrapperTree.EMPTY;
 
     }
 
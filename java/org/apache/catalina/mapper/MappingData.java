@@ -42,6 +42,8 @@ public class MappingData {
 
     public final MessageBytes redirectPath = MessageBytes.newInstance();
 
+    final WrapperTree.Match wrapperMatch = new WrapperTree.Match();
+
     public void recycle() {
         host = null;
         context = null;
@@ -53,6 +55,7 @@ public class MappingData {
         wrapperPath.recycle();
         pathInfo.recycle();
         redirectPath.recycle();
+        wrapperMatch.recycle();
     }
 
 }
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.catalina.mapper.Mapper.MappedWrapper;
+
+/**
+ * Immutable radix tree compiled from the exact, wildcard and extension
+ * wrappers of a context version. The exact and wildcard (prefix) mappings
+ * share a single tree so that the exact match and the longest prefix match
+ * are both resolved while walking the request path once. The last path
+ * segment's extension is located during the same walk and resolved against a
+ * second, much smaller tree.
+ * <p>
+ * Instances are never modified once built. The {@link Mapper} builds a new
+ * tree each time a wrapper is added to or removed from a context version and
+ * publishes it with a single volatile write.
+ */
+final class WrapperTree {
+
+    static final WrapperTree EMPTY = build(new MappedWrapper[0],
+            new MappedWrapper[0], new MappedWrapper[0]);
+
+
+    private final Node paths;
+    private final Node extensions;
+
+
+    private WrapperTree(Node paths, Node extensions) {
+        this.paths = paths;
+        this.extensions = extensions;
+    }
+
+
+    /**
+     * Compile a tree from the given sorted wrapper arrays.
+     *
+     * @param exactWrappers     Exact mappings, keyed by full path
+     * @param wildcardWrappers  Prefix mappings, keyed by the path without the
+     *                          trailing <code>/*</code>
+     * @param extensionWrappers Extension mappings, keyed by the extension
+     *                          without the leading <code>*.</code>
+     */
+    static WrapperTree build(MappedWrapper[] exactWrappers,
+            MappedWrapper[] wildcardWrappers,
+            MappedWrapper[] extensionWrappers) {
+        Builder paths = new Builder();
+        for (MappedWrapper wrapper : exactWrappers) {
+            paths.insert(wrapper.name).exact = wrapper;
+        }
+        for (MappedWrapper wrapper : wildcardWrappers) {
+            paths.insert(wrapper.name).wildcard = wrapper;
+        }
+        Builder extensions = new Builder();
+        for (MappedWrapper wrapper : extensionWrappers) {
+            extensions.insert(wrapper.name).exact = wrapper;
+        }
+        return new WrapperTree(paths.compile(new StringBuilder()),
+                extensions.compile(new StringBuilder()));
+    }
+
+
+    /**
+     * Resolve the exact, longest prefix and extension matches for the path
+     * <code>buf[start..end)</code> in a single pass over the characters.
+     *
+     * @param buf   Characters of the path to map
+     * @param start Start of the servlet path (inclusive)
+     * @param end   End of the path (exclusive)
+     * @param match Holder for the results. It is reset before use.
+     */
+    void map(char[] buf, int start, int end, Match match) {
+        match.recycle();
+
+        Node node = paths;
+        int consumed = 0;
+        int slash = -1;
+        int period = -1;
+
+        for (int i = start; i < end; i++) {
+            char c = buf[i];
+            if (node != null) {
+                if (consumed == node.label.length) {
+                    // At a node boundary: the prefix up to here is a complete
+                    // path segment when it is followed by a '/'
+                    if (c == '/' && node.wildcard != null) {
+                        match.wildcard = node.wildcard;
+                        match.wildcardLength = i - start;
+                    }
+                    node = node.child(c);
+                    consumed = 1;
+                } else if (node.label[consumed] == c) {
+                    consumed++;
+                } else {
+                    node = null;
+                }
+            }
+            if (c == '/') {
+                slash = i;
+                period = -1;
+            } else if (c == '.') {
+                period = i;
+            }
+        }
+
+        if (node != null && consumed == node.label.length) {
+            match.exact = node.exact;
+            if (node.wildcard != null) {
+                match.wildcard = node.wildcard;
+                match.wildcardLength = end - start;
+            }
+        }
+
+        if (slash >= 0 && period >= 0) {
+            Node extension = find(extensions, buf, period + 1, end);
+            if (extension != null) {
+                match.extension = extension.exact;
+            }
+        }
+    }
+
+
+    /**
+     * Find the node whose full key is exactly <code>buf[start..end)</code>.
+     */
+    private static Node find(Node node, char[] buf, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            node = node.child(buf[pos]);
+            if (node == null) {
+                return null;
+            }
+            char[] label = node.label;
+            if (end - pos < label.length) {
+                return null;
+            }
+            for (int i = 1; i < label.length; i++) {
+                if (label[i] != buf[pos + i]) {
+                    return null;
+                }
+            }
+            pos += label.length;
+        }
+        return node;
+    }
+
+
+    // ------------------------------------------------------ Match Inner Class
+
+
+    /**
+     * Per request holder for the results of {@link WrapperTree#map}.
+     */
+    static final class Match {
+
+        MappedWrapper exact = null;
+        MappedWrapper wildcard = null;
+        int wildcardLength = -1;
+        MappedWrapper extension = null;
+
+        void recycle() {
+            exact = null;
+            wildcard = null;
+            wildcardLength = -1;
+            extension = null;
+        }
+    }
+
+
+    // ------------------------------------------------------- Node Inner Class
+
+
+    private static final class Node {
+
+        private static final char[] NO_CHARS = new char[0];
+        private static final Node[] NO_NODES = new Node[0];
+
+        /**
+         * Characters on the edge leading to this node. The first character is
+         * also held by the parent in {@link #keys}.
+         */
+        final char[] label;
+        final char[] keys;
+        final Node[] children;
+        final MappedWrapper exact;
+        final MappedWrapper wildcard;
+
+        Node(char[] label, char[] keys, Node[] children, MappedWrapper exact,
+                MappedWrapper wildcard) {
+            this.label = label;
+            this.keys = keys;
+            this.children = children;
+            this.exact = exact;
+            this.wildcard = wildcard;
+        }
+
+        Node child(char c) {
+            char[] keys = this.keys;
+            if (keys.length < 8) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] == c) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+            int pos = Arrays.binarySearch(keys, c);
+            return pos < 0 ? null : children[pos];
+        }
+    }
+
+
+    // ---------------------------------------------------- Builder Inner Class
+
+
+    /**
+     * Uncompressed, mutable trie used while compiling a {@link WrapperTree}.
+     */
+    private static final class Builder {
+
+        final TreeMap<Character,Builder> children = new TreeMap<>();
+        MappedWrapper exact = null;
+        MappedWrapper wildcard = null;
+
+        Builder insert(String name) {
+            Builder node = this;
+            for (int i = 0; i < name.length(); i++) {
+                Character c = Character.valueOf(name.charAt(i));
+                Builder child = node.children.get(c);
+                if (child == null) {
+                    child = new Builder();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        /**
+         * Compile this node, collapsing chains of nodes that carry no mapping
+         * and have a single child into one edge.
+         *
+         * @param label The characters on the edge leading to this node
+         */
+        Node compile(StringBuilder label) {
+            Builder node = this;
+            while (node.exact == null && node.wildcard == null &&
+                    node.children.size() == 1 && label.length() > 0) {
+                Map.Entry<Character,Builder> entry =
+                        node.children.firstEntry();
+                label.append(entry.getKey().charValue());
+                node = entry.getValue();
+            }
+            char[] chars = label.length() == 0 ? Node.NO_CHARS :
+                label.toString().toCharArray();
+            int size = node.children.size();
+            if (size == 0) {
+                return new Node(chars, Node.NO_CHARS, Node.NO_NODES,
+                        node.exact, node.wildcard);
+            }
+            char[] keys = new char[size];
+            Node[] children = new Node[size];
+            int i = 0;
+            for (Map.Entry<Character,Builder> entry :
+                    node.children.entrySet()) {
+                keys[i] = entry.getKey().charValue();
+                StringBuilder childLabel = new StringBuilder();
+                childLabel.append(keys[i]);
+                children[i] = entry.getValue().compile(childLabel);
+                i++;
+            }
+            return new Node(chars, keys, children, node.exact, node.wildcard);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.catalina.servlets;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -31,10 +32,21 @@ import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.StringTokenizer;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -42,6 +54,7 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletResponse;
 import javax.servlet.ServletResponseWrapper;
 import javax.servlet.UnavailableException;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -60,6 +73,7 @@ import org.apache.catalina.connector.ResponseFacade;
 import org.apache.catalina.util.RequestUtil;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.URLEncoder;
+import org.apache.tomcat.util.buf.B2CConverter;
 import org.apache.tomcat.util.res.StringManager;
 
 
@@ -193,11 +207,35 @@ public class DefaultServlet
      */
     protected int sendfileSize = 48 * 1024;
 
+    /**
+     * Minimum size for non-blocking writes in bytes. A negative value disables
+     * non-blocking writes.
+     */
+    protected int nonBlockingSize = -1;
+
     /**
      * Should the Accept-Ranges: bytes header be send with static resources?
      */
     protected boolean useAcceptRanges = true;
 
+    /**
+     * Should clients that accept gzip be sent the compressed copy of a
+     * resource that is held in the resource cache?
+     */
+    protected boolean useCompressedVariants = false;
+
+    /**
+     * Content types for which a compressed copy of the resource is used.
+     */
+    protected String[] compressedVariantMimeTypes = new String[] {
+            "text/html", "text/xml", "text/plain", "text/css",
+            "text/javascript", "application/javascript" };
+
+    /**
+     * Minimum resource size, in bytes, for which a compressed copy is used.
+     */
+    protected long compressedVariantMinSize = 2048;
+
     /**
      * Full range marker.
      */
@@ -281,6 +319,10 @@ public class DefaultServlet
             sendfileSize =
                 Integer.parseInt(getServletConfig().getInitParameter("sendfileSize")) * 1024;
 
+        if (getServletConfig().getInitParameter("nonBlockingSize") != null)
+            nonBlockingSize =
+                Integer.parseInt(getServletConfig().getInitParameter("nonBlockingSize")) * 1024;
+
         fileEncoding = getServletConfig().getInitParameter("fileEncoding");
 
         globalXsltFile = getServletConfig().getInitParameter("globalXsltFile");
@@ -291,6 +333,17 @@ public class DefaultServlet
         if (getServletConfig().getInitParameter("useAcceptRanges") != null)
             useAcceptRanges = Boolean.parseBoolean(getServletConfig().getInitParameter("useAcceptRanges"));
 
+        useCompressedVariants = Boolean.parseBoolean(
+                getServletConfig().getInitParameter("useCompressedVariants"));
+
+        if (getServletConfig().getInitParameter("compressedVariantMimeTypes") != null)
+            compressedVariantMimeTypes = getServletConfig().getInitParameter(
+                    "compressedVariantMimeTypes").trim().split("\\s*,\\s*");
+
+        if (getServletConfig().getInitParameter("compressedVariantMinSize") != null)
+            compressedVariantMinSize = Long.parseLong(
+                    getServletConfig().getInitParameter("compressedVariantMinSize"));
+
         // Sanity check on the specified buffer sizes
         if (input < 256)
             input = 256;
@@ -838,6 +891,19 @@ public class DefaultServlet
                         && request.getHeader("Range") == null ) ||
                 ranges == FULL ) {
 
+            // Use the cached compressed copy of the resource if possible
+            byte[] gzipContent = null;
+            if (resource.isFile() && !isError && contentWritten == 0 &&
+                    (!serveContent || ostream != null) &&
+                    isUnwrappedRequest(request, response) &&
+                    isCompressedVariantType(contentType, contentLength)) {
+                // Caches may only reuse the response for the same encoding
+                response.addHeader("Vary", "Accept-Encoding");
+                if (acceptsGzip(request)) {
+                    gzipContent = resource.getGzipContent();
+                }
+            }
+
             // Set the appropriate output headers
             if (contentType != null) {
                 if (debug > 0)
@@ -845,7 +911,15 @@ public class DefaultServlet
                         contentType + "'");
                 response.setContentType(contentType);
             }
-            if (resource.isFile() && contentLength >= 0 &&
+            if (gzipContent != null) {
+                if (debug > 0)
+                    log("DefaultServlet.serveFile:  compressed contentLength=" +
+                        gzipContent.length);
+                response.setHeader("Content-Encoding", "gzip");
+                response.setHeader("ETag",
+                        getCompressedVariantETag(resource.getETag()));
+                response.setContentLength(gzipContent.length);
+            } else if (resource.isFile() && contentLength >= 0 &&
                     (!serveContent || ostream != null)) {
                 if (debug > 0)
                     log("DefaultServlet.serveFile:  contentLength=" +
@@ -872,9 +946,13 @@ public class DefaultServlet
                 } catch (IllegalStateException e) {
                     // Silent catch
                 }
-                if (ostream != null) {
+                if (gzipContent != null) {
+                    ostream.write(gzipContent);
+                } else if (ostream != null) {
                     if (!checkSendfile(request, response, resource,
-                            contentLength, null))
+                            contentLength, null) &&
+                            !checkNonBlocking(request, response, resource,
+                                    ostream, contentLength, null))
                         copy(resource, renderResult, ostream);
                 } else {
                     copy(resource, renderResult, writer);
@@ -915,7 +993,10 @@ public class DefaultServlet
                     }
                     if (ostream != null) {
                         if (!checkSendfile(request, response, resource,
-                                range.end - range.start + 1, range))
+                                range.end - range.start + 1, range) &&
+                                !checkNonBlocking(request, response, resource,
+                                        ostream, range.end - range.start + 1,
+                                        range))
                             copy(resource, ostream, range);
                     } else {
                         // we should not get here
@@ -935,8 +1016,10 @@ public class DefaultServlet
                         // Silent catch
                     }
                     if (ostream != null) {
-                        copy(resource, ostream, ranges.iterator(),
-                             contentType);
+                        if (!checkSendfile(request, response, resource,
+                                ranges, contentType))
+                            copy(resource, ostream, ranges.iterator(),
+                                 contentType);
                     } else {
                         // we should not get here
                         throw new IllegalStateException();
@@ -1008,6 +1091,105 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Check whether a compressed copy of a resource with the given content
+     * type and length should be sent to clients that accept it.
+     */
+    protected boolean isCompressedVariantType(String contentType,
+            long contentLength) {
+        if (!useCompressedVariants || contentType == null ||
+                contentLength < compressedVariantMinSize) {
+            return false;
+        }
+        for (String mimeType : compressedVariantMimeTypes) {
+            if (contentType.startsWith(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Check that the request is neither an include nor wrapped, so that the
+     * headers set by this servlet, such as Content-Encoding, are the headers
+     * of the response that reaches the client.
+     */
+    private boolean isUnwrappedRequest(HttpServletRequest request,
+            HttpServletResponse response) {
+        return request.getAttribute(
+                    RequestDispatcher.INCLUDE_REQUEST_URI) == null
+            && request.getClass().getName().equals("org.apache.catalina.connector.RequestFacade")
+            && response.getClass().getName().equals("org.apache.catalina.connector.ResponseFacade");
+    }
+
+
+    /**
+     * Return the ETag of the compressed copy of a resource, which must differ
+     * from the ETag of the resource itself so that a client does not combine
+     * the two, for example when it resumes a download with If-Range.
+     */
+    protected String getCompressedVariantETag(String eTag) {
+        if (eTag == null) {
+            return null;
+        }
+        if (eTag.endsWith("\"")) {
+            return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+        }
+        return eTag + "-gzip";
+    }
+
+
+    /**
+     * Check whether an ETag sent by the client matches the resource, either
+     * as sent by this servlet without compression or, if compressed copies
+     * are used, as sent with the compressed copy.
+     */
+    private boolean matchesETag(String eTag, String headerETag) {
+        if (eTag == null) {
+            return false;
+        }
+        return headerETag.equals(eTag) || (useCompressedVariants &&
+                headerETag.equals(getCompressedVariantETag(eTag)));
+    }
+
+
+    /**
+     * Check whether the client accepts gzip encoded content.
+     */
+    protected boolean acceptsGzip(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        while (headers.hasMoreElements()) {
+            StringTokenizer tokens =
+                    new StringTokenizer(headers.nextElement(), ",");
+            while (tokens.hasMoreTokens()) {
+                String token = tokens.nextToken().trim();
+                int semicolon = token.indexOf(';');
+                String coding = semicolon == -1 ?
+                        token : token.substring(0, semicolon).trim();
+                if (!coding.equalsIgnoreCase("gzip") &&
+                        !coding.equalsIgnoreCase("x-gzip")) {
+                    continue;
+                }
+                // Only an explicit q=0 refuses the encoding
+                if (semicolon != -1) {
+                    String param = token.substring(semicolon + 1).trim();
+                    if (param.startsWith("q=") || param.startsWith("Q=")) {
+                        try {
+                            return Double.parseDouble(
+                                    param.substring(2).trim()) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+
     /**
      * Parse the range header.
      *
@@ -1038,7 +1220,9 @@ public class DefaultServlet
             if (headerValueTime == (-1L)) {
 
                 // If the ETag the client gave does not match the entity
-                // etag, then the entire entity is returned.
+                // etag, then the entire entity is returned. That includes the
+                // ETag of the compressed copy, since ranges are only served
+                // from the resource itself.
                 if (!eTag.equals(headerValue.trim()))
                     return FULL;
 
@@ -1517,12 +1701,26 @@ public class DefaultServlet
 
 
     /**
-     * Check if sendfile can be used.
+     * Check if sendfile can be used. Content that is cached off-heap is sent
+     * directly from the cache, whatever its size, if the connector supports
+     * it.
      */
     protected boolean checkSendfile(HttpServletRequest request,
                                   HttpServletResponse response,
                                   WebResource resource,
                                   long length, Range range) {
+        if (sendfileSize > 0
+            && resource.isFile()
+            && (Boolean.TRUE == request.getAttribute(Globals.SENDFILE_BUFFER_SUPPORTED_ATTR))
+            && (request.getClass().getName().equals("org.apache.catalina.connector.RequestFacade"))
+            && (response.getClass().getName().equals("org.apache.catalina.connector.ResponseFacade"))) {
+            ByteBuffer buffer = resource.getContentBuffer();
+            if (buffer != null) {
+                request.setAttribute(Globals.SENDFILE_BUFFER_ATTR, buffer);
+                setSendfileRange(request, length, range);
+                return true;
+            }
+        }
         if (sendfileSize > 0
             && resource.isFile()
             && length > sendfileSize
@@ -1531,19 +1729,145 @@ public class DefaultServlet
             && (request.getClass().getName().equals("org.apache.catalina.connector.RequestFacade"))
             && (response.getClass().getName().equals("org.apache.catalina.connector.ResponseFacade"))) {
             request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, resource.getCanonicalPath());
-            if (range == null) {
-                request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(0L));
-                request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(length));
-            } else {
-                request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(range.start));
-                request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(range.end + 1));
-            }
+            setSendfileRange(request, length, range);
             return true;
         }
         return false;
     }
 
 
+    /**
+     * Check if the content can be written using non-blocking IO and, if so,
+     * start writing it. The request is placed into asynchronous mode and the
+     * content is written whenever the client is able to accept more data so a
+     * slow client does not hold on to a container thread.
+     *
+     * @return <code>true</code> if the content is being written using
+     *         non-blocking IO
+     */
+    protected boolean checkNonBlocking(HttpServletRequest request,
+            HttpServletResponse response, WebResource resource,
+            ServletOutputStream ostream, long length, Range range)
+            throws IOException {
+
+        if (nonBlockingSize < 0
+            || !resource.isFile()
+            || length <= nonBlockingSize
+            || !request.isAsyncSupported()
+            || request.isAsyncStarted()
+            || request.getDispatcherType() == DispatcherType.INCLUDE
+            || !request.getClass().getName().equals("org.apache.catalina.connector.RequestFacade")
+            || !response.getClass().getName().equals("org.apache.catalina.connector.ResponseFacade")) {
+            return false;
+        }
+
+        long start = (range == null) ? 0 : range.start;
+        NonBlockingContent content = new NonBlockingContent(
+                openContent(resource, start), length, input);
+
+        AsyncContext asyncContext;
+        try {
+            asyncContext = request.startAsync();
+        } catch (IllegalStateException e) {
+            content.close();
+            return false;
+        }
+        asyncContext.addListener(content);
+        content.start(asyncContext, ostream);
+        return true;
+    }
+
+
+    /*
+     * Use the file directly if there is one so that the range can be reached
+     * without reading the preceding content.
+     */
+    private ReadableByteChannel openContent(WebResource resource, long start)
+            throws IOException {
+        String canonicalPath = resource.getCanonicalPath();
+        if (canonicalPath != null) {
+            FileChannel channel = FileChannel.open(Paths.get(canonicalPath),
+                    StandardOpenOption.READ);
+            channel.position(start);
+            return channel;
+        }
+        InputStream istream = resource.getInputStream();
+        long skipped = istream.skip(start);
+        if (skipped < start) {
+            istream.close();
+            throw new IOException(sm.getString("defaultservlet.skipfail",
+                    Long.valueOf(skipped), Long.valueOf(start)));
+        }
+        return Channels.newChannel(istream);
+    }
+
+
+    /**
+     * Check if sendfile can be used for a multipart/byteranges response. If
+     * so, the connector writes each part directly from the file, or from the
+     * off-heap cache, and the length of the response is set here.
+     */
+    protected boolean checkSendfile(HttpServletRequest request,
+                                  HttpServletResponse response,
+                                  WebResource resource,
+                                  ArrayList<Range> ranges,
+                                  String contentType) {
+        if (sendfileSize <= 0
+            || !resource.isFile()
+            || (Boolean.TRUE != request.getAttribute(Globals.SENDFILE_RANGES_SUPPORTED_ATTR))
+            || !(request.getClass().getName().equals("org.apache.catalina.connector.RequestFacade"))
+            || !(response.getClass().getName().equals("org.apache.catalina.connector.ResponseFacade"))) {
+            return false;
+        }
+
+        long[] sendfileRanges = new long[ranges.size() * 2];
+        byte[][] delimiters = new byte[ranges.size() + 1][];
+        long length = 0;
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            sendfileRanges[i * 2] = range.start;
+            sendfileRanges[i * 2 + 1] = range.end + 1;
+            delimiters[i] = getPartHeader(range, contentType).getBytes(
+                    B2CConverter.ISO_8859_1);
+            contentLength += range.end - range.start + 1;
+            length += delimiters[i].length;
+        }
+        delimiters[ranges.size()] = getPartTrailer().getBytes(
+                B2CConverter.ISO_8859_1);
+        length += delimiters[ranges.size()].length + contentLength;
+
+        ByteBuffer buffer = null;
+        if (Boolean.TRUE == request.getAttribute(Globals.SENDFILE_BUFFER_SUPPORTED_ATTR)) {
+            buffer = resource.getContentBuffer();
+        }
+        if (buffer != null) {
+            request.setAttribute(Globals.SENDFILE_BUFFER_ATTR, buffer);
+        } else if (contentLength > sendfileSize
+                && resource.getCanonicalPath() != null) {
+            request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, resource.getCanonicalPath());
+        } else {
+            return false;
+        }
+        request.setAttribute(Globals.SENDFILE_RANGES_ATTR, sendfileRanges);
+        request.setAttribute(Globals.SENDFILE_DELIMITERS_ATTR, delimiters);
+        response.setContentLengthLong(length);
+        return true;
+    }
+
+
+    private void setSendfileRange(HttpServletRequest request, long length,
+            Range range) {
+        if (range == null) {
+            request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(0L));
+            request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(length));
+        } else {
+            request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(range.start));
+            request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(range.end + 1));
+        }
+    }
+
+
     /**
      * Check if the if-match condition is satisfied.
      *
@@ -1569,7 +1893,7 @@ public class DefaultServlet
 
                 while (!conditionSatisfied && commaTokenizer.hasMoreTokens()) {
                     String currentToken = commaTokenizer.nextToken();
-                    if (currentToken.trim().equals(eTag))
+                    if (matchesETag(eTag, currentToken.trim()))
                         conditionSatisfied = true;
                 }
 
@@ -1642,6 +1966,7 @@ public class DefaultServlet
         if (headerValue != null) {
 
             boolean conditionSatisfied = false;
+            String matchedETag = eTag;
 
             if (!headerValue.equals("*")) {
 
@@ -1649,9 +1974,11 @@ public class DefaultServlet
                     new StringTokenizer(headerValue, ",");
 
                 while (!conditionSatisfied && commaTokenizer.hasMoreTokens()) {
-                    String currentToken = commaTokenizer.nextToken();
-                    if (currentToken.trim().equals(eTag))
+                    String currentToken = commaTokenizer.nextToken().trim();
+                    if (matchesETag(eTag, currentToken)) {
                         conditionSatisfied = true;
+                        matchedETag = currentToken;
+                    }
                 }
 
             } else {
@@ -1667,7 +1994,7 @@ public class DefaultServlet
                 if ( ("GET".equals(request.getMethod()))
                      || ("HEAD".equals(request.getMethod())) ) {
                     response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                    response.setHeader("ETag", eTag);
+                    response.setHeader("ETag", matchedETag);
 
                     return false;
                 }
@@ -1731,6 +2058,11 @@ public class DefaultServlet
         // Optimization: If the binary content has already been loaded, send
         // it directly
         if (resource.isFile()) {
+            ByteBuffer contentBuffer = resource.getContentBuffer();
+            if (contentBuffer != null) {
+                copyRange(contentBuffer, ostream, 0, contentBuffer.limit() - 1);
+                return;
+            }
             byte buffer[] = resource.getContent();
             if (buffer != null) {
                 ostream.write(buffer, 0, buffer.length);
@@ -1815,6 +2147,22 @@ public class DefaultServlet
 
         IOException exception = null;
 
+        ByteBuffer contentBuffer = resource.getContentBuffer();
+        if (contentBuffer != null) {
+            copyRange(contentBuffer, ostream, range.start, range.end);
+            return;
+        }
+
+        FileChannel channel = openChannel(resource);
+        if (channel != null) {
+            try {
+                copyRange(channel, ostream, range.start, range.end);
+            } finally {
+                channel.close();
+            }
+            return;
+        }
+
         InputStream resourceInputStream = resource.getInputStream();
         InputStream istream =
             new BufferedInputStream(resourceInputStream, input);
@@ -1848,34 +2196,51 @@ public class DefaultServlet
 
         IOException exception = null;
 
-        while ( (exception == null) && (ranges.hasNext()) ) {
+        ByteBuffer contentBuffer = resource.getContentBuffer();
+        // Open the file once for all the ranges
+        FileChannel channel = null;
+        if (contentBuffer == null) {
+            channel = openChannel(resource);
+        }
 
-            InputStream resourceInputStream = resource.getInputStream();
-            InputStream istream =
-                new BufferedInputStream(resourceInputStream, input);
+        try {
+            while ( (exception == null) && (ranges.hasNext()) ) {
 
-            Range currentRange = ranges.next();
+                Range currentRange = ranges.next();
 
-            // Writing MIME header.
-            ostream.println();
-            ostream.println("--" + mimeSeparation);
-            if (contentType != null)
-                ostream.println("Content-Type: " + contentType);
-            ostream.println("Content-Range: bytes " + currentRange.start
-                           + "-" + currentRange.end + "/"
-                           + currentRange.length);
-            ostream.println();
+                // Writing MIME header.
+                ostream.print(getPartHeader(currentRange, contentType));
 
-            // Printing content
-            exception = copyRange(istream, ostream, currentRange.start,
-                                  currentRange.end);
+                // Printing content
+                if (contentBuffer != null) {
+                    copyRange(contentBuffer, ostream, currentRange.start,
+                            currentRange.end);
+                    continue;
+                }
 
-            istream.close();
+                if (channel != null) {
+                    copyRange(channel, ostream, currentRange.start,
+                            currentRange.end);
+                    continue;
+                }
 
+                InputStream resourceInputStream = resource.getInputStream();
+                InputStream istream =
+                    new BufferedInputStream(resourceInputStream, input);
+
+                exception = copyRange(istream, ostream, currentRange.start,
+                                      currentRange.end);
+
+                istream.close();
+
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
         }
 
-        ostream.println();
-        ostream.print("--" + mimeSeparation + "--");
+        ostream.print(getPartTrailer());
 
         // Rethrow any exception that has occurred
         if (exception != null)
@@ -1884,6 +2249,45 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Obtain the MIME header that precedes each part of a
+     * multipart/byteranges response.
+     */
+    private String getPartHeader(Range range, String contentType) {
+        StringBuilder header = new StringBuilder();
+        header.append("\r\n--").append(mimeSeparation).append("\r\n");
+        if (contentType != null) {
+            header.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        header.append("Content-Range: bytes ").append(range.start);
+        header.append('-').append(range.end).append('/').append(range.length);
+        header.append("\r\n\r\n");
+        return header.toString();
+    }
+
+
+    /**
+     * Obtain the MIME boundary that ends a multipart/byteranges response.
+     */
+    private String getPartTrailer() {
+        return "\r\n--" + mimeSeparation + "--";
+    }
+
+
+    /*
+     * Open the file of the resource, if there is one, so ranges can be read
+     * from their position without reading the preceding content.
+     */
+    private FileChannel openChannel(WebResource resource) throws IOException {
+        String canonicalPath = resource.getCanonicalPath();
+        if (canonicalPath == null) {
+            return null;
+        }
+        return FileChannel.open(Paths.get(canonicalPath),
+                StandardOpenOption.READ);
+    }
+
+
     /**
      * Copy the contents of the specified input stream to the specified
      * output stream, and ensure that both streams are closed before returning
@@ -2006,6 +2410,167 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Copy a range of the contents of the specified buffer to the specified
+     * output stream.
+     *
+     * @param content The buffer to read from. Its position and limit will be
+     *                modified.
+     * @param ostream The output stream to write to
+     * @param start Start of the range which will be copied
+     * @param end End of the range which will be copied
+     * @exception IOException if an input/output error occurs
+     */
+    protected void copyRange(ByteBuffer content, ServletOutputStream ostream,
+            long start, long end) throws IOException {
+
+        if (debug > 10)
+            log("Serving bytes:" + start + "-" + end);
+
+        content.limit((int) (end + 1));
+        content.position((int) start);
+
+        byte buffer[] = new byte[Math.min(input, content.remaining())];
+        while (content.hasRemaining()) {
+            int len = Math.min(buffer.length, content.remaining());
+            content.get(buffer, 0, len);
+            ostream.write(buffer, 0, len);
+        }
+    }
+
+
+    /**
+     * Copy a range of the contents of the specified file to the specified
+     * output stream using positioned reads, so the content before the range
+     * is not read.
+     *
+     * @param channel The file to read from
+     * @param ostream The output stream to write to
+     * @param start Start of the range which will be copied
+     * @param end End of the range which will be copied
+     * @exception IOException if an input/output error occurs
+     */
+    protected void copyRange(FileChannel channel, ServletOutputStream ostream,
+            long start, long end) throws IOException {
+
+        if (debug > 10)
+            log("Serving bytes:" + start + "-" + end);
+
+        long position = start;
+        ByteBuffer buffer = ByteBuffer.allocate(
+                (int) Math.min(input, end - start + 1));
+        while (position <= end) {
+            buffer.clear();
+            if (end - position + 1 < buffer.capacity()) {
+                buffer.limit((int) (end - position + 1));
+            }
+            int len = channel.read(buffer, position);
+            if (len == -1) {
+                throw new EOFException(sm.getString("defaultServlet.rangeEof",
+                        Long.valueOf(position - start),
+                        Long.valueOf(end - start + 1)));
+            }
+            ostream.write(buffer.array(), 0, len);
+            position += len;
+        }
+    }
+
+
+    // ----------------------------------------- NonBlockingContent Inner Class
+
+
+    /**
+     * Writes the content of a resource each time the client is able to accept
+     * more data and completes the request once all the content is written.
+     */
+    private static class NonBlockingContent
+            implements WriteListener, AsyncListener {
+
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+        private long remaining;
+        private AsyncContext asyncContext;
+        private ServletOutputStream ostream;
+
+        NonBlockingContent(ReadableByteChannel channel, long length,
+                int bufferSize) {
+            this.channel = channel;
+            this.remaining = length;
+            this.buffer = ByteBuffer.allocate(
+                    (int) Math.min(length, Math.max(bufferSize, BUFFER_SIZE * 8)));
+        }
+
+        void start(AsyncContext asyncContext, ServletOutputStream ostream)
+                throws IOException {
+            this.asyncContext = asyncContext;
+            this.ostream = ostream;
+            ostream.setWriteListener(this);
+            // The container only calls onWritePossible() once a write has not
+            // completed so write the first chunk now
+            try {
+                onWritePossible();
+            } catch (IOException ioe) {
+                close();
+                throw ioe;
+            }
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            while (ostream.isReady()) {
+                if (remaining == 0) {
+                    close();
+                    asyncContext.complete();
+                    return;
+                }
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                if (channel.read(buffer) == -1) {
+                    throw new EOFException();
+                }
+                buffer.flip();
+                remaining -= buffer.remaining();
+                ostream.write(buffer.array(), 0, buffer.remaining());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // NO-OP
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+
     // ------------------------------------------------------ Range Inner Class
 
 
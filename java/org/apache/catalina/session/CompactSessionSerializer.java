@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.io.WriteAbortedException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.juli.logging.Log;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * {@link SessionSerializer} that writes the session metadata as primitive
+ * values rather than as boxed Java objects and that writes attribute values of
+ * common simple types directly. Only attribute values of other types are
+ * written using Java serialization.
+ * <p>
+ * The format starts with a marker and a version number so that data written by
+ * another serializer is not misread. Sessions written by {@link
+ * JavaSessionSerializer}, such as those persisted before an upgrade or sent by
+ * a cluster node that has not been upgraded, are read using that serializer.
+ * After the metadata and
+ * the attributes, sub-classes of {@link StandardSession} may add state of their
+ * own via {@link StandardSession#writeExtraData(ObjectOutputStream)}.
+ * <p>
+ * Additional attribute types may be supported by overriding
+ * {@link #writeValue(ObjectOutputStream, Object)} and
+ * {@link #readValue(ObjectInputStream, byte)} using type values from
+ * {@link #TYPE_CUSTOM} upwards.
+ */
+public class CompactSessionSerializer implements SessionSerializer {
+
+    private static final StringManager sm =
+            StringManager.getManager(Constants.Package);
+
+    /**
+     * Written at the start of each session. As an object, so it can be
+     * distinguished from the first field written by {@link
+     * JavaSessionSerializer}.
+     */
+    private static final String MARKER = "CSS";
+
+    private static final JavaSessionSerializer javaSerializer =
+            new JavaSessionSerializer();
+
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_NEW = 0x01;
+    private static final int FLAG_VALID = 0x02;
+
+    /**
+     * Longest String that is guaranteed to fit in the 64k limit of
+     * {@link ObjectOutputStream#writeUTF(String)}.
+     */
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+    protected static final byte TYPE_OBJECT = 0;
+    protected static final byte TYPE_NOT_SERIALIZED = 1;
+    protected static final byte TYPE_STRING = 2;
+    protected static final byte TYPE_INTEGER = 3;
+    protected static final byte TYPE_LONG = 4;
+    protected static final byte TYPE_BOOLEAN = 5;
+    protected static final byte TYPE_DOUBLE = 6;
+    protected static final byte TYPE_BYTE_ARRAY = 7;
+
+    /**
+     * The first type value available to sub-classes.
+     */
+    protected static final byte TYPE_CUSTOM = 64;
+
+
+    @Override
+    public void writeSession(StandardSession session, ObjectOutputStream stream)
+            throws IOException {
+
+        Log log = session.manager.getContext().getLogger();
+
+        stream.writeObject(MARKER);
+        stream.writeByte(VERSION);
+
+        stream.writeLong(session.creationTime);
+        stream.writeLong(session.lastAccessedTime);
+        stream.writeLong(session.thisAccessedTime);
+        stream.writeInt(session.maxInactiveInterval);
+        int flags = 0;
+        if (session.isNew) {
+            flags |= FLAG_NEW;
+        }
+        if (session.isValid) {
+            flags |= FLAG_VALID;
+        }
+        stream.writeByte(flags);
+        stream.writeUTF(session.id);
+        if (log.isDebugEnabled()) {
+            log.debug("writeSession() storing session " + session.id);
+        }
+
+        // Accumulate the names and values of the attributes to write
+        String keys[] = session.keys();
+        ArrayList<String> saveNames = new ArrayList<>(keys.length);
+        ArrayList<Object> saveValues = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Object value = session.attributes.get(keys[i]);
+            if (value == null) {
+                continue;
+            } else if (value instanceof Serializable &&
+                    !session.exclude(keys[i])) {
+                saveNames.add(keys[i]);
+                saveValues.add(value);
+            } else {
+                session.attributeNotSerialized(keys[i]);
+            }
+        }
+
+        int n = saveNames.size();
+        stream.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            String name = saveNames.get(i);
+            stream.writeUTF(name);
+            try {
+                writeValue(stream, saveValues.get(i));
+            } catch (NotSerializableException e) {
+                log.warn(sm.getString("standardSession.notSerializable",
+                        name, session.id), e);
+                // The failed value is followed by an exception record that
+                // the reader skips
+                stream.writeByte(TYPE_NOT_SERIALIZED);
+            }
+        }
+
+        session.writeExtraData(stream);
+    }
+
+
+    @Override
+    public void readSession(StandardSession session, ObjectInputStream stream)
+            throws ClassNotFoundException, IOException {
+
+        Log log = session.manager.getContext().getLogger();
+
+        Object marker = stream.readObject();
+        if (marker instanceof Long) {
+            // The creation time that JavaSessionSerializer writes first
+            javaSerializer.readSession(session, stream, marker);
+            return;
+        }
+        if (!MARKER.equals(marker)) {
+            throw new StreamCorruptedException(
+                    sm.getString("compactSessionSerializer.notCompact"));
+        }
+        byte version = stream.readByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException(sm.getString(
+                    "compactSessionSerializer.version",
+                    Byte.valueOf(version)));
+        }
+
+        session.authType = null;        // Transient only
+        session.principal = null;       // Transient only
+        session.creationTime = stream.readLong();
+        session.lastAccessedTime = stream.readLong();
+        session.thisAccessedTime = stream.readLong();
+        session.maxInactiveInterval = stream.readInt();
+        int flags = stream.readByte();
+        session.isNew = (flags & FLAG_NEW) != 0;
+        boolean isValid = (flags & FLAG_VALID) != 0;
+        session.id = stream.readUTF();
+        if (log.isDebugEnabled()) {
+            log.debug("readSession() loading session " + session.id);
+        }
+
+        if (session.attributes == null) {
+            session.attributes = new ConcurrentHashMap<>();
+        }
+        int n = stream.readInt();
+        session.isValid = true;
+        for (int i = 0; i < n; i++) {
+            String name = stream.readUTF();
+            byte type = stream.readByte();
+            Object value;
+            if (type == TYPE_OBJECT) {
+                try {
+                    value = stream.readObject();
+                } catch (WriteAbortedException e) {
+                    // The value could not be written. Skip the
+                    // TYPE_NOT_SERIALIZED that follows it.
+                    stream.readByte();
+                    value = null;
+                }
+            } else {
+                value = readValue(stream, type);
+            }
+            if (value != null) {
+                session.attributes.put(name, value);
+            }
+        }
+        session.isValid = isValid;
+
+        if (session.listeners == null) {
+            session.listeners = new ArrayList<>();
+        }
+        if (session.notes == null) {
+            session.notes = new Hashtable<>();
+        }
+
+        session.readExtraData(stream);
+    }
+
+
+    /**
+     * Write the type and the value of an attribute.
+     *
+     * @param stream    The stream to write to
+     * @param value     The attribute value, which is not <code>null</code>
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected void writeValue(ObjectOutputStream stream, Object value)
+            throws IOException {
+        Class<?> clazz = value.getClass();
+        if (clazz == String.class &&
+                ((String) value).length() <= MAX_UTF_LENGTH) {
+            stream.writeByte(TYPE_STRING);
+            stream.writeUTF((String) value);
+        } else if (clazz == Integer.class) {
+            stream.writeByte(TYPE_INTEGER);
+            stream.writeInt(((Integer) value).intValue());
+        } else if (clazz == Long.class) {
+            stream.writeByte(TYPE_LONG);
+            stream.writeLong(((Long) value).longValue());
+        } else if (clazz == Boolean.class) {
+            stream.writeByte(TYPE_BOOLEAN);
+            stream.writeBoolean(((Boolean) value).booleanValue());
+        } else if (clazz == Double.class) {
+            stream.writeByte(TYPE_DOUBLE);
+            stream.writeDouble(((Double) value).doubleValue());
+        } else if (clazz == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            stream.writeByte(TYPE_BYTE_ARRAY);
+            stream.writeInt(bytes.length);
+            stream.write(bytes);
+        } else {
+            stream.writeByte(TYPE_OBJECT);
+            stream.writeObject(value);
+        }
+    }
+
+
+    /**
+     * Read an attribute value of a type written directly by
+     * {@link #writeValue(ObjectOutputStream, Object)}. Values written using
+     * Java serialization are read by the caller.
+     *
+     * @param stream    The stream to read from
+     * @param type      The type of the value
+     * @return The attribute value
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected Object readValue(ObjectInputStream stream, byte type)
+            throws IOException {
+        switch (type) {
+            case TYPE_STRING:
+                return stream.readUTF();
+            case TYPE_INTEGER:
+                return Integer.valueOf(stream.readInt());
+            case TYPE_LONG:
+                return Long.valueOf(stream.readLong());
+            case TYPE_BOOLEAN:
+                return Boolean.valueOf(stream.readBoolean());
+            case TYPE_DOUBLE:
+                return Double.valueOf(stream.readDouble());
+            case TYPE_BYTE_ARRAY:
+                byte[] bytes = new byte[stream.readInt()];
+                stream.readFully(bytes);
+                return bytes;
+            default:
+                throw new StreamCorruptedException(sm.getString(
+                        "compactSessionSerializer.type", Byte.valueOf(type)));
+        }
+    }
+}
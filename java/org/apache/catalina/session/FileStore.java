@@ -29,13 +29,23 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletContext;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.Loader;
 import org.apache.catalina.Session;
 import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
 
 
 /**
@@ -88,6 +98,19 @@ public final class FileStore extends StoreBase {
     private static final String threadName = "FileStore";
 
 
+    /**
+     * The number of threads used to write the files when a batch of sessions
+     * is saved.
+     */
+    private int saveThreads = 4;
+
+
+    /**
+     * The executor used to write the files when a batch of sessions is saved.
+     */
+    private ExecutorService saveExecutor = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -117,6 +140,26 @@ public final class FileStore extends StoreBase {
     }
 
 
+    /**
+     * Return the number of threads used to write the files when a batch of
+     * sessions is saved.
+     */
+    public int getSaveThreads() {
+        return saveThreads;
+    }
+
+
+    /**
+     * Set the number of threads used to write the files when a batch of
+     * sessions is saved. Takes effect the next time this Store is started.
+     *
+     * @param saveThreads The number of threads
+     */
+    public void setSaveThreads(int saveThreads) {
+        this.saveThreads = saveThreads;
+    }
+
+
     /**
      * Return the thread name for this Store.
      */
@@ -371,6 +414,83 @@ public final class FileStore extends StoreBase {
     }
 
 
+    /**
+     * Save the specified Sessions into this Store, writing several files at
+     * once.
+     *
+     * @param sessions Sessions to be saved
+     *
+     * @exception IOException if any of the sessions could not be saved
+     */
+    @Override
+    public void save(Session[] sessions) throws IOException {
+
+        ExecutorService executor = saveExecutor;
+        if (executor == null || sessions.length < 2) {
+            super.save(sessions);
+            return;
+        }
+
+        List<Future<Void>> results = new ArrayList<>(sessions.length);
+        for (final Session session : sessions) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    save(session);
+                    return null;
+                }
+            }));
+        }
+
+        IOException ioe = null;
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e;
+                if (e instanceof ExecutionException) {
+                    cause = e.getCause();
+                }
+                if (ioe == null) {
+                    ioe = (cause instanceof IOException) ?
+                            (IOException) cause : new IOException(cause);
+                } else {
+                    ioe.addSuppressed(cause);
+                }
+            }
+        }
+        if (ioe != null) {
+            throw ioe;
+        }
+    }
+
+
+    // ------------------------------------------------------ Lifecycle Methods
+
+
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        if (saveThreads > 1) {
+            TaskThreadFactory tf = new TaskThreadFactory(
+                    threadName + "-save-", true, Thread.NORM_PRIORITY);
+            saveExecutor = new ThreadPoolExecutor(saveThreads, saveThreads,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    tf);
+        }
+        super.startInternal();
+    }
+
+
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        if (saveExecutor != null) {
+            saveExecutor.shutdown();
+            saveExecutor = null;
+        }
+    }
+
+
     // -------------------------------------------------------- Private Methods
 
 
@@ -727,16 +727,31 @@ public class JDBCStore extends StoreBase {
      * @throws SQLException if an error occurs while talking to the database
      */
     private void remove(String id, Connection _conn) throws SQLException {
+        prepareRemoveSql(_conn);
+        preparedRemoveSql.setString(1, id);
+        preparedRemoveSql.setString(2, getName());
+        preparedRemoveSql.execute();
+    }
+
+    private void prepareRemoveSql(Connection _conn) throws SQLException {
         if (preparedRemoveSql == null) {
             String removeSql = "DELETE FROM " + sessionTable
                     + " WHERE " + sessionIdCol + " = ?  AND "
                     + sessionAppCol + " = ?";
             preparedRemoveSql = _conn.prepareStatement(removeSql);
         }
+    }
 
-        preparedRemoveSql.setString(1, id);
-        preparedRemoveSql.setString(2, getName());
-        preparedRemoveSql.execute();
+    private void prepareSaveSql(Connection _conn) throws SQLException {
+        if (preparedSaveSql == null) {
+            String saveSql = "INSERT INTO " + sessionTable + " ("
+               + sessionIdCol + ", " + sessionAppCol + ", "
+               + sessionDataCol + ", " + sessionValidCol
+               + ", " + sessionMaxInactiveCol + ", "
+               + sessionLastAccessedCol
+               + ") VALUES (?, ?, ?, ?, ?, ?)";
+           preparedSaveSql = _conn.prepareStatement(saveSql);
+        }
     }
 
     /**
@@ -816,16 +831,7 @@ public class JDBCStore extends StoreBase {
                     bis = new ByteArrayInputStream(obs, 0, size);
                     in = new BufferedInputStream(bis, size);
 
-                    if (preparedSaveSql == null) {
-                        String saveSql = "INSERT INTO " + sessionTable + " ("
-                           + sessionIdCol + ", " + sessionAppCol + ", "
-                           + sessionDataCol + ", " + sessionValidCol
-                           + ", " + sessionMaxInactiveCol + ", "
-                           + sessionLastAccessedCol
-                           + ") VALUES (?, ?, ?, ?, ?, ?)";
-                       preparedSaveSql = _conn.prepareStatement(saveSql);
-                    }
-
+                    prepareSaveSql(_conn);
                     preparedSaveSql.setString(1, session.getIdInternal());
                     preparedSaveSql.setString(2, getName());
                     preparedSaveSql.setBinaryStream(3, in, size);
@@ -864,6 +870,81 @@ public class JDBCStore extends StoreBase {
         }
     }
 
+    /**
+     * Save the specified Sessions into this Store. The existing rows are
+     * deleted and the new rows inserted using one JDBC batch for each.
+     *
+     * @param sessions Sessions to be saved
+     * @exception IOException if the sessions could not be saved
+     */
+    @Override
+    public void save(Session[] sessions) throws IOException {
+        // Serialize the sessions before using the connection
+        byte[][] data = new byte[sessions.length][];
+        for (int i = 0; i < sessions.length; i++) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos =
+                    new ObjectOutputStream(new BufferedOutputStream(bos))) {
+                ((StandardSession) sessions[i]).writeObjectData(oos);
+            }
+            data[i] = bos.toByteArray();
+        }
+
+        boolean saved = false;
+        synchronized (this) {
+            int numberOfTries = 2;
+            while (numberOfTries > 0) {
+                Connection _conn = getConnection();
+                if (_conn == null) {
+                    break;
+                }
+
+                try {
+                    prepareRemoveSql(_conn);
+                    for (Session session : sessions) {
+                        preparedRemoveSql.setString(1, session.getIdInternal());
+                        preparedRemoveSql.setString(2, getName());
+                        preparedRemoveSql.addBatch();
+                    }
+                    preparedRemoveSql.executeBatch();
+
+                    prepareSaveSql(_conn);
+                    for (int i = 0; i < sessions.length; i++) {
+                        Session session = sessions[i];
+                        preparedSaveSql.setString(1, session.getIdInternal());
+                        preparedSaveSql.setString(2, getName());
+                        preparedSaveSql.setBinaryStream(3,
+                                new ByteArrayInputStream(data[i]), data[i].length);
+                        preparedSaveSql.setString(4, session.isValid() ? "1" : "0");
+                        preparedSaveSql.setInt(5, session.getMaxInactiveInterval());
+                        preparedSaveSql.setLong(6, session.getLastAccessedTime());
+                        preparedSaveSql.addBatch();
+                    }
+                    preparedSaveSql.executeBatch();
+                    saved = true;
+                    // Break out after the finally block
+                    numberOfTries = 0;
+                } catch (SQLException e) {
+                    manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                    if (dbConnection != null)
+                        close(dbConnection);
+                } finally {
+                    release(_conn);
+                }
+                numberOfTries--;
+            }
+        }
+
+        if (!saved) {
+            throw new IOException(sm.getString(getStoreName() + ".saveBatchFailed",
+                    Integer.valueOf(sessions.length), sessionTable));
+        }
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".savingBatch",
+                    Integer.valueOf(sessions.length), sessionTable));
+        }
+    }
+
     // --------------------------------------------------------- Protected Methods
 
     /**
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * {@link SessionSerializer} that writes every field of the session as a
+ * serialized Java object. This is the format used by earlier versions and the
+ * format used when the session itself is serialized.
+ */
+public class JavaSessionSerializer implements SessionSerializer {
+
+    @Override
+    public void writeSession(StandardSession session, ObjectOutputStream stream)
+            throws IOException {
+        session.doWriteObject(stream);
+    }
+
+
+    @Override
+    public void readSession(StandardSession session, ObjectInputStream stream)
+            throws ClassNotFoundException, IOException {
+        session.doReadObject(stream);
+    }
+
+
+    /**
+     * Read a session written by this serializer when the first object of the
+     * session has already been read from the stream.
+     *
+     * @param session The session to read into
+     * @param stream The stream to read from
+     * @param first The first object read from the stream
+     *
+     * @exception ClassNotFoundException if an unknown class is specified
+     * @exception IOException if an input/output error occurs
+     */
+    public void readSession(StandardSession session, ObjectInputStream stream,
+            Object first) throws ClassNotFoundException, IOException {
+        session.doReadObject(stream, first);
+    }
+}
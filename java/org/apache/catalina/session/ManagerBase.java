@@ -154,6 +154,24 @@ public abstract class ManagerBase extends LifecycleMBeanBase
      */
     protected Map<String, Session> sessions = new ConcurrentHashMap<>();
 
+    /**
+     * Index of the active sessions by the time they are due to expire.
+     */
+    private final SessionExpiryIndex expiryIndex = new SessionExpiryIndex();
+
+    /**
+     * Find the sessions to expire using the expiry index rather than by
+     * checking every session. Managers that add sessions to {@link #sessions}
+     * other than through {@link #add(Session)} must disable this.
+     */
+    protected volatile boolean useExpiryIndex = true;
+
+    /**
+     * The serializer used when sessions are persisted or transferred.
+     */
+    protected SessionSerializer sessionSerializer =
+        new CompactSessionSerializer();
+
     // Number of sessions created by this manager
     protected long sessionCounter=0;
 
@@ -466,6 +484,83 @@ public abstract class ManagerBase extends LifecycleMBeanBase
         this.processingTime = processingTime;
     }
 
+
+    /**
+     * Are expired sessions found using an index of the sessions by expiry
+     * time rather than by checking every session?
+     */
+    public boolean getUseExpiryIndex() {
+        return useExpiryIndex;
+    }
+
+
+    /**
+     * Set whether expired sessions are found using an index of the sessions by
+     * expiry time rather than by checking every session.
+     *
+     * @param useExpiryIndex <code>true</code> to use the index
+     */
+    public void setUseExpiryIndex(boolean useExpiryIndex) {
+        boolean oldUseExpiryIndex = this.useExpiryIndex;
+        this.useExpiryIndex = useExpiryIndex;
+        if (useExpiryIndex && !oldUseExpiryIndex) {
+            for (Session session : findSessions()) {
+                scheduleExpiry(session);
+            }
+        } else if (!useExpiryIndex) {
+            expiryIndex.clear();
+        }
+    }
+
+
+    /**
+     * Return the serializer used when the sessions of this Manager are
+     * persisted or transferred.
+     */
+    public SessionSerializer getSessionSerializer() {
+        return sessionSerializer;
+    }
+
+
+    /**
+     * Set the serializer used when the sessions of this Manager are persisted
+     * or transferred.
+     *
+     * @param sessionSerializer The new serializer
+     */
+    public void setSessionSerializer(SessionSerializer sessionSerializer) {
+        this.sessionSerializer = sessionSerializer;
+    }
+
+
+    /**
+     * Return the class name of the serializer used when the sessions of this
+     * Manager are persisted or transferred.
+     */
+    public String getSessionSerializerClassName() {
+        return sessionSerializer.getClass().getName();
+    }
+
+
+    /**
+     * Set the serializer used when the sessions of this Manager are persisted
+     * or transferred by class name. The class must implement
+     * {@link SessionSerializer} and have a public no argument constructor.
+     *
+     * @param className The class name of the new serializer
+     */
+    public void setSessionSerializerClassName(String className) {
+        try {
+            Class<?> clazz = Class.forName(className, true,
+                    ManagerBase.class.getClassLoader());
+            setSessionSerializer((SessionSerializer) clazz.newInstance());
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException(sm.getString(
+                    "managerBase.sessionSerializer", className), e);
+        }
+    }
+
+
     /**
      * Return the frequency of manager checks.
      */
@@ -512,16 +607,10 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
-        int expireHere = 0 ;
 
         if(log.isDebugEnabled())
-            log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        for (int i = 0; i < sessions.length; i++) {
-            if (sessions[i]!=null && !sessions[i].isValid()) {
-                expireHere++;
-            }
-        }
+            log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.size());
+        int expireHere = expireSessions(timeNow);
         long timeEnd = System.currentTimeMillis();
         if(log.isDebugEnabled())
              log.debug("End expire sessions " + getName() + " processingTime " + (timeEnd - timeNow) + " expired sessions: " + expireHere);
@@ -529,6 +618,82 @@ public abstract class ManagerBase extends LifecycleMBeanBase
 
     }
 
+    /**
+     * Check the sessions that may have expired by the given time.
+     *
+     * @param timeNow   The current time
+     * @return The number of sessions that were found to have expired
+     */
+    protected int expireSessions(long timeNow) {
+        int expired = 0;
+        if (useExpiryIndex) {
+            for (Session session : expiryIndex.poll(timeNow)) {
+                // Skip sessions that are no longer managed by this manager
+                String id = session.getIdInternal();
+                if (id == null || sessions.get(id) != session) {
+                    continue;
+                }
+                if (!session.isValid()) {
+                    expired++;
+                } else {
+                    // Accessed since it was scheduled or currently in use
+                    long expiryTime = getExpiryTime(session);
+                    if (expiryTime >= 0) {
+                        expiryIndex.add(session,
+                                Math.max(expiryTime, timeNow + 1000));
+                    }
+                }
+            }
+        } else {
+            Session sessions[] = findSessions();
+            for (int i = 0; i < sessions.length; i++) {
+                if (sessions[i]!=null && !sessions[i].isValid()) {
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+
+    /**
+     * Add a session to the expiry index, or add it again if the time at which
+     * it will expire may have moved earlier. This is called when sessions are
+     * added to this manager and by sessions when their maximum inactive
+     * interval changes.
+     *
+     * @param session   The session
+     */
+    public void scheduleExpiry(Session session) {
+        if (!useExpiryIndex || session.getIdInternal() == null) {
+            return;
+        }
+        long expiryTime = getExpiryTime(session);
+        if (expiryTime >= 0) {
+            expiryIndex.add(session, expiryTime);
+        }
+    }
+
+
+    /**
+     * Determine the earliest time at which the given session will expire if
+     * it is not accessed again. The session is checked at that time and, if
+     * it is still valid, scheduled again.
+     *
+     * @param session   The session
+     * @return The expiry time in milliseconds since the epoch or -1 if the
+     *         session does not expire
+     */
+    protected long getExpiryTime(Session session) {
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        if (maxInactiveInterval <= 0) {
+            return -1;
+        }
+        return session.getLastAccessedTimeInternal() +
+                maxInactiveInterval * 1000L;
+    }
+
+
     @Override
     protected void initInternal() throws LifecycleException {
 
@@ -579,6 +744,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void add(Session session) {
 
         sessions.put(session.getIdInternal(), session);
+        scheduleExpiry(session);
         int size = getActiveSessions();
         if( size > maxActive ) {
             synchronized(maxActiveUpdateLock) {
@@ -22,8 +22,11 @@ import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,6 +39,7 @@ import org.apache.catalina.StoreManager;
 import org.apache.catalina.security.SecurityUtil;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
 /**
  * Extends the <b>ManagerBase</b> class to implement most of the
  * functionality required by a Manager which supports any kind of
@@ -180,6 +184,56 @@ public abstract class PersistentManagerBase extends ManagerBase
     private final Map<String,Object> sessionSwapInLocks = new HashMap<>();
 
 
+    /**
+     * Write sessions to the Store from a background thread rather than from
+     * the thread that swaps them out or backs them up.
+     */
+    protected boolean writeBehind = false;
+
+
+    /**
+     * The maximum number of sessions waiting to be written. Once reached,
+     * sessions are written to the Store directly.
+     */
+    protected int writeBehindMaxQueueSize = 10000;
+
+
+    /**
+     * The maximum number of sessions passed to the Store at once.
+     */
+    protected int writeBehindBatchSize = 100;
+
+
+    /**
+     * Sessions waiting to be written to the Store, in the order they were
+     * queued and keyed by session id. Also used as the lock for the state of
+     * the queued writes.
+     */
+    private final LinkedHashMap<String,PendingWrite> pendingWrites =
+            new LinkedHashMap<>();
+
+
+    /**
+     * The ids of the sessions in the batch that is being written to the
+     * Store. Guarded by {@link #pendingWrites}.
+     */
+    private final Set<String> writingIds = new HashSet<>();
+
+
+    /**
+     * Held while a batch of sessions is written from the queue so that only
+     * one batch is written at a time.
+     */
+    private final Object writeBehindLock = new Object();
+
+    private volatile Thread writeBehindThread = null;
+    private volatile boolean writeBehindThreadDone = false;
+
+    private volatile long writeBehindFlushCount = 0;
+    private volatile long writeBehindFlushTime = 0;
+    private volatile long writeBehindMaxLatency = 0;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -286,6 +340,105 @@ public abstract class PersistentManagerBase extends ManagerBase
     }
 
 
+    /**
+     * Are sessions written to the Store by a background thread?
+     */
+    public boolean getWriteBehind() {
+        return writeBehind;
+    }
+
+
+    /**
+     * Set whether sessions are written to the Store by a background thread.
+     * Sessions that are swapped out or backed up are queued and the queue
+     * is written in batches. A session that is queued again before it has
+     * been written is only written once. Takes effect the next time this
+     * Manager is started.
+     *
+     * @param writeBehind   <code>true</code> to write sessions in the
+     *                      background
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        boolean oldWriteBehind = this.writeBehind;
+        this.writeBehind = writeBehind;
+        support.firePropertyChange("writeBehind",
+                                   Boolean.valueOf(oldWriteBehind),
+                                   Boolean.valueOf(this.writeBehind));
+    }
+
+
+    /**
+     * Return the maximum number of sessions waiting to be written to the
+     * Store in the background.
+     */
+    public int getWriteBehindMaxQueueSize() {
+        return writeBehindMaxQueueSize;
+    }
+
+
+    /**
+     * Set the maximum number of sessions waiting to be written to the Store
+     * in the background. Once the queue is full, sessions are written
+     * directly by the thread that swaps them out or backs them up.
+     */
+    public void setWriteBehindMaxQueueSize(int writeBehindMaxQueueSize) {
+        this.writeBehindMaxQueueSize = writeBehindMaxQueueSize;
+    }
+
+
+    /**
+     * Return the maximum number of sessions passed to the Store at once.
+     */
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+
+    /**
+     * Set the maximum number of sessions passed to the Store at once.
+     */
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+
+    /**
+     * Return the number of sessions waiting to be written to the Store.
+     */
+    public int getWriteBehindQueueLength() {
+        synchronized (pendingWrites) {
+            return pendingWrites.size();
+        }
+    }
+
+
+    /**
+     * Return the number of batches of sessions written to the Store by the
+     * background thread.
+     */
+    public long getWriteBehindFlushCount() {
+        return writeBehindFlushCount;
+    }
+
+
+    /**
+     * Return the total time, in milliseconds, spent writing batches of
+     * sessions to the Store.
+     */
+    public long getWriteBehindFlushTime() {
+        return writeBehindFlushTime;
+    }
+
+
+    /**
+     * Return the longest time, in milliseconds, between a session being
+     * queued and it being written to the Store.
+     */
+    public long getWriteBehindMaxLatency() {
+        return writeBehindMaxLatency;
+    }
+
+
     /**
      * Return true, if the session id is loaded in memory
      * otherwise false is returned
@@ -384,6 +537,19 @@ public abstract class PersistentManagerBase extends ManagerBase
         if (store == null)
             return;
 
+        synchronized (pendingWrites) {
+            pendingWrites.clear();
+            // A batch that is being written would put its sessions back into
+            // the Store after it was cleared
+            while (!writingIds.isEmpty()) {
+                waitForWrite();
+            }
+        }
+        clearStoreInternal();
+    }
+
+
+    private void clearStoreInternal() {
         try {
             if (SecurityUtil.isPackageProtectionEnabled()){
                 try{
@@ -399,7 +565,6 @@ public abstract class PersistentManagerBase extends ManagerBase
         } catch (IOException e) {
             log.error("Exception clearing the Store: " + e, e);
         }
-
     }
 
 
@@ -410,16 +575,10 @@ public abstract class PersistentManagerBase extends ManagerBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
-        int expireHere = 0 ;
         if(log.isDebugEnabled())
-             log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        for (int i = 0; i < sessions.length; i++) {
-            if (!sessions[i].isValid()) {
-                expiredSessions.incrementAndGet();
-                expireHere++;
-            }
-        }
+             log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.size());
+        int expireHere = expireSessions(timeNow);
+        expiredSessions.addAndGet(expireHere);
         processPersistenceChecks();
         if ((getStore() != null) && (getStore() instanceof StoreBase)) {
             ((StoreBase) getStore()).processExpires();
@@ -580,6 +739,18 @@ public abstract class PersistentManagerBase extends ManagerBase
      * @param id Session's id to be removed
      */
     protected void removeSession(String id){
+        synchronized (pendingWrites) {
+            pendingWrites.remove(id);
+            // Only wait if the session is part of the batch being written
+            while (writingIds.contains(id)) {
+                waitForWrite();
+            }
+        }
+        removeSessionInternal(id);
+    }
+
+
+    private void removeSessionInternal(String id) {
         try {
             if (SecurityUtil.isPackageProtectionEnabled()){
                 try{
@@ -650,6 +821,10 @@ public abstract class PersistentManagerBase extends ManagerBase
         Set<String> sessionIds = new HashSet<>();
         // In memory session ID list
         sessionIds.addAll(sessions.keySet());
+        // Swapped out session ID list
+        synchronized (pendingWrites) {
+            sessionIds.addAll(pendingWrites.keySet());
+        }
         // Store session ID list
         String[] storeKeys;
         try {
@@ -704,30 +879,34 @@ public abstract class PersistentManagerBase extends ManagerBase
             session = sessions.get(id);
 
             if (session == null) {
-                try {
-                    if (SecurityUtil.isPackageProtectionEnabled()){
-                        try {
-                            session = AccessController.doPrivileged(
-                                    new PrivilegedStoreLoad(id));
-                        } catch (PrivilegedActionException ex) {
-                            Exception e = ex.getException();
-                            log.error(sm.getString(
-                                    "persistentManager.swapInException", id),
-                                    e);
-                            if (e instanceof IOException){
-                                throw (IOException)e;
-                            } else if (e instanceof ClassNotFoundException) {
-                                throw (ClassNotFoundException)e;
+                // The session may not have been written to the Store yet
+                session = removeSwappedOut(id);
+                if (session == null) {
+                    try {
+                        if (SecurityUtil.isPackageProtectionEnabled()){
+                            try {
+                                session = AccessController.doPrivileged(
+                                        new PrivilegedStoreLoad(id));
+                            } catch (PrivilegedActionException ex) {
+                                Exception e = ex.getException();
+                                log.error(sm.getString(
+                                        "persistentManager.swapInException", id),
+                                        e);
+                                if (e instanceof IOException){
+                                    throw (IOException)e;
+                                } else if (e instanceof ClassNotFoundException) {
+                                    throw (ClassNotFoundException)e;
+                                }
                             }
+                        } else {
+                             session = store.load(id);
                         }
-                    } else {
-                         session = store.load(id);
+                    } catch (ClassNotFoundException e) {
+                        String msg = sm.getString(
+                                "persistentManager.deserializeError", id);
+                        log.error(msg, e);
+                        throw new IllegalStateException(msg, e);
                     }
-                } catch (ClassNotFoundException e) {
-                    String msg = sm.getString(
-                            "persistentManager.deserializeError", id);
-                    log.error(msg, e);
-                    throw new IllegalStateException(msg, e);
                 }
 
                 if (session != null && !session.isValid()) {
@@ -781,7 +960,11 @@ public abstract class PersistentManagerBase extends ManagerBase
         }
 
         ((StandardSession)session).passivate();
-        writeSession(session);
+        if (queueWrite(session, true)) {
+            // Recycled once it has been written
+            return;
+        }
+        saveSession(session);
         super.remove(session, true);
         session.recycle();
 
@@ -799,6 +982,18 @@ public abstract class PersistentManagerBase extends ManagerBase
             return;
         }
 
+        if (!queueWrite(session, false)) {
+            saveSession(session);
+        }
+
+    }
+
+
+    /**
+     * Write the provided session to the Store now.
+     */
+    private void saveSession(Session session) throws IOException {
+
         try {
             if (SecurityUtil.isPackageProtectionEnabled()){
                 try{
@@ -840,6 +1035,16 @@ public abstract class PersistentManagerBase extends ManagerBase
         else if (store instanceof Lifecycle)
             ((Lifecycle)store).start();
 
+        if (store != null && writeBehind) {
+            writeBehindThreadDone = false;
+            String threadName = "PersistentManagerWriteBehind[" +
+                    getContext().getName() + "]";
+            Thread thread = new Thread(new WriteBehindProcessor(), threadName);
+            thread.setDaemon(true);
+            thread.start();
+            writeBehindThread = thread;
+        }
+
         setState(LifecycleState.STARTING);
     }
 
@@ -872,6 +1077,8 @@ public abstract class PersistentManagerBase extends ManagerBase
             }
         }
 
+        stopWriteBehind();
+
         if (getStore() != null && getStore() instanceof Lifecycle)
             ((Lifecycle)getStore()).stop();
 
@@ -880,6 +1087,184 @@ public abstract class PersistentManagerBase extends ManagerBase
     }
 
 
+    /**
+     * Stop the write behind thread, if any, and write any sessions that are
+     * still queued.
+     */
+    private void stopWriteBehind() {
+        Thread thread = writeBehindThread;
+        if (thread == null) {
+            return;
+        }
+        writeBehindThreadDone = true;
+        synchronized (pendingWrites) {
+            pendingWrites.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            // Ignore
+        }
+        writeBehindThread = null;
+        while (getWriteBehindQueueLength() > 0) {
+            processWriteBehind();
+        }
+    }
+
+
+    /**
+     * Queue a session to be written to the Store by the write behind thread.
+     * A session that is swapped out is removed from this Manager at the same
+     * time so that, until it has been written, {@link #swapIn(String)} can
+     * find it in the queue.
+     *
+     * @param session   The session to write
+     * @param swapOut   Is the session being swapped out?
+     * @return <code>true</code> if the session was queued or
+     *         <code>false</code> if it must be written directly
+     */
+    private boolean queueWrite(Session session, boolean swapOut) {
+        if (writeBehindThread == null) {
+            return false;
+        }
+        String id = session.getIdInternal();
+        synchronized (pendingWrites) {
+            PendingWrite write = pendingWrites.get(id);
+            if (write == null || write.session != session) {
+                if (pendingWrites.size() >= writeBehindMaxQueueSize) {
+                    return false;
+                }
+                write = new PendingWrite(id, session);
+                pendingWrites.put(id, write);
+                pendingWrites.notifyAll();
+            } else if (write.writing) {
+                // Write it again once the current write completes
+                write.requeued = true;
+            }
+            if (swapOut) {
+                write.swappedOut = true;
+                super.remove(session, true);
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Take a session that has been swapped out but not yet written to the
+     * Store out of the write behind queue.
+     */
+    private Session removeSwappedOut(String id) {
+        synchronized (pendingWrites) {
+            PendingWrite write = pendingWrites.get(id);
+            if (write != null && write.swappedOut) {
+                pendingWrites.remove(id);
+                return write.session;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Wait for the batch that is being written to the Store to complete. The
+     * caller must hold the lock on {@link #pendingWrites}.
+     */
+    private void waitForWrite() {
+        try {
+            pendingWrites.wait();
+        } catch (InterruptedException e) {
+            // Ignore
+        }
+    }
+
+
+    /**
+     * Write the next batch of queued sessions to the Store. Sessions that
+     * were swapped out are recycled once written. If the Store fails to write
+     * them, they are added back to this Manager.
+     */
+    protected void processWriteBehind() {
+        synchronized (writeBehindLock) {
+            List<PendingWrite> batch = new ArrayList<>();
+            synchronized (pendingWrites) {
+                for (PendingWrite write : pendingWrites.values()) {
+                    if (batch.size() >= writeBehindBatchSize) {
+                        break;
+                    }
+                    write.writing = true;
+                    writingIds.add(write.id);
+                    batch.add(write);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            Session[] toSave = new Session[batch.size()];
+            for (int i = 0; i < toSave.length; i++) {
+                toSave[i] = batch.get(i).session;
+            }
+            long start = System.currentTimeMillis();
+            boolean saved = false;
+            try {
+                if (store instanceof StoreBase) {
+                    ((StoreBase) store).save(toSave);
+                } else {
+                    for (Session session : toSave) {
+                        store.save(session);
+                    }
+                }
+                saved = true;
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.error(sm.getString("persistentManager.writeBehindError",
+                        Integer.valueOf(toSave.length)), t);
+            }
+            long end = System.currentTimeMillis();
+
+            List<Session> restored = new ArrayList<>();
+            long maxLatency = writeBehindMaxLatency;
+            synchronized (pendingWrites) {
+                // Update the statistics before the sessions leave the queue
+                writeBehindFlushTime += (end - start);
+                writeBehindFlushCount++;
+                for (PendingWrite write : batch) {
+                    writingIds.remove(write.id);
+                    if (pendingWrites.get(write.id) != write) {
+                        // Swapped in or removed while it was being written
+                        continue;
+                    }
+                    write.writing = false;
+                    if (saved && write.requeued) {
+                        // Modified while being written so move to the back
+                        write.requeued = false;
+                        pendingWrites.remove(write.id);
+                        pendingWrites.put(write.id, write);
+                        continue;
+                    }
+                    pendingWrites.remove(write.id);
+                    maxLatency = Math.max(maxLatency, end - write.queued);
+                    if (write.swappedOut) {
+                        if (saved) {
+                            write.session.recycle();
+                        } else {
+                            add(write.session);
+                            restored.add(write.session);
+                        }
+                    }
+                }
+                writeBehindMaxLatency = maxLatency;
+                // Wake up threads waiting to remove sessions from the Store
+                pendingWrites.notifyAll();
+            }
+            for (Session session : restored) {
+                ((StandardSession) session).activate();
+            }
+        }
+    }
+
+
     // ------------------------------------------------------ Protected Methods
 
 
@@ -1029,4 +1414,46 @@ public abstract class PersistentManagerBase extends ManagerBase
 
     }
 
+
+
+    /**
+     * A session waiting to be written to the Store.
+     */
+    private static final class PendingWrite {
+
+        private final String id;
+        private final Session session;
+        private final long queued = System.currentTimeMillis();
+        private boolean swappedOut = false;
+        private boolean writing = false;
+        private boolean requeued = false;
+
+        public PendingWrite(String id, Session session) {
+            this.id = id;
+            this.session = session;
+        }
+    }
+
+
+    /**
+     * Writes queued sessions to the Store until the Manager stops.
+     */
+    private class WriteBehindProcessor implements Runnable {
+
+        @Override
+        public void run() {
+            while (!writeBehindThreadDone) {
+                synchronized (pendingWrites) {
+                    while (pendingWrites.isEmpty() && !writeBehindThreadDone) {
+                        try {
+                            pendingWrites.wait();
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        }
+                    }
+                }
+                processWriteBehind();
+            }
+        }
+    }
 }
@@ -0,0 +1,969 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import javax.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Session;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.tomcat.util.buf.B2CConverter;
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that appends saved
+ * Sessions to a small number of large, memory mapped segment files in a
+ * configured directory rather than using a file per Session. An index held in
+ * memory records where the latest copy of each Session is, so listing and
+ * expiring the stored Sessions does not require access to the file system.
+ * <p>
+ * Saving a Session again or removing it leaves the earlier copy in its
+ * segment. Segments that are mostly made up of such copies are compacted
+ * during the background processing of this Store by copying the remaining
+ * Sessions to the current segment and deleting the segment file.
+ * <p>
+ * Each record in a segment is made up of the record length, a CRC32 of the
+ * rest of the record, the record type, the time the Session was last
+ * accessed, its maximum inactive interval, its identifier and its serialized
+ * form. Segments are read in order when this Store starts to rebuild the
+ * index. A segment that is no longer needed is marked as empty before it is
+ * deleted, so it is ignored if it cannot be deleted while it is mapped.
+ */
+public final class SegmentStore extends StoreBase {
+
+
+    // ----------------------------------------------------- Constants
+
+
+    /**
+     * The extension to use for segment file names.
+     */
+    private static final String SEGMENT_EXT = ".segment";
+
+    private static final byte TYPE_SESSION = 1;
+    private static final byte TYPE_REMOVED = 2;
+
+    /**
+     * The length and CRC that precede each record.
+     */
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * The type, last accessed time, maximum inactive interval and identifier
+     * length that start each record.
+     */
+    private static final int RECORD_FIXED_LENGTH = 15;
+
+    private static final byte[] NO_DATA = new byte[0];
+
+    /**
+     * Used to unmap a segment before its file is deleted, which is otherwise
+     * only done once the buffer has been garbage collected. Which one is
+     * available depends on the JVM version.
+     */
+    private static final Object unsafe;
+    private static final Method invokeCleanerMethod;
+    private static final Method cleanerMethod;
+    private static final Method cleanMethod;
+
+    static {
+        Object unsafeInstance = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner =
+                    unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeInstance = theUnsafe.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1);
+                cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                clean = cleaner.getReturnType().getMethod("clean");
+                clean.setAccessible(true);
+            } catch (ReflectiveOperationException | RuntimeException e2) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+        unsafe = unsafeInstance;
+        invokeCleanerMethod = invokeCleaner;
+        cleanerMethod = cleaner;
+        cleanMethod = clean;
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The pathname of the directory in which the segments are stored.
+     * This may be an absolute pathname, or a relative path that is
+     * resolved against the temporary work directory for this application.
+     */
+    private String directory = ".";
+
+
+    /**
+     * A File representing the directory in which the segments are stored.
+     */
+    private File directoryFile = null;
+
+
+    /**
+     * The size, in bytes, of each segment.
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+
+    /**
+     * A segment is compacted once less than this percentage of it holds the
+     * latest copy of a Session.
+     */
+    private int compactionThreshold = 50;
+
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "segmentStore";
+
+
+    /**
+     * Name to register for the background thread.
+     */
+    private static final String threadName = "SegmentStore";
+
+
+    /**
+     * The location of the latest copy of each stored Session.
+     */
+    private final Map<String,IndexEntry> index = new ConcurrentHashMap<>();
+
+
+    /**
+     * The segments, in the order they were created. Guarded by {@link #lock}.
+     */
+    private final TreeMap<Long,Segment> segments = new TreeMap<>();
+
+
+    /**
+     * The segment being appended to. Guarded by {@link #lock}.
+     */
+    private Segment current = null;
+
+
+    /**
+     * The files of segments that are no longer used but could not be
+     * deleted, by sequence number. Guarded by {@link #lock}.
+     */
+    private final TreeMap<Long,File> undeleted = new TreeMap<>();
+
+
+    /**
+     * The sequence number of the next segment. Guarded by {@link #lock}.
+     */
+    private long nextSequence = 1;
+
+
+    /**
+     * Sessions are read under the read lock. The segments are modified under
+     * the write lock.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the directory path for this Store.
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+
+    /**
+     * Set the directory path for this Store.
+     *
+     * @param path The new directory path
+     */
+    public void setDirectory(String path) {
+        String oldDirectory = this.directory;
+        this.directory = path;
+        this.directoryFile = null;
+        support.firePropertyChange("directory", oldDirectory,
+                                   this.directory);
+    }
+
+
+    /**
+     * Return the size, in bytes, of each segment.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+
+    /**
+     * Set the size, in bytes, of each segment. A Session larger than this is
+     * written to a segment of its own.
+     *
+     * @param segmentSize The new segment size
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+
+    /**
+     * Return the percentage of a segment that must hold the latest copy of a
+     * Session for the segment not to be compacted.
+     */
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+
+    /**
+     * Set the percentage of a segment that must hold the latest copy of a
+     * Session for the segment not to be compacted.
+     *
+     * @param compactionThreshold The new threshold, from 0 to 100
+     */
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+
+    /**
+     * Return the thread name for this Store.
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+
+    /**
+     * Return the name for this Store, used for logging.
+     */
+    @Override
+    public String getStoreName() {
+        return storeName;
+    }
+
+
+    /**
+     * Return the number of Sessions present in this Store.
+     */
+    @Override
+    public int getSize() {
+        return index.size();
+    }
+
+
+    /**
+     * Return the number of segments used by this Store.
+     */
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Remove all of the Sessions in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            for (Segment segment : segments.values()) {
+                delete(segment);
+            }
+            segments.clear();
+            current = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Return an array containing the session identifiers of all Sessions
+     * currently saved in this Store.  If there are no such Sessions, a
+     * zero-length array is returned.
+     */
+    @Override
+    public String[] keys() {
+        return index.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+     * Load and return the Session associated with the specified session
+     * identifier from this Store, without removing it.  If there is no
+     * such stored Session, return <code>null</code>.
+     *
+     * @param id Session identifier of the session to load
+     *
+     * @exception ClassNotFoundException if a deserialization error occurs
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public Session load(String id)
+        throws ClassNotFoundException, IOException {
+
+        byte[] data;
+        lock.readLock().lock();
+        try {
+            IndexEntry entry = index.get(id);
+            if (entry == null) {
+                return null;
+            }
+            data = new byte[entry.dataLength];
+            ByteBuffer buffer = entry.segment.buffer.duplicate();
+            buffer.position(entry.dataOffset);
+            buffer.get(data);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(
+                    getStoreName() + ".loading", id, directoryFile));
+        }
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(data);
+        ObjectInputStream ois = null;
+        Loader loader = null;
+        ClassLoader classLoader = null;
+        Context context = manager.getContext();
+        if (context != null)
+            loader = context.getLoader();
+        if (loader != null)
+            classLoader = loader.getClassLoader();
+        if (classLoader != null)
+            ois = new CustomObjectInputStream(bis, classLoader);
+        else
+            ois = new ObjectInputStream(bis);
+
+        try {
+            StandardSession session =
+                (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            ois.close();
+        }
+    }
+
+
+    /**
+     * Remove the Session with the specified session identifier from
+     * this Store, if present.  If no such Session is present, this method
+     * takes no action.
+     *
+     * @param id Session identifier of the Session to be removed
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void remove(String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            IndexEntry entry = index.remove(id);
+            if (entry == null) {
+                return;
+            }
+            entry.segment.liveBytes -= entry.recordLength;
+            append(TYPE_REMOVED, id, 0, 0, NO_DATA);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(
+                    getStoreName() + ".removing", id, directoryFile));
+        }
+    }
+
+
+    /**
+     * Save the specified Session into this Store.  Any previously saved
+     * information for the associated session identifier is replaced.
+     *
+     * @param session Session to be saved
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void save(Session session) throws IOException {
+        save(new Session[] { session });
+    }
+
+
+    /**
+     * Save the specified Sessions into this Store. The Sessions are
+     * serialized before they are appended to the current segment together.
+     *
+     * @param sessions Sessions to be saved
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void save(Session[] sessions) throws IOException {
+
+        byte[][] data = new byte[sessions.length][];
+        for (int i = 0; i < sessions.length; i++) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos =
+                    new ObjectOutputStream(new BufferedOutputStream(bos))) {
+                ((StandardSession) sessions[i]).writeObjectData(oos);
+            }
+            data[i] = bos.toByteArray();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!getState().isAvailable()) {
+                throw new IOException(
+                        sm.getString(getStoreName() + ".notStarted"));
+            }
+            for (int i = 0; i < sessions.length; i++) {
+                Session session = sessions[i];
+                String id = session.getIdInternal();
+                IndexEntry entry = append(TYPE_SESSION, id,
+                        session.getThisAccessedTimeInternal(),
+                        session.getMaxInactiveInterval(), data[i]);
+                IndexEntry old = index.put(id, entry);
+                if (old != null) {
+                    old.segment.liveBytes -= old.recordLength;
+                }
+                if (manager.getContext().getLogger().isDebugEnabled()) {
+                    manager.getContext().getLogger().debug(sm.getString(
+                            getStoreName() + ".saving", id,
+                            entry.segment.file.getAbsolutePath()));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Expire the Sessions in this Store that have expired and then compact
+     * any segments that are mostly unused.
+     */
+    @Override
+    public void processExpires() {
+        super.processExpires();
+
+        if (!getState().isAvailable()) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            manager.getContext().getLogger().error(
+                    sm.getString(getStoreName() + ".compactFailed"), e);
+        }
+    }
+
+
+    /**
+     * Return the identifiers of the Sessions that have been idle for longer
+     * than their maximum inactive interval, according to the index.
+     */
+    @Override
+    protected String[] expiredKeys() {
+        long timeNow = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String,IndexEntry> e : index.entrySet()) {
+            IndexEntry entry = e.getValue();
+            if (entry.maxInactiveInterval > 0 &&
+                    timeNow - entry.thisAccessedTime >=
+                    entry.maxInactiveInterval * 1000L) {
+                expired.add(e.getKey());
+            }
+        }
+        return expired.toArray(new String[expired.size()]);
+    }
+
+
+    // ------------------------------------------------------ Lifecycle Methods
+
+
+    /**
+     * Open the existing segments and rebuild the index from them.
+     */
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        lock.writeLock().lock();
+        try {
+            File dir = directory();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                TreeMap<Long,File> ordered = new TreeMap<>();
+                for (File file : files) {
+                    String name = file.getName();
+                    if (!name.endsWith(SEGMENT_EXT)) {
+                        continue;
+                    }
+                    try {
+                        ordered.put(Long.valueOf(name.substring(0,
+                                name.length() - SEGMENT_EXT.length())), file);
+                    } catch (NumberFormatException e) {
+                        // Not a segment
+                    }
+                }
+                for (Map.Entry<Long,File> e : ordered.entrySet()) {
+                    nextSequence = e.getKey().longValue() + 1;
+                    Segment segment = new Segment(e.getKey().longValue(),
+                            e.getValue(), e.getValue().length());
+                    rebuildIndex(segment);
+                    if (segment.position == 0) {
+                        // Empty, or marked as no longer used
+                        delete(segment);
+                    } else {
+                        segments.put(e.getKey(), segment);
+                        current = segment;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        super.startInternal();
+    }
+
+
+    /**
+     * Flush the segments and close them.
+     */
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            undeleted.clear();
+            index.clear();
+            current = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Append a record to the current segment, starting a new segment if it
+     * does not fit. Must be called with the write lock held.
+     */
+    private IndexEntry append(byte type, String id, long thisAccessedTime,
+            int maxInactiveInterval, byte[] data) throws IOException {
+
+        byte[] idBytes = id.getBytes(B2CConverter.UTF_8);
+        int bodyLength = RECORD_FIXED_LENGTH + idBytes.length + data.length;
+        int recordLength = RECORD_HEADER_LENGTH + bodyLength;
+
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        body.put(type);
+        body.putLong(thisAccessedTime);
+        body.putInt(maxInactiveInterval);
+        body.putShort((short) idBytes.length);
+        body.put(idBytes);
+        body.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+
+        if (current == null ||
+                current.position + recordLength > current.buffer.capacity()) {
+            long sequence = nextSequence++;
+            File file = new File(directory(), sequence + SEGMENT_EXT);
+            current = new Segment(sequence, file,
+                    Math.max(segmentSize, recordLength));
+            segments.put(Long.valueOf(sequence), current);
+        }
+
+        Segment segment = current;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.position);
+        buffer.putInt(bodyLength);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(body.array());
+
+        int dataOffset = segment.position + recordLength - data.length;
+        segment.position += recordLength;
+        if (type == TYPE_SESSION) {
+            segment.liveBytes += recordLength;
+        }
+        return new IndexEntry(segment, dataOffset, data.length, recordLength,
+                thisAccessedTime, maxInactiveInterval);
+    }
+
+
+    /**
+     * Read the record that starts at the given position of a segment.
+     *
+     * @return the record or <code>null</code> if there are no more complete
+     *         records in the segment
+     */
+    private static Record readRecord(Segment segment, int position) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        if (position + RECORD_HEADER_LENGTH > buffer.capacity()) {
+            return null;
+        }
+        buffer.position(position);
+        int bodyLength = buffer.getInt();
+        int expectedCrc = buffer.getInt();
+        if (bodyLength < RECORD_FIXED_LENGTH ||
+                bodyLength > buffer.remaining()) {
+            return null;
+        }
+        byte[] body = new byte[bodyLength];
+        buffer.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+
+        ByteBuffer fields = ByteBuffer.wrap(body);
+        Record record = new Record();
+        record.type = fields.get();
+        record.thisAccessedTime = fields.getLong();
+        record.maxInactiveInterval = fields.getInt();
+        int idLength = fields.getShort() & 0xFFFF;
+        if (idLength > fields.remaining()) {
+            return null;
+        }
+        record.id = new String(body, fields.position(), idLength,
+                B2CConverter.UTF_8);
+        record.recordLength = RECORD_HEADER_LENGTH + bodyLength;
+        record.dataLength = bodyLength - RECORD_FIXED_LENGTH - idLength;
+        record.dataOffset = position + record.recordLength - record.dataLength;
+        return record;
+    }
+
+
+    /**
+     * Add the records of a segment to the index. Must be called for the
+     * segments in the order they were created.
+     */
+    private void rebuildIndex(Segment segment) {
+        int position = 0;
+        Record record;
+        while ((record = readRecord(segment, position)) != null) {
+            IndexEntry old;
+            if (record.type == TYPE_SESSION) {
+                old = index.put(record.id, new IndexEntry(segment,
+                        record.dataOffset, record.dataLength,
+                        record.recordLength, record.thisAccessedTime,
+                        record.maxInactiveInterval));
+                segment.liveBytes += record.recordLength;
+            } else {
+                old = index.remove(record.id);
+            }
+            if (old != null) {
+                old.segment.liveBytes -= old.recordLength;
+            }
+            position += record.recordLength;
+        }
+        segment.position = position;
+        if (position < segment.buffer.capacity() &&
+                segment.buffer.getInt(position) != 0) {
+            manager.getContext().getLogger().warn(sm.getString(
+                    getStoreName() + ".corrupt", segment.file,
+                    Integer.valueOf(position)));
+        }
+    }
+
+
+    /**
+     * Copy the latest Session copies in segments that are mostly unused to
+     * the current segment and delete those segments.
+     */
+    private void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            retryDelete();
+            List<Segment> candidates = new ArrayList<>(segments.values());
+            for (Segment segment : candidates) {
+                if (segment == current || segment.liveBytes * 100L >=
+                        (long) segment.position * compactionThreshold) {
+                    continue;
+                }
+                if (manager.getContext().getLogger().isDebugEnabled()) {
+                    manager.getContext().getLogger().debug(sm.getString(
+                            getStoreName() + ".compacting", segment.file,
+                            Long.valueOf(segment.liveBytes),
+                            Integer.valueOf(segment.position)));
+                }
+                // Removals only need to be kept while an older segment may
+                // contain a copy of the removed Session
+                boolean oldest = segment == segments.firstEntry().getValue() &&
+                        (undeleted.isEmpty() ||
+                        undeleted.firstKey().longValue() > segment.sequence);
+                int position = 0;
+                Record record;
+                while ((record = readRecord(segment, position)) != null) {
+                    if (record.type == TYPE_SESSION) {
+                        IndexEntry entry = index.get(record.id);
+                        if (entry != null && entry.segment == segment &&
+                                entry.dataOffset == record.dataOffset) {
+                            byte[] data = new byte[record.dataLength];
+                            ByteBuffer buffer = segment.buffer.duplicate();
+                            buffer.position(record.dataOffset);
+                            buffer.get(data);
+                            index.put(record.id, append(TYPE_SESSION,
+                                    record.id, record.thisAccessedTime,
+                                    record.maxInactiveInterval, data));
+                        }
+                    } else if (!oldest && !index.containsKey(record.id)) {
+                        append(TYPE_REMOVED, record.id, 0, 0, NO_DATA);
+                    }
+                    position += record.recordLength;
+                }
+                segments.remove(Long.valueOf(segment.sequence));
+                delete(segment);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Mark a segment as empty, so its records are ignored if the file remains,
+     * then unmap and delete it. Must be called with the write lock held.
+     */
+    private void delete(Segment segment) {
+        segment.buffer.putInt(0, 0);
+        segment.close();
+        if (!segment.file.delete() && segment.file.exists()) {
+            manager.getContext().getLogger().warn(sm.getString(
+                    getStoreName() + ".deleteFailed", segment.file));
+            undeleted.put(Long.valueOf(segment.sequence), segment.file);
+        }
+    }
+
+
+    /**
+     * Try again to delete the segment files that could not be deleted. Must be
+     * called with the write lock held.
+     */
+    private void retryDelete() {
+        Iterator<File> iter = undeleted.values().iterator();
+        while (iter.hasNext()) {
+            File file = iter.next();
+            if (file.delete() || !file.exists()) {
+                iter.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Release the mapping of a buffer. The buffer must not be used again.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            if (invokeCleanerMethod != null) {
+                invokeCleanerMethod.invoke(unsafe, buffer);
+            } else if (cleanerMethod != null) {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleanMethod.invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The mapping is released when the buffer is garbage collected
+        }
+    }
+
+
+    /**
+     * Return a File object representing the pathname to our
+     * segment directory, if any.  The directory will be
+     * created if it does not already exist.
+     */
+    private File directory() throws IOException {
+
+        if (this.directoryFile != null) {
+            // NOTE:  Race condition is harmless, so do not synchronize
+            return (this.directoryFile);
+        }
+        File file = new File(this.directory);
+        if (!file.isAbsolute()) {
+            Context context = manager.getContext();
+            if (context != null) {
+                ServletContext servletContext = context.getServletContext();
+                File work = (File)
+                    servletContext.getAttribute(ServletContext.TEMPDIR);
+                file = new File(work, this.directory);
+            } else {
+                throw new IllegalArgumentException
+                    ("Parent Container is not a Context");
+            }
+        }
+        if (!file.isDirectory() && !file.mkdirs() && !file.isDirectory()) {
+            throw new IOException(
+                    sm.getString(getStoreName() + ".createFailed", file));
+        }
+        this.directoryFile = file;
+        return (file);
+
+    }
+
+
+    // --------------------------------------------------------- Inner Classes
+
+
+    /**
+     * A memory mapped segment file.
+     */
+    private final class Segment {
+
+        private final long sequence;
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+
+        /**
+         * The end of the records in this segment.
+         */
+        private int position = 0;
+
+        /**
+         * The total length of the records in this segment that are the latest
+         * copy of a Session.
+         */
+        private long liveBytes = 0;
+
+        public Segment(long sequence, File file, long size) throws IOException {
+            this.sequence = sequence;
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            try {
+                this.buffer = raf.getChannel().map(
+                        FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        public void close() {
+            buffer.force();
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            unmap(buffer);
+        }
+    }
+
+
+    /**
+     * The location and expiry details of the latest copy of a Session.
+     */
+    private static final class IndexEntry {
+
+        private final Segment segment;
+        private final int dataOffset;
+        private final int dataLength;
+        private final int recordLength;
+        private final long thisAccessedTime;
+        private final int maxInactiveInterval;
+
+        public IndexEntry(Segment segment, int dataOffset, int dataLength,
+                int recordLength, long thisAccessedTime,
+                int maxInactiveInterval) {
+            this.segment = segment;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.recordLength = recordLength;
+            this.thisAccessedTime = thisAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+    }
+
+
+    /**
+     * A record read from a segment.
+     */
+    private static final class Record {
+        private byte type;
+        private String id;
+        private long thisAccessedTime;
+        private int maxInactiveInterval;
+        private int dataOffset;
+        private int dataLength;
+        private int recordLength;
+    }
+}
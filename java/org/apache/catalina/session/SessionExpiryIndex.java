@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.catalina.Session;
+
+/**
+ * Index of sessions by the time at which they are due to expire, with a
+ * resolution of one second. Sessions that expire in the same second share a
+ * bucket so finding the sessions that are due takes time proportional to the
+ * number of those sessions rather than to the total number of sessions.
+ * <p>
+ * Sessions are not moved when they are accessed. A session found in a due
+ * bucket that is still valid is simply added again for its new expiry time.
+ * Sessions that are removed from their manager are left in the index until
+ * their bucket is due.
+ */
+final class SessionExpiryIndex {
+
+    private static final long TICK = 1000;
+
+    private final ConcurrentSkipListMap<Long,Bucket> buckets =
+            new ConcurrentSkipListMap<>();
+
+
+    /**
+     * Add a session to the index.
+     *
+     * @param session       The session
+     * @param expiryTime    The time, in milliseconds since the epoch, at which
+     *                      the session is due to expire
+     */
+    void add(Session session, long expiryTime) {
+        // Round up so a session is never checked before it is due
+        Long key = Long.valueOf((expiryTime + TICK - 1) / TICK);
+        while (true) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                Bucket newBucket = new Bucket();
+                bucket = buckets.putIfAbsent(key, newBucket);
+                if (bucket == null) {
+                    bucket = newBucket;
+                }
+            }
+            if (bucket.add(session)) {
+                return;
+            }
+            // The bucket was polled concurrently - replace it
+            buckets.remove(key, bucket);
+        }
+    }
+
+
+    /**
+     * Remove and return all sessions that were due to expire at or before the
+     * given time.
+     *
+     * @param timeNow   The current time in milliseconds since the epoch
+     */
+    List<Session> poll(long timeNow) {
+        long last = timeNow / TICK;
+        List<Session> result = new ArrayList<>();
+        Map.Entry<Long,Bucket> entry;
+        while ((entry = buckets.firstEntry()) != null &&
+                entry.getKey().longValue() <= last) {
+            buckets.remove(entry.getKey(), entry.getValue());
+            result.addAll(entry.getValue().drain());
+        }
+        return result;
+    }
+
+
+    /**
+     * Remove all sessions from the index.
+     */
+    void clear() {
+        buckets.clear();
+    }
+
+
+    private static final class Bucket {
+
+        private Set<Session> sessions = new HashSet<>();
+
+        synchronized boolean add(Session session) {
+            if (sessions == null) {
+                return false;
+            }
+            sessions.add(session);
+            return true;
+        }
+
+        synchronized Set<Session> drain() {
+            Set<Session> result = sessions;
+            sessions = null;
+            return result;
+        }
+    }
+}
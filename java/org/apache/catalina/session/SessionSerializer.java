@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Converts the contents of a {@link StandardSession} to and from the form used
+ * when sessions are persisted by a {@link org.apache.catalina.Store}, saved
+ * across restarts by {@link StandardManager} or transferred between the nodes
+ * of a cluster. The Manager the session belongs to is not included and must be
+ * set on the session after it has been read.
+ * <p>
+ * Implementations must be thread-safe as a single instance is shared by all
+ * the sessions of a Manager.
+ */
+public interface SessionSerializer {
+
+    /**
+     * Write the contents of the given session to the given stream.
+     *
+     * @param session   The session to write
+     * @param stream    The stream to write to
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void writeSession(StandardSession session, ObjectOutputStream stream)
+            throws IOException;
+
+
+    /**
+     * Read the contents of the given session from the given stream. The stream
+     * must have been written by the same type of serializer.
+     *
+     * @param session   The (empty) session to populate
+     * @param stream    The stream to read from
+     *
+     * @exception ClassNotFoundException if an unknown class is specified
+     * @exception IOException if an input/output error occurs
+     */
+    public void readSession(StandardSession session, ObjectInputStream stream)
+            throws ClassNotFoundException, IOException;
+}
@@ -264,6 +264,7 @@ public class StandardManager extends ManagerBase {
                     session.readObjectData(ois);
                     session.setManager(this);
                     sessions.put(session.getIdInternal(), session);
+                    scheduleExpiry(session);
                     session.activate();
                     if (!session.isValidInternal()) {
                         // If session is already invalid,
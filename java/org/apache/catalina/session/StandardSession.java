@@ -150,6 +150,13 @@ public class StandardSession implements HttpSession, Session, Serializable {
         "___NOT_SERIALIZABLE_EXCEPTION___";
 
 
+    /**
+     * The serializer used when the Manager does not provide one.
+     */
+    private static final SessionSerializer DEFAULT_SERIALIZER =
+        new CompactSessionSerializer();
+
+
     /**
      * The collection of user data attributes associated with this Session.
      */
@@ -577,6 +584,10 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void setMaxInactiveInterval(int interval) {
         this.maxInactiveInterval = interval;
+        if (manager instanceof ManagerBase) {
+            // The session may now expire sooner than it was scheduled to
+            ((ManagerBase) manager).scheduleExpiry(this);
+        }
     }
 
 
@@ -1083,7 +1094,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
     public void readObjectData(ObjectInputStream stream)
         throws ClassNotFoundException, IOException {
 
-        doReadObject(stream);
+        getSessionSerializer().readSession(this, stream);
 
     }
 
@@ -1100,8 +1111,21 @@ public class StandardSession implements HttpSession, Session, Serializable {
     public void writeObjectData(ObjectOutputStream stream)
         throws IOException {
 
-        doWriteObject(stream);
+        getSessionSerializer().writeSession(this, stream);
+
+    }
+
 
+    /**
+     * Return the serializer used by {@link #readObjectData(ObjectInputStream)}
+     * and {@link #writeObjectData(ObjectOutputStream)}, which is the one
+     * configured on the Manager if the Manager supports it.
+     */
+    protected SessionSerializer getSessionSerializer() {
+        if (manager instanceof ManagerBase) {
+            return ((ManagerBase) manager).getSessionSerializer();
+        }
+        return DEFAULT_SERIALIZER;
     }
 
 
@@ -1594,10 +1618,27 @@ public class StandardSession implements HttpSession, Session, Serializable {
      */
     protected void doReadObject(ObjectInputStream stream)
         throws ClassNotFoundException, IOException {
+        doReadObject(stream, stream.readObject());
+    }
+
+
+    /**
+     * Read a serialized version of this session object from the specified
+     * object input stream, the first object of which has already been read.
+     *
+     * @param stream The input stream to read from
+     * @param creationTime The first object read from the stream, which is
+     *        the creation time of the session
+     *
+     * @exception ClassNotFoundException if an unknown class is specified
+     * @exception IOException if an input/output error occurs
+     */
+    protected void doReadObject(ObjectInputStream stream, Object creationTime)
+        throws ClassNotFoundException, IOException {
 
         // Deserialize the scalar instance variables (except Manager)
         authType = null;        // Transient only
-        creationTime = ((Long) stream.readObject()).longValue();
+        this.creationTime = ((Long) creationTime).longValue();
         lastAccessedTime = ((Long) stream.readObject()).longValue();
         maxInactiveInterval = ((Integer) stream.readObject()).intValue();
         isNew = ((Boolean) stream.readObject()).booleanValue();
@@ -1714,6 +1755,48 @@ public class StandardSession implements HttpSession, Session, Serializable {
     }
 
 
+    /**
+     * Write any state that a sub-class adds to this session. Called by
+     * {@link CompactSessionSerializer} after the attributes have been written.
+     *
+     * @param stream The output stream to write to
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected void writeExtraData(ObjectOutputStream stream)
+            throws IOException {
+        // NOOP
+    }
+
+
+    /**
+     * Read the state written by {@link #writeExtraData(ObjectOutputStream)}.
+     * Called by {@link CompactSessionSerializer} after the attributes have
+     * been read.
+     *
+     * @param stream The input stream to read from
+     *
+     * @exception ClassNotFoundException if an unknown class is specified
+     * @exception IOException if an input/output error occurs
+     */
+    protected void readExtraData(ObjectInputStream stream)
+            throws ClassNotFoundException, IOException {
+        // NOOP
+    }
+
+
+    /**
+     * Called by {@link CompactSessionSerializer} for each attribute that is
+     * not written because it is excluded or is not Serializable. The
+     * attribute is removed so that it is unbound from this session.
+     *
+     * @param name Name of the attribute
+     */
+    protected void attributeNotSerialized(String name) {
+        removeAttributeInternal(name, true);
+    }
+
+
     /**
      * Exclude standard attributes that cannot be serialized.
      * @param name the attribute's name
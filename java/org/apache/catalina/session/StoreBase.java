@@ -24,6 +24,7 @@ import java.io.IOException;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
 import org.apache.catalina.Store;
 import org.apache.catalina.util.LifecycleBase;
 import org.apache.tomcat.util.res.StringManager;
@@ -130,7 +131,7 @@ public abstract class StoreBase extends LifecycleBase implements Store {
         }
 
         try {
-            keys = keys();
+            keys = expiredKeys();
         } catch (IOException e) {
             manager.getContext().getLogger().error("Error getting keys", e);
             return;
@@ -186,6 +187,47 @@ public abstract class StoreBase extends LifecycleBase implements Store {
     }
 
 
+    /**
+     * Save the specified Sessions into this Store. Used when sessions are
+     * written to this Store in batches. This implementation saves the
+     * sessions one at a time and sub-classes may override it to save them
+     * more efficiently.
+     *
+     * @param sessions Sessions to be saved
+     *
+     * @exception IOException if any of the sessions could not be saved
+     */
+    public void save(Session[] sessions) throws IOException {
+        IOException ioe = null;
+        for (Session session : sessions) {
+            try {
+                save(session);
+            } catch (IOException e) {
+                if (ioe == null) {
+                    ioe = e;
+                } else {
+                    ioe.addSuppressed(e);
+                }
+            }
+        }
+        if (ioe != null) {
+            throw ioe;
+        }
+    }
+
+
+    /**
+     * Return the identifiers of the Sessions in this Store that may have
+     * expired. Each one is loaded and checked by {@link #processExpires()}.
+     * This implementation returns all the identifiers in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected String[] expiredKeys() throws IOException {
+        return keys();
+    }
+
+
     @Override
     protected void initInternal() {
         // NOOP
@@ -18,6 +18,7 @@ package org.apache.catalina.webresources;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 import org.apache.catalina.WebResource;
@@ -130,5 +131,19 @@ public abstract class AbstractResource implements WebResource {
     }
 
 
+    @Override
+    public ByteBuffer getContentBuffer() {
+        // Only cached resources hold content outside of the heap
+        return null;
+    }
+
+
+    @Override
+    public byte[] getGzipContent() {
+        // Only cached resources keep a compressed copy of their content
+        return null;
+    }
+
+
     protected abstract Log getLog();
 }
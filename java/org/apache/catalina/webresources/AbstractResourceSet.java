@@ -81,6 +81,19 @@ public abstract class AbstractResourceSet extends LifecycleBase
     }
 
 
+    /**
+     * Register the files that provide the resources in this set with a
+     * watcher so that changes to them are reported to the cache.
+     *
+     * @param watcher   The watcher to register with
+     * @return <code>true</code> if all changes to the resources in this set
+     *         will be reported, else <code>false</code>
+     */
+    boolean watch(ResourceWatcher watcher) {
+        return false;
+    }
+
+
     //-------------------------------------------------------- Lifecycle methods
     @Override
     protected final void startInternal() throws LifecycleException {
@@ -16,18 +16,35 @@
  */
 package org.apache.catalina.webresources;
 
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.catalina.WebResource;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.res.StringManager;
 
+/**
+ * Caches {@link CachedResource}s for a {@link StandardRoot}. Eviction uses a
+ * segmented LRU policy. New entries are placed in a probation segment and are
+ * promoted to a protected segment, which may use up to 80% of the cache, when
+ * they are accessed again. Entries are evicted from the least recently used
+ * end of the probation segment, which receives entries demoted from the
+ * protected segment. A new entry is only admitted if a {@link FrequencySketch}
+ * estimates that it has been requested more often than the entries that would
+ * be evicted to make room for it. This stops a scan of rarely used resources
+ * from flushing frequently used resources from the cache.
+ * <p>
+ * If an off-heap size is configured, the content of file based resources is
+ * held in direct buffers, or in read-only memory mapped regions of the files
+ * if mapping is enabled, rather than in heap byte arrays and is counted
+ * against the off-heap size rather than the maximum size. Resources that are not file based (e.g. resources in JARs)
+ * are always cached on the heap.
+ */
 public class Cache {
 
     private static final Log log = LogFactory.getLog(Cache.class);
@@ -38,19 +55,36 @@ public class Cache {
     // based on profiler data.
     private static final long CACHE_ENTRY_SIZE = 500;
 
-    private static final long TARGET_FREE_PERCENT_GET = 5;
-    private static final long TARGET_FREE_PERCENT_BACKGROUND = 10;
+    // Estimate of average size including content used to size the frequency
+    // sketch
+    private static final long AVERAGE_ENTRY_SIZE = 4 * 1024;
+
+    private static final long PROTECTED_PERCENT = 80;
 
     private final StandardRoot root;
     private final AtomicLong size = new AtomicLong(0);
+    private final AtomicLong offHeapSize = new AtomicLong(0);
+
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong evictionCount = new AtomicLong(0);
 
     private long ttl = 5000;
     private long maxSize = 10 * 1024 * 1024;
     private long maxObjectSize = maxSize / 20;
+    private long maxOffHeapSize = 0;
+    private volatile boolean mapFiles = false;
+    private volatile boolean watched = false;
 
     private ConcurrentMap<String,CachedResource> resourceCache =
             new ConcurrentHashMap<>();
 
+    // The eviction policy state below is guarded by policyLock
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final Segment probation = new Segment();
+    private final Segment protectedSegment = new Segment();
+    private FrequencySketch sketch = createSketch();
+
     public Cache(StandardRoot root) {
         this.root = root;
     }
@@ -62,113 +96,289 @@ public class Cache {
         CachedResource cacheEntry = resourceCache.get(path);
 
         if (cacheEntry != null && !cacheEntry.validate()) {
-            removeCacheEntry(path, true);
+            removeCacheEntry(cacheEntry);
             cacheEntry = null;
         }
 
-        if (cacheEntry == null) {
-            CachedResource newCacheEntry = new CachedResource(root, path, ttl);
-            // Concurrent callers will end up with the same CachedResource
-            // instance
-            cacheEntry = resourceCache.putIfAbsent(path, newCacheEntry);
-
-            if (cacheEntry == null) {
-                // newCacheEntry was inserted into the cache - validate it
-                cacheEntry = newCacheEntry;
-                cacheEntry.validate();
-                if (newCacheEntry.getContentLength() > getMaxObjectSize()) {
-                    // Cache size has not been updated at this point
-                    removeCacheEntry(path, false);
-                    return newCacheEntry;
-                }
+        if (cacheEntry != null) {
+            hitCount.incrementAndGet();
+            recordAccess(cacheEntry);
+            return cacheEntry;
+        }
 
-                // Assume that the cache entry will include the content.
-                // This isn't always the case but it makes tracking the
-                // current cache size easier.
-                long delta = CACHE_ENTRY_SIZE;
-                delta += cacheEntry.getContentLength();
-                size.addAndGet(delta);
-
-                if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
-                    long targetSize =
-                            maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(
-                            targetSize, resourceCache.values().iterator());
-                    if (newSize > maxSize) {
-                        // Unable to create sufficient space for this resource
-                        // Remove it from the cache
-                        removeCacheEntry(path, true);
-                        log.warn(sm.getString("cache.addFail"));
-                    }
-                }
-            } else {
-                // Another thread added the entry to the cache
-                // Make sure it is validated
-                cacheEntry.validate();
+        missCount.incrementAndGet();
+
+        // Entries are not revalidated if changes will be reported to the cache
+        CachedResource newCacheEntry =
+                new CachedResource(this, root, path, watched ? -1 : ttl);
+        // Concurrent callers will end up with the same CachedResource
+        // instance
+        cacheEntry = resourceCache.putIfAbsent(path, newCacheEntry);
+
+        if (cacheEntry == null) {
+            // newCacheEntry was inserted into the cache - validate it
+            cacheEntry = newCacheEntry;
+            cacheEntry.validate();
+            if (!admit(cacheEntry)) {
+                // Still usable by the caller, just not cached
+                resourceCache.remove(path, cacheEntry);
             }
+        } else {
+            // Another thread added the entry to the cache
+            // Make sure it is validated
+            cacheEntry.validate();
         }
 
         return cacheEntry;
     }
 
     protected void backgroundProcess() {
-        // Create an ordered set of all cached resources with the least recently
-        // used first. This is a background process so we can afford to take the
-        // time to order the elements first
-        TreeSet<CachedResource> orderedResources =
-                new TreeSet<>(new EvictionOrder());
-        orderedResources.addAll(resourceCache.values());
+        // Eviction normally happens as entries are added. This only has work
+        // to do if the maximum size has been reduced.
+        policyLock.lock();
+        try {
+            while (size.get() > maxSize || offHeapSize.get() > maxOffHeapSize) {
+                CachedResource victim = probation.tail;
+                if (victim == null) {
+                    victim = protectedSegment.tail;
+                    if (victim == null) {
+                        break;
+                    }
+                }
+                evict(victim);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /*
+     * Add a new entry to the probation segment, evicting entries to make room
+     * for it if necessary.
+     */
+    private boolean admit(CachedResource entry) {
+        long contentLength = Math.max(0, entry.getContentLength());
+        long entrySize;
+        long offHeapEntrySize;
+        if (contentLength > 0 && contentLength <= getMaxOffHeapObjectSizeBytes()
+                && entry.isFile() && entry.getCanonicalPath() != null) {
+            entrySize = CACHE_ENTRY_SIZE;
+            offHeapEntrySize = contentLength;
+        } else if (contentLength <= maxObjectSize) {
+            entrySize = CACHE_ENTRY_SIZE + contentLength;
+            offHeapEntrySize = 0;
+        } else {
+            return false;
+        }
+        int hash = entry.getWebappPath().hashCode();
 
-        Iterator<CachedResource> iter = orderedResources.iterator();
+        policyLock.lock();
+        try {
+            sketch.increment(hash);
+
+            if (resourceCache.get(entry.getWebappPath()) != entry) {
+                // Removed (e.g. invalidated) by another thread
+                return false;
+            }
 
-        long targetSize =
-                maxSize * (100 - TARGET_FREE_PERCENT_BACKGROUND) / 100;
-        long newSize = evict(targetSize, iter);
+            long required = size.get() + entrySize - maxSize;
+            long offHeapRequired =
+                    offHeapSize.get() + offHeapEntrySize - maxOffHeapSize;
+            if (required > 0 || offHeapRequired > 0) {
+                // Select all the victims before evicting any of them so that
+                // a rejected candidate does not empty the cache
+                int frequency = sketch.frequency(hash);
+                List<CachedResource> victims = new ArrayList<>();
+                CachedResource victim = probation.tail;
+                boolean victimInProbation = true;
+                long freed = 0;
+                long offHeapFreed = 0;
+                while (freed < required || offHeapFreed < offHeapRequired) {
+                    if (victim == null && victimInProbation) {
+                        victim = protectedSegment.tail;
+                        victimInProbation = false;
+                    }
+                    if (victim == null) {
+                        log.warn(sm.getString("cache.addFail",
+                                entry.getWebappPath()));
+                        return false;
+                    }
+                    // Skip entries that would not free any of the space that
+                    // is required
+                    if (freed < required || victim.offHeapEntrySize > 0) {
+                        if (sketch.frequency(victim.getWebappPath().hashCode())
+                                >= frequency) {
+                            return false;
+                        }
+                        victims.add(victim);
+                        freed += victim.entrySize;
+                        offHeapFreed += victim.offHeapEntrySize;
+                    }
+                    victim = victim.prev;
+                }
+                for (CachedResource evicted : victims) {
+                    evict(evicted);
+                }
+            }
 
-        if (newSize > targetSize) {
-            log.info(sm.getString("cache.backgroundEvictFail",
-                    Long.valueOf(TARGET_FREE_PERCENT_BACKGROUND),
-                    root.getContext().getName(),
-                    Long.valueOf(newSize / 1024)));
+            entry.entrySize = entrySize;
+            entry.offHeapEntrySize = offHeapEntrySize;
+            entry.offHeap = offHeapEntrySize > 0;
+            probation.addFirst(entry);
+            size.addAndGet(entrySize);
+            offHeapSize.addAndGet(offHeapEntrySize);
+            return true;
+        } finally {
+            policyLock.unlock();
         }
     }
 
-    private long evict(long targetSize, Iterator<CachedResource> iter) {
+    /*
+     * Update the access order and frequency for an entry that was found in the
+     * cache.
+     */
+    private void recordAccess(CachedResource entry) {
+        // Skip the bookkeeping rather than block if another thread holds the
+        // lock. The policy only needs an approximate view of access patterns
+        // and this is on the critical path for request processing.
+        if (!policyLock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(entry.getWebappPath().hashCode());
+            Segment segment = entry.segment;
+            if (segment == protectedSegment) {
+                protectedSegment.moveToFront(entry);
+            } else if (segment == probation) {
+                probation.remove(entry);
+                protectedSegment.addFirst(entry);
+                long protectedMaxSize =
+                        (maxSize + maxOffHeapSize) * PROTECTED_PERCENT / 100;
+                while (protectedSegment.size > protectedMaxSize) {
+                    CachedResource demoted = protectedSegment.tail;
+                    protectedSegment.remove(demoted);
+                    probation.addFirst(demoted);
+                }
+            }
+            // else the entry has not been admitted or has been removed
+        } finally {
+            policyLock.unlock();
+        }
+    }
 
-        long now = System.currentTimeMillis();
+    /*
+     * Adjust the size of an entry in the cache when the compressed copy of its
+     * content changes. Growth is refused rather than evicting other entries
+     * since the compressed copy is only an optimisation.
+     */
+    boolean updateCompressedSize(CachedResource entry, long oldLength,
+            long newLength) {
+        long delta = newLength - oldLength;
+        policyLock.lock();
+        try {
+            if (entry.segment == null) {
+                // Not (or no longer) in the cache
+                return false;
+            }
+            if (delta > 0 && size.get() + delta > maxSize) {
+                return false;
+            }
+            entry.entrySize += delta;
+            entry.segment.size += delta;
+            size.addAndGet(delta);
+            return true;
+        } finally {
+            policyLock.unlock();
+        }
+    }
 
-        long newSize = size.get();
+    // Must be called while holding policyLock
+    private void evict(CachedResource victim) {
+        victim.segment.remove(victim);
+        size.addAndGet(-victim.entrySize);
+        offHeapSize.addAndGet(-victim.offHeapEntrySize);
+        resourceCache.remove(victim.getWebappPath(), victim);
+        evictionCount.incrementAndGet();
+    }
 
-        while (newSize > targetSize && iter.hasNext()) {
-            CachedResource resource = iter.next();
+    /**
+     * Remove the entry, if any, for the given path from the cache.
+     *
+     * @param path  The path of the entry to remove
+     */
+    protected void invalidate(String path) {
+        CachedResource cachedResource = resourceCache.get(path);
+        if (cachedResource != null) {
+            removeCacheEntry(cachedResource);
+        }
+    }
 
-            // Don't expire anything that has been checked within the TTL
-            if (resource.getNextCheck() > now) {
-                continue;
+    /**
+     * Remove all entries with paths that start with the given prefix from the
+     * cache.
+     *
+     * @param prefix    The prefix of the paths of the entries to remove
+     */
+    protected void invalidatePrefix(String prefix) {
+        for (CachedResource cachedResource : resourceCache.values()) {
+            if (cachedResource.getWebappPath().startsWith(prefix)) {
+                removeCacheEntry(cachedResource);
             }
+        }
+    }
 
-            // Remove the entry from the cache
-            removeCacheEntry(resource.getWebappPath(), true);
+    /**
+     * Remove all entries from the cache.
+     */
+    protected void clear() {
+        for (CachedResource cachedResource : resourceCache.values()) {
+            removeCacheEntry(cachedResource);
+        }
+    }
 
-            newSize = size.get();
+    private void removeCacheEntry(CachedResource cachedResource) {
+        // With concurrent calls for the same entry, the entry is only removed
+        // once and the cache size is only updated once. A newer entry for the
+        // same path is never removed.
+        resourceCache.remove(cachedResource.getWebappPath(), cachedResource);
+        policyLock.lock();
+        try {
+            Segment segment = cachedResource.segment;
+            if (segment != null) {
+                segment.remove(cachedResource);
+                size.addAndGet(-cachedResource.entrySize);
+                offHeapSize.addAndGet(-cachedResource.offHeapEntrySize);
+            }
+        } finally {
+            policyLock.unlock();
         }
+    }
 
-        return newSize;
+    // Must be called while holding policyLock
+    private FrequencySketch createSketch() {
+        return new FrequencySketch((int) Math.min(
+                (maxSize + maxOffHeapSize) / AVERAGE_ENTRY_SIZE,
+                Integer.MAX_VALUE));
     }
 
-    private void removeCacheEntry(String path, boolean updateSize) {
-        // With concurrent calls for the same path, the entry is only removed
-        // once and the cache size is only updated (if required) once.
-        CachedResource cachedResource = resourceCache.remove(path);
-        if (cachedResource != null && updateSize) {
-            long delta =
-                    0 - CACHE_ENTRY_SIZE - cachedResource.getContentLength();
-            size.addAndGet(delta);
-        }
+    private long getMaxOffHeapObjectSizeBytes() {
+        // Direct buffers and mapped regions are limited to Integer.MAX_VALUE
+        // bytes
+        return Math.min(maxOffHeapSize / 20, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param watched   <code>true</code> if all changes to the underlying
+     *                  resources will be reported via {@link #invalidate}
+     *                  and {@link #invalidatePrefix} so entries need not be
+     *                  revalidated
+     */
+    public void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
+    public boolean isWatched() {
+        return watched;
     }
 
     public long getTtl() {
@@ -186,7 +396,13 @@ public class Cache {
 
     public void setMaxSize(long maxSize) {
         // Internally bytes, externally kilobytes
-        this.maxSize = maxSize * 1024;
+        policyLock.lock();
+        try {
+            this.maxSize = maxSize * 1024;
+            sketch = createSketch();
+        } finally {
+            policyLock.unlock();
+        }
     }
 
 
@@ -200,21 +416,98 @@ public class Cache {
         return maxObjectSize / 1024;
     }
 
-    private static class EvictionOrder implements Comparator<CachedResource> {
+    public long getMaxOffHeapSize() {
+        // Internally bytes, externally kilobytes
+        return maxOffHeapSize / 1024;
+    }
+
+    public void setMaxOffHeapSize(long maxOffHeapSize) {
+        // Internally bytes, externally kilobytes
+        policyLock.lock();
+        try {
+            this.maxOffHeapSize = maxOffHeapSize * 1024;
+            sketch = createSketch();
+        } finally {
+            policyLock.unlock();
+        }
+    }
 
-        @Override
-        public int compare(CachedResource cr1, CachedResource cr2) {
-            long nc1 = cr1.getNextCheck();
-            long nc2 = cr2.getNextCheck();
+    public boolean getMapFiles() {
+        return mapFiles;
+    }
+
+    public void setMapFiles(boolean mapFiles) {
+        this.mapFiles = mapFiles;
+    }
+
+    public long getOffHeapSize() {
+        // Internally bytes, externally kilobytes
+        return offHeapSize.get() / 1024;
+    }
 
-            // Oldest resource should be first (so iterator goes from oldest to
-            // youngest.
-            if (nc1 == nc2) {
-                return 0;
-            } else if (nc1 > nc2) {
-                return -1;
+    public long getSize() {
+        // Internally bytes, externally kilobytes
+        return size.get() / 1024;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+
+    /**
+     * A doubly linked list of cache entries ordered from most recently used
+     * (head) to least recently used (tail). The links are held by the
+     * {@link CachedResource}s. Must only be used while holding the policy lock.
+     */
+    static final class Segment {
+
+        private CachedResource head;
+        private CachedResource tail;
+        private long size;
+
+        void addFirst(CachedResource entry) {
+            entry.segment = this;
+            entry.prev = null;
+            entry.next = head;
+            if (head == null) {
+                tail = entry;
+            } else {
+                head.prev = entry;
+            }
+            head = entry;
+            size += entry.entrySize + entry.offHeapEntrySize;
+        }
+
+        void remove(CachedResource entry) {
+            if (entry.prev == null) {
+                head = entry.next;
             } else {
-                return 1;
+                entry.prev.next = entry.next;
+            }
+            if (entry.next == null) {
+                tail = entry.prev;
+            } else {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.segment = null;
+            size -= entry.entrySize + entry.offHeapEntrySize;
+        }
+
+        void moveToFront(CachedResource entry) {
+            if (head != entry) {
+                remove(entry);
+                addFirst(entry);
             }
         }
     }
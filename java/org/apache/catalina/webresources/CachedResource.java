@@ -17,11 +17,23 @@
 package org.apache.catalina.webresources;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
 
 /**
  * This class is designed to wrap a 'raw' WebResource and providing caching for
@@ -30,6 +42,15 @@ import org.apache.catalina.WebResourceRoot;
  */
 public class CachedResource implements WebResource {
 
+    private static final Log log = LogFactory.getLog(CachedResource.class);
+    private static final StringManager sm =
+            StringManager.getManager(Constants.Package);
+
+    // A mapped file can't be modified or deleted on Windows
+    private static final boolean IS_WINDOWS =
+            System.getProperty("os.name", "").startsWith("Windows");
+
+    private final Cache cache;
     private final StandardRoot root;
     private final String webAppPath;
     private final long ttl;
@@ -40,14 +61,31 @@ public class CachedResource implements WebResource {
     private volatile Long cachedLastModified = null;
     private volatile String cachedLastModifiedHttp = null;
     private volatile byte[] cachedContent = null;
+    private volatile ByteBuffer cachedContentBuffer = null;
+    private volatile boolean cachedContentBufferMapped = false;
     private volatile Boolean cachedIsFile = null;
     private volatile Boolean cachedIsDirectory = null;
     private volatile Boolean cachedExists = null;
     private volatile Boolean cachedIsVirtual = null;
     private volatile Long cachedContentLength = null;
+    private volatile CompressedContent cachedGzipContent = null;
+    private final Object gzipLock = new Object();
+
+    // Set by Cache if the content of this resource is to be held off-heap
+    volatile boolean offHeap = false;
+
+    // Eviction policy state. Only accessed by Cache while holding its policy
+    // lock.
+    Cache.Segment segment;
+    CachedResource prev;
+    CachedResource next;
+    long entrySize;
+    long offHeapEntrySize;
 
 
-    public CachedResource(StandardRoot root, String path, long ttl) {
+    public CachedResource(Cache cache, StandardRoot root, String path,
+            long ttl) {
+        this.cache = cache;
         this.root = root;
         this.webAppPath = path;
         this.ttl = ttl;
@@ -62,7 +100,7 @@ public class CachedResource implements WebResource {
                     webResource = root.getResourceInternal(webAppPath);
                     getLastModified();
                     getContentLength();
-                    nextCheck = ttl + now;
+                    nextCheck = nextCheck(now);
                     return true;
                 }
             }
@@ -84,10 +122,18 @@ public class CachedResource implements WebResource {
             return false;
         }
 
-        nextCheck = ttl + now;
+        nextCheck = nextCheck(now);
         return true;
     }
 
+    private long nextCheck(long now) {
+        if (ttl < 0) {
+            // Changes are reported to the cache so never revalidate
+            return Long.MAX_VALUE;
+        }
+        return ttl + now;
+    }
+
     protected long getNextCheck() {
         return nextCheck;
     }
@@ -215,6 +261,11 @@ public class CachedResource implements WebResource {
 
     @Override
     public byte[] getContent() {
+        if (offHeap) {
+            // Don't copy off-heap content onto the heap. Callers use
+            // getContentBuffer() instead.
+            return null;
+        }
         byte[] cachedContent = this.cachedContent;
         if (cachedContent == null) {
             cachedContent = webResource.getContent();
@@ -223,6 +274,163 @@ public class CachedResource implements WebResource {
         return cachedContent;
     }
 
+    @Override
+    public ByteBuffer getContentBuffer() {
+        if (!offHeap) {
+            return null;
+        }
+        ByteBuffer cachedContentBuffer = this.cachedContentBuffer;
+        if (cachedContentBuffer == null) {
+            synchronized (this) {
+                cachedContentBuffer = this.cachedContentBuffer;
+                if (cachedContentBuffer == null) {
+                    boolean mapped = cache.getMapFiles() && !IS_WINDOWS;
+                    cachedContentBuffer = loadContentBuffer(mapped);
+                    if (cachedContentBuffer == null) {
+                        return null;
+                    }
+                    cachedContentBufferMapped = mapped;
+                    this.cachedContentBuffer = cachedContentBuffer;
+                }
+            }
+        }
+        if (cachedContentBufferMapped &&
+                (webResource.getContentLength() != getContentLength() ||
+                webResource.getLastModified() != getLastModified())) {
+            // Reading beyond the end of a file that has been truncated since
+            // it was mapped crashes the JVM so stop using the mapping as soon
+            // as the file is seen to have changed. Callers fall back to
+            // reading the file until this entry is revalidated.
+            synchronized (this) {
+                if (this.cachedContentBuffer == cachedContentBuffer) {
+                    this.cachedContentBuffer = null;
+                }
+            }
+            return null;
+        }
+        // Callers get their own position and limit
+        return cachedContentBuffer.duplicate();
+    }
+
+    private ByteBuffer loadContentBuffer(boolean mapped) {
+        String canonicalPath = webResource.getCanonicalPath();
+        if (canonicalPath == null) {
+            return null;
+        }
+        long length = getContentLength();
+        try (FileChannel channel = FileChannel.open(
+                Paths.get(canonicalPath), StandardOpenOption.READ)) {
+            if (channel.size() < length) {
+                // File has been truncated since it was validated
+                return null;
+            }
+            if (mapped) {
+                // The mapping remains valid after the channel is closed
+                return channel.map(MapMode.READ_ONLY, 0, length);
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    // File has been truncated since it was validated
+                    return null;
+                }
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("cachedResource.loadFail",
+                        webAppPath, canonicalPath), e);
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] getGzipContent() {
+        String eTag = getETag();
+        CompressedContent gzipContent = this.cachedGzipContent;
+        if (gzipContent == null || !gzipContent.eTag.equals(eTag)) {
+            synchronized (gzipLock) {
+                gzipContent = this.cachedGzipContent;
+                if (gzipContent == null || !gzipContent.eTag.equals(eTag)) {
+                    gzipContent = compressContent(eTag, gzipContent);
+                    this.cachedGzipContent = gzipContent;
+                }
+            }
+        }
+        return gzipContent.content;
+    }
+
+    /*
+     * The compressed content is held, and counted towards the size of the
+     * cache, only if it is smaller than the original and there is room for it.
+     * Otherwise the outcome is recorded so that the content is not compressed
+     * again for every request.
+     */
+    private CompressedContent compressContent(String eTag,
+            CompressedContent previous) {
+        long oldLength = previous == null || previous.content == null ?
+                0 : previous.content.length;
+        byte[] compressed = null;
+        long contentLength = getContentLength();
+        if (isFile() && contentLength > 0 &&
+                contentLength <= cache.getMaxObjectSize() * 1024) {
+            ByteBuffer content = getContentBuffer();
+            if (content == null) {
+                byte[] heapContent = getContent();
+                if (heapContent != null) {
+                    content = ByteBuffer.wrap(heapContent);
+                }
+            }
+            if (content != null) {
+                compressed = gzip(content);
+                if (compressed != null &&
+                        compressed.length >= content.limit()) {
+                    compressed = null;
+                }
+            }
+        }
+        if (compressed == null || !cache.updateCompressedSize(
+                this, oldLength, compressed.length)) {
+            cache.updateCompressedSize(this, oldLength, 0);
+            compressed = null;
+        }
+        return new CompressedContent(eTag, compressed);
+    }
+
+    private byte[] gzip(ByteBuffer content) {
+        ByteArrayOutputStream baos =
+                new ByteArrayOutputStream(content.remaining() / 2);
+        // Compressed once and then reused, so use the best compression
+        try (GZIPOutputStream gzos = new GZIPOutputStream(baos) {
+                    {
+                        def.setLevel(Deflater.BEST_COMPRESSION);
+                    }
+                }) {
+            if (content.hasArray()) {
+                gzos.write(content.array(), content.arrayOffset() +
+                        content.position(), content.remaining());
+            } else {
+                // Copy off-heap content in chunks rather than all at once
+                byte[] chunk = new byte[Math.min(8192, content.remaining())];
+                while (content.hasRemaining()) {
+                    int len = Math.min(chunk.length, content.remaining());
+                    content.get(chunk, 0, len);
+                    gzos.write(chunk, 0, len);
+                }
+            }
+        } catch (IOException e) {
+            // Should never happen writing to memory
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("cachedResource.gzipFail",
+                        webAppPath), e);
+            }
+            return null;
+        }
+        return baos.toByteArray();
+    }
+
     @Override
     public long getCreation() {
         return webResource.getCreation();
@@ -237,4 +445,16 @@ public class CachedResource implements WebResource {
     public WebResourceRoot getWebResourceRoot() {
         return webResource.getWebResourceRoot();
     }
+
+
+    private static final class CompressedContent {
+
+        private final String eTag;
+        private final byte[] content;
+
+        private CompressedContent(String eTag, byte[] content) {
+            this.eTag = eTag;
+            this.content = content;
+        }
+    }
 }
@@ -231,6 +231,16 @@ public class DirResourceSet extends AbstractFileResourceSet {
         return true;
     }
 
+    @Override
+    boolean watch(ResourceWatcher watcher) {
+        String webAppMount = getWebAppMount();
+        if (webAppMount.endsWith("/")) {
+            webAppMount = webAppMount.substring(0, webAppMount.length() - 1);
+        }
+        watcher.watchDirectory(fileBase.toPath(), webAppMount);
+        return true;
+    }
+
     @Override
     protected void checkType(File file) {
         if (file.isDirectory() == false) {
@@ -18,6 +18,7 @@ package org.apache.catalina.webresources;
 
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
@@ -122,6 +123,16 @@ public class EmptyResource implements WebResource {
         return null;
     }
 
+    @Override
+    public ByteBuffer getContentBuffer() {
+        return null;
+    }
+
+    @Override
+    public byte[] getGzipContent() {
+        return null;
+    }
+
     @Override
     public long getCreation() {
         return 0;
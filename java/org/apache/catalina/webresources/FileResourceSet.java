@@ -166,6 +166,12 @@ public class FileResourceSet extends AbstractFileResourceSet {
         return false;
     }
 
+    @Override
+    boolean watch(ResourceWatcher watcher) {
+        watcher.watchFile(fileBase.toPath(), getWebAppMount());
+        return true;
+    }
+
     @Override
     protected void checkType(File file) {
         if (file.isFile() == false) {
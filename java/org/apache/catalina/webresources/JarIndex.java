@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An immutable index of the entries in one or more JAR files, mapping each
+ * entry name to the JARs that contain it. The index answers whether an entry
+ * exists, and which JARs to open to read it, with a single hash lookup rather
+ * than a {@link JarFile#getJarEntry(String)} call per JAR.
+ * <p>
+ * Lookups follow the rules of {@link JarFile#getJarEntry(String)}: a
+ * directory entry is found whether or not the name ends with '/'.
+ */
+public final class JarIndex {
+
+    private static final int[] NO_JARS = new int[0];
+
+    private final File[] jars;
+    private final Map<String,int[]> entries;
+
+
+    private JarIndex(File[] jars, Map<String,int[]> entries) {
+        this.jars = jars;
+        this.entries = entries;
+    }
+
+
+    /**
+     * Create an index of the entries in the given JAR files.
+     *
+     * @param jars  The JAR files to index. The position of each JAR file in
+     *              this array is the position reported by the index.
+     * @return the new index
+     * @throws IOException if a JAR file cannot be read
+     */
+    public static JarIndex build(File... jars) throws IOException {
+        File[] indexed = jars.clone();
+        Map<String,int[]> entries = new HashMap<>();
+        for (int i = 0; i < indexed.length; i++) {
+            try (JarFile jarFile = new JarFile(indexed[i])) {
+                add(entries, jarFile, i);
+            }
+        }
+        return new JarIndex(indexed, entries);
+    }
+
+
+    /**
+     * Create an index of the entries in a single, already open JAR file.
+     *
+     * @param jar       The location of the JAR file
+     * @param jarFile   The open JAR file
+     * @return the new index
+     */
+    public static JarIndex build(File jar, JarFile jarFile) {
+        Map<String,int[]> entries = new HashMap<>();
+        add(entries, jarFile, 0);
+        return new JarIndex(new File[] { jar }, entries);
+    }
+
+
+    private static void add(Map<String,int[]> entries, JarFile jarFile,
+            int jar) {
+        Enumeration<JarEntry> jarEntries = jarFile.entries();
+        while (jarEntries.hasMoreElements()) {
+            String name = jarEntries.nextElement().getName();
+            add(entries, name, jar);
+            if (name.length() > 1 && name.charAt(name.length() - 1) == '/') {
+                add(entries, name.substring(0, name.length() - 1), jar);
+            }
+        }
+    }
+
+
+    private static void add(Map<String,int[]> entries, String name, int jar) {
+        int[] current = entries.get(name);
+        if (current == null) {
+            entries.put(name, new int[] { jar });
+        } else if (current[current.length - 1] != jar) {
+            int[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = jar;
+            entries.put(name, updated);
+        }
+    }
+
+
+    /**
+     * @return the number of JAR files in this index
+     */
+    public int getJarCount() {
+        return jars.length;
+    }
+
+
+    /**
+     * @param jar   The JAR file to look for
+     * @return the position of the JAR file in this index or -1 if it is not
+     *         part of this index
+     */
+    public int indexOf(File jar) {
+        for (int i = 0; i < jars.length; i++) {
+            if (jars[i].equals(jar)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @param jars  The JAR files to compare with
+     * @return <code>true</code> if this index covers exactly the given JAR
+     *         files in the given order
+     */
+    public boolean matches(File[] jars) {
+        return Arrays.equals(this.jars, jars);
+    }
+
+
+    /**
+     * @param name  The entry name, without a leading '/'
+     * @return <code>true</code> if at least one of the indexed JARs contains
+     *         the entry
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+
+    /**
+     * @param name  The entry name, without a leading '/'
+     * @param jar   The position of the JAR in this index
+     * @return <code>true</code> if the given JAR contains the entry
+     */
+    public boolean contains(String name, int jar) {
+        int[] locations = entries.get(name);
+        if (locations != null) {
+            for (int location : locations) {
+                if (location == jar) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @param name  The entry name, without a leading '/'
+     * @return the positions, in ascending order, of the JARs that contain the
+     *         entry. The returned array must not be modified.
+     */
+    public int[] getLocations(String name) {
+        int[] locations = entries.get(name);
+        if (locations == null) {
+            return NO_JARS;
+        }
+        return locations;
+    }
+}
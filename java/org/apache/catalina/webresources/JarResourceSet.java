@@ -38,6 +38,8 @@ public class JarResourceSet extends AbstractResourceSet {
 
     private JarFile base;
     private String baseUrl;
+    private JarIndex index;
+    private int indexPosition;
     private final String internalPath;
 
     /**
@@ -109,14 +111,20 @@ public class JarResourceSet extends AbstractResourceSet {
                 return new JarResourceRoot(root, new File(base.getName()),
                         pathInJar, path);
             } else {
+                // Consult the index first so that requests for resources that
+                // are not present in this JAR are cheap
                 JarEntry jarEntry = null;
                 if (!(pathInJar.charAt(pathInJar.length() - 1) == '/')) {
-                    jarEntry = base.getJarEntry(pathInJar + '/');
-                    if (jarEntry != null) {
-                        path = path + '/';
+                    String dirInJar = pathInJar + '/';
+                    if (index.contains(dirInJar, indexPosition)) {
+                        jarEntry = base.getJarEntry(dirInJar);
+                        if (jarEntry != null) {
+                            path = path + '/';
+                        }
                     }
                 }
-                if (jarEntry == null) {
+                if (jarEntry == null &&
+                        index.contains(pathInJar, indexPosition)) {
                     jarEntry = base.getJarEntry(pathInJar);
                 }
                 if (jarEntry == null) {
@@ -253,6 +261,13 @@ public class JarResourceSet extends AbstractResourceSet {
         return false;
     }
 
+    @Override
+    boolean watch(ResourceWatcher watcher) {
+        // The content of a JAR does not change while it is in use. If the JAR
+        // is replaced the web application is reloaded.
+        return true;
+    }
+
     //-------------------------------------------------------- Lifecycle methods
     @Override
     protected void initInternal() throws LifecycleException {
@@ -267,5 +282,28 @@ public class JarResourceSet extends AbstractResourceSet {
         } catch (MalformedURLException e) {
             throw new IllegalArgumentException(e);
         }
+
+        // Share the index of /WEB-INF/lib if this JAR is part of it
+        JarIndex sharedIndex = null;
+        if (getRoot() instanceof StandardRoot) {
+            sharedIndex = ((StandardRoot) getRoot()).getJarIndex();
+        }
+        File baseFile;
+        try {
+            baseFile = new File(getBase()).getCanonicalFile();
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException(ioe);
+        }
+        if (sharedIndex != null) {
+            indexPosition = sharedIndex.indexOf(baseFile);
+        } else {
+            indexPosition = -1;
+        }
+        if (indexPosition == -1) {
+            index = JarIndex.build(baseFile, base);
+            indexPosition = 0;
+        } else {
+            index = sharedIndex;
+        }
     }
 }
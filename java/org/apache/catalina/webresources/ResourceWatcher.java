@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Uses a {@link WatchService} to remove entries from a {@link Cache} as soon
+ * as the files and directories they were created from change. Directory based
+ * resource sets watch every directory below their base. File based resource
+ * sets watch the directory that contains their file.
+ * <p>
+ * If any directory cannot be watched, e.g. because an operating system limit
+ * on the number of watched directories has been reached, the watcher is marked
+ * as incomplete and the cache should fall back to revalidating entries once
+ * their TTL has expired.
+ */
+class ResourceWatcher implements Runnable {
+
+    private static final Log log = LogFactory.getLog(ResourceWatcher.class);
+    private static final StringManager sm =
+            StringManager.getManager(Constants.Package);
+
+    private final Cache cache;
+    private final WatchService watchService;
+    private final ConcurrentMap<WatchKey,List<Registration>> registrations =
+            new ConcurrentHashMap<>();
+
+    private volatile boolean complete = true;
+    private Thread thread = null;
+
+
+    ResourceWatcher(Cache cache) throws IOException {
+        this.cache = cache;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+
+    void start(String name) {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn(sm.getString("resourceWatcher.closeFail"), e);
+        }
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            thread = null;
+        }
+        registrations.clear();
+    }
+
+
+    /**
+     * @return <code>true</code> if every directory that was meant to be
+     *         watched is being watched
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+
+    /**
+     * Watch a directory and all the directories below it.
+     *
+     * @param dir           The directory to watch
+     * @param webAppPath    The path within the web application that the
+     *                      directory is mounted at, without a trailing '/'
+     */
+    void watchDirectory(Path dir, final String webAppPath) {
+        final Path base = dir;
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path d,
+                        BasicFileAttributes attrs) throws IOException {
+                    String path = webAppPath;
+                    for (Path name : base.relativize(d)) {
+                        if (name.toString().length() > 0) {
+                            path = path + '/' + name.toString();
+                        }
+                    }
+                    register(d, new Registration(d, path, null));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            watchFailed(dir, e);
+        }
+    }
+
+
+    /**
+     * Watch a single file.
+     *
+     * @param file          The file to watch
+     * @param webAppPath    The path within the web application that the file
+     *                      is mounted at
+     */
+    void watchFile(Path file, String webAppPath) {
+        Path dir = file.getParent();
+        try {
+            register(dir, new Registration(
+                    dir, webAppPath, file.getFileName().toString()));
+        } catch (IOException | RuntimeException e) {
+            watchFailed(dir, e);
+        }
+    }
+
+
+    private void register(Path dir, Registration registration)
+            throws IOException {
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        // The same key is returned if a directory is registered more than
+        // once (e.g. it is watched by a directory and a file resource set)
+        List<Registration> list = registrations.get(key);
+        if (list == null) {
+            list = new CopyOnWriteArrayList<>();
+            List<Registration> existing = registrations.putIfAbsent(key, list);
+            if (existing != null) {
+                list = existing;
+            }
+        }
+        list.add(registration);
+    }
+
+
+    private void watchFailed(Path dir, Exception e) {
+        if (complete) {
+            complete = false;
+            log.warn(sm.getString("resourceWatcher.watchFail", dir), e);
+            // Entries may have been cached on the basis that changes would be
+            // reported. That is no longer the case.
+            cache.setWatched(false);
+            cache.clear();
+        }
+    }
+
+
+    @Override
+    public void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                return;
+            }
+            try {
+                List<Registration> list = registrations.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (list == null) {
+                        continue;
+                    }
+                    for (Registration registration : list) {
+                        registration.process(event);
+                    }
+                }
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.error(sm.getString("resourceWatcher.processFail"), t);
+            }
+            if (!key.reset()) {
+                // Directory no longer exists
+                registrations.remove(key);
+            }
+        }
+    }
+
+
+    private class Registration {
+
+        private final Path dir;
+        private final String webAppPath;
+        private final String fileName;
+
+        /*
+         * If fileName is null, all entries in the directory are watched and
+         * new sub-directories are registered.
+         */
+        public Registration(Path dir, String webAppPath, String fileName) {
+            this.dir = dir;
+            this.webAppPath = webAppPath;
+            this.fileName = fileName;
+        }
+
+        public void process(WatchEvent<?> event) {
+            WatchEvent.Kind<?> kind = event.kind();
+
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost. Play it safe.
+                if (fileName == null) {
+                    cache.invalidatePrefix(webAppPath + '/');
+                    invalidate(webAppPath);
+                } else {
+                    invalidate(webAppPath);
+                }
+                return;
+            }
+
+            String name = event.context().toString();
+            if (fileName != null) {
+                if (fileName.equals(name)) {
+                    invalidate(webAppPath);
+                }
+                return;
+            }
+
+            String path = webAppPath + '/' + name;
+            invalidate(path);
+            // The directory itself has also changed
+            invalidate(webAppPath);
+
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                Path child = dir.resolve(name);
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    watchDirectory(child, path);
+                    cache.invalidatePrefix(path + '/');
+                }
+            } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                cache.invalidatePrefix(path + '/');
+            }
+        }
+
+        private void invalidate(String path) {
+            if (path.length() == 0) {
+                cache.invalidate("/");
+            } else {
+                cache.invalidate(path);
+                cache.invalidate(path + '/');
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.apache.catalina.webresources;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
@@ -34,6 +35,8 @@ import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.WebResourceSet;
 import org.apache.catalina.util.LifecycleMBeanBase;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.res.StringManager;
 
 /**
@@ -51,6 +54,7 @@ import org.apache.tomcat.util.res.StringManager;
 public class StandardRoot extends LifecycleMBeanBase
         implements WebResourceRoot {
 
+    private static final Log log = LogFactory.getLog(StandardRoot.class);
     protected static final StringManager sm =
             StringManager.getManager(Constants.Package);
 
@@ -63,6 +67,9 @@ public class StandardRoot extends LifecycleMBeanBase
 
     private Cache cache = new Cache(this);
     private boolean cachingAllowed = true;
+    private boolean cacheWatchFiles = false;
+    private ResourceWatcher watcher = null;
+    private volatile JarIndex jarIndex = null;
 
     // Constructs to make iteration over all WebResourceSets simpler
     private ArrayList<WebResourceSet> mainResources = new ArrayList<>();
@@ -279,12 +286,14 @@ public class StandardRoot extends LifecycleMBeanBase
         }
 
         resourceList.add(resourceSet);
+        watchAdded(resourceSet);
     }
 
     @Override
     public void addPreResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         preResources.add(webResourceSet);
+        watchAdded(webResourceSet);
     }
 
     @Override
@@ -296,6 +305,7 @@ public class StandardRoot extends LifecycleMBeanBase
     public void addJarResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         jarResources.add(webResourceSet);
+        watchAdded(webResourceSet);
     }
 
     @Override
@@ -307,6 +317,7 @@ public class StandardRoot extends LifecycleMBeanBase
     public void addPostResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         postResources.add(webResourceSet);
+        watchAdded(webResourceSet);
     }
 
     @Override
@@ -334,6 +345,25 @@ public class StandardRoot extends LifecycleMBeanBase
         return cachingAllowed;
     }
 
+    @Override
+    public void setCacheWatchFiles(boolean cacheWatchFiles) {
+        this.cacheWatchFiles = cacheWatchFiles;
+    }
+
+    @Override
+    public boolean getCacheWatchFiles() {
+        return cacheWatchFiles;
+    }
+
+    /**
+     * @return <code>true</code> if changes to all resources are reported to
+     *         the cache so cached resources are not revalidated once their
+     *         TTL expires
+     */
+    public boolean isCacheWatched() {
+        return cache.isWatched();
+    }
+
     @Override
     public long getCacheTtl() {
         return cache.getTtl();
@@ -364,6 +394,63 @@ public class StandardRoot extends LifecycleMBeanBase
         return cache.getMaxObjectSize();
     }
 
+    @Override
+    public void setCacheMaxOffHeapSize(long cacheMaxOffHeapSize) {
+        cache.setMaxOffHeapSize(cacheMaxOffHeapSize);
+    }
+
+    @Override
+    public long getCacheMaxOffHeapSize() {
+        return cache.getMaxOffHeapSize();
+    }
+
+    @Override
+    public void setCacheMapFiles(boolean cacheMapFiles) {
+        cache.setMapFiles(cacheMapFiles);
+    }
+
+    @Override
+    public boolean getCacheMapFiles() {
+        return cache.getMapFiles();
+    }
+
+    /**
+     * @return the approximate size of the cache in kilobytes
+     */
+    public long getCacheSize() {
+        return cache.getSize();
+    }
+
+    /**
+     * @return the size of the content held in the off-heap cache in kilobytes
+     */
+    public long getCacheOffHeapSize() {
+        return cache.getOffHeapSize();
+    }
+
+    /**
+     * @return the number of lookups that found a valid entry in the cache
+     */
+    public long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups that did not find a valid entry in the
+     *         cache
+     */
+    public long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * @return the number of entries removed from the cache to make room for
+     *         new entries
+     */
+    public long getCacheEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
     @Override
     public Context getContext() {
         return context;
@@ -475,11 +562,105 @@ public class StandardRoot extends LifecycleMBeanBase
             }
         }
 
+        if (cacheWatchFiles && cachingAllowed) {
+            startWatcher();
+        }
+
         setState(LifecycleState.STARTING);
+
+        jarIndex = buildJarIndex();
+    }
+
+    /**
+     * Obtain the index of the JARs in /WEB-INF/lib. The index is built when
+     * this root starts and is shared by the web application class loader and
+     * by any resource JARs located in /WEB-INF/lib.
+     *
+     * @return the index or <code>null</code> if this root has not been started
+     *         or the index could not be built
+     */
+    public JarIndex getJarIndex() {
+        return jarIndex;
+    }
+
+    private JarIndex buildJarIndex() {
+        WebResource libDir = getResource("/WEB-INF/lib");
+        if (!libDir.isDirectory()) {
+            return null;
+        }
+        ArrayList<File> jars = new ArrayList<>();
+        for (WebResource jar : listResources("/WEB-INF/lib")) {
+            String canonicalPath = jar.getCanonicalPath();
+            // JARs in a packed WAR are copied before they are used so there is
+            // no file to index
+            if (jar.isFile() && jar.getName().endsWith(".jar") &&
+                    canonicalPath != null) {
+                jars.add(new File(canonicalPath));
+            }
+        }
+        try {
+            return JarIndex.build(jars.toArray(new File[jars.size()]));
+        } catch (IOException e) {
+            log.warn(sm.getString("standardRoot.jarIndexFail"), e);
+            return null;
+        }
+    }
+
+    private void startWatcher() {
+        try {
+            watcher = new ResourceWatcher(cache);
+        } catch (IOException e) {
+            log.warn(sm.getString("standardRoot.watchFail"), e);
+            return;
+        }
+
+        boolean watched = true;
+        for (ArrayList<WebResourceSet> list : allResources) {
+            for (WebResourceSet webResourceSet : list) {
+                watched &= watch(webResourceSet);
+            }
+        }
+        watcher.start("ResourceWatcher[" + context.getName() + "]");
+
+        // Linked files and directories outside of the resource sets are not
+        // watched
+        cache.setWatched(watched && !allowLinking && watcher.isComplete());
+    }
+
+    private boolean watch(WebResourceSet webResourceSet) {
+        if (webResourceSet instanceof AbstractResourceSet) {
+            return ((AbstractResourceSet) webResourceSet).watch(watcher);
+        }
+        return false;
+    }
+
+    /*
+     * A resource set added while the watcher is running may hide resources
+     * that are already cached and may not be watchable.
+     */
+    private void watchAdded(WebResourceSet webResourceSet) {
+        if (watcher != null) {
+            if (!watch(webResourceSet)) {
+                cache.setWatched(false);
+            }
+            cache.clear();
+        }
     }
 
     @Override
     protected void stopInternal() throws LifecycleException {
+        jarIndex = null;
+
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+            // Changes made while stopped will not be reported
+            if (cache.isWatched()) {
+                cache.setWatched(false);
+                cache.clear();
+            }
+        }
+
         for (ArrayList<WebResourceSet> list : allResources) {
             for (WebResourceSet webResourceSet : list) {
                 webResourceSet.stop();
@@ -173,6 +173,18 @@ public abstract class AbstractProtocol implements ProtocolHandler,
     }
 
 
+    @Override
+    public boolean isSendfileBufferSupported() {
+        return false;
+    }
+
+
+    @Override
+    public boolean isSendfileRangesSupported() {
+        return false;
+    }
+
+
     // ---------------------- Properties that are passed through to the EndPoint
 
     @Override
@@ -128,4 +128,58 @@ public final class Constants {
      */
     public static final String SENDFILE_FILE_END_ATTR =
         "org.apache.tomcat.sendfile.end";
+
+
+    /**
+     * The request attribute that is set to the value of {@code Boolean.TRUE}
+     * if connector processing this request supports use of sendfile with
+     * {@link #SENDFILE_BUFFER_ATTR}.
+     */
+    public static final String SENDFILE_BUFFER_SUPPORTED_ATTR =
+        "org.apache.tomcat.sendfile.buffer.support";
+
+
+    /**
+     * The request attribute that can be used by a servlet to pass
+     * to the connector a buffer, typically a direct or memory mapped
+     * {@code java.nio.ByteBuffer}, containing the content to be served by
+     * sendfile. It is used instead of {@link #SENDFILE_FILENAME_ATTR} and the
+     * start and end attributes are offsets within the buffer.
+     */
+    public static final String SENDFILE_BUFFER_ATTR =
+        "org.apache.tomcat.sendfile.buffer";
+
+
+    /**
+     * The request attribute that is set to the value of {@code Boolean.TRUE}
+     * if connector processing this request supports use of sendfile with
+     * {@link #SENDFILE_RANGES_ATTR}.
+     */
+    public static final String SENDFILE_RANGES_SUPPORTED_ATTR =
+        "org.apache.tomcat.sendfile.ranges.support";
+
+
+    /**
+     * The request attribute that can be used by a servlet to pass
+     * to the connector several parts of a file, or of the buffer passed with
+     * {@link #SENDFILE_BUFFER_ATTR}, that are to be served by sendfile. The
+     * value should be a {@code long[]} containing the start offset and the
+     * end offset (not including) of each part in turn. It is used instead of
+     * the start and end attributes and must be used together with
+     * {@link #SENDFILE_DELIMITERS_ATTR}.
+     */
+    public static final String SENDFILE_RANGES_ATTR =
+        "org.apache.tomcat.sendfile.ranges";
+
+
+    /**
+     * The request attribute that can be used by a servlet to pass
+     * to the connector the data to write before each of the parts passed with
+     * {@link #SENDFILE_RANGES_ATTR}, such as the headers of a
+     * {@code multipart/byteranges} response. The value should be a
+     * {@code byte[][]} with one more element than there are parts. The last
+     * element is written after the last part.
+     */
+    public static final String SENDFILE_DELIMITERS_ATTR =
+        "org.apache.tomcat.sendfile.delimiters";
 }
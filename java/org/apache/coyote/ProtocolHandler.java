@@ -106,4 +106,17 @@ public interface ProtocolHandler {
      * Does this ProtocolHandler support sendfile?
      */
     public boolean isSendfileSupported();
+
+
+    /**
+     * Does this ProtocolHandler support sendfile from a buffer?
+     */
+    public boolean isSendfileBufferSupported();
+
+
+    /**
+     * Does this ProtocolHandler support sendfile of several parts of a file
+     * in a single response?
+     */
+    public boolean isSendfileRangesSupported();
 }
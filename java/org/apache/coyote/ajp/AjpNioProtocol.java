@@ -165,6 +165,8 @@ public class AjpNioProtocol extends AbstractAjpProtocol {
             processor.recycle(isSocketClosing);
             recycledProcessors.push(processor);
             if (addToPoller) {
+                // The connection is idle until the next request arrives
+                socket.getSocket().releaseBuffers(false);
                 socket.getSocket().getPoller().add(socket.getSocket());
             }
         }
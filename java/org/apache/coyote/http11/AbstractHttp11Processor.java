@@ -22,6 +22,7 @@ import java.util.Locale;
 import java.util.StringTokenizer;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 import javax.servlet.http.HttpUpgradeHandler;
 
@@ -191,6 +192,20 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
     protected int compressionMinSize = 2048;
 
 
+    /**
+     * Returned instead of a deflate level when the worker threads are too busy
+     * to compress the response.
+     */
+    private static final int SKIP_COMPRESSION = Integer.MIN_VALUE;
+
+
+    /**
+     * Percentage of busy worker threads at and above which the deflate level
+     * is lowered. 0 disables load based compression.
+     */
+    protected int compressionLoadThreshold = 0;
+
+
     /**
      * Max saved post size.
      */
@@ -263,6 +278,16 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
     }
 
 
+    /**
+     * Set the percentage of busy worker threads at and above which responses
+     * are compressed with the fastest deflate level. When all worker threads
+     * are busy, responses are not compressed at all.
+     */
+    public void setCompressionLoadThreshold(int compressionLoadThreshold) {
+        this.compressionLoadThreshold = compressionLoadThreshold;
+    }
+
+
     /**
      * Set no compression user agent pattern. Regular expression as supported
      * by {@link Pattern}.
@@ -576,6 +601,34 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
     }
 
 
+    /**
+     * Determine the deflate level to use given how busy the worker threads
+     * are.
+     *
+     * @return the deflate level or {@link #SKIP_COMPRESSION} if the response
+     *         should not be compressed
+     */
+    private int getCompressionLevel() {
+        // Force mode is for testing and always uses the default level
+        if (compressionLoadThreshold <= 0 || compressionLevel == 2) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        int maxThreads = getEndpoint().getMaxThreads();
+        int busy = getEndpoint().getCurrentThreadsBusy();
+        if (maxThreads <= 0 || busy < 0) {
+            // Executor that does not report its load
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        if (busy >= maxThreads) {
+            return SKIP_COMPRESSION;
+        }
+        if (busy * 100L >= compressionLoadThreshold * (long) maxThreads) {
+            return Deflater.BEST_SPEED;
+        }
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+
+
     /**
      * Specialized utility method: find a sequence of lower case bytes inside
      * a ByteChunk.
@@ -1315,6 +1368,15 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
             isCompressable = isCompressable();
             if (isCompressable) {
                 useCompression = useCompression();
+                if (useCompression) {
+                    int level = getCompressionLevel();
+                    if (level == SKIP_COMPRESSION) {
+                        useCompression = false;
+                    } else {
+                        ((GzipOutputFilter) outputFilters[
+                                Constants.GZIP_FILTER]).setLevel(level);
+                    }
+                }
             }
             // Change content-length to -1 to force chunking
             if (useCompression) {
@@ -1370,7 +1432,7 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
             if (vary == null) {
                 // Add a new Vary header
                 headers.setValue("Vary").setString("Accept-Encoding");
-            } else if (vary.equals("*")) {
+            } else if (varyIncludes(vary.toString(), "Accept-Encoding")) {
                 // No action required
             } else {
                 // Merge into current header
@@ -1417,7 +1479,17 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
 
         int size = headers.size();
         for (int i = 0; i < size; i++) {
-            getOutputBuffer().sendHeader(headers.getName(i), headers.getValue(i));
+            // Date, Content-Type and Server are usually the same as for a
+            // previous response so try to write them already encoded
+            byte[] line = ResponseHeaderCache.getHeaderLine(
+                    headers.getNameId(i), headers.getName(i),
+                    headers.getValue(i));
+            if (line == null) {
+                getOutputBuffer().sendHeader(headers.getName(i),
+                        headers.getValue(i));
+            } else {
+                getOutputBuffer().write(line);
+            }
         }
         getOutputBuffer().endHeaders();
 
@@ -1431,6 +1503,20 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
         return connection.equals(Constants.CLOSE);
     }
 
+    /**
+     * Does a Vary header already cover the given header field, either by
+     * listing it or via <code>*</code>?
+     */
+    static boolean varyIncludes(String vary, String name) {
+        for (String token : vary.split(",")) {
+            token = token.trim();
+            if (token.equals("*") || token.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     abstract boolean prepareSendfile(OutputFilter[] outputFilters);
 
     /**
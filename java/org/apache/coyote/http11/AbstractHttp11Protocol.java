@@ -113,6 +113,21 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol {
     }
 
 
+    /**
+     * Percentage of busy worker threads at and above which responses are
+     * compressed with the fastest rather than the default deflate level. When
+     * all worker threads are busy responses are not compressed. A value of 0
+     * disables this.
+     */
+    private int compressionLoadThreshold = 0;
+    public int getCompressionLoadThreshold() {
+        return compressionLoadThreshold;
+    }
+    public void setCompressionLoadThreshold(int valueI) {
+        compressionLoadThreshold = valueI;
+    }
+
+
     /**
      * Regular expression that defines the User agents which should be
      * restricted to HTTP/1.0 support.
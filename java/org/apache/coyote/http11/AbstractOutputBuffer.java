@@ -345,12 +345,30 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
      */
     public void sendStatus() {
 
+        int status = response.getStatus();
+
+        // Get message
+        String message = null;
+        if (org.apache.coyote.Constants.USE_CUSTOM_STATUS_MSG_IN_HEADER &&
+                HttpMessages.isSafeInHttpHeader(response.getMessage())) {
+            message = response.getMessage();
+        }
+
+        // Most responses use the default message so write the whole line
+        // from the cache
+        if (message == null) {
+            byte[] statusLine = ResponseHeaderCache.getStatusLine(status);
+            if (statusLine != null) {
+                write(statusLine);
+                return;
+            }
+        }
+
         // Write protocol name
         write(Constants.HTTP_11_BYTES);
         buf[pos++] = Constants.SP;
 
         // Write status code
-        int status = response.getStatus();
         switch (status) {
         case 200:
             write(Constants._200_BYTES);
@@ -368,11 +386,6 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
         buf[pos++] = Constants.SP;
 
         // Write message
-        String message = null;
-        if (org.apache.coyote.Constants.USE_CUSTOM_STATUS_MSG_IN_HEADER &&
-                HttpMessages.isSafeInHttpHeader(response.getMessage())) {
-            message = response.getMessage();
-        }
         if (message == null) {
             write(HttpMessages.getMessage(status));
         } else {
@@ -326,6 +326,8 @@ public class Http11AprProtocol extends AbstractHttp11Protocol<Long> {
                     proto.getConnectionUploadTimeout());
             processor.setDisableUploadTimeout(proto.getDisableUploadTimeout());
             processor.setCompressionMinSize(proto.getCompressionMinSize());
+            processor.setCompressionLoadThreshold(
+                    proto.getCompressionLoadThreshold());
             processor.setCompression(proto.getCompression());
             processor.setNoCompressionUserAgents(proto.getNoCompressionUserAgents());
             processor.setCompressableMimeTypes(proto.getCompressableMimeTypes());
@@ -19,6 +19,7 @@ package org.apache.coyote.http11;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 
 import javax.net.ssl.SSLEngine;
@@ -91,6 +92,13 @@ public class Http11NioProcessor extends AbstractHttp11Processor<NioChannel> {
     protected NioEndpoint.SendfileData sendfileData = null;
 
 
+    /**
+     * Number of responses to pipelined requests currently held in the output
+     * buffer waiting to be flushed.
+     */
+    private int pipelinedResponses = 0;
+
+
     /**
      * Socket associated with the current connection.
      */
@@ -349,6 +357,25 @@ public class Http11NioProcessor extends AbstractHttp11Processor<NioChannel> {
     @Override
     protected boolean breakKeepAliveLoop(
             SocketWrapper<NioChannel> socketWrapper) {
+        InternalNioOutputBuffer output = (InternalNioOutputBuffer) outputBuffer;
+        if (output.getPipelineDepth() > 1) {
+            // Keep collecting responses while the next request has already
+            // been received, otherwise write out everything collected so far
+            try {
+                if (!error && keepAlive && !comet && !isAsync() &&
+                        !isUpgrade() && !endpoint.isPaused() &&
+                        sendfileData == null &&
+                        ++pipelinedResponses < output.getPipelineDepth() &&
+                        inputBuffer.isNextRequestBuffered()) {
+                    return false;
+                }
+                pipelinedResponses = 0;
+                output.flushPipelined();
+            } catch (IOException e) {
+                error = true;
+                return true;
+            }
+        }
         // Do sendfile as needed: add socket to sendfile and end
         if (sendfileData != null && !error) {
             ((KeyAttachment) socketWrapper).setSendfileData(sendfileData);
@@ -370,6 +397,7 @@ public class Http11NioProcessor extends AbstractHttp11Processor<NioChannel> {
     public void recycleInternal() {
         socket = null;
         sendfileData = null;
+        pipelinedResponses = 0;
     }
 
 
@@ -613,22 +641,46 @@ public class Http11NioProcessor extends AbstractHttp11Processor<NioChannel> {
     @Override
     protected void prepareRequestInternal() {
         sendfileData = null;
+        if (((InternalNioOutputBuffer) outputBuffer).getPipelineDepth() > 1) {
+            ((InternalNioOutputBuffer) outputBuffer).setDeferFlush(true);
+        }
     }
 
     @Override
     protected boolean prepareSendfile(OutputFilter[] outputFilters) {
         String fileName = (String) request.getAttribute(
                 org.apache.coyote.Constants.SENDFILE_FILENAME_ATTR);
-        if (fileName != null) {
+        ByteBuffer buffer = (ByteBuffer) request.getAttribute(
+                org.apache.coyote.Constants.SENDFILE_BUFFER_ATTR);
+        if (fileName != null || buffer != null) {
             // No entity body sent here
             outputBuffer.addActiveFilter(outputFilters[Constants.VOID_FILTER]);
             contentDelimitation = true;
             sendfileData = new NioEndpoint.SendfileData();
             sendfileData.fileName = fileName;
-            sendfileData.pos = ((Long) request.getAttribute(
-                    org.apache.coyote.Constants.SENDFILE_FILE_START_ATTR)).longValue();
-            sendfileData.length = ((Long) request.getAttribute(
-                    org.apache.coyote.Constants.SENDFILE_FILE_END_ATTR)).longValue() - sendfileData.pos;
+            if (buffer != null) {
+                // Use a view of the buffer so the caller's position and limit
+                // are not affected
+                sendfileData.buffer = buffer.duplicate();
+            }
+            long[] ranges = (long[]) request.getAttribute(
+                    org.apache.coyote.Constants.SENDFILE_RANGES_ATTR);
+            if (ranges != null) {
+                sendfileData.ranges = ranges;
+                sendfileData.delimiters = (byte[][]) request.getAttribute(
+                        org.apache.coyote.Constants.SENDFILE_DELIMITERS_ATTR);
+                sendfileData.nextPart();
+            } else {
+                sendfileData.pos = ((Long) request.getAttribute(
+                        org.apache.coyote.Constants.SENDFILE_FILE_START_ATTR)).longValue();
+                sendfileData.length = ((Long) request.getAttribute(
+                        org.apache.coyote.Constants.SENDFILE_FILE_END_ATTR)).longValue() - sendfileData.pos;
+                if (sendfileData.buffer != null) {
+                    sendfileData.buffer.limit(
+                            (int) (sendfileData.pos + sendfileData.length));
+                    sendfileData.buffer.position((int) sendfileData.pos);
+                }
+            }
             return true;
         }
         return false;
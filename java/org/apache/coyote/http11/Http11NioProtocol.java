@@ -98,6 +98,22 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
         return ((NioEndpoint)endpoint).getPollerThreadCount();
     }
 
+    public void setReusePort(boolean reusePort) {
+        ((NioEndpoint)endpoint).setReusePort(reusePort);
+    }
+
+    public boolean getReusePort() {
+        return ((NioEndpoint)endpoint).getReusePort();
+    }
+
+    public void setUseStripedCaches(boolean useStripedCaches) {
+        ((NioEndpoint)endpoint).setUseStripedCaches(useStripedCaches);
+    }
+
+    public boolean getUseStripedCaches() {
+        return ((NioEndpoint)endpoint).getUseStripedCaches();
+    }
+
     public void setSelectorTimeout(long timeout) {
         ((NioEndpoint)endpoint).setSelectorTimeout(timeout);
     }
@@ -131,6 +147,16 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
         ((NioEndpoint)endpoint).setUseSendfile(useSendfile);
     }
 
+    @Override
+    public boolean isSendfileBufferSupported() {
+        return ((NioEndpoint)endpoint).getUseSendfile();
+    }
+
+    @Override
+    public boolean isSendfileRangesSupported() {
+        return ((NioEndpoint)endpoint).getUseSendfile();
+    }
+
     // -------------------- Tcp setup --------------------
     public void setOomParachute(int oomParachute) {
         ((NioEndpoint)endpoint).setOomParachute(oomParachute);
@@ -240,6 +266,8 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
             processor.recycle(isSocketClosing);
             recycledProcessors.push(processor);
             if (addToPoller) {
+                // The connection is idle until the next request arrives
+                socket.getSocket().releaseBuffers(false);
                 socket.getSocket().getPoller().add(socket.getSocket());
             }
         }
@@ -289,6 +317,8 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
                     proto.getConnectionUploadTimeout());
             processor.setDisableUploadTimeout(proto.getDisableUploadTimeout());
             processor.setCompressionMinSize(proto.getCompressionMinSize());
+            processor.setCompressionLoadThreshold(
+                    proto.getCompressionLoadThreshold());
             processor.setCompression(proto.getCompression());
             processor.setNoCompressionUserAgents(proto.getNoCompressionUserAgents());
             processor.setCompressableMimeTypes(proto.getCompressableMimeTypes());
@@ -194,6 +194,8 @@ public class Http11Protocol extends AbstractHttp11JsseProtocol<Socket> {
                     proto.getConnectionUploadTimeout());
             processor.setDisableUploadTimeout(proto.getDisableUploadTimeout());
             processor.setCompressionMinSize(proto.getCompressionMinSize());
+            processor.setCompressionLoadThreshold(
+                    proto.getCompressionLoadThreshold());
             processor.setCompression(proto.getCompression());
             processor.setNoCompressionUserAgents(proto.getNoCompressionUserAgents());
             processor.setCompressableMimeTypes(proto.getCompressableMimeTypes());
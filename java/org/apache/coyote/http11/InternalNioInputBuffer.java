@@ -18,6 +18,7 @@ package org.apache.coyote.http11;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.Selector;
 import java.nio.charset.Charset;
 
@@ -29,6 +30,7 @@ import org.apache.tomcat.util.net.AbstractEndpoint;
 import org.apache.tomcat.util.net.NioChannel;
 import org.apache.tomcat.util.net.NioEndpoint;
 import org.apache.tomcat.util.net.NioSelectorPool;
+import org.apache.tomcat.util.net.SecureNioChannel;
 import org.apache.tomcat.util.net.SocketWrapper;
 
 /**
@@ -155,6 +157,17 @@ public class InternalNioInputBuffer extends AbstractInputBuffer<NioChannel> {
      */
     private int socketReadBufferSize;
 
+    /**
+     * Read directly into {@link #buf} rather than via the read buffer of the
+     * NioChannel.
+     */
+    private boolean readIntoBuf;
+
+    /**
+     * ByteBuffer view of {@link #buf} used when reading directly into it.
+     */
+    private ByteBuffer bufWrapper;
+
 
     // --------------------------------------------------------- Public Methods
 
@@ -447,7 +460,23 @@ public class InternalNioInputBuffer extends AbstractInputBuffer<NioChannel> {
 
     private int readSocket(boolean timeout, boolean block) throws IOException {
         int nRead = 0;
-        socket.getBufHandler().getReadBuffer().clear();
+        ByteBuffer readBuffer;
+        boolean copy;
+        if (readIntoBuf && buf.length - pos >= socketReadBufferSize) {
+            // Read straight into buf, no more than would have been read into
+            // the socket read buffer
+            if (bufWrapper == null || bufWrapper.array() != buf) {
+                bufWrapper = ByteBuffer.wrap(buf);
+            }
+            readBuffer = bufWrapper;
+            readBuffer.limit(pos + socketReadBufferSize);
+            readBuffer.position(pos);
+            copy = false;
+        } else {
+            readBuffer = socket.getBufHandler().getReadBuffer();
+            readBuffer.clear();
+            copy = true;
+        }
         if ( block ) {
             Selector selector = null;
             try {
@@ -458,20 +487,22 @@ public class InternalNioInputBuffer extends AbstractInputBuffer<NioChannel> {
             try {
                 NioEndpoint.KeyAttachment att = (NioEndpoint.KeyAttachment)socket.getAttachment(false);
                 if ( att == null ) throw new IOException("Key must be cancelled.");
-                nRead = pool.read(socket.getBufHandler().getReadBuffer(),socket,selector,att.getTimeout());
+                nRead = pool.read(readBuffer,socket,selector,att.getTimeout());
             } catch ( EOFException eof ) {
                 nRead = -1;
             } finally {
                 if ( selector != null ) pool.put(selector);
             }
         } else {
-            nRead = socket.read(socket.getBufHandler().getReadBuffer());
+            nRead = socket.read(readBuffer);
         }
         if (nRead > 0) {
-            socket.getBufHandler().getReadBuffer().flip();
-            socket.getBufHandler().getReadBuffer().limit(nRead);
-            expand(nRead + pos);
-            socket.getBufHandler().getReadBuffer().get(buf, pos, nRead);
+            if (copy) {
+                readBuffer.flip();
+                readBuffer.limit(nRead);
+                expand(nRead + pos);
+                readBuffer.get(buf, pos, nRead);
+            }
             lastValid = pos + nRead;
             return nRead;
         } else if (nRead == -1) {
@@ -482,6 +513,65 @@ public class InternalNioInputBuffer extends AbstractInputBuffer<NioChannel> {
         }
     }
 
+    /**
+     * Check whether the request line and headers of the next request have
+     * already been received. If they have not, any data the client has
+     * already sent is read without blocking, as far as the buffer allows, and
+     * the check is repeated. This must only be called between requests.
+     *
+     * @return true if the headers of the next request can be parsed without
+     * reading from the socket
+     * @throws IOException If an exception occurs during the underlying socket
+     * read operation
+     */
+    public boolean isNextRequestBuffered() throws IOException {
+        if (hasRequestHead()) {
+            return true;
+        }
+        if (buf.length - lastValid < socketReadBufferSize) {
+            return false;
+        }
+        int start = pos;
+        pos = lastValid;
+        try {
+            if (readSocket(false, false) == 0) {
+                return false;
+            }
+        } catch (EOFException eof) {
+            // Let the parsing of the next request deal with it
+            return false;
+        } finally {
+            pos = start;
+        }
+        return hasRequestHead();
+    }
+
+
+    /**
+     * Look for the blank line that ends the headers in the unparsed data,
+     * ignoring the blank lines that may precede the request line.
+     */
+    private boolean hasRequestHead() {
+        int i = pos;
+        while (i < lastValid
+                && (buf[i] == Constants.CR || buf[i] == Constants.LF)) {
+            i++;
+        }
+        for (; i < lastValid - 1; i++) {
+            if (buf[i] == Constants.LF) {
+                if (buf[i + 1] == Constants.LF) {
+                    return true;
+                }
+                if (buf[i + 1] == Constants.CR && i + 2 < lastValid
+                        && buf[i + 2] == Constants.LF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
     /**
      * Parse the HTTP headers.
      */
@@ -793,8 +883,17 @@ public class InternalNioInputBuffer extends AbstractInputBuffer<NioChannel> {
             // Socket has been closed in another thread
             throw new IOException(sm.getString("iib.socketClosed"));
         }
-        socketReadBufferSize =
-            socket.getBufHandler().getReadBuffer().capacity();
+        readIntoBuf = ((NioEndpoint) endpoint).getSocketProperties()
+                .getReadIntoRequestBuffer()
+                && !(socket instanceof SecureNioChannel);
+        if (readIntoBuf) {
+            // Avoid borrowing a pooled read buffer that will not be used
+            socketReadBufferSize = ((NioEndpoint) endpoint)
+                    .getSocketProperties().getAppReadBufSize();
+        } else {
+            socketReadBufferSize =
+                socket.getBufHandler().getReadBuffer().capacity();
+        }
 
         int bufLength = headerBufferSize + socketReadBufferSize;
         if (buf == null || buf.length < bufLength) {
@@ -100,6 +100,36 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
      */
     protected final AtomicInteger lastWrite = new AtomicInteger(1);
 
+    /**
+     * Writes smaller than this are collected in the socket write buffer while
+     * larger ones are written directly, together with the collected bytes,
+     * when gathering writes are enabled.
+     */
+    private static final int GATHER_THRESHOLD = 1024;
+
+    /**
+     * Use gathering writes for blocking writes.
+     */
+    private boolean gatheringWrite = false;
+
+    /**
+     * The buffers for gathering writes: the socket write buffer and the data
+     * being written.
+     */
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[2];
+
+    /**
+     * The maximum number of responses to pipelined requests that may be
+     * collected in the socket write buffer before it is flushed.
+     */
+    private int pipelineDepth = 1;
+
+    /**
+     * Leave the response in the socket write buffer at the end of the request
+     * so that it is flushed together with the responses that follow it.
+     */
+    private boolean deferFlush = false;
+
     protected static class ByteBufferHolder {
         private final ByteBuffer buf;
         private final AtomicBoolean flipped;
@@ -175,6 +205,7 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
         lastWrite.set(1);
         setBlocking(true);
         flipped = false;
+        deferFlush = false;
     }
 
 
@@ -186,9 +217,37 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
     @Override
     public void endRequest() throws IOException {
         super.endRequest();
+        if (!deferFlush || !isBlocking()) {
+            flushBuffer(true);
+        }
+    }
+
+
+    /**
+     * Flush any responses that were left in the socket write buffer when
+     * their requests ended and stop deferring the flush.
+     *
+     * @throws IOException an underlying I/O error occurred
+     */
+    public void flushPipelined() throws IOException {
+        deferFlush = false;
         flushBuffer(true);
     }
 
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+
+    /**
+     * Set whether the flush at the end of the current request should be left
+     * to the processor.
+     */
+    void setDeferFlush(boolean deferFlush) {
+        this.deferFlush = deferFlush;
+    }
+
     // ------------------------------------------------ HTTP/1.1 Output Methods
 
 
@@ -257,6 +316,10 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
 
         socket = socketWrapper.getSocket();
         pool = ((NioEndpoint)endpoint).getSelectorPool();
+        gatheringWrite =
+            ((NioEndpoint)endpoint).getSocketProperties().getGatheringWrite();
+        pipelineDepth =
+            ((NioEndpoint)endpoint).getSocketProperties().getPipelineDepth();
     }
 
 
@@ -285,6 +348,11 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
         //try to write to socket first
         if (length==0) return;
 
+        if ((gatheringWrite || pipelineDepth > 1) && isBlocking()) {
+            addToBBGathering(buf, offset, length);
+            return;
+        }
+
         boolean dataLeft = flushBuffer(isBlocking());
 
         while (!dataLeft && length>0) {
@@ -305,6 +373,54 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
         }
     }
 
+    /**
+     * Collect small writes (headers, chunk framing) in the socket write buffer
+     * and write anything larger directly from the caller's array along with
+     * whatever has been collected, in a single gathering write.
+     */
+    private void addToBBGathering(byte[] buf, int offset, int length)
+            throws IOException {
+        ByteBuffer writeBuffer = socket.getBufHandler().getWriteBuffer();
+        if (flipped || (bufferedWrite != null && !bufferedWrite.isEmpty())) {
+            // Left over from a non-blocking write. Drain it, like addToBB(),
+            // so that it is written ahead of this data.
+            flushBuffer(true);
+        }
+
+        if (length < GATHER_THRESHOLD && length <= writeBuffer.remaining()) {
+            writeBuffer.put(buf, offset, length);
+        } else {
+            writeBuffer.flip();
+            flipped = true;
+            gatherBuffers[0] = writeBuffer;
+            gatherBuffers[1] = ByteBuffer.wrap(buf, offset, length);
+            NioEndpoint.KeyAttachment att = (NioEndpoint.KeyAttachment)socket.getAttachment(false);
+            if ( att == null ) throw new IOException("Key must be cancelled");
+            long writeTimeout = att.getTimeout();
+            Selector selector = null;
+            try {
+                selector = pool.get();
+            } catch ( IOException x ) {
+                //ignore
+            }
+            try {
+                pool.write(gatherBuffers, socket, selector, writeTimeout);
+                //make sure we are flushed
+                do {
+                    if (socket.flush(true,selector,writeTimeout)) break;
+                }while ( true );
+            } finally {
+                if ( selector != null ) pool.put(selector);
+                gatherBuffers[1] = null;
+                writeBuffer.clear();
+                flipped = false;
+            }
+        }
+
+        NioEndpoint.KeyAttachment ka = (NioEndpoint.KeyAttachment)socket.getAttachment(false);
+        if ( ka!= null ) ka.access();//prevent timeouts for just doing client writes
+    }
+
     private void addToBuffers(byte[] buf, int offset, int length) {
         ByteBufferHolder holder = bufferedWrite.peekLast();
         if (holder==null || holder.isFlipped() || holder.getBuf().remaining()<length) {
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.HeaderNames;
+import org.apache.tomcat.util.http.HttpMessages;
+
+/**
+ * Caches the encoded bytes of the response header lines that are the same
+ * for many responses: the status line for each status code with its default
+ * message, the Date header for the current second and the Content-Type and
+ * Server headers for the values most recently seen. A cached line is written
+ * with a single array copy rather than encoding it one character at a time.
+ * The encoding of each line is identical to that used by
+ * {@link AbstractOutputBuffer}.
+ */
+final class ResponseHeaderCache {
+
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+
+    /**
+     * Maximum number of distinct values cached for each header.
+     */
+    private static final int MAX_VALUES = Integer.getInteger(
+            "org.apache.coyote.http11.ResponseHeaderCache.MAX_VALUES",
+            256).intValue();
+
+    private static final int DATE = HeaderNames.find("date");
+    private static final int CONTENT_TYPE = HeaderNames.find("content-type");
+    private static final int SERVER = HeaderNames.find("server");
+
+    /*
+     * Fully populated before the class is published so that the lines can be
+     * read without synchronization.
+     */
+    private static final byte[][] statusLines =
+            new byte[MAX_STATUS - MIN_STATUS + 1][];
+
+    static {
+        for (int status = MIN_STATUS; status <= MAX_STATUS; status++) {
+            String message = HttpMessages.getMessage(status);
+            statusLines[status - MIN_STATUS] = encode("HTTP/1.1 " + status +
+                    " " + (message == null ? "" : message));
+        }
+    }
+
+    private static volatile CachedLine date = new CachedLine(null, null);
+
+    private static final ConcurrentHashMap<String,byte[]> contentTypes =
+            new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String,byte[]> servers =
+            new ConcurrentHashMap<>();
+
+
+    private ResponseHeaderCache() {
+        // Hide default constructor
+    }
+
+
+    /**
+     * Returns the status line, including the terminating CRLF, for the given
+     * status code and its default message, or <code>null</code> if the status
+     * code is outside the range that is cached.
+     */
+    static byte[] getStatusLine(int status) {
+        if (status < MIN_STATUS || status > MAX_STATUS) {
+            return null;
+        }
+        return statusLines[status - MIN_STATUS];
+    }
+
+
+    /**
+     * Returns the complete header line, including the terminating CRLF, for
+     * the given header or <code>null</code> if it is not one that is cached.
+     * Only headers whose name is exactly the name used by the HTTP processor,
+     * and whose value is a String, are cached.
+     *
+     * @param nameId The {@link HeaderNames} identifier of the header name
+     * @param name   The header name
+     * @param value  The header value
+     */
+    static byte[] getHeaderLine(int nameId, MessageBytes name,
+            MessageBytes value) {
+        if (nameId < 0 || name.getType() != MessageBytes.T_STR ||
+                value.getType() != MessageBytes.T_STR) {
+            return null;
+        }
+        if (nameId == DATE) {
+            if (!"Date".equals(name.getString())) {
+                return null;
+            }
+            String v = value.getString();
+            if (v == null) {
+                return null;
+            }
+            CachedLine current = date;
+            if (!v.equals(current.value)) {
+                // The date changes once a second
+                current = new CachedLine(v, encode("Date: " + v));
+                date = current;
+            }
+            return current.line;
+        } else if (nameId == CONTENT_TYPE) {
+            return getHeaderLine(contentTypes, "Content-Type", name, value);
+        } else if (nameId == SERVER) {
+            return getHeaderLine(servers, "Server", name, value);
+        }
+        return null;
+    }
+
+
+    private static byte[] getHeaderLine(ConcurrentHashMap<String,byte[]> cache,
+            String expectedName, MessageBytes name, MessageBytes value) {
+        if (!expectedName.equals(name.getString())) {
+            return null;
+        }
+        String v = value.getString();
+        if (v == null) {
+            return null;
+        }
+        byte[] line = cache.get(v);
+        if (line == null) {
+            if (cache.size() >= MAX_VALUES) {
+                // Values such as multipart boundaries are never repeated.
+                // Start again rather than stop caching the common values.
+                cache.clear();
+            }
+            line = encode(expectedName + ": " + v);
+            cache.put(v, line);
+        }
+        return line;
+    }
+
+
+    /**
+     * Encode a line in the same way as {@link AbstractOutputBuffer} encodes
+     * Strings and add the terminating CRLF.
+     */
+    private static byte[] encode(String s) {
+        int len = s.length();
+        byte[] b = new byte[len + 2];
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (((c <= 31) && (c != 9)) || c == 127 || c > 255) {
+                c = ' ';
+            }
+            b[i] = (byte) c;
+        }
+        b[len] = Constants.CR;
+        b[len + 1] = Constants.LF;
+        return b;
+    }
+
+
+    private static final class CachedLine {
+        private final String value;
+        private final byte[] line;
+
+        private CachedLine(String value, byte[] line) {
+            this.value = value;
+            this.line = line;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.coyote.http11.filters;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.coyote.OutputBuffer;
@@ -62,6 +63,24 @@ public class GzipOutputFilter implements OutputFilter {
     protected final OutputStream fakeOutputStream = new FakeOutputStream();
 
 
+    /**
+     * Deflate level used for the current response.
+     */
+    protected int level = Deflater.DEFAULT_COMPRESSION;
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Set the deflate level for the current response. This must be called
+     * before any data is written.
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+
     // --------------------------------------------------- OutputBuffer Methods
 
 
@@ -74,7 +93,7 @@ public class GzipOutputFilter implements OutputFilter {
     public int doWrite(ByteChunk chunk, Response res)
         throws IOException {
         if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
+            compressionStream = createCompressionStream();
         }
         compressionStream.write(chunk.getBytes(), chunk.getStart(),
                                 chunk.getLength());
@@ -136,7 +155,7 @@ public class GzipOutputFilter implements OutputFilter {
     public long end()
         throws IOException {
         if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
+            compressionStream = createCompressionStream();
         }
         compressionStream.finish();
         compressionStream.close();
@@ -151,6 +170,19 @@ public class GzipOutputFilter implements OutputFilter {
     public void recycle() {
         // Set compression stream to null
         compressionStream = null;
+        level = Deflater.DEFAULT_COMPRESSION;
+    }
+
+
+    protected GZIPOutputStream createCompressionStream() throws IOException {
+        if (level == Deflater.DEFAULT_COMPRESSION) {
+            return new GZIPOutputStream(fakeOutputStream, true);
+        }
+        return new GZIPOutputStream(fakeOutputStream, true) {
+            {
+                def.setLevel(level);
+            }
+        };
     }
 
 
@@ -17,23 +17,28 @@
 package org.apache.tomcat.util.buf;
 
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 
 /**
  * This class implements a String cache for ByteChunk and CharChunk.
+ * <p>
+ * Each cache is a fixed size, open addressed hash table. A String may only be
+ * stored in one of a small group of slots next to its hash position and, when
+ * all of those are in use, the new String replaces one of them using the CLOCK
+ * (second chance) algorithm. Strings that are looked up frequently therefore
+ * stay in the cache while the rest are replaced as the workload changes. Reads
+ * and writes are not synchronized: the entries are immutable apart from their
+ * reference bit so a racing thread will, at worst, miss a cached String or
+ * replace an entry another thread has just added.
+ * <p>
+ * The caches are disabled by default.
  *
  * @author Remy Maucherat
  */
 public class StringCache {
 
 
-    private static final org.apache.juli.logging.Log log=
-        org.apache.juli.logging.LogFactory.getLog( StringCache.class );
-
-
     // ------------------------------------------------------- Static Variables
 
 
@@ -48,6 +53,11 @@ public class StringCache {
             "tomcat.util.buf.StringCache.char.enabled", "false")));
 
 
+    /**
+     * @deprecated Unused. The cache adapts continuously and no longer has a
+     *             training period. Will be removed in Tomcat 9.
+     */
+    @Deprecated
     protected static int trainThreshold = Integer.parseInt(System.getProperty(
             "tomcat.util.buf.StringCache.trainThreshold", "20000"));
 
@@ -61,42 +71,67 @@ public class StringCache {
                     "tomcat.util.buf.StringCache.maxStringSize", "128"));
 
 
-   /**
+    /**
+     * The number of consecutive slots, starting at its hash position, in which
+     * a String may be stored. Must be a power of two.
+     */
+    protected static final int PROBE_LENGTH = 4;
+
+
+    /**
      * Statistics hash map for byte chunk.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final HashMap<ByteEntry,int[]> bcStats =
             new HashMap<>(cacheSize);
 
 
     /**
      * toString count for byte chunk.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static int bcCount = 0;
 
 
     /**
      * Cache for byte chunk.
      */
-    protected static ByteEntry[] bcCache = null;
+    protected static volatile ByteEntry[] bcCache = new ByteEntry[
+            tableSize(cacheSize)];
 
 
     /**
      * Statistics hash map for char chunk.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final HashMap<CharEntry,int[]> ccStats =
             new HashMap<>(cacheSize);
 
 
     /**
      * toString count for char chunk.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static int ccCount = 0;
 
 
     /**
      * Cache for char chunk.
      */
-    protected static CharEntry[] ccCache = null;
+    protected static volatile CharEntry[] ccCache = new CharEntry[
+            tableSize(cacheSize)];
+
+
+    /**
+     * Position of the clock hand within the probed slots, shared by both
+     * caches. Updates may be lost which only affects which entry is checked
+     * first.
+     */
+    private static int clockHand = 0;
 
 
     /**
@@ -123,10 +158,11 @@ public class StringCache {
 
 
     /**
-     * @param cacheSize The cacheSize to set.
+     * @param cacheSize The cacheSize to set. Any cached Strings are discarded.
      */
     public void setCacheSize(int cacheSize) {
         StringCache.cacheSize = cacheSize;
+        reset();
     }
 
 
@@ -164,7 +200,9 @@ public class StringCache {
 
     /**
      * @return Returns the trainThreshold.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     public int getTrainThreshold() {
         return trainThreshold;
     }
@@ -172,7 +210,9 @@ public class StringCache {
 
     /**
      * @param trainThreshold The trainThreshold to set.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     public void setTrainThreshold(int trainThreshold) {
         StringCache.trainThreshold = trainThreshold;
     }
@@ -200,246 +240,95 @@ public class StringCache {
     public void reset() {
         hitCount = 0;
         accessCount = 0;
-        synchronized (bcStats) {
-            bcCache = null;
-            bcCount = 0;
-        }
-        synchronized (ccStats) {
-            ccCache = null;
-            ccCount = 0;
-        }
+        int size = tableSize(cacheSize);
+        bcCache = new ByteEntry[size];
+        ccCache = new CharEntry[size];
     }
 
 
     public static String toString(ByteChunk bc) {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (bcCache == null) {
-            String value = bc.toStringInternal();
-            if (byteEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (bcStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (bcCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (bcCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<ByteEntry>> tempMap =
-                                new TreeMap<>();
-                        for (Entry<ByteEntry,int[]> item : bcStats.entrySet()) {
-                            ByteEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<ByteEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = bcStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        ByteEntry[] tempbcCache = new ByteEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        ByteChunk tempChunk = new ByteChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<ByteEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                ByteEntry entry = list.get(i);
-                                tempChunk.setBytes(entry.name, 0,
-                                        entry.name.length);
-                                int insertPos = findClosest(tempChunk,
-                                        tempbcCache, n);
-                                if (insertPos == n) {
-                                    tempbcCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempbcCache, insertPos + 1,
-                                            tempbcCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempbcCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        bcCount = 0;
-                        bcStats.clear();
-                        bcCache = tempbcCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug("ByteCache generation time: " +
-                                    (t2 - t1) + "ms");
-                        }
-                    } else {
-                        bcCount++;
-                        // Allocate new ByteEntry for the lookup
-                        ByteEntry entry = new ByteEntry();
-                        entry.value = value;
-                        int[] count = bcStats.get(entry);
-                        if (count == null) {
-                            int end = bc.getEnd();
-                            int start = bc.getStart();
-                            // Create byte array and copy bytes
-                            entry.name = new byte[bc.getLength()];
-                            System.arraycopy(bc.getBuffer(), start, entry.name,
-                                    0, end - start);
-                            // Set encoding
-                            entry.charset = bc.getCharset();
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            bcStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
+        if (!byteEnabled || bc.getLength() >= maxStringSize) {
+            return bc.toStringInternal();
+        }
+
+        accessCount++;
+
+        ByteEntry[] cache = bcCache;
+        int mask = cache.length - 1;
+        int hash = bc.hash();
+        int index = spread(hash) & mask;
+        Charset charset = bc.getCharset();
+
+        // Look for the String. Slots are never emptied so the String cannot
+        // be after the first empty slot.
+        int empty = -1;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int slot = (index + i) & mask;
+            ByteEntry entry = cache[slot];
+            if (entry == null) {
+                empty = slot;
+                break;
             }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(bc);
-            if (result == null) {
-                return bc.toStringInternal();
+            if (entry.hash == hash && entry.matches(bc) &&
+                    entry.charset.equals(charset)) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                // Note: We don't care about safety for the stats
+                hitCount++;
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = bc.toStringInternal();
+        int slot = (empty == -1) ? evict(cache, index) : empty;
+        cache[slot] = new ByteEntry(Arrays.copyOfRange(bc.getBuffer(),
+                bc.getStart(), bc.getEnd()), charset, value, hash);
+        return value;
+
     }
 
 
     public static String toString(CharChunk cc) {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (ccCache == null) {
-            String value = cc.toStringInternal();
-            if (charEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (ccStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (ccCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (ccCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<CharEntry>> tempMap =
-                                new TreeMap<>();
-                        for (Entry<CharEntry,int[]> item : ccStats.entrySet()) {
-                            CharEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<CharEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = ccStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        CharEntry[] tempccCache = new CharEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        CharChunk tempChunk = new CharChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<CharEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                CharEntry entry = list.get(i);
-                                tempChunk.setChars(entry.name, 0,
-                                        entry.name.length);
-                                int insertPos = findClosest(tempChunk,
-                                        tempccCache, n);
-                                if (insertPos == n) {
-                                    tempccCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempccCache, insertPos + 1,
-                                            tempccCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempccCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        ccCount = 0;
-                        ccStats.clear();
-                        ccCache = tempccCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug("CharCache generation time: " +
-                                    (t2 - t1) + "ms");
-                        }
-                    } else {
-                        ccCount++;
-                        // Allocate new CharEntry for the lookup
-                        CharEntry entry = new CharEntry();
-                        entry.value = value;
-                        int[] count = ccStats.get(entry);
-                        if (count == null) {
-                            int end = cc.getEnd();
-                            int start = cc.getStart();
-                            // Create char array and copy chars
-                            entry.name = new char[cc.getLength()];
-                            System.arraycopy(cc.getBuffer(), start, entry.name,
-                                    0, end - start);
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            ccStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
+        if (!charEnabled || cc.getLength() >= maxStringSize) {
+            return cc.toStringInternal();
+        }
+
+        accessCount++;
+
+        CharEntry[] cache = ccCache;
+        int mask = cache.length - 1;
+        int hash = cc.hash();
+        int index = spread(hash) & mask;
+
+        // Look for the String. Slots are never emptied so the String cannot
+        // be after the first empty slot.
+        int empty = -1;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int slot = (index + i) & mask;
+            CharEntry entry = cache[slot];
+            if (entry == null) {
+                empty = slot;
+                break;
             }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(cc);
-            if (result == null) {
-                return cc.toStringInternal();
+            if (entry.hash == hash && entry.matches(cc)) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                // Note: We don't care about safety for the stats
+                hitCount++;
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = cc.toStringInternal();
+        int slot = (empty == -1) ? evict(cache, index) : empty;
+        cache[slot] = new CharEntry(Arrays.copyOfRange(cc.getBuffer(),
+                cc.getStart(), cc.getEnd()), value, hash);
+        return value;
+
     }
 
 
@@ -449,7 +338,9 @@ public class StringCache {
     /**
      * Compare given byte chunk with byte array.
      * Return -1, 0 or +1 if inferior, equal, or superior to the String.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final int compare(ByteChunk name, byte[] compareTo) {
         int result = 0;
 
@@ -482,15 +373,25 @@ public class StringCache {
     /**
      * Find an entry given its name in the cache and return the associated
      * String.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final String find(ByteChunk name) {
-        int pos = findClosest(name, bcCache, bcCache.length);
-        if ((pos < 0) || (compare(name, bcCache[pos].name) != 0)
-                || !(name.getCharset().equals(bcCache[pos].charset))) {
-            return null;
-        } else {
-            return bcCache[pos].value;
+        ByteEntry[] cache = bcCache;
+        int mask = cache.length - 1;
+        int hash = name.hash();
+        int index = spread(hash) & mask;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            ByteEntry entry = cache[(index + i) & mask];
+            if (entry == null) {
+                return null;
+            }
+            if (entry.hash == hash && entry.matches(name) &&
+                    entry.charset.equals(name.getCharset())) {
+                return entry.value;
+            }
         }
+        return null;
     }
 
 
@@ -498,7 +399,9 @@ public class StringCache {
      * Find an entry given its name in a sorted array of map elements.
      * This will return the index for the closest inferior or equal item in the
      * given array.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final int findClosest(ByteChunk name, ByteEntry[] array,
             int len) {
 
@@ -544,7 +447,9 @@ public class StringCache {
     /**
      * Compare given char chunk with char array.
      * Return -1, 0 or +1 if inferior, equal, or superior to the String.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final int compare(CharChunk name, char[] compareTo) {
         int result = 0;
 
@@ -577,14 +482,24 @@ public class StringCache {
     /**
      * Find an entry given its name in the cache and return the associated
      * String.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final String find(CharChunk name) {
-        int pos = findClosest(name, ccCache, ccCache.length);
-        if ((pos < 0) || (compare(name, ccCache[pos].name) != 0)) {
-            return null;
-        } else {
-            return ccCache[pos].value;
+        CharEntry[] cache = ccCache;
+        int mask = cache.length - 1;
+        int hash = name.hash();
+        int index = spread(hash) & mask;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            CharEntry entry = cache[(index + i) & mask];
+            if (entry == null) {
+                return null;
+            }
+            if (entry.hash == hash && entry.matches(name)) {
+                return entry.value;
+            }
         }
+        return null;
     }
 
 
@@ -592,7 +507,9 @@ public class StringCache {
      * Find an entry given its name in a sorted array of map elements.
      * This will return the index for the closest inferior or equal item in the
      * given array.
+     * @deprecated Unused. Will be removed in Tomcat 9.
      */
+    @Deprecated
     protected static final int findClosest(CharChunk name, CharEntry[] array,
             int len) {
 
@@ -635,29 +552,109 @@ public class StringCache {
     }
 
 
-    // -------------------------------------------------- ByteEntry Inner Class
+    // ------------------------------------------------------- Private Methods
+
+
+    /**
+     * Select the slot to replace from the full group of slots starting at
+     * <code>index</code>. The first entry found, starting from the clock hand,
+     * that has not been referenced since the hand last passed it is chosen.
+     * The reference bit of each entry passed over is cleared.
+     */
+    private static int evict(Entry[] cache, int index) {
+        int mask = cache.length - 1;
+        int hand = clockHand++;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int slot = (index + ((hand + i) & (PROBE_LENGTH - 1))) & mask;
+            Entry entry = cache[slot];
+            if (!entry.referenced) {
+                return slot;
+            }
+            entry.referenced = false;
+        }
+        // Every entry has been referenced. All have now lost their second
+        // chance so replace the first one.
+        return (index + (hand & (PROBE_LENGTH - 1))) & mask;
+    }
 
 
-    private static class ByteEntry {
+    /**
+     * Return the smallest power of two that can hold the given number of
+     * entries.
+     */
+    private static int tableSize(int size) {
+        int tableSize = PROBE_LENGTH;
+        while (tableSize < size && tableSize < (1 << 30)) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+
+    /**
+     * Mix the high bits of the hash into the low bits used for the position
+     * in the table since the hash of short Strings only varies in the low
+     * bits for the last few characters.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16) ^ (hash >>> 8);
+    }
+
 
-        private byte[] name = null;
-        private Charset charset = null;
-        private String value = null;
+    // ------------------------------------------------------ Entry Inner Class
+
+
+    private abstract static class Entry {
+
+        protected final String value;
+        protected final int hash;
+
+        /**
+         * Set when the entry is used and cleared by the clock hand. Not
+         * volatile as a lost update only affects which entry is replaced.
+         */
+        protected boolean referenced = false;
+
+        protected Entry(String value, int hash) {
+            this.value = value;
+            this.hash = hash;
+        }
 
         @Override
         public String toString() {
             return value;
         }
-        @Override
-        public int hashCode() {
-            return value.hashCode();
+
+    }
+
+
+    // -------------------------------------------------- ByteEntry Inner Class
+
+
+    private static class ByteEntry extends Entry {
+
+        private final byte[] name;
+        private final Charset charset;
+
+        private ByteEntry(byte[] name, Charset charset, String value,
+                int hash) {
+            super(value, hash);
+            this.name = name;
+            this.charset = charset;
         }
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof ByteEntry) {
-                return value.equals(((ByteEntry) obj).value);
+
+        private boolean matches(ByteChunk bc) {
+            int start = bc.getStart();
+            if (bc.getEnd() - start != name.length) {
+                return false;
+            }
+            byte[] b = bc.getBuffer();
+            for (int i = 0; i < name.length; i++) {
+                if (b[start + i] != name[i]) {
+                    return false;
+                }
             }
-            return false;
+            return true;
         }
 
     }
@@ -666,25 +663,27 @@ public class StringCache {
     // -------------------------------------------------- CharEntry Inner Class
 
 
-    private static class CharEntry {
+    private static class CharEntry extends Entry {
 
-        private char[] name = null;
-        private String value = null;
+        private final char[] name;
 
-        @Override
-        public String toString() {
-            return value;
-        }
-        @Override
-        public int hashCode() {
-            return value.hashCode();
+        private CharEntry(char[] name, String value, int hash) {
+            super(value, hash);
+            this.name = name;
         }
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof CharEntry) {
-                return value.equals(((CharEntry) obj).value);
+
+        private boolean matches(CharChunk cc) {
+            int start = cc.getStart();
+            if (cc.getEnd() - start != name.length) {
+                return false;
+            }
+            char[] c = cc.getBuffer();
+            for (int i = 0; i < name.length; i++) {
+                if (c[start + i] != name[i]) {
+                    return false;
+                }
             }
-            return false;
+            return true;
         }
 
     }
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+/**
+ * A cache of re-usable objects. Implementations are free to drop objects that
+ * are pushed when the cache is full and to return <code>null</code> from
+ * {@link #pop()} whenever no cached object is readily available so callers
+ * must always be prepared to create a new instance.
+ */
+public interface ObjectCache<T> {
+
+    /**
+     * Add an object to the cache.
+     *
+     * @param obj   The object to cache
+     *
+     * @return <code>true</code> if the object was cached, <code>false</code>
+     *         if it was not (e.g. because the cache is full)
+     */
+    boolean push(T obj);
+
+    /**
+     * Obtain an object from the cache.
+     *
+     * @return A cached object or <code>null</code> if none is available
+     */
+    T pop();
+
+    /**
+     * Remove all objects from the cache.
+     */
+    void clear();
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free alternative to {@link SynchronizedStack} for use where many
+ * threads push and pop concurrently and contention on a single monitor becomes
+ * significant. Objects are held in a fixed size array of slots that is split
+ * into stripes. Each thread starts searching in the stripe selected by its
+ * thread ID and only moves on to the other stripes if its own stripe is full
+ * (push) or empty (pop). A count of the objects in each stripe is kept so
+ * that full or empty stripes are skipped without looking at their slots.
+ * Slots are claimed and released with compare-and-set so no locks are taken
+ * and, since no nodes are allocated, no garbage is created.
+ * <p>
+ * Unlike {@link SynchronizedStack} this cache does not guarantee LIFO order
+ * and it never grows beyond the capacity provided at construction time.
+ */
+public class StripedObjectCache<T> implements ObjectCache<T> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /*
+     * Slots per stripe. Sixteen references fill at least one cache line so
+     * threads working in different stripes do not share lines.
+     */
+    private static final int STRIPE_SIZE = 16;
+
+    /*
+     * Spacing of the per-stripe counts. Sixteen ints fill a cache line so the
+     * count of each stripe is on its own line.
+     */
+    private static final int COUNT_SPACING = 16;
+
+    private final AtomicReferenceArray<T> slots;
+    private final int stripeCount;
+
+    /*
+     * Number of objects in each stripe. A count is updated after the slot it
+     * refers to so it may briefly be out by one, causing a stripe to be
+     * skipped. Each successful compare-and-set is matched by exactly one
+     * update so the counts do not drift.
+     */
+    private final AtomicIntegerArray counts;
+
+
+    public StripedObjectCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity  The maximum number of objects to cache. A value of
+     *                  <code>-1</code> (no limit for {@link SynchronizedStack})
+     *                  uses {@link #DEFAULT_CAPACITY}.
+     */
+    public StripedObjectCache(int capacity) {
+        if (capacity < 0) {
+            capacity = DEFAULT_CAPACITY;
+        }
+        // Round up to a whole number of stripes
+        stripeCount = Math.max(1, (capacity + STRIPE_SIZE - 1) / STRIPE_SIZE);
+        slots = new AtomicReferenceArray<>(capacity == 0 ? 0 : stripeCount * STRIPE_SIZE);
+        counts = new AtomicIntegerArray(stripeCount * COUNT_SPACING);
+    }
+
+
+    @Override
+    public boolean push(T obj) {
+        if (slots.length() == 0) {
+            return false;
+        }
+        int first = stripe();
+        for (int i = 0; i < stripeCount; i++) {
+            int stripe = (first + i) % stripeCount;
+            if (counts.get(stripe * COUNT_SPACING) >= STRIPE_SIZE) {
+                continue;
+            }
+            int base = stripe * STRIPE_SIZE;
+            for (int j = 0; j < STRIPE_SIZE; j++) {
+                int idx = base + j;
+                if (slots.get(idx) == null && slots.compareAndSet(idx, null, obj)) {
+                    counts.incrementAndGet(stripe * COUNT_SPACING);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public T pop() {
+        if (slots.length() == 0) {
+            return null;
+        }
+        int first = stripe();
+        for (int i = 0; i < stripeCount; i++) {
+            int stripe = (first + i) % stripeCount;
+            if (counts.get(stripe * COUNT_SPACING) <= 0) {
+                continue;
+            }
+            int base = stripe * STRIPE_SIZE;
+            for (int j = 0; j < STRIPE_SIZE; j++) {
+                int idx = base + j;
+                T result = slots.get(idx);
+                if (result != null && slots.compareAndSet(idx, result, null)) {
+                    counts.decrementAndGet(stripe * COUNT_SPACING);
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.getAndSet(i, null) != null) {
+                counts.decrementAndGet(i / STRIPE_SIZE * COUNT_SPACING);
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /*
+     * The stripe for the current thread.
+     */
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id % stripeCount);
+    }
+}
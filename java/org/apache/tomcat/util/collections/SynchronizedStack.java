@@ -23,7 +23,7 @@ package org.apache.tomcat.util.collections;
  * The aim is to provide the bare minimum of required functionality as quickly
  * as possible with minimum garbage.
  */
-public class SynchronizedStack<T> {
+public class SynchronizedStack<T> implements ObjectCache<T> {
 
     public static final int DEFAULT_SIZE = 128;
     private static final int DEFAULT_LIMIT = -1;
@@ -50,6 +50,7 @@ public class SynchronizedStack<T> {
     }
 
 
+    @Override
     public synchronized boolean push(T obj) {
         index++;
         if (index == size) {
@@ -65,6 +66,7 @@ public class SynchronizedStack<T> {
     }
 
     @SuppressWarnings("unchecked")
+    @Override
     public synchronized T pop() {
         if (index == -1) {
             return null;
@@ -74,6 +76,7 @@ public class SynchronizedStack<T> {
         return result;
     }
 
+    @Override
     public synchronized void clear() {
         if (index > -1) {
             for (int i = 0; i < index + 1; i++) {
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import org.apache.tomcat.util.buf.Ascii;
+
+/**
+ * Identifies the commonly used HTTP header names with a perfect hash so that
+ * {@link MimeHeaders} can compare a header name with an <code>int</code>
+ * rather than with a case-insensitive scan of its characters. The identifier
+ * of a name is assigned once, when a header is added, and looking a name up
+ * costs a single hash of its characters and one comparison.
+ */
+public final class HeaderNames {
+
+    /**
+     * The known names, in lower case. The identifier of a name is its index
+     * in this array.
+     */
+    private static final String[] NAMES = {
+        "accept",
+        "accept-charset",
+        "accept-encoding",
+        "accept-language",
+        "accept-ranges",
+        "age",
+        "allow",
+        "authorization",
+        "cache-control",
+        "connection",
+        "content-disposition",
+        "content-encoding",
+        "content-language",
+        "content-length",
+        "content-location",
+        "content-range",
+        "content-type",
+        "cookie",
+        "cookie2",
+        "date",
+        "etag",
+        "expect",
+        "expires",
+        "host",
+        "if-match",
+        "if-modified-since",
+        "if-none-match",
+        "if-range",
+        "if-unmodified-since",
+        "keep-alive",
+        "last-modified",
+        "location",
+        "max-forwards",
+        "origin",
+        "pragma",
+        "proxy-authenticate",
+        "proxy-authorization",
+        "range",
+        "referer",
+        "retry-after",
+        "sec-websocket-extensions",
+        "sec-websocket-key",
+        "sec-websocket-protocol",
+        "sec-websocket-version",
+        "server",
+        "set-cookie",
+        "set-cookie2",
+        "te",
+        "trailer",
+        "transfer-encoding",
+        "upgrade",
+        "user-agent",
+        "vary",
+        "via",
+        "warning",
+        "www-authenticate",
+        "x-forwarded-by",
+        "x-forwarded-for",
+        "x-forwarded-proto",
+        "x-requested-with"
+    };
+
+    private static final byte[][] NAME_BYTES = new byte[NAMES.length][];
+
+    /**
+     * Maps the hash of a name to its identifier plus one, zero marking an
+     * empty slot.
+     */
+    private static final byte[] table;
+    private static final int mask;
+    private static final int seed;
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            String name = NAMES[i];
+            byte[] b = new byte[name.length()];
+            for (int j = 0; j < b.length; j++) {
+                b[j] = (byte) name.charAt(j);
+            }
+            NAME_BYTES[i] = b;
+        }
+
+        // Search for a multiplier that maps every known name to a distinct
+        // slot, growing the table if there is none for the current size.
+        int size = Integer.highestOneBit(NAMES.length) << 3;
+        byte[] slots = null;
+        int m = 0;
+        int s = 31;
+        search:
+        while (true) {
+            for (s = 31; s < (31 + (1 << 16)); s += 2) {
+                slots = new byte[size];
+                m = size - 1;
+                boolean perfect = true;
+                for (int i = 0; i < NAMES.length; i++) {
+                    byte[] b = NAME_BYTES[i];
+                    int slot = index(hash(b, 0, b.length, s), m);
+                    if (slots[slot] != 0) {
+                        perfect = false;
+                        break;
+                    }
+                    slots[slot] = (byte) (i + 1);
+                }
+                if (perfect) {
+                    break search;
+                }
+            }
+            size <<= 1;
+        }
+        table = slots;
+        mask = m;
+        seed = s;
+    }
+
+
+    private HeaderNames() {
+        // Hide default constructor
+    }
+
+
+    /**
+     * Returns the number of known header names. Identifiers are in the range
+     * <code>0</code> to <code>count() - 1</code>.
+     */
+    public static int count() {
+        return NAMES.length;
+    }
+
+
+    /**
+     * Returns the lower case name with the given identifier.
+     */
+    public static String getName(int id) {
+        return NAMES[id];
+    }
+
+
+    /**
+     * Returns the identifier of the given header name, ignoring case, or
+     * <code>-1</code> if it is not a known name.
+     */
+    public static int find(byte[] b, int start, int len) {
+        if (b == null) {
+            return -1;
+        }
+        int id = table[index(hash(b, start, len, seed), mask)] - 1;
+        if (id < 0) {
+            return -1;
+        }
+        byte[] name = NAME_BYTES[id];
+        if (name.length != len) {
+            return -1;
+        }
+        for (int i = 0; i < len; i++) {
+            if (Ascii.toLower(b[start + i]) != name[i]) {
+                return -1;
+            }
+        }
+        return id;
+    }
+
+
+    /**
+     * Returns the identifier of the given header name, ignoring case, or
+     * <code>-1</code> if it is not a known name.
+     */
+    public static int find(String s) {
+        if (s == null) {
+            return -1;
+        }
+        int len = s.length();
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c > 0x7f) {
+                return -1;
+            }
+            h = h * seed + (c | 0x20);
+        }
+        int id = table[index(h, mask)] - 1;
+        if (id < 0) {
+            return -1;
+        }
+        byte[] name = NAME_BYTES[id];
+        if (name.length != len) {
+            return -1;
+        }
+        for (int i = 0; i < len; i++) {
+            if (Ascii.toLower(s.charAt(i)) != name[i]) {
+                return -1;
+            }
+        }
+        return id;
+    }
+
+
+    /*
+     * Setting bit 5 of each byte folds the case of ASCII letters, which is all
+     * the hash needs as a match is always confirmed by comparing the name.
+     */
+    private static int hash(byte[] b, int start, int len, int s) {
+        int h = 0;
+        for (int i = start; i < start + len; i++) {
+            h = h * s + ((b[i] & 0xff) | 0x20);
+        }
+        return h;
+    }
+
+
+    private static int index(int h, int m) {
+        return (h ^ (h >>> 16)) & m;
+    }
+}
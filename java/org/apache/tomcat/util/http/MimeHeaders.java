@@ -18,8 +18,12 @@ package org.apache.tomcat.util.http;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Enumeration;
 
+import org.apache.tomcat.util.buf.Ascii;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.res.StringManager;
 
@@ -57,12 +61,15 @@ import org.apache.tomcat.util.res.StringManager;
    Apache seems to be using a similar method for storing and manipulating
    headers.
 
-   Future enhancements:
-   - hash the headers the first time a header is requested ( i.e. if the
-   servlet needs direct access to headers).
-   - scan "common" values ( length, cookies, etc ) during the parse
-   ( addHeader hook )
+   Each field records the HeaderNames identifier of its name when it is
+   added, so looking up a common header ( length, cookies, etc ) compares
+   ints rather than scanning characters.
 
+   Once there are more than INDEX_THRESHOLD fields, the first lookup by
+   name builds an open addressing hash of the field names and later
+   lookups use it until a field is removed or the headers are recycled.
+   The arrays of the index are kept for the next request, so recycling
+   stays allocation free.
 */
 
 
@@ -82,7 +89,6 @@ import org.apache.tomcat.util.res.StringManager;
  *  XXX one-buffer parsing - for http ( other protocols don't need that )
  *  XXX remove unused methods
  *  XXX External enumerations, with 0 GC.
- *  XXX use HeaderName ID
  *
  *
  * @author dac@eng.sun.com
@@ -115,6 +121,39 @@ public class MimeHeaders {
      */
     private int limit = -1;
 
+    /**
+     * The number of fields above which lookups by name use an index rather
+     * than a linear scan.
+     */
+    private static final int INDEX_THRESHOLD = 16;
+
+    /**
+     * Open addressing hash of the field names. Each slot holds one plus the
+     * position of the first field with a given name, or zero if it is empty.
+     */
+    private int[] indexTable;
+
+    /**
+     * For each field, one plus the position of the next field with the same
+     * name, or zero if it is the last one.
+     */
+    private int[] indexNext;
+
+    /**
+     * The hash of the name of each field.
+     */
+    private int[] indexHash;
+
+    /**
+     * Is the index valid for the current fields?
+     */
+    private boolean indexed;
+
+    /**
+     * Is there a field whose name cannot be indexed?
+     */
+    private boolean indexDisabled;
+
     /**
      * Creates a new MimeHeaders object using a default buffer size.
      */
@@ -132,6 +171,7 @@ public class MimeHeaders {
             MimeHeaderField tmp[] = new MimeHeaderField[limit];
             System.arraycopy(headers, 0, tmp, 0, count);
             headers = tmp;
+            indexed = false;
         }
     }
 
@@ -151,6 +191,8 @@ public class MimeHeaders {
             headers[i].recycle();
         }
         count = 0;
+        indexed = false;
+        indexDisabled = false;
     }
 
     /**
@@ -185,12 +227,22 @@ public class MimeHeaders {
 
     /**
      * Returns the Nth header name, or null if there is no such header.
-     * This may be used to iterate through all header fields.
+     * This may be used to iterate through all header fields. The name must
+     * not be modified as lookups by name rely on the identifier recorded when
+     * the header was added.
      */
     public MessageBytes getName(int n) {
         return n >= 0 && n < count ? headers[n].getName() : null;
     }
 
+    /**
+     * Returns the {@link HeaderNames} identifier of the Nth header name, or -1
+     * if there is no such header or its name is not a known name.
+     */
+    public int getNameId(int n) {
+        return n >= 0 && n < count ? headers[n].getNameId() : -1;
+    }
+
     /**
      * Returns the Nth header value, or null if there is no such header.
      * This may be used to iterate through all header fields.
@@ -209,8 +261,22 @@ public class MimeHeaders {
         // of constructing the hashtable
 
         // A custom search tree may be better
+        return findHeader(name, HeaderNames.find(name), starting);
+    }
+
+    private int findHeader(String name, int id, int starting) {
+        if (useIndex()) {
+            int hash = hash(name, id);
+            if (hash >= 0) {
+                int i = findFirst(name, id, hash);
+                while (i >= 0 && i < starting) {
+                    i = indexNext[i] - 1;
+                }
+                return i;
+            }
+        }
         for (int i = starting; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+            if (headers[i].nameEquals(name, id)) {
                 return i;
             }
         }
@@ -267,8 +333,9 @@ public class MimeHeaders {
         container for the new value
     */
     public MessageBytes addValue( String name ) {
-         MimeHeaderField mh = createHeader();
-        mh.getName().setString(name);
+        MimeHeaderField mh = createHeader();
+        mh.setName(name, HeaderNames.find(name));
+        addToIndex();
         return mh.getValue();
     }
 
@@ -279,7 +346,8 @@ public class MimeHeaders {
     public MessageBytes addValue(byte b[], int startN, int len)
     {
         MimeHeaderField mhf=createHeader();
-        mhf.getName().setBytes(b, startN, len);
+        mhf.setName(b, startN, len, HeaderNames.find(b, startN, len));
+        addToIndex();
         return mhf.getValue();
     }
 
@@ -289,18 +357,21 @@ public class MimeHeaders {
         if this .
     */
     public MessageBytes setValue( String name ) {
-        for ( int i = 0; i < count; i++ ) {
-            if(headers[i].getName().equalsIgnoreCase(name)) {
+        int id = HeaderNames.find(name);
+        int i = findHeader(name, id, 0);
+        if (i >= 0) {
+            if (!indexed || indexNext[i] != 0) {
                 for ( int j=i+1; j < count; j++ ) {
-                    if(headers[j].getName().equalsIgnoreCase(name)) {
+                    if(headers[j].nameEquals(name, id)) {
                         removeHeader(j--);
                     }
                 }
-                return headers[i].getValue();
             }
+            return headers[i].getValue();
         }
         MimeHeaderField mh = createHeader();
-        mh.getName().setString(name);
+        mh.setName(name, id);
+        addToIndex();
         return mh.getValue();
     }
 
@@ -311,12 +382,8 @@ public class MimeHeaders {
      * in the header, an arbitrary one is returned.
      */
     public MessageBytes getValue(String name) {
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
-                return headers[i].getValue();
-            }
-        }
-        return null;
+        int i = findHeader(name, HeaderNames.find(name), 0);
+        return i >= 0 ? headers[i].getValue() : null;
     }
 
     /**
@@ -325,9 +392,20 @@ public class MimeHeaders {
      * unique then an {@link IllegalArgumentException} is thrown.
      */
     public MessageBytes getUniqueValue(String name) {
+        int id = HeaderNames.find(name);
+        int first = findHeader(name, id, 0);
+        if (first < 0) {
+            return null;
+        }
+        if (indexed) {
+            if (indexNext[first] != 0) {
+                throw new IllegalArgumentException();
+            }
+            return headers[first].getValue();
+        }
         MessageBytes result = null;
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+        for (int i = first; i < count; i++) {
+            if (headers[i].nameEquals(name, id)) {
                 if (result == null) {
                     result = headers[i].getValue();
                 } else {
@@ -355,8 +433,13 @@ public class MimeHeaders {
         // XXX
         // warning: rather sticky code; heavily tuned
 
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
+        int id = HeaderNames.find(name);
+        int first = findHeader(name, id, 0);
+        if (first < 0) {
+            return;
+        }
+        for (int i = first; i < count; i++) {
+            if (headers[i].nameEquals(name, id)) {
                 removeHeader(i--);
             }
         }
@@ -373,6 +456,159 @@ public class MimeHeaders {
         headers[idx] = headers[count - 1];
         headers[count - 1] = mh;
         count--;
+        indexed = false;
+    }
+
+    // -------------------- Index --------------------
+
+    /**
+     * Ensure the index is built if there are enough fields to warrant one.
+     *
+     * @return <code>true</code> if lookups should use the index
+     */
+    private boolean useIndex() {
+        if (indexed) {
+            return true;
+        }
+        if (count <= INDEX_THRESHOLD || indexDisabled) {
+            return false;
+        }
+        int size = Integer.highestOneBit(count) << 2;
+        if (indexTable == null || indexTable.length < size) {
+            indexTable = new int[size];
+        } else {
+            Arrays.fill(indexTable, 0);
+        }
+        if (indexNext == null || indexNext.length < headers.length) {
+            indexNext = new int[headers.length];
+            indexHash = new int[headers.length];
+        }
+        for (int i = 0; i < count; i++) {
+            if (!index(i)) {
+                // Names that are not US-ASCII can only be compared with a
+                // scan, so don't index these headers at all
+                indexDisabled = true;
+                return false;
+            }
+        }
+        indexed = true;
+        return true;
+    }
+
+    /**
+     * Add the last field to the index, if there is one.
+     */
+    private void addToIndex() {
+        if (indexed) {
+            int i = count - 1;
+            if (i >= indexNext.length || count > indexTable.length >> 1
+                    || !index(i)) {
+                // Rebuild the index, with larger arrays, on the next lookup
+                indexed = false;
+            }
+        }
+    }
+
+    private boolean index(int i) {
+        MimeHeaderField field = headers[i];
+        int hash = hash(field);
+        if (hash < 0) {
+            return false;
+        }
+        indexHash[i] = hash;
+        indexNext[i] = 0;
+        int mask = indexTable.length - 1;
+        int slot = hash & mask;
+        int j;
+        while ((j = indexTable[slot] - 1) >= 0) {
+            if (indexHash[j] == hash && field.nameEquals(headers[j])) {
+                while (indexNext[j] != 0) {
+                    j = indexNext[j] - 1;
+                }
+                indexNext[j] = i + 1;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        indexTable[slot] = i + 1;
+        return true;
+    }
+
+    private int findFirst(String name, int id, int hash) {
+        int mask = indexTable.length - 1;
+        int slot = hash & mask;
+        int i;
+        while ((i = indexTable[slot] - 1) >= 0) {
+            if (indexHash[i] == hash && headers[i].nameEquals(name, id)) {
+                return i;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /*
+     * Known names hash to their identifier. Other names hash their characters
+     * with the case of ASCII letters folded. Equal names always have the same
+     * hash since the index only holds US-ASCII names. Returns -1 if the name
+     * cannot be indexed.
+     */
+    private static int hash(MimeHeaderField field) {
+        if (field.getNameId() >= 0) {
+            return spread(field.getNameId());
+        }
+        MessageBytes name = field.getName();
+        int h = 0;
+        switch (name.getType()) {
+        case MessageBytes.T_BYTES: {
+            ByteChunk bc = name.getByteChunk();
+            byte[] b = bc.getBuffer();
+            for (int i = bc.getStart(); i < bc.getEnd(); i++) {
+                if (b[i] < 0) {
+                    return -1;
+                }
+                h = 31 * h + (b[i] | 0x20);
+            }
+            return spread(h);
+        }
+        case MessageBytes.T_CHARS: {
+            CharChunk cc = name.getCharChunk();
+            char[] c = cc.getBuffer();
+            for (int i = cc.getStart(); i < cc.getEnd(); i++) {
+                if (c[i] > 0x7f) {
+                    return -1;
+                }
+                h = 31 * h + (c[i] | 0x20);
+            }
+            return spread(h);
+        }
+        case MessageBytes.T_STR:
+            return hash(name.getString(), -1);
+        default:
+            return -1;
+        }
+    }
+
+    private static int hash(String name, int id) {
+        if (id >= 0) {
+            return spread(id);
+        }
+        if (name == null) {
+            return -1;
+        }
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c > 0x7f) {
+                return -1;
+            }
+            h = 31 * h + (c | 0x20);
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) & 0x7fffffff;
     }
 
 }
@@ -401,8 +637,10 @@ class NamesEnumerator implements Enumeration<String> {
         next=null;
         for(; pos< size; pos++ ) {
             next=headers.getName( pos ).toString();
+            int id=headers.getNameId( pos );
             for( int j=0; j<pos ; j++ ) {
-                if( headers.getName( j ).equalsIgnoreCase( next )) {
+                if( id >= 0 ? headers.getNameId( j ) == id :
+                        headers.getName( j ).equalsIgnoreCase( next )) {
                     // duplicate.
                     next=null;
                     break;
@@ -440,9 +678,11 @@ class ValuesEnumerator implements Enumeration<String> {
     private MessageBytes next;
     private final MimeHeaders headers;
     private final String name;
+    private final int id;
 
     ValuesEnumerator(MimeHeaders headers, String name) {
         this.name=name;
+        this.id=HeaderNames.find(name);
         this.headers=headers;
         pos=0;
         size = headers.size();
@@ -452,8 +692,8 @@ class ValuesEnumerator implements Enumeration<String> {
     private void findNext() {
         next=null;
         for(; pos< size; pos++ ) {
-            MessageBytes n1=headers.getName( pos );
-            if( n1.equalsIgnoreCase( name )) {
+            if( id >= 0 ? headers.getNameId( pos ) == id :
+                    headers.getName( pos ).equalsIgnoreCase( name )) {
                 next=headers.getValue( pos );
                 break;
             }
@@ -478,6 +718,7 @@ class MimeHeaderField {
 
     private final MessageBytes nameB = MessageBytes.newInstance();
     private final MessageBytes valueB = MessageBytes.newInstance();
+    private int nameId = -1;
 
     /**
      * Creates a new, uninitialized header field.
@@ -489,12 +730,76 @@ class MimeHeaderField {
     public void recycle() {
         nameB.recycle();
         valueB.recycle();
+        nameId = -1;
     }
 
     public MessageBytes getName() {
         return nameB;
     }
 
+    public int getNameId() {
+        return nameId;
+    }
+
+    public void setName(String name, int id) {
+        nameB.setString(name);
+        nameId = id;
+    }
+
+    public void setName(byte[] b, int start, int len, int id) {
+        nameB.setBytes(b, start, len);
+        nameId = id;
+    }
+
+    /**
+     * Compares the name of this field with the name of another field.
+     */
+    public boolean nameEquals(MimeHeaderField other) {
+        if (nameId >= 0 || other.nameId >= 0) {
+            return nameId == other.nameId;
+        }
+        MessageBytes otherName = other.getName();
+        if (otherName.getType() == MessageBytes.T_STR) {
+            return nameB.equalsIgnoreCase(otherName.getString());
+        }
+        if (nameB.getType() == MessageBytes.T_STR) {
+            return otherName.equalsIgnoreCase(nameB.getString());
+        }
+        if (nameB.getType() == MessageBytes.T_BYTES
+                && otherName.getType() == MessageBytes.T_BYTES) {
+            ByteChunk b1 = nameB.getByteChunk();
+            ByteChunk b2 = otherName.getByteChunk();
+            int len = b1.getLength();
+            if (len != b2.getLength()) {
+                return false;
+            }
+            byte[] buf1 = b1.getBuffer();
+            byte[] buf2 = b2.getBuffer();
+            int off1 = b1.getStart();
+            int off2 = b2.getStart();
+            for (int i = 0; i < len; i++) {
+                if (Ascii.toLower(buf1[off1 + i]) !=
+                        Ascii.toLower(buf2[off2 + i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return nameB.equalsIgnoreCase(otherName.toString());
+    }
+
+    /**
+     * Compares the name of this field with the given name, whose
+     * {@link HeaderNames} identifier is <code>id</code>. Known names compare
+     * by identifier alone and can never equal an unknown name.
+     */
+    public boolean nameEquals(String name, int id) {
+        if (id >= 0) {
+            return nameId == id;
+        }
+        return nameId < 0 && nameB.equalsIgnoreCase(name);
+    }
+
     public MessageBytes getValue() {
         return valueB;
     }
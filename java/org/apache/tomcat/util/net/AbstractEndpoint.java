@@ -515,19 +515,13 @@ public abstract class AbstractEndpoint {
      */
     protected void unlockAccept() {
         // Only try to unlock the acceptor if it is necessary
-        boolean unlockRequired = false;
-        for (Acceptor acceptor : acceptors) {
-            if (acceptor.getState() == AcceptorState.RUNNING) {
-                unlockRequired = true;
-                break;
-            }
-        }
-        if (!unlockRequired) {
+        int unlockRequired = getRunningAcceptorCount();
+        if (unlockRequired == 0) {
             return;
         }
 
-        java.net.Socket s = null;
         InetSocketAddress saddr = null;
+        ArrayList<java.net.Socket> sockets = new ArrayList<>();
         try {
             // Need to create a connection to unlock the accept();
             if (address == null) {
@@ -535,7 +529,54 @@ public abstract class AbstractEndpoint {
             } else {
                 saddr = new InetSocketAddress(address, getLocalPort());
             }
-            s = new java.net.Socket();
+
+            // Wait for upto 1000ms acceptor threads to unlock
+            long waitLeft = 1000;
+            while (unlockRequired > 0 && waitLeft > 0) {
+                /*
+                 * Send one connection per running acceptor. When the acceptors
+                 * have a listening socket each (SO_REUSEPORT) the kernel picks
+                 * which one receives a connection so any acceptor that is still
+                 * running after a short wait is sent another connection.
+                 */
+                for (int i = 0; i < unlockRequired; i++) {
+                    sockets.add(openUnlockConnection(saddr));
+                }
+                Thread.sleep(50);
+                waitLeft -= 50;
+                unlockRequired = getRunningAcceptorCount();
+            }
+        } catch(Exception e) {
+            if (getLog().isDebugEnabled()) {
+                getLog().debug(sm.getString("endpoint.debug.unlock", "" + getPort()), e);
+            }
+        } finally {
+            for (java.net.Socket s : sockets) {
+                try {
+                    s.close();
+                } catch (Exception e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+
+    private int getRunningAcceptorCount() {
+        int count = 0;
+        for (Acceptor acceptor : acceptors) {
+            if (acceptor.getState() == AcceptorState.RUNNING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    private java.net.Socket openUnlockConnection(InetSocketAddress saddr)
+            throws Exception {
+        java.net.Socket s = new java.net.Socket();
+        try {
             int stmo = 2 * 1000;
             int utmo = 2 * 1000;
             if (getSocketProperties().getSoTimeout() > stmo)
@@ -565,29 +606,15 @@ public abstract class AbstractEndpoint {
             if (getLog().isDebugEnabled()) {
                 getLog().debug("Socket unlock completed for:"+saddr);
             }
-
-            // Wait for upto 1000ms acceptor threads to unlock
-            long waitLeft = 1000;
-            for (Acceptor acceptor : acceptors) {
-                while (waitLeft > 0 &&
-                        acceptor.getState() == AcceptorState.RUNNING) {
-                    Thread.sleep(50);
-                    waitLeft -= 50;
-                }
-            }
-        } catch(Exception e) {
-            if (getLog().isDebugEnabled()) {
-                getLog().debug(sm.getString("endpoint.debug.unlock", "" + getPort()), e);
-            }
-        } finally {
-            if (s != null) {
-                try {
-                    s.close();
-                } catch (Exception e) {
-                    // Ignore
-                }
+        } catch (Exception e) {
+            try {
+                s.close();
+            } catch (Exception e2) {
+                // Ignore
             }
+            throw e;
         }
+        return s;
     }
 
 
@@ -621,7 +648,7 @@ public abstract class AbstractEndpoint {
     }
 
     protected final void startAcceptorThreads() {
-        int count = getAcceptorThreadCount();
+        int count = getAcceptorThreadsToStart();
         acceptors = new Acceptor[count];
 
         for (int i = 0; i < count; i++) {
@@ -636,6 +663,16 @@ public abstract class AbstractEndpoint {
     }
 
 
+    /**
+     * Hook to allow Endpoints to start a different number of acceptor threads
+     * to the configured {@link #getAcceptorThreadCount()} without changing
+     * the configured value.
+     */
+    protected int getAcceptorThreadsToStart() {
+        return getAcceptorThreadCount();
+    }
+
+
     /**
      * Hook to allow Endpoints to provide a specific Acceptor implementation.
      */
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * A pool of equally sized {@link ByteBuffer}s. Rather than allocating each
+ * buffer individually, the pool allocates slabs of memory large enough for a
+ * number of buffers and slices them up. Buffers are borrowed by a connection
+ * only while it has data in flight and are returned once it goes idle, so the
+ * memory used grows with the number of active connections rather than with the
+ * number of open connections.
+ * <p>
+ * The pool never shrinks. Slabs are only released when the pool is cleared and
+ * all of the buffers sliced from them have been discarded.
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int buffersPerSlab;
+    private final boolean direct;
+
+    private final SynchronizedStack<ByteBuffer> free = new SynchronizedStack<>();
+
+    private final AtomicInteger allocated = new AtomicInteger(0);
+    private final AtomicInteger borrowed = new AtomicInteger(0);
+
+
+    /**
+     * @param bufferSize    The capacity of each buffer in bytes
+     * @param slabSize      The size in bytes of the slabs buffers are sliced
+     *                      from. Slabs always hold at least one buffer.
+     * @param direct        Should direct buffers be used?
+     */
+    public ByteBufferPool(int bufferSize, int slabSize, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.buffersPerSlab = Math.max(1, slabSize / bufferSize);
+        this.direct = direct;
+    }
+
+
+    /**
+     * Obtain a cleared buffer from the pool, allocating a new slab if no free
+     * buffers are available.
+     */
+    public ByteBuffer borrow() {
+        ByteBuffer result = free.pop();
+        if (result == null) {
+            result = allocateSlab();
+        }
+        borrowed.incrementAndGet();
+        result.clear();
+        return result;
+    }
+
+
+    /**
+     * Return a buffer previously obtained from {@link #borrow()}. The caller
+     * must not use the buffer after it has been returned.
+     */
+    public void release(ByteBuffer buffer) {
+        borrowed.decrementAndGet();
+        buffer.clear();
+        free.push(buffer);
+    }
+
+
+    /**
+     * Drop all free buffers. Buffers that are currently borrowed are not
+     * affected and will be added back to the pool when they are released.
+     */
+    public void clear() {
+        ByteBuffer buffer = free.pop();
+        while (buffer != null) {
+            allocated.decrementAndGet();
+            buffer = free.pop();
+        }
+    }
+
+
+    private synchronized ByteBuffer allocateSlab() {
+        // Another thread may have allocated a slab while this one waited
+        ByteBuffer result = free.pop();
+        if (result != null) {
+            return result;
+        }
+        int slabSize = bufferSize * buffersPerSlab;
+        ByteBuffer slab;
+        if (direct) {
+            slab = ByteBuffer.allocateDirect(slabSize);
+        } else {
+            slab = ByteBuffer.allocate(slabSize);
+        }
+        for (int i = 0; i < buffersPerSlab; i++) {
+            slab.limit(bufferSize * (i + 1));
+            slab.position(bufferSize * i);
+            ByteBuffer buffer = slab.slice();
+            if (result == null) {
+                result = buffer;
+            } else {
+                free.push(buffer);
+            }
+        }
+        allocated.addAndGet(buffersPerSlab);
+        return result;
+    }
+
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The number of buffers that have been sliced from slabs and not
+     *         discarded by {@link #clear()}
+     */
+    public int getAllocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * @return The number of buffers currently in use by connections
+     */
+    public int getBorrowedCount() {
+        return borrowed.get();
+    }
+
+    /**
+     * @return The number of bytes allocated for buffers
+     */
+    public long getAllocatedBytes() {
+        return (long) allocated.get() * bufferSize;
+    }
+}
@@ -19,10 +19,12 @@ package org.apache.tomcat.util.net;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 
+import org.apache.tomcat.util.net.NioEndpoint.NioBufferHandler;
 import org.apache.tomcat.util.net.NioEndpoint.Poller;
 import org.apache.tomcat.util.net.SecureNioChannel.ApplicationBufferHandler;
 
@@ -35,7 +37,7 @@ import org.apache.tomcat.util.net.SecureNioChannel.ApplicationBufferHandler;
  * @author Filip Hanik
  * @version 1.0
  */
-public class NioChannel implements ByteChannel {
+public class NioChannel implements ByteChannel, GatheringByteChannel {
 
     protected static ByteBuffer emptyBuf = ByteBuffer.allocate(0);
 
@@ -47,6 +49,12 @@ public class NioChannel implements ByteChannel {
 
     protected boolean sendFile = false;
 
+    /*
+     * Only changed by the thread processing the channel, while holding the
+     * channel's monitor.
+     */
+    private volatile int recycleCount = 0;
+
     public NioChannel(SocketChannel channel, ApplicationBufferHandler bufHandler) {
         this.sc = channel;
         this.bufHandler = bufHandler;
@@ -58,11 +66,68 @@ public class NioChannel implements ByteChannel {
      * @throws IOException If a problem was encountered resetting the channel
      */
     public void reset() throws IOException {
-        bufHandler.getReadBuffer().clear();
-        bufHandler.getWriteBuffer().clear();
+        if (releaseBuffers(true)) {
+            ((NioBufferHandler) bufHandler).open();
+        } else {
+            bufHandler.getReadBuffer().clear();
+            bufHandler.getWriteBuffer().clear();
+        }
         this.sendFile = false;
     }
 
+    /**
+     * Return any buffers this channel has borrowed from the endpoint's buffer
+     * pool so they may be used by other channels. They will be borrowed again
+     * the next time they are required. This must only be called by the thread
+     * currently processing the channel and only when the application buffers
+     * hold no data. A thread that closes the channel while another may be
+     * processing it should call {@link #closeBuffers()} instead.
+     *
+     * @param force     If <code>false</code>, buffers that may still hold
+     *                  data (e.g. the network buffers of a secure channel) are
+     *                  kept
+     * @return <code>true</code> if the buffers of this channel are pooled
+     */
+    public boolean releaseBuffers(boolean force) {
+        if (bufHandler instanceof NioBufferHandler) {
+            return ((NioBufferHandler) bufHandler).release();
+        }
+        return false;
+    }
+
+    /**
+     * Stop this channel borrowing from the endpoint's buffer pools once it has
+     * been closed. Buffers already borrowed are kept until
+     * {@link #releaseBuffers(boolean)} is called by the thread processing the
+     * channel and any further buffers the channel needs are allocated rather
+     * than borrowed. May be called by any thread.
+     *
+     * @return <code>true</code> if the buffers of this channel are pooled
+     */
+    public boolean closeBuffers() {
+        if (bufHandler instanceof NioBufferHandler) {
+            return ((NioBufferHandler) bufHandler).close();
+        }
+        return false;
+    }
+
+    /**
+     * Called by the thread processing the channel, while holding its monitor,
+     * when it hands the closed channel back to the endpoint to be cached or
+     * discarded.
+     */
+    public void recycle() {
+        recycleCount++;
+    }
+
+    /**
+     * @return the number of times the channel has been handed back to the
+     *         endpoint
+     */
+    public int getRecycleCount() {
+        return recycleCount;
+    }
+
     public int getBufferSize() {
         if ( bufHandler == null ) return 0;
         int size = 0;
@@ -126,6 +191,27 @@ public class NioChannel implements ByteChannel {
         return sc.write(src);
     }
 
+    /**
+     * Writes a sequence of bytes to this channel from a subsequence of the
+     * given buffers, with a single gathering write where possible.
+     *
+     * @param srcs   The buffers from which bytes are to be retrieved
+     * @param offset The offset within the buffer array of the first buffer
+     * @param length The maximum number of buffers to be accessed
+     * @return The number of bytes written, possibly zero
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length)
+            throws IOException {
+        return sc.write(srcs, offset, length);
+    }
+
+    @Override
+    public final long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
     /**
      * Reads a sequence of bytes from this channel into the given buffer.
      *
@@ -20,10 +20,13 @@ package org.apache.tomcat.util.net;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketOption;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.FileChannel;
@@ -34,7 +37,9 @@ import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -50,6 +55,8 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.IntrospectionUtils;
+import org.apache.tomcat.util.collections.ObjectCache;
+import org.apache.tomcat.util.collections.StripedObjectCache;
 import org.apache.tomcat.util.collections.SynchronizedQueue;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
@@ -83,6 +90,25 @@ public class NioEndpoint extends AbstractEndpoint {
     public static final int OP_REGISTER = 0x100; //register interest op
     public static final int OP_CALLBACK = 0x200; //callback interest op
 
+    /**
+     * SO_REUSEPORT is only exposed by StandardSocketOptions from Java 9
+     * onwards so look it up reflectively. <code>null</code> if the JVM does
+     * not provide it.
+     */
+    private static final SocketOption<Boolean> SO_REUSEPORT;
+    static {
+        SocketOption<Boolean> option = null;
+        try {
+            Field f = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            @SuppressWarnings("unchecked")
+            SocketOption<Boolean> o = (SocketOption<Boolean>) f.get(null);
+            option = o;
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            // Not available on this JVM
+        }
+        SO_REUSEPORT = option;
+    }
+
     // ----------------------------------------------------------------- Fields
 
     private NioSelectorPool selectorPool = new NioSelectorPool();
@@ -92,6 +118,19 @@ public class NioEndpoint extends AbstractEndpoint {
      */
     private ServerSocketChannel serverSock = null;
 
+    /**
+     * Server sockets sharing the listening address via SO_REUSEPORT, one per
+     * acceptor / poller pair. <code>null</code> unless {@link #reusePort} is
+     * enabled and supported. Element zero is always {@link #serverSock}.
+     */
+    private ServerSocketChannel[] serverSocks = null;
+
+    /**
+     * Used to hand each newly created acceptor its own server socket and
+     * poller when running with SO_REUSEPORT.
+     */
+    private int nextAcceptorIndex = 0;
+
     /**
      * use send file
      */
@@ -127,30 +166,29 @@ public class NioEndpoint extends AbstractEndpoint {
     /**
      * Cache for SocketProcessor objects
      */
-    private final SynchronizedStack<SocketProcessor> processorCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
-                    socketProperties.getProcessorCache());
+    private ObjectCache<SocketProcessor> processorCache;
 
     /**
      * Cache for key attachment objects
      */
-    private final SynchronizedStack<KeyAttachment> keyCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
-                    socketProperties.getKeyCache());
+    private ObjectCache<KeyAttachment> keyCache;
 
     /**
      * Cache for poller events
      */
-    private final SynchronizedStack<PollerEvent> eventCache =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
-                    socketProperties.getEventCache());
+    private ObjectCache<PollerEvent> eventCache;
 
     /**
      * Bytebuffer cache, each channel holds a set of buffers (two, except for SSL holds four)
      */
-    private final SynchronizedStack<NioChannel> nioChannels =
-            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE,
-                    socketProperties.getBufferPoolSize());
+    private ObjectCache<NioChannel> nioChannels;
+
+    /**
+     * Pools for the channel buffers, keyed by buffer size, used when
+     * socket.poolBuffers is enabled.
+     */
+    private final ConcurrentHashMap<Integer,ByteBufferPool> bufferPools =
+            new ConcurrentHashMap<>();
 
 
     // ------------------------------------------------------------- Properties
@@ -211,6 +249,25 @@ public class NioEndpoint extends AbstractEndpoint {
     public void setPollerThreadCount(int pollerThreadCount) { this.pollerThreadCount = pollerThreadCount; }
     public int getPollerThreadCount() { return pollerThreadCount; }
 
+    /**
+     * Open one listening socket per poller using SO_REUSEPORT and dedicate an
+     * acceptor thread to each one. Sockets accepted by an acceptor are always
+     * registered with the poller of the same pair so that a connection stays
+     * with one pair of threads from accept to close.
+     */
+    private boolean reusePort = false;
+    public void setReusePort(boolean reusePort) { this.reusePort = reusePort; }
+    public boolean getReusePort() { return reusePort; }
+
+    /**
+     * Use lock-free, striped caches for the SocketProcessor, KeyAttachment,
+     * PollerEvent and NioChannel objects rather than caches that synchronize
+     * on a single monitor. Takes effect the next time the endpoint is bound.
+     */
+    private boolean useStripedCaches = false;
+    public void setUseStripedCaches(boolean useStripedCaches) { this.useStripedCaches = useStripedCaches; }
+    public boolean getUseStripedCaches() { return useStripedCaches; }
+
     private long selectorTimeout = 1000;
     public void setSelectorTimeout(long timeout){ this.selectorTimeout = timeout;}
     public long getSelectorTimeout(){ return this.selectorTimeout; }
@@ -315,6 +372,9 @@ public class NioEndpoint extends AbstractEndpoint {
         this.keyCache.clear();
         this.nioChannels.clear();
         this.processorCache.clear();
+        for (ByteBufferPool pool : bufferPools.values()) {
+            pool.clear();
+        }
         if ( handler != null ) handler.recycle();
 
     }
@@ -336,6 +396,42 @@ public class NioEndpoint extends AbstractEndpoint {
     }
 
 
+    /**
+     * Number of pooled buffers allocated, whether in use or not.
+     */
+    public int getPooledBufferCount() {
+        int sum = 0;
+        for (ByteBufferPool pool : bufferPools.values()) {
+            sum += pool.getAllocatedCount();
+        }
+        return sum;
+    }
+
+
+    /**
+     * Number of pooled buffers currently borrowed by connections.
+     */
+    public int getPooledBufferBorrowedCount() {
+        int sum = 0;
+        for (ByteBufferPool pool : bufferPools.values()) {
+            sum += pool.getBorrowedCount();
+        }
+        return sum;
+    }
+
+
+    /**
+     * Memory, in bytes, allocated for pooled buffers.
+     */
+    public long getPooledBufferBytes() {
+        long sum = 0;
+        for (ByteBufferPool pool : bufferPools.values()) {
+            sum += pool.getAllocatedBytes();
+        }
+        return sum;
+    }
+
+
     // ----------------------------------------------- Public Lifecycle Methods
 
 
@@ -345,22 +441,65 @@ public class NioEndpoint extends AbstractEndpoint {
     @Override
     public void bind() throws Exception {
 
+        processorCache = createObjectCache(socketProperties.getProcessorCache());
+        keyCache = createObjectCache(socketProperties.getKeyCache());
+        eventCache = createObjectCache(socketProperties.getEventCache());
+        if (useStripedCaches) {
+            // Striped caches are a fixed size so limit them by object count
+            nioChannels = createObjectCache(socketProperties.getBufferPool());
+        } else {
+            nioChannels = createObjectCache(socketProperties.getBufferPoolSize());
+        }
+
+        if (pollerThreadCount <= 0) {
+            //minimum one poller thread
+            pollerThreadCount = 1;
+        }
+
         serverSock = ServerSocketChannel.open();
-        socketProperties.setProperties(serverSock.socket());
+        boolean shard = false;
+        if (reusePort) {
+            if (isReusePortSupported(serverSock)) {
+                shard = true;
+            } else {
+                log.warn(sm.getString("endpoint.nio.reusePortUnsupported"));
+            }
+        }
         InetSocketAddress addr = (getAddress()!=null?new InetSocketAddress(getAddress(),getPort()):new InetSocketAddress(getPort()));
-        serverSock.socket().bind(addr,getBacklog());
-        serverSock.configureBlocking(true); //mimic APR behavior
-        serverSock.socket().setSoTimeout(getSocketProperties().getSoTimeout());
+        bindServerSocket(serverSock, addr, shard);
+
+        if (shard) {
+            serverSocks = new ServerSocketChannel[pollerThreadCount];
+            serverSocks[0] = serverSock;
+            // Use the port actually bound so an ephemeral port is shared too
+            addr = new InetSocketAddress(addr.getAddress(), serverSock.socket().getLocalPort());
+            try {
+                for (int i = 1; i < serverSocks.length; i++) {
+                    serverSocks[i] = ServerSocketChannel.open();
+                    bindServerSocket(serverSocks[i], addr, true);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Don't leak the sockets that were opened before the failure
+                for (ServerSocketChannel ssc : serverSocks) {
+                    if (ssc != null) {
+                        try {
+                            ssc.close();
+                        } catch (IOException ioe) {
+                            // Ignore
+                        }
+                    }
+                }
+                serverSocks = null;
+                serverSock = null;
+                throw e;
+            }
+        }
 
         // Initialize thread count defaults for acceptor, poller
         if (acceptorThreadCount == 0) {
             // FIXME: Doesn't seem to work that well with multiple accept threads
             acceptorThreadCount = 1;
         }
-        if (pollerThreadCount <= 0) {
-            //minimum one poller thread
-            pollerThreadCount = 1;
-        }
         stopLatch = new CountDownLatch(pollerThreadCount);
 
         // Initialize SSL if needed
@@ -385,6 +524,30 @@ public class NioEndpoint extends AbstractEndpoint {
         selectorPool.open();
     }
 
+    private <T> ObjectCache<T> createObjectCache(int limit) {
+        if (useStripedCaches) {
+            return new StripedObjectCache<>(limit);
+        } else {
+            return new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, limit);
+        }
+    }
+
+    private void bindServerSocket(ServerSocketChannel ssc,
+            InetSocketAddress addr, boolean reuse) throws IOException {
+        socketProperties.setProperties(ssc.socket());
+        if (reuse) {
+            ssc.setOption(SO_REUSEPORT, Boolean.TRUE);
+        }
+        ssc.socket().bind(addr,getBacklog());
+        ssc.configureBlocking(true); //mimic APR behavior
+        ssc.socket().setSoTimeout(getSocketProperties().getSoTimeout());
+    }
+
+    private static boolean isReusePortSupported(ServerSocketChannel ssc) {
+        return SO_REUSEPORT != null &&
+                ssc.supportedOptions().contains(SO_REUSEPORT);
+    }
+
     public KeyManager[] wrap(KeyManager[] managers) {
         if (managers==null) return null;
         KeyManager[] result = new KeyManager[managers.length];
@@ -426,6 +589,7 @@ public class NioEndpoint extends AbstractEndpoint {
                 pollerThread.start();
             }
 
+            nextAcceptorIndex = 0;
             startAcceptorThreads();
         }
     }
@@ -473,12 +637,21 @@ public class NioEndpoint extends AbstractEndpoint {
         if (running) {
             stop();
         }
-        // Close server socket
+        // Close server socket(s)
+        if (serverSocks != null) {
+            // Element zero is serverSock and is closed below
+            for (int i = 1; i < serverSocks.length; i++) {
+                serverSocks[i].socket().close();
+                serverSocks[i].close();
+            }
+            serverSocks = null;
+        }
         serverSock.socket().close();
         serverSock.close();
         serverSock = null;
         sslContext = null;
         releaseCaches();
+        bufferPools.clear();
         selectorPool.close();
         if (log.isDebugEnabled()) {
             log.debug("Destroy completed for "+new InetSocketAddress(getAddress(),getPort()));
@@ -515,9 +688,27 @@ public class NioEndpoint extends AbstractEndpoint {
     }
 
 
+    /**
+     * When the listening socket is sharded there is one acceptor per listening
+     * socket, whatever the configured acceptor thread count.
+     */
+    @Override
+    protected int getAcceptorThreadsToStart() {
+        ServerSocketChannel[] serverSocks = this.serverSocks;
+        if (serverSocks == null) {
+            return getAcceptorThreadCount();
+        }
+        return serverSocks.length;
+    }
+
+
     @Override
     protected AbstractEndpoint.Acceptor createAcceptor() {
-        return new Acceptor();
+        if (serverSocks == null) {
+            return new Acceptor(serverSock, null);
+        }
+        int idx = nextAcceptorIndex++ % serverSocks.length;
+        return new Acceptor(serverSocks[idx], pollers[idx % pollers.length]);
     }
 
 
@@ -525,6 +716,15 @@ public class NioEndpoint extends AbstractEndpoint {
      * Process the specified connection.
      */
     protected boolean setSocketOptions(SocketChannel socket) {
+        return setSocketOptions(socket, null);
+    }
+
+
+    /**
+     * Process the specified connection, registering it with the given poller
+     * or, if <code>null</code>, with the next poller in round robin order.
+     */
+    protected boolean setSocketOptions(SocketChannel socket, Poller poller) {
         // Process the connection
         try {
             //disable blocking, APR style, we are gonna be polling it
@@ -534,19 +734,33 @@ public class NioEndpoint extends AbstractEndpoint {
 
             NioChannel channel = nioChannels.pop();
             if ( channel == null ) {
+                boolean pooled = socketProperties.getPoolBuffers();
                 // SSL setup
                 if (sslContext != null) {
                     SSLEngine engine = createSSLEngine();
                     int appbufsize = engine.getSession().getApplicationBufferSize();
-                    NioBufferHandler bufhandler = new NioBufferHandler(Math.max(appbufsize,socketProperties.getAppReadBufSize()),
-                                                                       Math.max(appbufsize,socketProperties.getAppWriteBufSize()),
-                                                                       socketProperties.getDirectBuffer());
-                    channel = new SecureNioChannel(socket, engine, bufhandler, selectorPool);
+                    int readsize = Math.max(appbufsize,socketProperties.getAppReadBufSize());
+                    int writesize = Math.max(appbufsize,socketProperties.getAppWriteBufSize());
+                    if (pooled) {
+                        NioBufferHandler bufhandler = new NioBufferHandler(getBufferPool(readsize, socketProperties.getDirectBuffer()),
+                                                                           getBufferPool(writesize, socketProperties.getDirectBuffer()));
+                        int netbufsize = engine.getSession().getPacketBufferSize();
+                        channel = new SecureNioChannel(socket, engine, bufhandler, selectorPool, getBufferPool(netbufsize, true));
+                    } else {
+                        NioBufferHandler bufhandler = new NioBufferHandler(readsize, writesize, socketProperties.getDirectBuffer());
+                        channel = new SecureNioChannel(socket, engine, bufhandler, selectorPool);
+                    }
                 } else {
                     // normal tcp setup
-                    NioBufferHandler bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
-                                                                       socketProperties.getAppWriteBufSize(),
-                                                                       socketProperties.getDirectBuffer());
+                    NioBufferHandler bufhandler;
+                    if (pooled) {
+                        bufhandler = new NioBufferHandler(getBufferPool(socketProperties.getAppReadBufSize(), socketProperties.getDirectBuffer()),
+                                                          getBufferPool(socketProperties.getAppWriteBufSize(), socketProperties.getDirectBuffer()));
+                    } else {
+                        bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
+                                                          socketProperties.getAppWriteBufSize(),
+                                                          socketProperties.getDirectBuffer());
+                    }
 
                     channel = new NioChannel(socket, bufhandler);
                 }
@@ -559,7 +773,10 @@ public class NioEndpoint extends AbstractEndpoint {
                     channel.reset();
                 }
             }
-            getPoller0().register(channel);
+            if (poller == null) {
+                poller = getPoller0();
+            }
+            poller.register(channel);
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
             try {
@@ -573,6 +790,23 @@ public class NioEndpoint extends AbstractEndpoint {
         return true;
     }
 
+    /**
+     * Obtain the pool for buffers of the given size, creating it if necessary.
+     */
+    protected ByteBufferPool getBufferPool(int size, boolean direct) {
+        // Heap pools use negative keys to keep them apart from direct pools
+        Integer key = Integer.valueOf(direct ? size : -size);
+        ByteBufferPool pool = bufferPools.get(key);
+        if (pool == null) {
+            pool = new ByteBufferPool(size, socketProperties.getBufferSlabSize(), direct);
+            ByteBufferPool existing = bufferPools.putIfAbsent(key, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
     protected SSLEngine createSSLEngine() {
         SSLEngine engine = sslContext.createSSLEngine();
         if ("false".equals(getClientAuth())) {
@@ -647,6 +881,19 @@ public class NioEndpoint extends AbstractEndpoint {
      */
     protected class Acceptor extends AbstractEndpoint.Acceptor {
 
+        private final ServerSocketChannel serverSocket;
+
+        /**
+         * The poller all sockets from this acceptor are registered with or
+         * <code>null</code> to distribute them over all pollers.
+         */
+        private final Poller poller;
+
+        public Acceptor(ServerSocketChannel serverSocket, Poller poller) {
+            this.serverSocket = serverSocket;
+            this.poller = poller;
+        }
+
         @Override
         public void run() {
 
@@ -678,7 +925,7 @@ public class NioEndpoint extends AbstractEndpoint {
                     try {
                         // Accept the next incoming connection from the server
                         // socket
-                        socket = serverSock.accept();
+                        socket = serverSocket.accept();
                     } catch (IOException ioe) {
                         //we didn't get a socket
                         countDownConnection();
@@ -693,7 +940,7 @@ public class NioEndpoint extends AbstractEndpoint {
                     // setSocketOptions() will add channel to the poller
                     // if successful
                     if (running && !paused) {
-                        if (!setSocketOptions(socket)) {
+                        if (!setSocketOptions(socket, poller)) {
                             countDownConnection();
                             closeSocket(socket);
                         }
@@ -972,7 +1219,23 @@ public class NioEndpoint extends AbstractEndpoint {
                 }
                 try {
                     if (ka!=null) {
-                        ka.getSocket().close(true);
+                        NioChannel socket = ka.getSocket();
+                        // Stop any thread still using the socket from taking
+                        // more buffers from the pools
+                        boolean pooled = socket.closeBuffers();
+                        socket.close(true);
+                        if (pooled) {
+                            if (Thread.holdsLock(socket)) {
+                                // Called by the thread processing the socket
+                                socket.releaseBuffers(true);
+                            } else {
+                                // The socket may not be returned to the cache,
+                                // for example after a timeout, but a worker
+                                // may still be using its buffers so leave their
+                                // release to the thread processing the socket
+                                releaseBuffers(socket);
+                            }
+                        }
                     }
                 } catch (Exception e){
                     if (log.isDebugEnabled()) {
@@ -997,6 +1260,27 @@ public class NioEndpoint extends AbstractEndpoint {
                 if (log.isDebugEnabled()) log.error("",e);
             }
         }
+        /**
+         * Return the pooled buffers of a closed socket once any thread that is
+         * processing it has finished. If that thread hands the socket back to
+         * the endpoint first, it deals with the buffers instead.
+         */
+        protected void releaseBuffers(NioChannel socket) {
+            Executor executor = getExecutor();
+            if (executor == null) {
+                return;
+            }
+            try {
+                executor.execute(new BufferReleaser(socket));
+            } catch (RejectedExecutionException rx) {
+                // The buffers will be garbage collected rather than reused
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("endpoint.nio.releaseBuffersFail",
+                            socket), rx);
+                }
+            }
+        }
+
         /**
          * The background thread that listens for incoming TCP/IP connections and
          * hands them off to an appropriate processor.
@@ -1193,7 +1477,7 @@ public class NioEndpoint extends AbstractEndpoint {
                 }
 
                 //setup the file channel
-                if ( sd.fchannel == null ) {
+                if ( sd.buffer == null && sd.fchannel == null ) {
                     File f = new File(sd.fileName);
                     if ( !f.exists() ) {
                         cancelledKey(sk,SocketStatus.ERROR);
@@ -1215,6 +1499,20 @@ public class NioEndpoint extends AbstractEndpoint {
                     if (sc.flushOutbound()) {
                         attachment.access();
                     }
+                } else if (sd.delimiter != null && sd.delimiter.hasRemaining()) {
+                    // Data to write before the next part
+                    if (wc.write(sd.delimiter) > 0) {
+                        attachment.access();
+                    }
+                } else if (sd.buffer != null) {
+                    // Write directly from the (typically direct or mapped)
+                    // buffer without copying it to the heap
+                    int written = wc.write(sd.buffer);
+                    if ( written > 0 ) {
+                        sd.pos += written;
+                        sd.length -= written;
+                        attachment.access();
+                    }
                 } else {
                     long written = sd.fchannel.transferTo(sd.pos,sd.length,wc);
                     if ( written > 0 ) {
@@ -1230,19 +1528,28 @@ public class NioEndpoint extends AbstractEndpoint {
                         }
                     }
                 }
-                if ( sd.length <= 0 && sc.getOutboundRemaining()<=0) {
+                if (sd.length <= 0 && !sd.isDelimiterPending()) {
+                    sd.nextPart();
+                }
+                if ( sd.length <= 0 && !sd.isDelimiterPending() &&
+                        sc.getOutboundRemaining()<=0) {
                     if (log.isDebugEnabled()) {
                         log.debug("Send file complete for: "+sd.fileName);
                     }
                     attachment.setSendfileData(null);
                     try {
-                        sd.fchannel.close();
+                        if (sd.fchannel != null) {
+                            sd.fchannel.close();
+                        }
                     } catch (Exception ignore) {
                     }
                     if ( sd.keepAlive ) {
                             if (log.isDebugEnabled()) {
                                 log.debug("Connection is keep alive, registering back for OP_READ");
                             }
+                            // The connection is idle until the next request
+                            // arrives
+                            sc.releaseBuffers(false);
                             if (event) {
                                 this.add(attachment.getChannel(),SelectionKey.OP_READ);
                             } else {
@@ -1463,6 +1770,11 @@ public class NioEndpoint extends AbstractEndpoint {
     public static class NioBufferHandler implements ApplicationBufferHandler {
         private ByteBuffer readbuf = null;
         private ByteBuffer writebuf = null;
+        private final ByteBufferPool readPool;
+        private final ByteBufferPool writePool;
+        private boolean readbufPooled = false;
+        private boolean writebufPooled = false;
+        private volatile boolean closed = false;
 
         public NioBufferHandler(int readsize, int writesize, boolean direct) {
             if ( direct ) {
@@ -1472,14 +1784,79 @@ public class NioEndpoint extends AbstractEndpoint {
                 readbuf = ByteBuffer.allocate(readsize);
                 writebuf = ByteBuffer.allocate(writesize);
             }
+            readPool = null;
+            writePool = null;
+        }
+
+        /**
+         * Create a handler that borrows its buffers from the given pools the
+         * first time they are requested.
+         */
+        public NioBufferHandler(ByteBufferPool readPool, ByteBufferPool writePool) {
+            this.readPool = readPool;
+            this.writePool = writePool;
         }
 
         @Override
         public ByteBuffer expand(ByteBuffer buffer, int remaining) {return buffer;}
         @Override
-        public ByteBuffer getReadBuffer() {return readbuf;}
+        public ByteBuffer getReadBuffer() {
+            if (readbuf == null) {
+                readbufPooled = !closed;
+                readbuf = readbufPooled ? readPool.borrow() :
+                        ByteBuffer.allocate(readPool.getBufferSize());
+            }
+            return readbuf;
+        }
         @Override
-        public ByteBuffer getWriteBuffer() {return writebuf;}
+        public ByteBuffer getWriteBuffer() {
+            if (writebuf == null) {
+                writebufPooled = !closed;
+                writebuf = writebufPooled ? writePool.borrow() :
+                        ByteBuffer.allocate(writePool.getBufferSize());
+            }
+            return writebuf;
+        }
+
+        /**
+         * Stop borrowing from the pools because the channel has been closed.
+         * Buffers requested after this are allocated instead so that a late
+         * read or write can not hold on to a pooled buffer. May be called by
+         * any thread.
+         *
+         * @return <code>true</code> if the buffers are pooled
+         */
+        public boolean close() {
+            if (readPool == null) return false;
+            closed = true;
+            return true;
+        }
+
+        /**
+         * Borrow from the pools again once the channel has been reset for a
+         * new connection.
+         */
+        public void open() {
+            closed = false;
+        }
+
+        /**
+         * Return the buffers to their pools.
+         *
+         * @return <code>true</code> if the buffers are pooled
+         */
+        public boolean release() {
+            if (readPool == null) return false;
+            if (readbuf != null) {
+                if (readbufPooled) readPool.release(readbuf);
+                readbuf = null;
+            }
+            if (writebuf != null) {
+                if (writebufPooled) writePool.release(writebuf);
+                writebuf = null;
+            }
+            return true;
+        }
 
     }
 
@@ -1501,6 +1878,35 @@ public class NioEndpoint extends AbstractEndpoint {
     }
 
 
+    // ----------------------------------------------- BufferReleaser Inner Class
+    /**
+     * Returns the pooled buffers of a socket that was closed by the poller.
+     * Every thread that processes a socket holds its monitor so the buffers
+     * are only released once no thread is using them.
+     */
+    protected static class BufferReleaser implements Runnable {
+
+        private final NioChannel socket;
+        private final int recycleCount;
+
+        public BufferReleaser(NioChannel socket) {
+            this.socket = socket;
+            this.recycleCount = socket.getRecycleCount();
+        }
+
+        @Override
+        public void run() {
+            synchronized (socket) {
+                // Once recycled the socket's buffers have been handled by the
+                // thread that processed it and it may now be in use again
+                if (socket.getRecycleCount() == recycleCount) {
+                    socket.releaseBuffers(true);
+                }
+            }
+        }
+    }
+
+
     // ---------------------------------------------- SocketProcessor Inner Class
     /**
      * This class is the equivalent of the Worker, but will simply use in an
@@ -1588,8 +1994,10 @@ public class NioEndpoint extends AbstractEndpoint {
                         try {
                             if (ka!=null) ka.setComet(false);
                             socket.getPoller().cancelledKey(key, SocketStatus.ERROR);
-                            if (running && !paused) {
-                                nioChannels.push(socket);
+                            socket.recycle();
+                            if (!running || paused || !nioChannels.push(socket)) {
+                                // Not cached so return any pooled buffers now
+                                socket.releaseBuffers(true);
                             }
                             socket = null;
                             if (running && !paused && ka != null) {
@@ -1607,8 +2015,10 @@ public class NioEndpoint extends AbstractEndpoint {
                     if (key != null) {
                         socket.getPoller().cancelledKey(key, SocketStatus.DISCONNECT);
                     }
-                    if (running && !paused) {
-                        nioChannels.push(socket);
+                    socket.recycle();
+                    if (!running || paused || !nioChannels.push(socket)) {
+                        // Not cached so return any pooled buffers now
+                        socket.releaseBuffers(true);
                     }
                     socket = null;
                     if (running && !paused && ka != null) {
@@ -1670,9 +2080,44 @@ public class NioEndpoint extends AbstractEndpoint {
         // File
         public String fileName;
         public FileChannel fchannel;
+        // Buffer, used instead of the file if set
+        public ByteBuffer buffer;
         public long pos;
         public long length;
+        // Start and end of each part, used instead of pos and length if set
+        public long[] ranges;
+        // Data written before each part and after the last part
+        public byte[][] delimiters;
+        protected int part = 0;
+        protected ByteBuffer delimiter;
         // KeepAlive flag
         public boolean keepAlive;
+
+        /**
+         * Move on to the next part, if any, once the current part has been
+         * written.
+         */
+        public void nextPart() {
+            if (ranges == null || part >= delimiters.length) {
+                return;
+            }
+            delimiter = ByteBuffer.wrap(delimiters[part]);
+            if (part < ranges.length / 2) {
+                pos = ranges[part * 2];
+                length = ranges[part * 2 + 1] - pos;
+                if (buffer != null) {
+                    buffer.clear();
+                    buffer.limit((int) (pos + length));
+                    buffer.position((int) pos);
+                }
+            } else {
+                length = 0;
+            }
+            part++;
+        }
+
+        public boolean isDelimiterPending() {
+            return delimiter != null && delimiter.hasRemaining();
+        }
     }
 }
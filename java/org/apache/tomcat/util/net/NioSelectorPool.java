@@ -216,6 +216,75 @@ public class NioSelectorPool {
         return written;
     }
 
+    /**
+     * Performs a blocking gathering write of the given buffers, using a
+     * selector to block. If the <code>selector</code> parameter is null then
+     * it will perform a busy write that could take up a lot of CPU cycles.
+     * @param bufs          The buffers containing the data, we will write as long as any of them has data remaining
+     * @param socket        The socket to write data to
+     * @param selector      The selector to use for blocking, if null then a busy write will be initiated
+     * @param writeTimeout  The timeout for this write operation in milliseconds, -1 means no timeout
+     * @return long - returns the number of bytes written
+     * @throws EOFException if write returns -1
+     * @throws SocketTimeoutException if the write times out
+     * @throws IOException if an IO Exception occurs in the underlying socket logic
+     */
+    public long write(ByteBuffer[] bufs, NioChannel socket, Selector selector,
+                      long writeTimeout) throws IOException {
+        if ( SHARED ) {
+            return blockingSelector.write(bufs,socket,writeTimeout);
+        }
+        SelectionKey key = null;
+        long written = 0;
+        boolean timedout = false;
+        int keycount = 1; //assume we can write
+        long time = System.currentTimeMillis(); //start the timeout timer
+        try {
+            while ( (!timedout) && hasRemaining(bufs) ) {
+                long cnt = 0;
+                if ( keycount > 0 ) { //only write if we were registered for a write
+                    cnt = socket.write(bufs); //write the data
+                    if (cnt == -1) throw new EOFException();
+
+                    written += cnt;
+                    if (cnt > 0) {
+                        time = System.currentTimeMillis(); //reset our timeout timer
+                        continue; //we successfully wrote, try again without a selector
+                    }
+                }
+                if ( selector != null ) {
+                    //register OP_WRITE to the selector
+                    if (key==null) key = socket.getIOChannel().register(selector, SelectionKey.OP_WRITE);
+                    else key.interestOps(SelectionKey.OP_WRITE);
+                    if (writeTimeout==0) {
+                        timedout = hasRemaining(bufs);
+                    } else if (writeTimeout<0) {
+                        keycount = selector.select();
+                    } else {
+                        keycount = selector.select(writeTimeout);
+                    }
+                }
+                if (writeTimeout > 0 && (selector == null || keycount == 0) ) timedout = (System.currentTimeMillis()-time)>=writeTimeout;
+            }//while
+            if ( timedout ) throw new SocketTimeoutException();
+        } finally {
+            if (key != null) {
+                key.cancel();
+                if (selector != null) selector.selectNow();//removes the key from this selector
+            }
+        }
+        return written;
+    }
+
+    static boolean hasRemaining(ByteBuffer[] bufs) {
+        for (ByteBuffer buf : bufs) {
+            if (buf.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Performs a blocking read using the bytebuffer for data to be read and a selector to block.
      * If the <code>selector</code> parameter is null, then it will perform a busy read that could
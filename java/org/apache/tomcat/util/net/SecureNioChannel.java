@@ -51,15 +51,34 @@ public class SecureNioChannel extends NioChannel  {
 
     protected NioSelectorPool pool;
 
+    /**
+     * Pool the network buffers are borrowed from, <code>null</code> if they
+     * are allocated for the lifetime of the channel.
+     */
+    protected final ByteBufferPool netBufferPool;
+    private boolean netInBufferPooled = false;
+    private boolean netOutBufferPooled = false;
+    private volatile boolean netBuffersClosed = false;
+
     public SecureNioChannel(SocketChannel channel, SSLEngine engine,
                             ApplicationBufferHandler bufHandler, NioSelectorPool pool) throws IOException {
+        this(channel, engine, bufHandler, pool, null);
+    }
+
+    public SecureNioChannel(SocketChannel channel, SSLEngine engine,
+                            ApplicationBufferHandler bufHandler, NioSelectorPool pool,
+                            ByteBufferPool netBufferPool) throws IOException {
         super(channel,bufHandler);
         this.sslEngine = engine;
+        this.netBufferPool = netBufferPool;
         int appBufSize = sslEngine.getSession().getApplicationBufferSize();
         int netBufSize = sslEngine.getSession().getPacketBufferSize();
         //allocate network buffers - TODO, add in optional direct non-direct buffers
-        if ( netInBuffer == null ) netInBuffer = ByteBuffer.allocateDirect(netBufSize);
-        if ( netOutBuffer == null ) netOutBuffer = ByteBuffer.allocateDirect(netBufSize);
+        //pooled network buffers are borrowed when first needed
+        if ( netBufferPool == null ) {
+            if ( netInBuffer == null ) netInBuffer = ByteBuffer.allocateDirect(netBufSize);
+            if ( netOutBuffer == null ) netOutBuffer = ByteBuffer.allocateDirect(netBufSize);
+        }
 
         //selector pool for blocking operations
         this.pool = pool;
@@ -78,10 +97,13 @@ public class SecureNioChannel extends NioChannel  {
     @Override
     public void reset() throws IOException {
         super.reset();
-        netOutBuffer.position(0);
-        netOutBuffer.limit(0);
-        netInBuffer.position(0);
-        netInBuffer.limit(0);
+        netBuffersClosed = false;
+        if (netBufferPool == null) {
+            netOutBuffer.position(0);
+            netOutBuffer.limit(0);
+            netInBuffer.position(0);
+            netInBuffer.limit(0);
+        }
         handshakeComplete = false;
         closed = false;
         closing = false;
@@ -90,6 +112,64 @@ public class SecureNioChannel extends NioChannel  {
         handshakeStatus = sslEngine.getHandshakeStatus();
     }
 
+    @Override
+    public boolean releaseBuffers(boolean force) {
+        boolean result = super.releaseBuffers(force);
+        if (netBufferPool != null) {
+            if (force) {
+                releaseNetBuffers();
+            } else {
+                // Encrypted data may have been read ahead or not yet written
+                if (netInBuffer != null && netInBuffer.position() == 0) {
+                    if (netInBufferPooled) netBufferPool.release(netInBuffer);
+                    netInBuffer = null;
+                }
+                if (netOutBuffer != null && !netOutBuffer.hasRemaining()) {
+                    if (netOutBufferPooled) netBufferPool.release(netOutBuffer);
+                    netOutBuffer = null;
+                }
+            }
+            result = true;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean closeBuffers() {
+        boolean result = super.closeBuffers();
+        if (netBufferPool != null) {
+            netBuffersClosed = true;
+            result = true;
+        }
+        return result;
+    }
+
+    /**
+     * Borrow the network buffers from the pool if they have been released.
+     * The input buffer is ready to be filled and the output buffer is empty
+     * and ready to be flushed which is the same state as after a call to
+     * {@link #reset()}. Once {@link #closeBuffers()} has been called the
+     * buffers are allocated instead.
+     */
+    protected void borrowNetBuffers() {
+        if (netInBuffer == null) {
+            netInBufferPooled = !netBuffersClosed;
+            netInBuffer = borrowNetBuffer(netInBufferPooled);
+        }
+        if (netOutBuffer == null) {
+            netOutBufferPooled = !netBuffersClosed;
+            netOutBuffer = borrowNetBuffer(netOutBufferPooled);
+            netOutBuffer.limit(0);
+        }
+    }
+
+    private ByteBuffer borrowNetBuffer(boolean pooled) {
+        if (pooled) {
+            return netBufferPool.borrow();
+        }
+        return ByteBuffer.allocate(netBufferPool.getBufferSize());
+    }
+
     @Override
     public int getBufferSize() {
         int size = super.getBufferSize();
@@ -115,6 +195,7 @@ public class SecureNioChannel extends NioChannel  {
     @Override
     public boolean flush(boolean block, Selector s, long timeout)
             throws IOException {
+        if (netOutBuffer == null) return true;
         if (!block) {
             flush(netOutBuffer);
         } else {
@@ -153,6 +234,7 @@ public class SecureNioChannel extends NioChannel  {
     @Override
     public int handshake(boolean read, boolean write) throws IOException {
         if ( handshakeComplete ) return 0; //we have done our initial handshake
+        if ( netBufferPool != null ) borrowNetBuffers();
 
         if (!flush(netOutBuffer)) return SelectionKey.OP_WRITE; //we still have data to write
 
@@ -224,6 +306,7 @@ public class SecureNioChannel extends NioChannel  {
      */
     @SuppressWarnings("null") // key cannot be null
     public void rehandshake(long timeout) throws IOException {
+        if ( netBufferPool != null ) borrowNetBuffers();
         //validate the network buffers are empty
         if (netInBuffer.position() > 0 && netInBuffer.position()<netInBuffer.limit()) throw new IOException("Network input buffer still contains data. Handshake will fail.");
         if (netOutBuffer.position() > 0 && netOutBuffer.position()<netOutBuffer.limit()) throw new IOException("Network output buffer still contains data. Handshake will fail.");
@@ -366,6 +449,7 @@ public class SecureNioChannel extends NioChannel  {
     public void close() throws IOException {
         if (closing) return;
         closing = true;
+        if ( netBufferPool != null ) borrowNetBuffers();
         sslEngine.closeOutbound();
 
         if (!flush(netOutBuffer)) {
@@ -388,6 +472,20 @@ public class SecureNioChannel extends NioChannel  {
         closed = (!netOutBuffer.hasRemaining() && (handshake.getHandshakeStatus() != HandshakeStatus.NEED_WRAP));
     }
 
+    /**
+     * Return the network buffers to the pool.
+     */
+    private void releaseNetBuffers() {
+        if (netInBuffer != null) {
+            if (netInBufferPooled) netBufferPool.release(netInBuffer);
+            netInBuffer = null;
+        }
+        if (netOutBuffer != null) {
+            if (netOutBufferPooled) netBufferPool.release(netOutBuffer);
+            netOutBuffer = null;
+        }
+    }
+
     /**
      * Force a close, can throw an IOException
      * @param force boolean
@@ -423,6 +521,7 @@ public class SecureNioChannel extends NioChannel  {
         if ( closing || closed) return -1;
         //did we finish our handshake?
         if (!handshakeComplete) throw new IllegalStateException("Handshake incomplete, you must complete handshake before reading data.");
+        if ( netBufferPool != null ) borrowNetBuffers();
 
         //read from the network
         int netread = sc.read(netInBuffer);
@@ -482,6 +581,7 @@ public class SecureNioChannel extends NioChannel  {
             if ( (!this.isSendFile()) && (src != bufHandler.getWriteBuffer()) ) throw new IllegalArgumentException("You can only write using the application write buffer provided by the handler.");
             //are we closing or closed?
             if ( closing || closed) throw new IOException("Channel is in closing state.");
+            if ( netBufferPool != null ) borrowNetBuffers();
 
             //the number of bytes written
             int written = 0;
@@ -513,13 +613,50 @@ public class SecureNioChannel extends NioChannel  {
         }
     }
 
+    /**
+     * Encrypts the data of several buffers with a single call to the
+     * SSLEngine. Unlike {@link #write(ByteBuffer)} the buffers need not be the
+     * application write buffer as they are never expanded.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length)
+            throws IOException {
+        //are we closing or closed?
+        if ( closing || closed) throw new IOException("Channel is in closing state.");
+        if ( netBufferPool != null ) borrowNetBuffers();
+
+        if (!flush(netOutBuffer)) {
+            //we haven't emptied out the buffer yet
+            return 0;
+        }
+
+        netOutBuffer.clear();
+
+        SSLEngineResult result = sslEngine.wrap(srcs, offset, length, netOutBuffer);
+        int written = result.bytesConsumed();
+        netOutBuffer.flip();
+
+        if (result.getStatus() == Status.OK) {
+            if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) tasks();
+        } else {
+            throw new IOException("Unable to wrap data, invalid engine state: " +result.getStatus());
+        }
+
+        //force a flush
+        flush(netOutBuffer);
+
+        return written;
+    }
+
     @Override
     public int getOutboundRemaining() {
+        if (netOutBuffer == null) return 0;
         return netOutBuffer.remaining();
     }
 
     @Override
     public boolean flushOutbound() throws IOException {
+        if (netOutBuffer == null) return false;
         int remaining = netOutBuffer.remaining();
         flush(netOutBuffer);
         int remaining2= netOutBuffer.remaining();
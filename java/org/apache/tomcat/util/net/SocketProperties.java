@@ -101,6 +101,45 @@ public class SocketProperties {
      */
     protected int bufferPoolSize = 1024*1024*100;
 
+    /**
+     * Borrow the application and network buffers of each channel from a
+     * shared pool while the channel has data in flight and return them when
+     * the channel goes idle, rather than allocating them for the lifetime of
+     * the channel.
+     * Default value is false
+     */
+    protected boolean poolBuffers = false;
+
+    /**
+     * When buffers are pooled, the size in bytes of the slabs that pooled
+     * buffers are sliced from.
+     * Default value is 1MB (1024*1024 bytes)
+     */
+    protected int bufferSlabSize = 1024*1024;
+
+    /**
+     * Read the data of plain (non SSL) channels straight into the buffer
+     * that the HTTP request is parsed from rather than into the channel's
+     * application read buffer and then copying it.
+     * Default value is false
+     */
+    protected boolean readIntoRequestBuffer = false;
+
+    /**
+     * Write HTTP response bodies with gathering writes rather than copying
+     * them into the channel's application write buffer.
+     * Default value is false
+     */
+    protected boolean gatheringWrite = false;
+
+    /**
+     * The maximum number of responses to pipelined HTTP requests that are
+     * collected and written with a single flush. A value of 1 or less
+     * flushes every response as soon as it is complete.
+     * Default value is 1
+     */
+    protected int pipelineDepth = 1;
+
     /**
      * TCP_NO_DELAY option. JVM default used if not set.
      */
@@ -275,6 +314,26 @@ public class SocketProperties {
         return bufferPoolSize;
     }
 
+    public boolean getPoolBuffers() {
+        return poolBuffers;
+    }
+
+    public int getBufferSlabSize() {
+        return bufferSlabSize;
+    }
+
+    public boolean getReadIntoRequestBuffer() {
+        return readIntoRequestBuffer;
+    }
+
+    public boolean getGatheringWrite() {
+        return gatheringWrite;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
     public int getEventCache() {
         return eventCache;
     }
@@ -364,6 +423,26 @@ public class SocketProperties {
         this.bufferPoolSize = bufferPoolSize;
     }
 
+    public void setPoolBuffers(boolean poolBuffers) {
+        this.poolBuffers = poolBuffers;
+    }
+
+    public void setBufferSlabSize(int bufferSlabSize) {
+        this.bufferSlabSize = bufferSlabSize;
+    }
+
+    public void setReadIntoRequestBuffer(boolean readIntoRequestBuffer) {
+        this.readIntoRequestBuffer = readIntoRequestBuffer;
+    }
+
+    public void setGatheringWrite(boolean gatheringWrite) {
+        this.gatheringWrite = gatheringWrite;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
     public void setEventCache(int eventCache) {
         this.eventCache = eventCache;
     }
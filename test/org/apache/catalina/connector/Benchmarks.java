@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.connector;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.buf.UDecoder;
+
+/**
+ * Named Benchmarks so it is not automatically executed as part of the unit
+ * tests.
+ */
+public class Benchmarks {
+
+    private static final String[] URIS = new String[] {
+            "/",
+            "/examples/servlets/servlet/HelloWorldExample",
+            "/static/css/site-2013.css",
+            "/app/api/v1/users/12345/orders/./../orders",
+            "/app/search%20results/page%202/index.html" };
+
+    /*
+     * Compares the single pass conversion of US-ASCII URIs with the separate
+     * %xx decoding, normalization and character conversion steps used for all
+     * other URIs.
+     */
+    @Test
+    public void testConvertURI() throws Exception {
+        CoyoteAdapter adapter = new CoyoteAdapter(new Connector());
+        for (int i = 0; i < 5; i++) {
+            doTestConvertURI(adapter, false, 1000000);
+            doTestConvertURI(adapter, true, 1000000);
+        }
+    }
+
+
+    private void doTestConvertURI(CoyoteAdapter adapter, boolean fast,
+            int iterCount) throws Exception {
+
+        byte[][] uris = new byte[URIS.length][];
+        for (int i = 0; i < URIS.length; i++) {
+            uris[i] = URIS[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        MessageBytes raw = MessageBytes.newInstance();
+        MessageBytes uri = MessageBytes.newInstance();
+        UDecoder decoder = new UDecoder();
+
+        long start = System.nanoTime();
+        int length = 0;
+        for (int i = 0; i < iterCount; i++) {
+            byte[] bytes = uris[i % uris.length];
+            raw.setBytes(bytes, 0, bytes.length);
+            uri.duplicate(raw);
+            if (fast) {
+                CoyoteAdapter.convertASCIIURI(uri);
+            } else {
+                decoder.convert(uri, false);
+                CoyoteAdapter.normalize(uri);
+                adapter.convertURI(uri, null);
+                CoyoteAdapter.checkNormalize(uri);
+            }
+            length += uri.getCharChunk().getLength();
+        }
+        long end = System.nanoTime();
+
+        System.out.println((fast ? "Single pass" : "Separate steps") + ": " +
+                iterCount + " URIs in " + (end - start) / 1000000 + "ms (" +
+                length + " chars)");
+    }
+}
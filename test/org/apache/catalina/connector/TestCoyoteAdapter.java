@@ -19,6 +19,8 @@ package org.apache.catalina.connector;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -32,6 +34,8 @@ import org.apache.catalina.Context;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.buf.UDecoder;
 
 public class TestCoyoteAdapter extends TomcatBaseTest {
 
@@ -232,6 +236,56 @@ public class TestCoyoteAdapter extends TomcatBaseTest {
         Assert.assertEquals(expectedPathInfo, servlet.getPathInfo());
     }
 
+    @Test
+    public void testConvertASCIIURI() throws Exception {
+        // URIs the fast path must handle
+        String[] converted = new String[] { "/", "/foo", "/foo/", "/foo/bar",
+                "//foo///bar//", "/foo/./bar", "/foo/../bar", "/foo/.",
+                "/foo/..", "/foo/bar/../..", "/./", "/%66oo%20bar",
+                "/x/%2e%2E/y/%2E%2e", "/foo/.bar", "/foo/..bar", "/foo/...",
+                "/a/b/./../c/./d/../../e" };
+        // URIs that must be left to the general purpose path
+        String[] skipped = new String[] { "", "*", "foo", "/..", "/foo/../..",
+                "/foo%2fbar", "/foo%", "/foo%2", "/foo%zz", "/foo%e9",
+                "/foo\\bar", "/foo%5cbar", "/foo%00", "/./../foo" };
+
+        for (String uri : converted) {
+            Assert.assertTrue(uri, doTestConvertASCIIURI(uri));
+        }
+        for (String uri : skipped) {
+            Assert.assertFalse(uri, doTestConvertASCIIURI(uri));
+        }
+        Assert.assertFalse(doTestConvertASCIIURI("/f\u00e9"));
+    }
+
+    private boolean doTestConvertASCIIURI(String uri) throws Exception {
+        byte[] bytes = uri.getBytes(StandardCharsets.ISO_8859_1);
+        // Allow for normalize() adding a trailing '/'
+        byte[] buf = Arrays.copyOf(bytes, bytes.length + 1);
+
+        MessageBytes fast = MessageBytes.newInstance();
+        fast.setBytes(buf, 0, bytes.length);
+        if (!CoyoteAdapter.convertASCIIURI(fast)) {
+            // The URI must not have been modified
+            Assert.assertEquals(uri, fast.toString());
+            return false;
+        }
+
+        String expected = null;
+        MessageBytes slow = MessageBytes.newInstance();
+        slow.setBytes(Arrays.copyOf(bytes, bytes.length + 1), 0, bytes.length);
+        try {
+            new UDecoder().convert(slow, false);
+            if (CoyoteAdapter.normalize(slow)) {
+                expected = slow.getByteChunk().toString();
+            }
+        } catch (IOException ioe) {
+            // Invalid URI
+        }
+        Assert.assertEquals(uri, expected, fast.toString());
+        return true;
+    }
+
     private static class PathInfoServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
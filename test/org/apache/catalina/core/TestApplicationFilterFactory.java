@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.deploy.FilterDef;
+import org.apache.catalina.deploy.FilterMap;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+
+public class TestApplicationFilterFactory extends TomcatBaseTest {
+
+    @Test
+    public void testCachedFilters() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        // Must have a real docBase - just use temp
+        Context ctx =
+            tomcat.addContext("", System.getProperty("java.io.tmpdir"));
+
+        Tomcat.addServlet(ctx, "trace", new TraceServlet());
+        ctx.addServletMapping("/*", "trace");
+        Tomcat.addServlet(ctx, "named", new TraceServlet());
+
+        addFilter(ctx, "all", "/*", null, null);
+        FilterMap txt = addFilter(ctx, "txt", "*.txt", null, null);
+        addFilter(ctx, "sub", "/sub/*", null, null);
+        addFilter(ctx, "trace", null, "trace", null);
+        addFilter(ctx, "fwd", "*", null, "FORWARD");
+        addFilter(ctx, "named", null, "named", "FORWARD");
+
+        tomcat.start();
+
+        // Repeat requests to check the cached filters are reused correctly
+        for (int i = 0; i < 3; i++) {
+            assertEquals("all,trace,", getFilters("/a"));
+            assertEquals("all,txt,trace,", getFilters("/a.txt"));
+            assertEquals("all,txt,sub,trace,", getFilters("/sub/a.txt"));
+            assertEquals("all,sub,trace,", getFilters("/sub"));
+            assertEquals("all,trace,", getFilters("/subway"));
+            assertEquals("all,trace,fwd,named,",
+                    getFilters("/a?forward=true"));
+        }
+
+        // Changes to the mappings must be visible immediately
+        ctx.removeFilterMap(txt);
+        assertEquals("all,trace,", getFilters("/a.txt"));
+        assertEquals("all,sub,trace,", getFilters("/sub/a.txt"));
+    }
+
+    private String getFilters(String path) throws IOException {
+        return getUrl("http://localhost:" + getPort() + path).toString();
+    }
+
+    private static FilterMap addFilter(Context ctx, String name,
+            String urlPattern, String servletName, String dispatcher) {
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName(name);
+        filterDef.setFilterClass(TraceFilter.class.getName());
+        filterDef.setFilter(new TraceFilter(name));
+        ctx.addFilterDef(filterDef);
+
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(name);
+        if (urlPattern != null) {
+            filterMap.addURLPattern(urlPattern);
+        }
+        if (servletName != null) {
+            filterMap.addServletName(servletName);
+        }
+        if (dispatcher != null) {
+            filterMap.setDispatcher(dispatcher);
+        }
+        ctx.addFilterMap(filterMap);
+        return filterMap;
+    }
+
+    private static final class TraceFilter implements Filter {
+
+        private static final String ATTR = "trace";
+
+        private final String name;
+
+        public TraceFilter(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void init(FilterConfig filterConfig) throws ServletException {
+            // NO-OP
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response,
+                FilterChain chain) throws IOException, ServletException {
+            Object trace = request.getAttribute(ATTR);
+            request.setAttribute(ATTR,
+                    (trace == null ? "" : trace) + name + ",");
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+            // NO-OP
+        }
+    }
+
+    private static final class TraceServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            if (req.getParameter("forward") != null &&
+                    req.getAttribute("forwarded") == null) {
+                req.setAttribute("forwarded", Boolean.TRUE);
+                getServletContext().getNamedDispatcher("named").forward(
+                        req, resp);
+                return;
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().print(req.getAttribute(TraceFilter.ATTR));
+        }
+    }
+}
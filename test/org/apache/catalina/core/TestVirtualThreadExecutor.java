@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
+
+public class TestVirtualThreadExecutor {
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        VirtualThreadExecutor executor = createExecutor();
+        executor.setName("test");
+        executor.setMaxConcurrency(2);
+        executor.start();
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(10);
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+
+            for (int i = 0; i < 10; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int now = running.incrementAndGet();
+                        int max = maxRunning.get();
+                        while (now > max && !maxRunning.compareAndSet(max, now)) {
+                            max = maxRunning.get();
+                        }
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+
+            // Give the first tasks a chance to start. A task is active as soon
+            // as its thread has been started so wait for both to be running.
+            int count = 0;
+            while ((executor.getActiveCount() < 2 || running.get() < 2) &&
+                    count < 100) {
+                Thread.sleep(20);
+                count++;
+            }
+            Assert.assertEquals(2, executor.getActiveCount());
+            Assert.assertEquals(8, executor.getQueueSize());
+
+            release.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(2, maxRunning.get());
+
+            // The active count is decremented after the completed count is
+            // incremented so wait for both
+            count = 0;
+            while ((executor.getCompletedTaskCount() < 10 ||
+                    executor.getActiveCount() > 0) && count < 100) {
+                Thread.sleep(20);
+                count++;
+            }
+            Assert.assertEquals(10, executor.getCompletedTaskCount());
+            Assert.assertEquals(0, executor.getActiveCount());
+            Assert.assertEquals(0, executor.getQueueSize());
+        } finally {
+            executor.stop();
+            executor.destroy();
+        }
+    }
+
+
+    @Test(expected=RejectedExecutionException.class)
+    public void testQueueFull() throws Exception {
+        VirtualThreadExecutor executor = createExecutor();
+        executor.setName("test");
+        executor.setMaxConcurrency(1);
+        executor.setMaxQueueSize(1);
+        executor.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        try {
+            executor.execute(r);
+            executor.execute(r);
+            executor.execute(r);
+        } finally {
+            release.countDown();
+            executor.stop();
+            executor.destroy();
+        }
+    }
+
+
+    @Test
+    public void testResizeStartsQueuedTasks() throws Exception {
+        VirtualThreadExecutor executor = createExecutor();
+        executor.setName("test");
+        executor.setMaxConcurrency(1);
+        executor.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(3);
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        try {
+            for (int i = 0; i < 3; i++) {
+                executor.execute(r);
+            }
+            Assert.assertEquals(2, executor.getQueueSize());
+
+            // The queued tasks start without waiting for the first to complete
+            executor.resizePool(3, 3);
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(3, executor.getActiveCount());
+            Assert.assertEquals(0, executor.getQueueSize());
+        } finally {
+            release.countDown();
+            executor.stop();
+            executor.destroy();
+        }
+    }
+
+
+    @Test
+    public void testVirtualThreadsUnsupported() throws Exception {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            // Virtual threads are supported
+            return;
+        } catch (NoSuchMethodException e) {
+            // Expected on older JVMs
+        }
+        VirtualThreadExecutor executor = new VirtualThreadExecutor();
+        executor.setName("test");
+        try {
+            executor.start();
+            Assert.fail();
+        } catch (LifecycleException e) {
+            // Expected
+        } finally {
+            executor.destroy();
+        }
+    }
+
+
+    /*
+     * Tests the scheduling of tasks with platform threads on JVMs that do not
+     * support virtual threads.
+     */
+    private static VirtualThreadExecutor createExecutor() {
+        return new VirtualThreadExecutor() {
+            @Override
+            protected ThreadFactory createThreadFactory() {
+                ThreadFactory tf = super.createThreadFactory();
+                if (tf == null) {
+                    tf = new TaskThreadFactory(namePrefix, true,
+                            Thread.NORM_PRIORITY);
+                }
+                return tf;
+            }
+        };
+    }
+}
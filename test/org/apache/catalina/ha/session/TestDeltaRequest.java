@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.ha.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+
+public class TestDeltaRequest {
+
+    private DeltaSession primary;
+    private DeltaSession backup;
+    private long bytesSaved;
+
+
+    @Before
+    public void setUp() {
+        primary = createSession();
+        backup = createSession();
+    }
+
+
+    @Test
+    public void testDiff() throws Exception {
+        TesterCart cart = new TesterCart();
+        for (int i = 0; i < 100; i++) {
+            cart.add("item" + i);
+        }
+        primary.setAttribute("cart", cart);
+        assertEquals(0, replicate());
+
+        cart.add("extra");
+        primary.setAttribute("cart", cart);
+        assertEquals(1, replicate());
+        assertTrue(bytesSaved > 0);
+
+        TesterCart replica = (TesterCart) backup.getAttribute("cart");
+        assertNotSame(cart, replica);
+        assertEquals(cart.items, replica.items);
+    }
+
+
+    @Test
+    public void testNewValueSentInFull() throws Exception {
+        TesterCart cart = new TesterCart();
+        cart.add("a");
+        primary.setAttribute("cart", cart);
+        replicate();
+
+        TesterCart other = new TesterCart();
+        other.resetDiff();
+        other.add("b");
+        primary.setAttribute("cart", other);
+        assertEquals(0, replicate());
+        assertEquals(other.items,
+                ((TesterCart) backup.getAttribute("cart")).items);
+    }
+
+
+    @Test
+    public void testRemoveAndSetSentInFull() throws Exception {
+        TesterCart cart = new TesterCart();
+        cart.add("a");
+        primary.setAttribute("cart", cart);
+        replicate();
+
+        primary.removeAttribute("cart");
+        cart.add("b");
+        primary.setAttribute("cart", cart);
+        assertEquals(0, replicate());
+        assertEquals(cart.items,
+                ((TesterCart) backup.getAttribute("cart")).items);
+    }
+
+
+    /**
+     * Send the changes made to the primary session to the backup session.
+     *
+     * @return the number of attributes sent as a diff
+     */
+    private int replicate() throws IOException, ClassNotFoundException {
+        DeltaRequest deltaRequest = primary.getDeltaRequest();
+        byte[] data = deltaRequest.serialize();
+        int diffs = deltaRequest.getAttributeDiffs();
+        bytesSaved = deltaRequest.getAttributeDiffBytesSaved();
+
+        ObjectInputStream ois =
+                new ObjectInputStream(new ByteArrayInputStream(data));
+        backup.getDeltaRequest().readExternal(ois);
+        backup.getDeltaRequest().execute(backup, false);
+
+        primary.resetDeltaRequest();
+        return diffs;
+    }
+
+
+    private static DeltaSession createSession() {
+        DeltaManager manager = new DeltaManager();
+        manager.setContext(new StandardContext());
+        DeltaSession session = (DeltaSession) manager.createEmptySession();
+        session.setValid(true);
+        session.setId("ABCDEF", false);
+        session.resetDeltaRequest();
+        return session;
+    }
+
+
+    /**
+     * A list of items that replicates the items added since the last
+     * replication.
+     */
+    private static class TesterCart implements DiffableAttribute {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> items = new ArrayList<>();
+        private transient int replicatedCount = -1;
+
+        public void add(String item) {
+            items.add(item);
+        }
+
+        @Override
+        public boolean isDiffable() {
+            return replicatedCount >= 0;
+        }
+
+        @Override
+        public byte[] getDiff() throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(new ArrayList<>(
+                        items.subList(replicatedCount, items.size())));
+            }
+            return bos.toByteArray();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void applyDiff(byte[] diff, int offset, int length)
+                throws IOException, ClassNotFoundException {
+            try (ObjectInputStream ois = new ObjectInputStream(
+                    new ByteArrayInputStream(diff, offset, length))) {
+                items.addAll((List<String>) ois.readObject());
+            }
+            resetDiff();
+        }
+
+        @Override
+        public void resetDiff() {
+            replicatedCount = items.size();
+        }
+    }
+}
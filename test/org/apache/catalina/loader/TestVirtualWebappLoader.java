@@ -17,9 +17,11 @@
 package org.apache.catalina.loader;
 
 import java.io.File;
+import java.util.jar.JarFile;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
@@ -79,4 +81,33 @@ public class TestVirtualWebappLoader extends TomcatBaseTest {
         // see tearDown()!
         tomcat.start();
     }
+
+    @Test
+    public void testAddJarAfterStart() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        File appDir = new File("test/webapp-3.0");
+        StandardContext ctx =
+            (StandardContext)tomcat.addContext("",  appDir.getAbsolutePath());
+
+        WebappLoader loader = new WebappLoader();
+
+        loader.setContext(ctx);
+        ctx.setLoader(loader);
+
+        ctx.setResources(new StandardRoot(ctx));
+        ctx.resourcesStart();
+
+        loader.start();
+        WebappClassLoader cl = (WebappClassLoader) loader.getClassLoader();
+        String name = "META-INF/resources/resourceA.jsp";
+        assertNull(cl.findResource(name));
+
+        // The JAR must be searched even though the index was built on start
+        File jar = new File("test/webapp-3.0-fragments/WEB-INF/lib/resources.jar");
+        cl.addJar("/WEB-INF/lib/resources.jar", new JarFile(jar), jar);
+        assertNotNull(cl.findResource(name));
+
+        loader.stop();
+        ctx.setLoader(null);
+    }
 }
@@ -196,6 +196,71 @@ public class TestMapper extends LoggingBaseTest {
         assertTrue(mappingData.redirectPath.isNull());
     }
 
+    @Test
+    public void testMapWrappers() throws Exception {
+        MappingData mappingData = new MappingData();
+
+        // Exact match
+        map("/foo/bar/blh", mappingData);
+        assertEquals("wrapper2", mappingData.wrapper.getName());
+        assertEquals("/blh", mappingData.wrapperPath.toString());
+        assertTrue(mappingData.pathInfo.isNull());
+
+        // Prefix match on the prefix itself
+        map("/foo/bar/fo", mappingData);
+        assertEquals("wrapper0", mappingData.wrapper.getName());
+        assertEquals("/fo", mappingData.wrapperPath.toString());
+        assertTrue(mappingData.pathInfo.isNull());
+
+        // Prefix matches only apply to complete path segments
+        map("/foo/bar/fox.jsp", mappingData);
+        assertEquals("wrapper3", mappingData.wrapper.getName());
+        assertEquals("/fox.jsp", mappingData.wrapperPath.toString());
+
+        // Prefix match takes precedence over extension match
+        map("/foo/bar/blah/bou/index.jsp", mappingData);
+        assertEquals("wrapper4", mappingData.wrapper.getName());
+        assertEquals("/blah/bou", mappingData.wrapperPath.toString());
+        assertEquals("/index.jsp", mappingData.pathInfo.toString());
+
+        // Extension must be in the last segment
+        map("/foo/bar/a.htm/b", mappingData);
+        assertEquals("wrapper1", mappingData.wrapper.getName());
+
+        map("/foo/bar/a/b.htm", mappingData);
+        assertEquals("wrapper6", mappingData.wrapper.getName());
+
+        // Wrappers added and removed after the mapper is in use
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "/blah/*",
+                createWrapper("wrapper8"), false, false);
+        map("/foo/bar/blah/bob", mappingData);
+        assertEquals("wrapper8", mappingData.wrapper.getName());
+        assertEquals("/bob", mappingData.pathInfo.toString());
+        map("/foo/bar/blah/bobou/foo", mappingData);
+        assertEquals("wrapper5", mappingData.wrapper.getName());
+
+        mapper.removeWrapper("iowejoiejfoiew", "/foo/bar", "0",
+                "/blah/bobou/*");
+        map("/foo/bar/blah/bobou/foo", mappingData);
+        assertEquals("wrapper8", mappingData.wrapper.getName());
+        assertEquals("/bobou/foo", mappingData.pathInfo.toString());
+
+        mapper.removeWrapper("iowejoiejfoiew", "/foo/bar", "0", "*.htm");
+        map("/foo/bar/a/b.htm", mappingData);
+        assertEquals("wrapper1", mappingData.wrapper.getName());
+    }
+
+    private void map(String path, MappingData mappingData) throws Exception {
+        MessageBytes host = MessageBytes.newInstance();
+        host.setString("iowejoiejfoiew");
+        MessageBytes uri = MessageBytes.newInstance();
+        uri.setString(path);
+        uri.toChars();
+        uri.getCharChunk().setLimit(-1);
+        mappingData.recycle();
+        mapper.map(host, uri, null, mappingData);
+    }
+
     @Test
     public void testPerformance() throws Exception {
         // Takes ~1s on markt's laptop. If this takes more than 5s something
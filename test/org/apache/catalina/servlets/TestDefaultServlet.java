@@ -16,19 +16,31 @@
  */
 package org.apache.catalina.servlets;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -39,6 +51,7 @@ import org.junit.Test;
 
 import static org.apache.catalina.startup.SimpleHttpClient.CRLF;
 
+import org.apache.catalina.Wrapper;
 import org.apache.catalina.startup.SimpleHttpClient;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
@@ -289,6 +302,270 @@ public class TestDefaultServlet extends TomcatBaseTest {
         assertTrue(client.isResponse404());
     }
 
+    /**
+     * Test serving content using non-blocking writes.
+     */
+    @Test
+    public void testNonBlocking() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "MyApp");
+        addDeleteOnTearDown(appDir);
+        if (!appDir.mkdirs() && !appDir.isDirectory()) {
+            fail("Unable to create directory [" + appDir + "]");
+        }
+        byte[] content = new byte[256 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        FileOutputStream fos =
+                new FileOutputStream(new File(appDir, "content.bin"));
+        try {
+            fos.write(content);
+        } finally {
+            fos.close();
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+        org.apache.catalina.Context ctx =
+                tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper w = Tomcat.addServlet(ctx, "default", new DefaultServlet());
+        w.addInitParameter("sendfileSize", "-1");
+        w.addInitParameter("nonBlockingSize", "64");
+        w.setAsyncSupported(true);
+        ctx.addServletMapping("/", "default");
+        tomcat.start();
+
+        ByteChunk res = new ByteChunk();
+        int rc = getUrl("http://localhost:" + getPort() + "/content.bin", res,
+                null);
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertTrue(Arrays.equals(content, Arrays.copyOfRange(
+                res.getBuffer(), res.getStart(), res.getEnd())));
+
+        res.recycle();
+        Map<String,List<String>> reqHead = new HashMap<>();
+        reqHead.put("Range", Arrays.asList("bytes=1000-200999"));
+        rc = getUrl("http://localhost:" + getPort() + "/content.bin", res,
+                reqHead, null);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, rc);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(content, 1000, 201000),
+                Arrays.copyOfRange(
+                        res.getBuffer(), res.getStart(), res.getEnd())));
+
+        // Wrapped requests and responses are written using blocking IO
+        WrappingServlet wrapping = new WrappingServlet();
+        Wrapper ww = Tomcat.addServlet(ctx, "wrapping", wrapping);
+        ww.setAsyncSupported(true);
+        ctx.addServletMapping("/wrapping", "wrapping");
+        res.recycle();
+        rc = getUrl("http://localhost:" + getPort() + "/wrapping", res, null);
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertTrue(Arrays.equals(content, Arrays.copyOfRange(
+                res.getBuffer(), res.getStart(), res.getEnd())));
+        assertFalse(wrapping.asyncStarted);
+    }
+
+    /**
+     * Test a multipart/byteranges response, which uses sendfile where the
+     * connector supports it.
+     */
+    @Test
+    public void testMultipleRanges() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "MyApp");
+        addDeleteOnTearDown(appDir);
+        if (!appDir.mkdirs() && !appDir.isDirectory()) {
+            fail("Unable to create directory [" + appDir + "]");
+        }
+        byte[] content = new byte[8192];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        FileOutputStream fos =
+                new FileOutputStream(new File(appDir, "content.txt"));
+        try {
+            fos.write(content);
+        } finally {
+            fos.close();
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+        org.apache.catalina.Context ctx =
+                tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper w = Tomcat.addServlet(ctx, "default", new DefaultServlet());
+        w.addInitParameter("sendfileSize", "1");
+        ctx.addServletMapping("/", "default");
+        ctx.addMimeMapping("txt", "text/plain");
+        tomcat.start();
+
+        String expected =
+                "\r\n--CATALINA_MIME_BOUNDARY\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Range: bytes 0-9/8192\r\n\r\n" +
+                new String(content, 0, 10, "ISO-8859-1") +
+                "\r\n--CATALINA_MIME_BOUNDARY\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Range: bytes 4000-5999/8192\r\n\r\n" +
+                new String(content, 4000, 2000, "ISO-8859-1") +
+                "\r\n--CATALINA_MIME_BOUNDARY--";
+
+        // Repeat to check the response length is correct for keep-alive
+        for (int i = 0; i < 2; i++) {
+            ByteChunk res = new ByteChunk();
+            Map<String,List<String>> reqHead = new HashMap<>();
+            reqHead.put("Range", Arrays.asList("bytes=0-9,4000-5999"));
+            int rc = getUrl("http://localhost:" + getPort() + "/content.txt",
+                    res, reqHead, null);
+            assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, rc);
+            assertEquals(expected, new String(res.getBuffer(), res.getStart(),
+                    res.getLength(), "ISO-8859-1"));
+        }
+    }
+
+    /**
+     * Test that clients that accept gzip are sent the cached compressed copy
+     * of a resource and other clients the resource itself.
+     */
+    @Test
+    public void testCompressedVariant() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "MyApp");
+        addDeleteOnTearDown(appDir);
+        if (!appDir.mkdirs() && !appDir.isDirectory()) {
+            fail("Unable to create directory [" + appDir + "]");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("Line ").append(i).append(" of the content\n");
+        }
+        byte[] content = sb.toString().getBytes("ISO-8859-1");
+        FileOutputStream fos =
+                new FileOutputStream(new File(appDir, "content.txt"));
+        try {
+            fos.write(content);
+        } finally {
+            fos.close();
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+        org.apache.catalina.Context ctx =
+                tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper w = Tomcat.addServlet(ctx, "default", new DefaultServlet());
+        w.addInitParameter("useCompressedVariants", "true");
+        w.addInitParameter("sendfileSize", "-1");
+        ctx.addServletMapping("/", "default");
+        Tomcat.addServlet(ctx, "include", new IncludeServlet());
+        ctx.addServletMapping("/include", "include");
+        ctx.addMimeMapping("txt", "text/plain");
+        tomcat.start();
+
+        String url = "http://localhost:" + getPort() + "/content.txt";
+
+        // Repeat so that the second response uses the cached copy
+        String gzipETag = null;
+        for (int i = 0; i < 2; i++) {
+            ByteChunk res = new ByteChunk();
+            Map<String,List<String>> reqHead = new HashMap<>();
+            reqHead.put("Accept-Encoding", Arrays.asList("deflate, gzip"));
+            Map<String,List<String>> resHead = new HashMap<>();
+            int rc = getUrl(url, res, reqHead, resHead);
+            assertEquals(HttpServletResponse.SC_OK, rc);
+            assertEquals("gzip", resHead.get("Content-Encoding").get(0));
+            assertEquals("Accept-Encoding", resHead.get("Vary").get(0));
+            assertTrue(res.getLength() < content.length);
+            assertEquals(String.valueOf(res.getLength()),
+                    resHead.get("Content-Length").get(0));
+            assertTrue(Arrays.equals(content, gunzip(res)));
+            gzipETag = resHead.get("ETag").get(0);
+            assertTrue(gzipETag.endsWith("-gzip\""));
+        }
+
+        ByteChunk res = new ByteChunk();
+        Map<String,List<String>> reqHead = new HashMap<>();
+        reqHead.put("Accept-Encoding", Arrays.asList("gzip;q=0"));
+        Map<String,List<String>> resHead = new HashMap<>();
+        int rc = getUrl(url, res, reqHead, resHead);
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertFalse(resHead.containsKey("Content-Encoding"));
+        assertEquals("Accept-Encoding", resHead.get("Vary").get(0));
+        assertEquals(sb.toString(), res.toString());
+        assertFalse(gzipETag.equals(resHead.get("ETag").get(0)));
+
+        // The ETag of the compressed copy is a valid validator
+        res = new ByteChunk();
+        reqHead = new HashMap<>();
+        reqHead.put("Accept-Encoding", Arrays.asList("gzip"));
+        reqHead.put("If-None-Match", Arrays.asList(gzipETag));
+        resHead = new HashMap<>();
+        rc = getUrl(url, res, reqHead, resHead);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, rc);
+
+        // but a range is never taken from the resource for a client that
+        // holds the compressed copy
+        res = new ByteChunk();
+        reqHead = new HashMap<>();
+        reqHead.put("Range", Arrays.asList("bytes=10-20"));
+        reqHead.put("If-Range", Arrays.asList(gzipETag));
+        resHead = new HashMap<>();
+        rc = getUrl(url, res, reqHead, resHead);
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertEquals(sb.toString(), res.toString());
+
+        // An included resource is never compressed
+        res = new ByteChunk();
+        reqHead = new HashMap<>();
+        reqHead.put("Accept-Encoding", Arrays.asList("gzip"));
+        resHead = new HashMap<>();
+        rc = getUrl("http://localhost:" + getPort() + "/include", res,
+                reqHead, resHead);
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertFalse(resHead.containsKey("Content-Encoding"));
+        assertEquals(sb.toString(), res.toString());
+    }
+
+    private static class WrappingServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private volatile boolean asyncStarted = false;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            HttpServletRequest wrapped = new HttpServletRequestWrapper(req) {
+                @Override
+                public AsyncContext startAsync() {
+                    asyncStarted = true;
+                    return super.startAsync();
+                }
+            };
+            req.getRequestDispatcher("/content.bin").forward(
+                    wrapped, new HttpServletResponseWrapper(resp));
+        }
+    }
+
+    private static class IncludeServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            resp.setContentType("text/plain");
+            req.getRequestDispatcher("/content.txt").include(req, resp);
+        }
+    }
+
+    private static byte[] gunzip(ByteChunk bc) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(
+                bc.getBuffer(), bc.getStart(), bc.getLength()))) {
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                baos.write(buf, 0, n);
+            }
+        }
+        return baos.toByteArray();
+    }
+
     public static int getUrl(String path, ByteChunk out,
             Map<String, List<String>> resHead) throws IOException {
         out.recycle();
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+
+public class TestCompactSessionSerializer {
+
+    private StandardManager mgr;
+
+    @Before
+    public void setup() {
+        mgr = new StandardManager();
+        mgr.setContext(new StandardContext());
+    }
+
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StandardSession session = createSession();
+        List<String> list = new ArrayList<>();
+        list.add("a");
+        session.setAttribute("string", "value");
+        session.setAttribute("integer", Integer.valueOf(42));
+        session.setAttribute("long", Long.valueOf(-1));
+        session.setAttribute("boolean", Boolean.TRUE);
+        session.setAttribute("double", Double.valueOf(0.5));
+        session.setAttribute("bytes", new byte[] { 1, 2, 3 });
+        session.setAttribute("list", list);
+
+        StandardSession copy = readSession(writeSession(session));
+
+        assertEquals(session.getIdInternal(), copy.getIdInternal());
+        assertEquals(session.getCreationTime(), copy.getCreationTime());
+        assertEquals(session.getLastAccessedTimeInternal(),
+                copy.getLastAccessedTimeInternal());
+        assertEquals(session.getThisAccessedTimeInternal(),
+                copy.getThisAccessedTimeInternal());
+        assertEquals(session.getMaxInactiveInterval(),
+                copy.getMaxInactiveInterval());
+        assertTrue(copy.isNew());
+        assertTrue(copy.isValidInternal());
+
+        assertEquals("value", copy.getAttribute("string"));
+        assertEquals(Integer.valueOf(42), copy.getAttribute("integer"));
+        assertEquals(Long.valueOf(-1), copy.getAttribute("long"));
+        assertEquals(Boolean.TRUE, copy.getAttribute("boolean"));
+        assertEquals(Double.valueOf(0.5), copy.getAttribute("double"));
+        byte[] bytes = (byte[]) copy.getAttribute("bytes");
+        assertEquals(3, bytes.length);
+        assertEquals(3, bytes[2]);
+        assertEquals(list, copy.getAttribute("list"));
+    }
+
+
+    @Test
+    public void testSmallerThanJava() throws Exception {
+        StandardSession session = createSession();
+        session.setAttribute("string", "value");
+        session.setAttribute("integer", Integer.valueOf(42));
+
+        int compactSize = writeSession(session).length;
+        mgr.setSessionSerializer(new JavaSessionSerializer());
+        int javaSize = writeSession(session).length;
+
+        assertTrue(compactSize + " >= " + javaSize, compactSize < javaSize);
+    }
+
+
+    @Test
+    public void testNotSerializable() throws Exception {
+        StandardSession session = createSession();
+        List<Object> list = new ArrayList<>();
+        list.add(new Object());
+        session.setAttribute("bad", list);
+        session.setAttribute("good", "value");
+        // Not Serializable at all, so removed
+        session.setAttribute("unbound", new Object());
+
+        StandardSession copy = readSession(writeSession(session));
+
+        assertNull(session.getAttribute("unbound"));
+        assertNull(copy.getAttribute("bad"));
+        assertEquals("value", copy.getAttribute("good"));
+    }
+
+
+    @Test
+    public void testJavaFormatRead() throws Exception {
+        StandardSession session = createSession();
+        session.setAttribute("string", "value");
+        mgr.setSessionSerializer(new JavaSessionSerializer());
+        byte[] data = writeSession(session);
+
+        mgr.setSessionSerializer(new CompactSessionSerializer());
+        StandardSession copy = readSession(data);
+        assertEquals(session.getIdInternal(), copy.getIdInternal());
+        assertEquals(session.getCreationTime(), copy.getCreationTime());
+        assertEquals("value", copy.getAttribute("string"));
+    }
+
+
+    @Test
+    public void testUnknownFormatRejected() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject("Unknown");
+        }
+
+        try {
+            readSession(baos.toByteArray());
+            fail();
+        } catch (StreamCorruptedException e) {
+            // Expected
+        }
+    }
+
+
+    @Test
+    public void testCustomType() throws Exception {
+        mgr.setSessionSerializer(new PointSerializer());
+        StandardSession session = createSession();
+        session.setAttribute("point", new Point(3, 4));
+
+        Point point = (Point) readSession(writeSession(session)).getAttribute(
+                "point");
+        assertEquals(3, point.x);
+        assertEquals(4, point.y);
+        assertFalse(point.serialized);
+    }
+
+
+    private StandardSession createSession() {
+        StandardSession session = (StandardSession) mgr.createEmptySession();
+        session.setNew(true);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setId("ABCDEF");
+        return session;
+    }
+
+
+    private byte[] writeSession(StandardSession session) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            session.writeObjectData(oos);
+        }
+        return baos.toByteArray();
+    }
+
+
+    private StandardSession readSession(byte[] data) throws Exception {
+        StandardSession session = (StandardSession) mgr.createEmptySession();
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(data))) {
+            session.readObjectData(ois);
+        }
+        return session;
+    }
+
+
+    private static class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int x;
+        private final int y;
+        private transient boolean serialized;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        private Object readResolve() {
+            serialized = true;
+            return this;
+        }
+    }
+
+
+    private static class PointSerializer extends CompactSessionSerializer {
+
+        private static final byte TYPE_POINT = TYPE_CUSTOM;
+
+        @Override
+        protected void writeValue(ObjectOutputStream stream, Object value)
+                throws IOException {
+            if (value instanceof Point) {
+                stream.writeByte(TYPE_POINT);
+                stream.writeInt(((Point) value).x);
+                stream.writeInt(((Point) value).y);
+            } else {
+                super.writeValue(stream, value);
+            }
+        }
+
+        @Override
+        protected Object readValue(ObjectInputStream stream, byte type)
+                throws IOException {
+            if (type == TYPE_POINT) {
+                return new Point(stream.readInt(), stream.readInt());
+            }
+            return super.readValue(stream, type);
+        }
+    }
+}
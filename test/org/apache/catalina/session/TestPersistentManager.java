@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+
+public class TestPersistentManager extends TomcatBaseTest {
+
+    private PersistentManager manager;
+    private BlockingStore store;
+
+
+    @Test
+    public void testWriteBehindSwapOut() throws Exception {
+        setUpManager(true);
+
+        Session session = manager.createSession(null);
+        String id = session.getIdInternal();
+        session.getSession().setAttribute("name", "value");
+
+        manager.swapOut(session);
+        waitForWriteBehind();
+
+        // Recycled once written
+        assertNull(session.getIdInternal());
+        assertTrue(manager.getWriteBehindFlushCount() > 0);
+        assertNotNull(store.load(id));
+
+        Session swappedIn = manager.findSession(id);
+        assertNotNull(swappedIn);
+        assertNotSame(session, swappedIn);
+        assertEquals("value", swappedIn.getSession().getAttribute("name"));
+    }
+
+
+    @Test
+    public void testWriteBehindSwapInBeforeWrite() throws Exception {
+        setUpManager(true);
+
+        Session session = manager.createSession(null);
+        String id = session.getIdInternal();
+
+        synchronized (store.lock) {
+            // Prevent the write behind thread from completing the write
+            manager.swapOut(session);
+            assertNull(manager.sessions.get(id));
+            assertEquals(1, manager.getWriteBehindQueueLength());
+
+            assertSame(session, manager.findSession(id));
+            assertEquals(0, manager.getWriteBehindQueueLength());
+        }
+        waitForWriteBehind();
+
+        // Not recycled
+        assertEquals(id, session.getIdInternal());
+        assertSame(session, manager.findSession(id));
+    }
+
+
+    @Test
+    public void testWriteBehindCoalesce() throws Exception {
+        setUpManager(true);
+
+        Session session = manager.createSession(null);
+
+        synchronized (store.lock) {
+            manager.writeSession(session);
+            manager.writeSession(session);
+            manager.writeSession(session);
+            assertEquals(1, manager.getWriteBehindQueueLength());
+        }
+        waitForWriteBehind();
+
+        assertSame(session, manager.findSession(session.getIdInternal()));
+        assertNotNull(store.load(session.getIdInternal()));
+    }
+
+
+    @Test
+    public void testWriteBehindRemove() throws Exception {
+        setUpManager(true);
+
+        Session session = manager.createSession(null);
+        String id = session.getIdInternal();
+
+        manager.writeSession(session);
+        session.expire();
+        assertEquals(0, manager.getWriteBehindQueueLength());
+        waitForWriteBehind();
+
+        assertNull(store.load(id));
+    }
+
+
+    @Test
+    public void testWriteBehindRemoveDuringWrite() throws Exception {
+        setUpManager(true);
+
+        final Session writing = manager.createSession(null);
+        String writingId = writing.getIdInternal();
+        final Session other = manager.createSession(null);
+
+        Thread expireWriting = new Thread() {
+            @Override
+            public void run() {
+                writing.expire();
+            }
+        };
+        Thread expireOther = new Thread() {
+            @Override
+            public void run() {
+                other.expire();
+            }
+        };
+        synchronized (store.lock) {
+            manager.writeSession(writing);
+            int count = 0;
+            while (store.saving == 0 && count < 100) {
+                Thread.sleep(50);
+                count++;
+            }
+            assertEquals(1, store.saving);
+
+            // A session that is not being written is removed straight away
+            expireOther.start();
+            expireOther.join(5000);
+            assertFalse(expireOther.isAlive());
+
+            // The session being written is removed once the write completes
+            expireWriting.start();
+            expireWriting.join(200);
+            assertTrue(expireWriting.isAlive());
+        }
+        expireWriting.join(5000);
+        assertFalse(expireWriting.isAlive());
+
+        assertNull(store.load(writingId));
+    }
+
+
+    @Test
+    public void testWriteBehindStop() throws Exception {
+        setUpManager(true);
+
+        Session session = manager.createSession(null);
+        String id = session.getIdInternal();
+
+        manager.stop();
+
+        assertEquals(0, manager.getWriteBehindQueueLength());
+        String[] keys = store.keys();
+        assertEquals(1, keys.length);
+        assertEquals(id, keys[0]);
+    }
+
+
+    @Test
+    public void testWriteBehindFileStoreBatch() throws Exception {
+        File storeDir = new File(getTemporaryDirectory(), "store");
+        FileStore fileStore = new FileStore();
+        fileStore.setDirectory(storeDir.getAbsolutePath());
+        setUpManager(true, fileStore);
+
+        Session[] sessions = new Session[20];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = manager.createSession(null);
+        }
+        for (Session session : sessions) {
+            manager.swapOut(session);
+        }
+        waitForWriteBehind();
+
+        assertEquals(sessions.length, fileStore.getSize());
+        assertEquals(0, manager.getActiveSessions());
+    }
+
+
+    @Test
+    public void testWithoutWriteBehind() throws Exception {
+        setUpManager(false);
+
+        Session session = manager.createSession(null);
+        String id = session.getIdInternal();
+
+        manager.swapOut(session);
+
+        assertEquals(0, manager.getWriteBehindQueueLength());
+        assertNull(session.getIdInternal());
+        assertNotNull(store.load(id));
+    }
+
+
+    private void setUpManager(boolean writeBehind) throws Exception {
+        File storeDir = new File(getTemporaryDirectory(), "store");
+        store = new BlockingStore(storeDir);
+        setUpManager(writeBehind, store);
+    }
+
+
+    private void setUpManager(boolean writeBehind, Store store)
+            throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Context ctx =
+                tomcat.addContext("", System.getProperty("java.io.tmpdir"));
+
+        addDeleteOnTearDown(new File(getTemporaryDirectory(), "store"));
+
+        manager = new PersistentManager();
+        manager.setSecureRandomClass(
+                "org.apache.catalina.startup.FastNonSecureRandom");
+        manager.setStore(store);
+        manager.setWriteBehind(writeBehind);
+        ctx.setManager(manager);
+
+        tomcat.start();
+    }
+
+
+    private void waitForWriteBehind() throws InterruptedException {
+        int count = 0;
+        while (manager.getWriteBehindQueueLength() > 0 && count < 100) {
+            Thread.sleep(50);
+            count++;
+        }
+    }
+
+
+    /**
+     * FileStore that does not complete a save while {@link #lock} is held.
+     */
+    private static class BlockingStore extends StoreBase {
+
+        private final Object lock = new Object();
+        private final FileStore delegate = new FileStore();
+        private volatile int saving = 0;
+
+        public BlockingStore(File dir) {
+            delegate.setDirectory(dir.getAbsolutePath());
+        }
+
+        @Override
+        public void setManager(Manager manager) {
+            super.setManager(manager);
+            delegate.setManager(manager);
+        }
+
+        @Override
+        public int getSize() throws IOException {
+            return delegate.getSize();
+        }
+
+        @Override
+        public String[] keys() throws IOException {
+            return delegate.keys();
+        }
+
+        @Override
+        public Session load(String id)
+                throws ClassNotFoundException, IOException {
+            return delegate.load(id);
+        }
+
+        @Override
+        public void remove(String id) throws IOException {
+            delegate.remove(id);
+        }
+
+        @Override
+        public void clear() throws IOException {
+            delegate.clear();
+        }
+
+        @Override
+        public void save(Session session) throws IOException {
+            saving++;
+            try {
+                synchronized (lock) {
+                    delegate.save(session);
+                }
+            } finally {
+                saving--;
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Session;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+
+public class TestSegmentStore extends TomcatBaseTest {
+
+    private PersistentManager manager;
+    private SegmentStore store;
+    private File storeDir;
+
+
+    @Test
+    public void testSaveLoadRemove() throws Exception {
+        setUpStore(64 * 1024);
+
+        Session session = manager.createSession(null);
+        String id = session.getIdInternal();
+        session.getSession().setAttribute("name", "value");
+        store.save(session);
+
+        assertEquals(1, store.getSize());
+        assertEquals(id, store.keys()[0]);
+        Session loaded = store.load(id);
+        assertNotNull(loaded);
+        assertEquals(id, loaded.getIdInternal());
+        assertEquals("value", loaded.getSession().getAttribute("name"));
+
+        session.getSession().setAttribute("name", "other");
+        store.save(session);
+        assertEquals(1, store.getSize());
+        assertEquals("other",
+                store.load(id).getSession().getAttribute("name"));
+
+        store.remove(id);
+        assertEquals(0, store.getSize());
+        assertNull(store.load(id));
+    }
+
+
+    @Test
+    public void testRestart() throws Exception {
+        setUpStore(1024);
+
+        Session[] sessions = new Session[20];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = manager.createSession(null);
+            sessions[i].getSession().setAttribute("index", Integer.valueOf(i));
+            store.save(sessions[i]);
+        }
+        store.remove(sessions[0].getIdInternal());
+        assertTrue(store.getSegmentCount() > 1);
+
+        store.stop();
+        store.start();
+
+        assertEquals(sessions.length - 1, store.getSize());
+        assertNull(store.load(sessions[0].getIdInternal()));
+        for (int i = 1; i < sessions.length; i++) {
+            Session loaded = store.load(sessions[i].getIdInternal());
+            assertNotNull(loaded);
+            assertEquals(Integer.valueOf(i),
+                    loaded.getSession().getAttribute("index"));
+        }
+    }
+
+
+    @Test
+    public void testExpiredKeys() throws Exception {
+        setUpStore(64 * 1024);
+
+        Session expired = manager.createSession(null);
+        expired.setMaxInactiveInterval(1);
+        Session valid = manager.createSession(null);
+        store.save(expired);
+        store.save(valid);
+        assertEquals(0, store.expiredKeys().length);
+
+        Thread.sleep(1100);
+
+        String[] keys = store.expiredKeys();
+        assertEquals(1, keys.length);
+        assertEquals(expired.getIdInternal(), keys[0]);
+
+        store.processExpires();
+        assertEquals(1, store.getSize());
+        assertNotNull(store.load(valid.getIdInternal()));
+    }
+
+
+    @Test
+    public void testCompaction() throws Exception {
+        setUpStore(1024);
+
+        Session kept = manager.createSession(null);
+        kept.getSession().setAttribute("name", "value");
+        store.save(kept);
+        Session updated = manager.createSession(null);
+        // Save one session repeatedly so the earlier segments only hold
+        // out of date copies of it
+        for (int i = 0; i < 30; i++) {
+            updated.getSession().setAttribute("count", Integer.valueOf(i));
+            store.save(updated);
+        }
+        int before = store.getSegmentCount();
+        assertTrue(before > 2);
+
+        store.processExpires();
+
+        assertTrue(store.getSegmentCount() < before);
+        assertEquals(2, store.getSize());
+        assertEquals("value", store.load(kept.getIdInternal())
+                .getSession().getAttribute("name"));
+        assertEquals(Integer.valueOf(29), store.load(updated.getIdInternal())
+                .getSession().getAttribute("count"));
+
+        // The compacted segments are not needed to rebuild the index
+        store.stop();
+        store.start();
+        assertEquals(2, store.getSize());
+        assertEquals(Integer.valueOf(29), store.load(updated.getIdInternal())
+                .getSession().getAttribute("count"));
+    }
+
+
+    @Test
+    public void testEmptySegmentIgnored() throws Exception {
+        setUpStore(64 * 1024);
+
+        Session session = manager.createSession(null);
+        store.save(session);
+        store.stop();
+
+        // A segment that could not be deleted is marked as empty first
+        File[] files = storeDir.listFiles();
+        assertEquals(1, files.length);
+        try (RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+            raf.writeInt(0);
+        }
+
+        store.start();
+        assertEquals(0, store.getSize());
+        assertEquals(0, store.getSegmentCount());
+        assertEquals(0, storeDir.listFiles().length);
+
+        // A new segment does not reuse the sequence number
+        store.save(session);
+        assertEquals(1, store.getSize());
+        assertFalse(files[0].getName().equals(
+                storeDir.listFiles()[0].getName()));
+    }
+
+
+    @Test
+    public void testClear() throws Exception {
+        setUpStore(1024);
+
+        for (int i = 0; i < 20; i++) {
+            store.save(manager.createSession(null));
+        }
+        store.clear();
+        assertEquals(0, store.getSize());
+        assertEquals(0, storeDir.listFiles().length);
+
+        store.stop();
+        store.start();
+        assertEquals(0, store.getSize());
+    }
+
+
+    private void setUpStore(int segmentSize) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Context ctx =
+                tomcat.addContext("", System.getProperty("java.io.tmpdir"));
+
+        storeDir = new File(getTemporaryDirectory(), "segments");
+        addDeleteOnTearDown(storeDir);
+
+        store = new SegmentStore();
+        store.setDirectory(storeDir.getAbsolutePath());
+        store.setSegmentSize(segmentSize);
+
+        manager = new PersistentManager();
+        manager.setSecureRandomClass(
+                "org.apache.catalina.startup.FastNonSecureRandom");
+        manager.setStore(store);
+        ctx.setManager(manager);
+
+        tomcat.start();
+    }
+}
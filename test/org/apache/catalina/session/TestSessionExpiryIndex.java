@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+
+public class TestSessionExpiryIndex {
+
+    private StandardManager mgr;
+
+    @Before
+    public void setup() {
+        mgr = new StandardManager();
+        mgr.setContext(new StandardContext());
+    }
+
+
+    @Test
+    public void testExpireDueSessionsOnly() throws Exception {
+        long now = System.currentTimeMillis();
+        Session expired = createSession("expired", now - 600000, 60);
+        Session active = createSession("active", now, 60);
+
+        assertEquals(1, mgr.expireSessions(now));
+        assertFalse(expired.isValid());
+        assertNull(mgr.findSession("expired"));
+        assertTrue(active.isValid());
+        assertNotNull(mgr.findSession("active"));
+    }
+
+
+    @Test
+    public void testAccessedSessionIsRescheduled() throws Exception {
+        long now = System.currentTimeMillis();
+        StandardSession session = createSession("accessed", now, 1);
+
+        // Due to expire, but not idle for long enough yet
+        assertEquals(0, mgr.expireSessions(now + 5000));
+        assertNotNull(mgr.findSession("accessed"));
+
+        // Last accessed long ago, so the rescheduled check must expire it
+        session.thisAccessedTime = now - 10000;
+        session.lastAccessedTime = now - 10000;
+        assertEquals(1, mgr.expireSessions(now + 10000));
+        assertNull(mgr.findSession("accessed"));
+    }
+
+
+    @Test
+    public void testShorterIntervalIsRescheduled() throws Exception {
+        long now = System.currentTimeMillis();
+        StandardSession session = createSession("shorter", now - 10000, 3600);
+
+        assertEquals(0, mgr.expireSessions(now));
+
+        session.setMaxInactiveInterval(5);
+        assertEquals(1, mgr.expireSessions(now));
+        assertNull(mgr.findSession("shorter"));
+    }
+
+
+    @Test
+    public void testRemovedSessionIsIgnored() throws Exception {
+        long now = System.currentTimeMillis();
+        Session session = createSession("removed", now - 600000, 60);
+        mgr.remove(session);
+
+        assertEquals(0, mgr.expireSessions(now));
+    }
+
+
+    @Test
+    public void testWithoutIndex() throws Exception {
+        mgr.setUseExpiryIndex(false);
+        long now = System.currentTimeMillis();
+        createSession("expired", now - 600000, 60);
+        createSession("active", now, 60);
+
+        assertEquals(1, mgr.expireSessions(now));
+        assertNull(mgr.findSession("expired"));
+
+        mgr.setUseExpiryIndex(true);
+        createSession("expired2", now - 600000, 60);
+        assertEquals(1, mgr.expireSessions(now));
+        assertNotNull(mgr.findSession("active"));
+    }
+
+
+    private StandardSession createSession(String id, long accessedTime,
+            int maxInactiveInterval) {
+        StandardSession session = (StandardSession) mgr.createEmptySession();
+        session.setNew(true);
+        session.setValid(true);
+        session.setCreationTime(accessedTime);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        session.setId(id);
+        return session;
+    }
+}
@@ -42,6 +42,7 @@ import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Manager;
 import org.apache.catalina.Server;
 import org.apache.catalina.Service;
 import org.apache.catalina.connector.Connector;
@@ -406,13 +407,12 @@ public abstract class TomcatBaseTest extends LoggingBaseTest {
                 Container e = service.getContainer();
                 for (Container h : e.findChildren()) {
                     for (Container c : h.findChildren()) {
-                        StandardManager m =
-                                (StandardManager) ((Context) c).getManager();
+                        Manager m = ((Context) c).getManager();
                         if (m == null) {
-                            m = new StandardManager();
-                            m.setSecureRandomClass(
+                            StandardManager sm = new StandardManager();
+                            sm.setSecureRandomClass(
                                     "org.apache.catalina.startup.FastNonSecureRandom");
-                            ((Context) c).setManager(m);
+                            ((Context) c).setManager(sm);
                         }
                     }
                 }
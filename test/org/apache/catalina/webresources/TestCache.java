@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.WebResource;
+
+public class TestCache {
+
+    @Test
+    public void testScanResistance() {
+        Cache cache = new Cache(new TesterStandardRoot());
+        // Room for roughly 20 empty resources
+        cache.setMaxSize(10);
+
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 10; i++) {
+                cache.getResource("/hot" + i);
+            }
+            for (int i = 0; i < 20; i++) {
+                cache.getResource("/scan" + round + "-" + i);
+            }
+        }
+
+        long hits = cache.getHitCount();
+        for (int i = 0; i < 10; i++) {
+            cache.getResource("/hot" + i);
+        }
+        Assert.assertEquals(hits + 10, cache.getHitCount());
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+        Assert.assertTrue(cache.getSize() <= cache.getMaxSize());
+    }
+
+
+    @Test
+    public void testShrink() {
+        Cache cache = new Cache(new TesterStandardRoot());
+        cache.setMaxSize(10);
+
+        for (int i = 0; i < 20; i++) {
+            cache.getResource("/entry" + i);
+        }
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(20, cache.getMissCount());
+
+        cache.setMaxSize(2);
+        cache.backgroundProcess();
+        Assert.assertTrue(cache.getSize() <= 2);
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+    }
+
+
+    @Test
+    public void testInvalidate() {
+        Cache cache = new Cache(new TesterStandardRoot());
+        cache.setWatched(true);
+
+        cache.getResource("/a/b.txt");
+        cache.getResource("/a/c/d.txt");
+        cache.getResource("/ab.txt");
+        Assert.assertEquals(3, cache.getMissCount());
+
+        cache.invalidatePrefix("/a/");
+        cache.getResource("/ab.txt");
+        Assert.assertEquals(1, cache.getHitCount());
+        cache.getResource("/a/b.txt");
+        cache.getResource("/a/c/d.txt");
+        Assert.assertEquals(5, cache.getMissCount());
+
+        cache.invalidate("/a/b.txt");
+        cache.getResource("/a/c/d.txt");
+        cache.getResource("/a/b.txt");
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(6, cache.getMissCount());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+
+    @Test
+    public void testOffHeap() throws Exception {
+        doTestOffHeap(false);
+    }
+
+
+    @Test
+    public void testOffHeapMapped() throws Exception {
+        doTestOffHeap(true);
+    }
+
+
+    private void doTestOffHeap(boolean mapFiles) throws Exception {
+        File file = File.createTempFile("offheap", ".txt");
+        try {
+            writeFile(file, "0123456789");
+
+            Cache cache = new Cache(new TesterFileStandardRoot(file));
+            cache.setMaxOffHeapSize(1024);
+            cache.setMapFiles(mapFiles);
+
+            WebResource resource = cache.getResource("/offheap.txt");
+            // Off-heap content is never copied onto the heap
+            Assert.assertNull(resource.getContent());
+            ByteBuffer buffer = resource.getContentBuffer();
+            Assert.assertNotNull(buffer);
+            Assert.assertEquals(10, buffer.remaining());
+            Assert.assertEquals('0', buffer.get(0));
+            Assert.assertEquals('9', buffer.get(9));
+
+            // Content that has changed since it was mapped is not used. Files
+            // are never mapped on Windows.
+            boolean mapped = mapFiles &&
+                    !System.getProperty("os.name", "").startsWith("Windows");
+            long lastModified = file.lastModified();
+            writeFile(file, "01234");
+            Assert.assertTrue(file.setLastModified(lastModified - 10000));
+            buffer = resource.getContentBuffer();
+            if (mapped) {
+                Assert.assertNull(buffer);
+            } else {
+                Assert.assertEquals(10, buffer.remaining());
+            }
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+
+    private static void writeFile(File file, String content)
+            throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(content.getBytes("ISO-8859-1"));
+        }
+    }
+
+
+    private static class TesterFileStandardRoot extends StandardRoot {
+
+        private final File file;
+
+        public TesterFileStandardRoot(File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected WebResource getResourceInternal(String path) {
+            return new FileResource(this, file, path);
+        }
+    }
+
+
+    private static class TesterStandardRoot extends StandardRoot {
+
+        @Override
+        protected WebResource getResourceInternal(String path) {
+            return new EmptyResource(this, path);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestJarIndex {
+
+    private static final File DIR1 = new File("test/webresources/dir1.jar");
+    private static final File DIR1_INTERNAL =
+            new File("test/webresources/dir1-internal.jar");
+
+    @Test
+    public void testLookup() throws Exception {
+        JarIndex index = JarIndex.build(DIR1, DIR1_INTERNAL);
+
+        Assert.assertEquals(2, index.getJarCount());
+        Assert.assertEquals(1, index.indexOf(DIR1_INTERNAL));
+        Assert.assertEquals(-1, index.indexOf(new File("missing.jar")));
+
+        Assert.assertTrue(index.contains("f1.txt"));
+        Assert.assertTrue(index.contains("f1.txt", 0));
+        Assert.assertFalse(index.contains("f1.txt", 1));
+        Assert.assertArrayEquals(new int[] {0}, index.getLocations("f1.txt"));
+
+        Assert.assertFalse(index.contains("f3.txt"));
+        Assert.assertEquals(0, index.getLocations("f3.txt").length);
+    }
+
+
+    @Test
+    public void testDirectory() throws Exception {
+        JarIndex index = JarIndex.build(DIR1);
+
+        // Directories are found with or without the trailing '/'
+        Assert.assertTrue(index.contains("d1/"));
+        Assert.assertTrue(index.contains("d1"));
+        Assert.assertFalse(index.contains("d1-f1.txt/"));
+        Assert.assertArrayEquals(new int[] {0}, index.getLocations("d1"));
+    }
+
+
+    @Test
+    public void testMatches() throws Exception {
+        JarIndex index = JarIndex.build(DIR1, DIR1_INTERNAL);
+
+        Assert.assertTrue(index.matches(new File[] {DIR1, DIR1_INTERNAL}));
+        Assert.assertFalse(index.matches(new File[] {DIR1_INTERNAL, DIR1}));
+        Assert.assertFalse(index.matches(new File[] {DIR1}));
+    }
+}
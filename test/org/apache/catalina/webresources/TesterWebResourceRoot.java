@@ -152,6 +152,36 @@ public class TesterWebResourceRoot extends StandardRoot {
         return 0;
     }
 
+    @Override
+    public void setCacheWatchFiles(boolean cacheWatchFiles) {
+        // NO-OP
+    }
+
+    @Override
+    public boolean getCacheWatchFiles() {
+        return false;
+    }
+
+    @Override
+    public void setCacheMaxOffHeapSize(long cacheMaxOffHeapSize) {
+        // NO-OP
+    }
+
+    @Override
+    public long getCacheMaxOffHeapSize() {
+        return 0;
+    }
+
+    @Override
+    public void setCacheMapFiles(boolean cacheMapFiles) {
+        // NO-OP
+    }
+
+    @Override
+    public boolean getCacheMapFiles() {
+        return false;
+    }
+
     @Override
     public void backgroundProcess() {
         // NO-OP
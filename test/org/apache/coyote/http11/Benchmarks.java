@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import org.junit.Test;
+
+import org.apache.coyote.Response;
+import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.HttpMessages;
+import org.apache.tomcat.util.http.MimeHeaders;
+
+/**
+ * Named Benchmarks so it is not automatically executed as part of the unit
+ * tests.
+ */
+public class Benchmarks {
+
+    /*
+     * Compares writing the status line and the Date, Content-Type and Server
+     * headers from the ResponseHeaderCache with encoding them a character at
+     * a time.
+     */
+    @Test
+    public void testSendHeaders() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            doTestSendHeaders(false, 5000000);
+            doTestSendHeaders(true, 5000000);
+        }
+    }
+
+
+    private void doTestSendHeaders(boolean cached, int iterCount) {
+        Response response = new Response();
+        response.setStatus(200);
+        InternalOutputBuffer outputBuffer =
+                new InternalOutputBuffer(response, 8192);
+        MimeHeaders headers = new MimeHeaders();
+
+        long start = System.nanoTime();
+        long length = 0;
+        for (int i = 0; i < iterCount; i++) {
+            headers.recycle();
+            headers.setValue("Content-Type").setString(
+                    "text/html;charset=UTF-8");
+            headers.setValue("Date").setString(
+                    FastHttpDateFormat.getCurrentDate());
+            headers.setValue("Server").setString("Apache-Coyote/1.1");
+            outputBuffer.pos = 0;
+            if (cached) {
+                outputBuffer.sendStatus();
+                for (int j = 0; j < headers.size(); j++) {
+                    byte[] line = ResponseHeaderCache.getHeaderLine(
+                            headers.getNameId(j), headers.getName(j),
+                            headers.getValue(j));
+                    outputBuffer.write(line);
+                }
+            } else {
+                outputBuffer.write(Constants.HTTP_11_BYTES);
+                outputBuffer.buf[outputBuffer.pos++] = Constants.SP;
+                outputBuffer.write(Constants._200_BYTES);
+                outputBuffer.buf[outputBuffer.pos++] = Constants.SP;
+                outputBuffer.write(HttpMessages.getMessage(200));
+                outputBuffer.buf[outputBuffer.pos++] = Constants.CR;
+                outputBuffer.buf[outputBuffer.pos++] = Constants.LF;
+                for (int j = 0; j < headers.size(); j++) {
+                    outputBuffer.sendHeader(headers.getName(j),
+                            headers.getValue(j));
+                }
+            }
+            length += outputBuffer.pos;
+        }
+        long end = System.nanoTime();
+
+        System.out.println((cached ? "Cached" : "Encoded") + ": " +
+                iterCount + " responses in " + (end - start) / 1000000 + "ms (" +
+                length + " bytes)");
+    }
+}
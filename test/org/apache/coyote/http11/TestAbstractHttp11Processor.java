@@ -19,6 +19,7 @@ package org.apache.coyote.http11;
 import java.io.File;
 import java.io.IOException;
 import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -346,6 +347,62 @@ public class TestAbstractHttp11Processor extends TomcatBaseTest {
         }
     }
 
+    @Test
+    public void testCompressionLoadThresholdNotBusy() throws Exception {
+        doTestCompressionLoadThreshold(0, true);
+    }
+
+    @Test
+    public void testCompressionLoadThresholdBusy() throws Exception {
+        // The only request processing thread is busy with this request
+        doTestCompressionLoadThreshold(50, false);
+    }
+
+    @Test
+    public void testVaryIncludes() {
+        assertTrue(AbstractHttp11Processor.varyIncludes(
+                "accept-encoding", "Accept-Encoding"));
+        assertTrue(AbstractHttp11Processor.varyIncludes(
+                "Cookie, Accept-Encoding ", "Accept-Encoding"));
+        assertTrue(AbstractHttp11Processor.varyIncludes(
+                "Cookie,*", "Accept-Encoding"));
+        assertFalse(AbstractHttp11Processor.varyIncludes(
+                "X-Accept-Encoding-Hint", "Accept-Encoding"));
+        assertFalse(AbstractHttp11Processor.varyIncludes(
+                "Cookie", "Accept-Encoding"));
+    }
+
+    private void doTestCompressionLoadThreshold(int threshold,
+            boolean expectCompressed) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.getConnector().setProperty("compression", "on");
+        tomcat.getConnector().setProperty("compressionMinSize", "1");
+        tomcat.getConnector().setProperty("compressionLoadThreshold",
+                Integer.toString(threshold));
+        tomcat.getConnector().setProperty("maxThreads", "1");
+
+        // Must have a real docBase - just use temp
+        Context ctxt = tomcat.addContext("",
+                System.getProperty("java.io.tmpdir"));
+
+        Tomcat.addServlet(ctxt, "TesterServlet", new TesterServlet());
+        ctxt.addServletMapping("/test", "TesterServlet");
+
+        tomcat.start();
+
+        ByteChunk responseBody = new ByteChunk();
+        Map<String,List<String>> requestHeaders = new HashMap<>();
+        requestHeaders.put("Accept-Encoding", Arrays.asList("gzip"));
+        Map<String,List<String>> responseHeaders = new HashMap<>();
+        int rc = getUrl("http://localhost:" + getPort() + "/test", responseBody,
+                requestHeaders, responseHeaders);
+
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertEquals(expectCompressed,
+                responseHeaders.containsKey("Content-Encoding"));
+        assertTrue(responseHeaders.containsKey("Vary"));
+    }
+
     private static final class LargeHeaderServlet extends HttpServlet {
 
         private static final long serialVersionUID = 1L;
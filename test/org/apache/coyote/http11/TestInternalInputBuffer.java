@@ -18,6 +18,7 @@
 package org.apache.coyote.http11;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.util.Enumeration;
 
@@ -354,6 +355,83 @@ public class TestInternalInputBuffer extends TomcatBaseTest {
     }
 
 
+    /**
+     * Test reading the request directly into the buffer it is parsed from,
+     * with a socket read buffer small enough that the request line, headers
+     * and body all span several reads.
+     */
+    @Test
+    public void testReadIntoRequestBuffer() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.getConnector().setProperty("socket.readIntoRequestBuffer", "true");
+        tomcat.getConnector().setProperty("socket.appReadBufSize", "64");
+
+        Context root = tomcat.addContext("", TEMP_DIR);
+        Tomcat.addServlet(root, "echo", new EchoLengthServlet());
+        root.addServletMapping("/echo", "echo");
+        tomcat.start();
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            body.append("0123456789");
+        }
+
+        SimpleHttpClient client =
+                new EchoLengthClient(tomcat.getConnector().getLocalPort());
+        client.setRequest(new String[] {
+                "POST /echo?a=b HTTP/1.1" + SimpleHttpClient.CRLF +
+                "Host: localhost" + SimpleHttpClient.CRLF +
+                "X-Custom-Header-With-A-Long-Name: some value" +
+                        SimpleHttpClient.CRLF +
+                "Content-Length: " + body.length() + SimpleHttpClient.CRLF +
+                "Connection: close" + SimpleHttpClient.CRLF +
+                SimpleHttpClient.CRLF +
+                body });
+        client.connect();
+        client.processRequest();
+        client.disconnect();
+
+        assertTrue(client.isResponse200());
+        assertEquals("localhost|some value|20000|b",
+                client.getResponseBody());
+    }
+
+
+    private static class EchoLengthServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            InputStream is = req.getInputStream();
+            byte[] buffer = new byte[1000];
+            int total = 0;
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                total += read;
+            }
+            resp.setContentType("text/plain");
+            resp.getWriter().print(req.getHeader("host") + "|" +
+                    req.getHeader("x-custom-header-with-a-long-name") + "|" +
+                    total + "|" + req.getParameter("a"));
+        }
+    }
+
+
+    private static class EchoLengthClient extends SimpleHttpClient {
+
+        private EchoLengthClient(int port) {
+            setPort(port);
+        }
+
+        @Override
+        public boolean isResponseBodyOK() {
+            return true;
+        }
+    }
+
+
     private class NewLinesClient extends SimpleHttpClient {
 
         private final String newLines;
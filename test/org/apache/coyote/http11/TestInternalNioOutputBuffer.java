@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestInternalNioOutputBuffer extends TomcatBaseTest {
+
+    @Test
+    public void testGatheringWriteChunked() throws Exception {
+        doTestGatheringWrite(false);
+    }
+
+    @Test
+    public void testGatheringWriteContentLength() throws Exception {
+        doTestGatheringWrite(true);
+    }
+
+    private void doTestGatheringWrite(boolean contentLength) throws Exception {
+        if (!getProtocol().equals(Http11NioProtocol.class.getName())) {
+            // Only the NIO connector has these options
+            return;
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.getConnector().setProperty("socket.gatheringWrite", "true");
+        tomcat.getConnector().setProperty("socket.appWriteBufSize", "1500");
+
+        Context root = tomcat.addContext("", TEMP_DIR);
+        Tomcat.addServlet(root, "mixed", new MixedWriteServlet(contentLength));
+        root.addServletMapping("/mixed", "mixed");
+        tomcat.start();
+
+        for (int i = 0; i < 3; i++) {
+            ByteChunk bc = getUrl("http://localhost:" + getPort() + "/mixed");
+            assertEquals(MixedWriteServlet.expected(), bc.toString());
+        }
+    }
+
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        if (!getProtocol().equals(Http11NioProtocol.class.getName())) {
+            // Only the NIO connector has these options
+            return;
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.getConnector().setProperty("socket.pipelineDepth", "4");
+
+        Context root = tomcat.addContext("", TEMP_DIR);
+        Tomcat.addServlet(root, "echo", new EchoQueryServlet());
+        root.addServletMapping("/echo", "echo");
+        tomcat.start();
+
+        int count = 10;
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i % 3 == 1) {
+                // Mix in requests with a body that has to be swallowed
+                requests.append("POST /echo?n=" + i + " HTTP/1.1\r\n" +
+                        "Host: localhost\r\n" +
+                        "Content-Length: 5\r\n" +
+                        "\r\n" +
+                        "abcde");
+            } else {
+                requests.append("GET /echo?n=" + i + " HTTP/1.1\r\n" +
+                        "Host: localhost\r\n");
+                if (i == count - 1) {
+                    requests.append("Connection: close\r\n");
+                }
+                requests.append("\r\n");
+            }
+        }
+
+        String responses;
+        try (Socket socket = new Socket("localhost", getPort())) {
+            Writer writer = new OutputStreamWriter(
+                    socket.getOutputStream(), "ISO-8859-1");
+            writer.write(requests.toString());
+            writer.flush();
+
+            InputStream is = socket.getInputStream();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = is.read(buf)) != -1) {
+                baos.write(buf, 0, read);
+            }
+            responses = baos.toString("ISO-8859-1");
+        }
+
+        // Every response is present and in the order of the requests
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            pos = responses.indexOf("HTTP/1.1 200", pos);
+            assertTrue("Missing response " + i, pos >= 0);
+            pos = responses.indexOf("\r\n\r\n", pos);
+            assertTrue(responses.startsWith("[" + i + "]", pos + 4));
+        }
+        assertEquals(-1, responses.indexOf("HTTP/1.1", pos));
+    }
+
+
+    private static class EchoQueryServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            resp.setContentType("text/plain");
+            resp.setContentLength(req.getParameter("n").length() + 2);
+            resp.getWriter().print("[" + req.getParameter("n") + "]");
+        }
+
+        @Override
+        protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            doGet(req, resp);
+        }
+    }
+
+
+    /**
+     * Writes a mix of small and large blocks, some with a flush in between,
+     * so that the data is sent with both buffered and gathering writes.
+     */
+    private static class MixedWriteServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int[] SIZES =
+                new int[] { 10, 5000, 1, 1, 1200, 20000, 3, 64000, 7 };
+
+        private final boolean contentLength;
+
+        public MixedWriteServlet(boolean contentLength) {
+            this.contentLength = contentLength;
+        }
+
+        private static String expected() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < SIZES.length; i++) {
+                for (int j = 0; j < SIZES[i]; j++) {
+                    sb.append((char) ('a' + (i + j) % 26));
+                }
+            }
+            return sb.toString();
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            resp.setContentType("text/plain");
+            resp.setBufferSize(8192);
+            byte[] body = expected().getBytes("ISO-8859-1");
+            if (contentLength) {
+                resp.setContentLength(body.length);
+            }
+            OutputStream os = resp.getOutputStream();
+            int pos = 0;
+            for (int i = 0; i < SIZES.length; i++) {
+                os.write(body, pos, SIZES[i]);
+                pos += SIZES[i];
+                if (i % 3 == 1) {
+                    os.flush();
+                }
+            }
+        }
+    }
+}
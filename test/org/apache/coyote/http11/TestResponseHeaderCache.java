@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import org.apache.coyote.Response;
+import org.apache.tomcat.util.buf.MessageBytes;
+import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.MimeHeaders;
+
+public class TestResponseHeaderCache {
+
+    @Test
+    public void testStatusLine() {
+        for (int status : new int[] { 100, 200, 204, 302, 404, 500, 599 }) {
+            assertEquals(encodeUncached(status),
+                    toString(ResponseHeaderCache.getStatusLine(status)));
+        }
+        assertSame(ResponseHeaderCache.getStatusLine(200),
+                ResponseHeaderCache.getStatusLine(200));
+        assertNull(ResponseHeaderCache.getStatusLine(99));
+        assertNull(ResponseHeaderCache.getStatusLine(600));
+    }
+
+    @Test
+    public void testHeaderLine() {
+        MimeHeaders headers = new MimeHeaders();
+        String date = FastHttpDateFormat.getCurrentDate();
+        headers.setValue("Date").setString(date);
+        headers.setValue("Content-Type").setString("text/html;charset=UTF-8");
+        headers.setValue("Server").setString("Test\u0001\u0100");
+
+        assertEquals("Date: " + date + "\r\n", toString(getLine(headers, 0)));
+        assertSame(getLine(headers, 0), getLine(headers, 0));
+        assertEquals("Content-Type: text/html;charset=UTF-8\r\n",
+                toString(getLine(headers, 1)));
+        // Characters that cannot be written are replaced
+        assertEquals("Server: Test  \r\n", toString(getLine(headers, 2)));
+        // Only the exact name used by the processor is cached
+        headers.recycle();
+        headers.addValue("content-type").setString("text/plain");
+        headers.addValue("X-Other").setString("x");
+        headers.addValue("Content-Type").setLong(1);
+        assertNull(getLine(headers, 0));
+        assertNull(getLine(headers, 1));
+        assertNull(getLine(headers, 2));
+    }
+
+    @Test
+    public void testSendStatus() {
+        Response response = new Response();
+        InternalOutputBuffer outputBuffer =
+                new InternalOutputBuffer(response, 8192);
+        for (int status : new int[] { 200, 404, 999 }) {
+            response.setStatus(status);
+            outputBuffer.pos = 0;
+            outputBuffer.sendStatus();
+            assertEquals(encodeUncached(status), new String(outputBuffer.buf,
+                    0, outputBuffer.pos, StandardCharsets.ISO_8859_1));
+        }
+    }
+
+
+    private static byte[] getLine(MimeHeaders headers, int i) {
+        return ResponseHeaderCache.getHeaderLine(headers.getNameId(i),
+                headers.getName(i), headers.getValue(i));
+    }
+
+
+    private static String encodeUncached(int status) {
+        String message = org.apache.tomcat.util.http.HttpMessages
+                .getMessage(status);
+        return "HTTP/1.1 " + status + " " + (message == null ? "" : message) +
+                "\r\n";
+    }
+
+
+    private static String toString(byte[] b) {
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+}
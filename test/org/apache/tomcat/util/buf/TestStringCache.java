@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link StringCache}.
+ */
+public class TestStringCache {
+
+    private final StringCache stringCache = new StringCache();
+    private int cacheSize;
+
+    @Before
+    public void setUp() {
+        cacheSize = stringCache.getCacheSize();
+        stringCache.setCacheSize(16);
+        stringCache.setByteEnabled(true);
+        stringCache.setCharEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        stringCache.setByteEnabled(false);
+        stringCache.setCharEnabled(false);
+        stringCache.setCacheSize(cacheSize);
+    }
+
+    @Test
+    public void testByteChunk() {
+        ByteChunk bc = bytes("xxAcceptxx", 2, 6);
+        String first = bc.toString();
+        assertEquals("Accept", first);
+        assertSame(first, bytes("Accept", 0, 6).toString());
+        assertSame(first, bytes("Accept-Language", 0, 6).toString());
+
+        // Same bytes, different charset
+        ByteChunk utf8 = bytes("Accept", 0, 6);
+        utf8.setCharset(StandardCharsets.UTF_8);
+        assertNotSame(first, utf8.toString());
+
+        assertEquals(2, stringCache.getHitCount());
+    }
+
+    @Test
+    public void testCharChunk() {
+        String first = chars("Cookie").toString();
+        assertSame(first, chars("Cookie").toString());
+        assertNotSame(first, chars("Cookie2").toString());
+        assertEquals(1, stringCache.getHitCount());
+    }
+
+    @Test
+    public void testDisabled() {
+        stringCache.setCharEnabled(false);
+        String first = chars("Cookie").toString();
+        assertNotSame(first, chars("Cookie").toString());
+        assertEquals(0, stringCache.getAccessCount());
+    }
+
+    @Test
+    public void testReplacement() {
+        String hot = chars("hot").toString();
+
+        // Far more distinct Strings than the cache can hold, with the hot
+        // String used between each of them
+        for (int i = 0; i < 1000; i++) {
+            chars("cold" + i).toString();
+            assertSame(hot, chars("hot").toString());
+        }
+
+        // The cache adapts to a new hot String without any training period
+        String newHot = chars("newHot").toString();
+        for (int i = 0; i < 1000; i++) {
+            chars("colder" + i).toString();
+            assertSame(newHot, chars("newHot").toString());
+        }
+    }
+
+    private static ByteChunk bytes(String s, int start, int length) {
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(s.getBytes(StandardCharsets.ISO_8859_1), start, length);
+        return bc;
+    }
+
+    private static CharChunk chars(String s) {
+        CharChunk cc = new CharChunk();
+        cc.setChars(s.toCharArray(), 0, s.length());
+        return cc;
+    }
+}
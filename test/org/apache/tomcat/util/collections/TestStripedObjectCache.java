@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStripedObjectCache {
+
+    @Test
+    public void testPopEmpty() {
+        StripedObjectCache<Object> cache = new StripedObjectCache<>();
+        Assert.assertNull(cache.pop());
+    }
+
+    @Test
+    public void testPushPop() {
+        StripedObjectCache<Object> cache = new StripedObjectCache<>();
+
+        Set<Object> objects = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            Object o = new Object();
+            objects.add(o);
+            Assert.assertTrue(cache.push(o));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(objects.remove(cache.pop()));
+        }
+
+        Assert.assertNull(cache.pop());
+    }
+
+    @Test
+    public void testLimit() {
+        // Capacity is rounded up to a whole stripe
+        StripedObjectCache<Object> cache = new StripedObjectCache<>(2);
+        int capacity = cache.getCapacity();
+        Assert.assertTrue(capacity >= 2);
+
+        for (int i = 0; i < capacity; i++) {
+            Assert.assertTrue(cache.push(new Object()));
+        }
+        Assert.assertFalse(cache.push(new Object()));
+
+        for (int i = 0; i < capacity; i++) {
+            Assert.assertNotNull(cache.pop());
+        }
+        Assert.assertNull(cache.pop());
+    }
+
+    @Test
+    public void testZeroCapacity() {
+        StripedObjectCache<Object> cache = new StripedObjectCache<>(0);
+        Assert.assertFalse(cache.push(new Object()));
+        Assert.assertNull(cache.pop());
+    }
+
+    @Test
+    public void testClear() {
+        StripedObjectCache<Object> cache = new StripedObjectCache<>();
+        cache.push(new Object());
+        cache.push(new Object());
+        cache.clear();
+        Assert.assertNull(cache.pop());
+    }
+
+    @Test
+    public void testCrossThread() throws InterruptedException {
+        final StripedObjectCache<Object> cache = new StripedObjectCache<>();
+        final Object o = new Object();
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                cache.push(o);
+            }
+        };
+        t.start();
+        t.join();
+
+        // Objects pushed by one thread must be visible to another
+        Assert.assertSame(o, cache.pop());
+    }
+
+    @Test
+    public void testConcurrentCounts() throws InterruptedException {
+        final StripedObjectCache<Object> cache = new StripedObjectCache<>(64);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        Object o = cache.pop();
+                        cache.push(o == null ? new Object() : o);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        // The per-stripe counts must still match the slots so every slot can
+        // be filled and every object found again
+        int capacity = cache.getCapacity();
+        while (cache.push(new Object())) {
+            // Fill the cache
+        }
+        for (int i = 0; i < capacity; i++) {
+            Assert.assertNotNull(cache.pop());
+        }
+        Assert.assertNull(cache.pop());
+        for (int i = 0; i < capacity; i++) {
+            Assert.assertTrue(cache.push(new Object()));
+        }
+        Assert.assertFalse(cache.push(new Object()));
+    }
+}
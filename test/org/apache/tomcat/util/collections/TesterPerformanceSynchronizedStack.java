@@ -29,6 +29,9 @@ public class TesterPerformanceSynchronizedStack {
     private static final SynchronizedStack<Object> STACK =
             new SynchronizedStack<>();
 
+    private static final StripedObjectCache<Object> STRIPED =
+            new StripedObjectCache<>();
+
     private static final Queue<Object> QUEUE = new ConcurrentLinkedQueue<>();
 
     @Test
@@ -68,6 +71,43 @@ public class TesterPerformanceSynchronizedStack {
         }
     }
 
+    @Test
+    public void testStripedObjectCache() throws InterruptedException {
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new StripedThread();
+        }
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i].start();
+        }
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i].join();
+        }
+
+        long end = System.currentTimeMillis();
+
+        System.out.println("StripedObjectCache: " + (end - start) + "ms");
+    }
+
+    public static class StripedThread extends Thread {
+
+        @Override
+        public void run() {
+            for(int i = 0; i < ITERATIONS; i++) {
+                Object obj = STRIPED.pop();
+                if (obj == null) {
+                    obj = new Object();
+                }
+                STRIPED.push(obj);
+            }
+            super.run();
+        }
+    }
+
     @Test
     public void testConcurrentQueue() throws InterruptedException {
         Thread[] threads = new Thread[THREAD_COUNT];
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TestHeaderNames {
+
+    @Test
+    public void testFind() {
+        for (int id = 0; id < HeaderNames.count(); id++) {
+            String name = HeaderNames.getName(id);
+            assertEquals(id, HeaderNames.find(name));
+            assertEquals(id, HeaderNames.find(name.toUpperCase(Locale.ENGLISH)));
+            byte[] b = ("x" + name + "x").getBytes(StandardCharsets.ISO_8859_1);
+            assertEquals(id, HeaderNames.find(b, 1, name.length()));
+        }
+        assertEquals(-1, HeaderNames.find((String) null));
+        assertEquals(-1, HeaderNames.find(""));
+        assertEquals(-1, HeaderNames.find("hos"));
+        assertEquals(-1, HeaderNames.find("hostx"));
+        assertEquals(-1, HeaderNames.find("X-Unknown"));
+        assertEquals(-1, HeaderNames.find("Hoßt"));
+        // Differs from "cookie" only in the case folding used by the hash
+        assertEquals(-1, HeaderNames.find("co~kie"));
+        assertEquals(-1, HeaderNames.find("co^kie"));
+    }
+
+    @Test
+    public void testMimeHeaders() {
+        MimeHeaders headers = new MimeHeaders();
+        byte[] b = "content-lengthx-customhost".getBytes(
+                StandardCharsets.ISO_8859_1);
+        headers.addValue(b, 0, 14).setString("10");
+        headers.addValue(b, 14, 8).setString("a");
+        headers.addValue("Host").setString("localhost");
+        headers.addValue("X-CUSTOM").setString("b");
+        headers.addValue(b, 22, 4).setString("other");
+
+        assertEquals("10", headers.getHeader("Content-Length"));
+        assertEquals("localhost", headers.getHeader("HOST"));
+        assertEquals("a", headers.getHeader("x-Custom"));
+        assertNull(headers.getHeader("content-type"));
+        assertEquals(2, headers.findHeader("host", 0));
+        assertEquals(4, headers.findHeader("host", 3));
+
+        Enumeration<String> values = headers.values("x-custom");
+        assertEquals("a", values.nextElement());
+        assertEquals("b", values.nextElement());
+        assertFalse(values.hasMoreElements());
+
+        Enumeration<String> names = headers.names();
+        int count = 0;
+        while (names.hasMoreElements()) {
+            names.nextElement();
+            count++;
+        }
+        assertEquals(3, count);
+
+        headers.setValue("HOST").setString("example");
+        assertEquals(4, headers.size());
+        assertEquals("example", headers.getHeader("host"));
+
+        headers.removeHeader("x-custom");
+        assertEquals(2, headers.size());
+        assertNull(headers.getHeader("x-custom"));
+
+        headers.recycle();
+        headers.addValue("X-Other").setString("c");
+        assertNull(headers.getHeader("content-length"));
+        assertEquals(0, headers.findHeader("x-other", 0));
+    }
+}
@@ -28,6 +28,7 @@ import javax.servlet.http.HttpServlet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.junit.Test;
 
@@ -153,6 +154,61 @@ public class TestMimeHeaders extends TomcatBaseTest {
         runHeadersTest(true, tomcat, 300, -1);
     }
 
+    @Test
+    public void testIndexedLookups() {
+        MimeHeaders headers = new MimeHeaders();
+        for (int round = 0; round < 2; round++) {
+            headers.recycle();
+            byte[] b = new byte[2048];
+            int pos = 0;
+            for (int i = 0; i < 50; i++) {
+                // Every tenth header repeats an earlier name, in upper case
+                String name = (i % 10 == 9) ? "X-HEADER-" + (i - 9) :
+                        "x-header-" + i;
+                for (int j = 0; j < name.length(); j++) {
+                    b[pos + j] = (byte) name.charAt(j);
+                }
+                headers.addValue(b, pos, name.length()).setString("v" + i);
+                pos += name.length();
+            }
+            headers.addValue("Content-Type").setString("text/plain");
+            headers.addValue("content-length").setString("10");
+
+            assertEquals("v0", headers.getHeader("x-header-0"));
+            assertEquals("v48", headers.getHeader("x-Header-48"));
+            assertEquals("text/plain", headers.getHeader("content-type"));
+            assertNull(headers.getHeader("x-header-9"));
+            assertNull(headers.getHeader("x-header"));
+            assertEquals(0, headers.findHeader("X-Header-0", 0));
+            assertEquals(9, headers.findHeader("X-Header-0", 1));
+            assertEquals(-1, headers.findHeader("X-Header-0", 10));
+
+            // Added after the index was built
+            headers.addValue("X-Late").setString("late");
+            headers.addValue("x-header-1").setString("again");
+            assertEquals("late", headers.getHeader("x-late"));
+            assertEquals(53, headers.findHeader("x-header-1", 2));
+            try {
+                headers.getUniqueValue("x-header-1");
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+            assertEquals("v2", headers.getUniqueValue("x-header-2").toString());
+
+            // Removal invalidates the index
+            headers.setValue("x-header-10").setString("set");
+            assertEquals(53, headers.size());
+            assertEquals("set", headers.getHeader("x-header-10"));
+            assertEquals(-1, headers.findHeader("x-header-10",
+                    headers.findHeader("x-header-10", 0) + 1));
+            headers.removeHeader("content-length");
+            assertNull(headers.getHeader("Content-Length"));
+            assertEquals("v48", headers.getHeader("x-header-48"));
+            assertEquals("late", headers.getHeader("x-late"));
+        }
+    }
+
     private static final class HeaderCountLogValve extends TesterAccessLogValve {
         public volatile int arraySize = -1;
 
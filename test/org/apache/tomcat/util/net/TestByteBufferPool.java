@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestByteBufferPool {
+
+    @Test
+    public void testBorrowRelease() {
+        ByteBufferPool pool = new ByteBufferPool(1024, 4096, false);
+
+        ByteBuffer b1 = pool.borrow();
+        Assert.assertEquals(1024, b1.capacity());
+        Assert.assertEquals(0, b1.position());
+        Assert.assertEquals(1024, b1.limit());
+        // One slab holds four buffers
+        Assert.assertEquals(4, pool.getAllocatedCount());
+        Assert.assertEquals(1, pool.getBorrowedCount());
+        Assert.assertEquals(4096, pool.getAllocatedBytes());
+
+        b1.put((byte) 1);
+        pool.release(b1);
+        Assert.assertEquals(0, pool.getBorrowedCount());
+
+        ByteBuffer b2 = pool.borrow();
+        Assert.assertSame(b1, b2);
+        Assert.assertEquals(0, b2.position());
+        Assert.assertEquals(4, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testSlicesDoNotOverlap() {
+        ByteBufferPool pool = new ByteBufferPool(16, 64, true);
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.borrow();
+            Assert.assertTrue(buffers[i].isDirect());
+            while (buffers[i].hasRemaining()) {
+                buffers[i].put((byte) i);
+            }
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i].flip();
+            while (buffers[i].hasRemaining()) {
+                Assert.assertEquals(i, buffers[i].get());
+            }
+        }
+        Assert.assertEquals(4, pool.getAllocatedCount());
+
+        // Pool is exhausted so another slab is allocated
+        pool.borrow();
+        Assert.assertEquals(8, pool.getAllocatedCount());
+        Assert.assertEquals(5, pool.getBorrowedCount());
+    }
+
+    @Test
+    public void testSlabSmallerThanBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(1024, 100, false);
+        Assert.assertEquals(1024, pool.borrow().capacity());
+        Assert.assertEquals(1, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testClear() {
+        ByteBufferPool pool = new ByteBufferPool(1024, 4096, false);
+        ByteBuffer b1 = pool.borrow();
+        pool.clear();
+        Assert.assertEquals(1, pool.getAllocatedCount());
+        pool.release(b1);
+        Assert.assertEquals(0, pool.getBorrowedCount());
+        Assert.assertEquals(1, pool.getAllocatedCount());
+    }
+}
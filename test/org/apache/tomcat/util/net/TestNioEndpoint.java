@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
+import org.apache.tomcat.util.net.NioEndpoint.KeyAttachment;
+import org.apache.tomcat.util.net.NioEndpoint.NioBufferHandler;
+import org.apache.tomcat.util.net.NioEndpoint.Poller;
+
+public class TestNioEndpoint {
+
+    /*
+     * A timeout processed by the poller while a worker is still writing must
+     * not return the worker's buffers to the pool.
+     */
+    @Test
+    public void testTimeoutDuringWrite() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel sc = server.accept();
+        try {
+            NioEndpoint endpoint = new NioEndpoint();
+            endpoint.setHandler(new TesterHandler());
+            endpoint.setExecutor(executor);
+            Poller poller = endpoint.new Poller();
+
+            final ByteBufferPool readPool = new ByteBufferPool(1024, 4096, false);
+            final ByteBufferPool writePool = new ByteBufferPool(1024, 4096, false);
+            final NioChannel channel = new NioChannel(sc,
+                    new NioBufferHandler(readPool, writePool));
+            channel.setPoller(poller);
+            KeyAttachment ka = new KeyAttachment(channel);
+            ka.reset(poller, channel, 1000);
+            sc.configureBlocking(false);
+            SelectionKey key =
+                    sc.register(poller.getSelector(), SelectionKey.OP_WRITE, ka);
+
+            final CountDownLatch writing = new CountDownLatch(1);
+            final CountDownLatch timedOut = new CountDownLatch(1);
+            final ByteBuffer[] lateRead = new ByteBuffer[1];
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    synchronized (channel) {
+                        ByteBuffer buf = channel.getBufHandler().getWriteBuffer();
+                        buf.put((byte) 1);
+                        writing.countDown();
+                        try {
+                            timedOut.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        // The write completes after the channel was closed
+                        buf.put((byte) 2);
+                        lateRead[0] = channel.getBufHandler().getReadBuffer();
+                    }
+                }
+            };
+            worker.start();
+            Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            poller.cancelledKey(key, SocketStatus.TIMEOUT);
+
+            // The worker still holds the write buffer
+            Assert.assertEquals(1, writePool.getBorrowedCount());
+            timedOut.countDown();
+            worker.join(10000);
+
+            // The read buffer requested after the close was not pooled
+            Assert.assertNotNull(lateRead[0]);
+            Assert.assertEquals(0, readPool.getBorrowedCount());
+
+            // Once the worker is done the write buffer is returned
+            int count = 0;
+            while (writePool.getBorrowedCount() > 0 && count < 100) {
+                Thread.sleep(50);
+                count++;
+            }
+            Assert.assertEquals(0, writePool.getBorrowedCount());
+
+            // A reset channel borrows from the pools again
+            channel.reset();
+            Assert.assertNotSame(lateRead[0],
+                    channel.getBufHandler().getReadBuffer());
+            Assert.assertEquals(1, readPool.getBorrowedCount());
+        } finally {
+            executor.shutdownNow();
+            client.close();
+            sc.close();
+            server.close();
+        }
+    }
+
+
+    private static class TesterHandler implements NioEndpoint.Handler {
+
+        @Override
+        public Object getGlobal() {
+            return null;
+        }
+
+        @Override
+        public void recycle() {
+            // NO-OP
+        }
+
+        @Override
+        public SocketState process(SocketWrapper<NioChannel> socket,
+                SocketStatus status) {
+            return SocketState.CLOSED;
+        }
+
+        @Override
+        public void release(SocketWrapper<NioChannel> socket) {
+            // NO-OP
+        }
+
+        @Override
+        public void release(SocketChannel socket) {
+            // NO-OP
+        }
+
+        @Override
+        public SSLImplementation getSslImplementation() {
+            return null;
+        }
+
+        @Override
+        public void onCreateSSLEngine(SSLEngine engine) {
+            // NO-OP
+        }
+    }
+}
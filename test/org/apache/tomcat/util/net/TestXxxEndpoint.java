@@ -18,9 +18,11 @@
 package org.apache.tomcat.util.net;
 
 import java.io.File;
+import java.lang.reflect.Field;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -30,6 +32,7 @@ import org.junit.Test;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.coyote.AbstractProtocol;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.jni.Address;
@@ -38,6 +41,8 @@ import org.apache.tomcat.jni.Library;
 import org.apache.tomcat.jni.OS;
 import org.apache.tomcat.jni.Pool;
 import org.apache.tomcat.jni.Socket;
+import org.apache.tomcat.util.net.AbstractEndpoint.Acceptor;
+import org.apache.tomcat.util.net.AbstractEndpoint.Acceptor.AcceptorState;
 
 /**
  * Test case for the Endpoint implementations. The testing framework will ensure
@@ -203,4 +208,57 @@ public class TestXxxEndpoint extends TomcatBaseTest {
         assertNull(e);
         tomcat.getConnector().start();
     }
+
+    @Test
+    public void testStartStopReusePort() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector c = tomcat.getConnector();
+        if (!c.getProtocolHandlerClassName().contains("Nio")) {
+            // SO_REUSEPORT sharding is only implemented by the NIO connector
+            return;
+        }
+        c.setProperty("bindOnInit", "false");
+        c.setProperty("reusePort", "true");
+        c.setProperty("pollerThreadCount", "2");
+        c.setProperty("acceptorThreadCount", "1");
+
+        tomcat.start();
+        int port = getPort();
+
+        Field f = AbstractProtocol.class.getDeclaredField("endpoint");
+        f.setAccessible(true);
+        AbstractEndpoint endpoint = (AbstractEndpoint) f.get(c.getProtocolHandler());
+        if (endpoint.acceptors.length == 1) {
+            log.info("SO_REUSEPORT is not supported, the listening socket is not sharded");
+        } else {
+            assertEquals(2, endpoint.acceptors.length);
+        }
+        // The configured value is not changed by sharding
+        assertEquals(1, endpoint.getAcceptorThreadCount());
+
+        // Every acceptor has to be unlocked, not just the one that happens
+        // to receive the first connection
+        c.pause();
+        for (Acceptor acceptor : endpoint.acceptors) {
+            assertTrue(acceptor.getState() != AcceptorState.RUNNING);
+        }
+
+        // Stopping has to close every listening socket so the port is free
+        c.stop();
+        ServerSocket s = null;
+        Exception e = null;
+        try {
+            s = new ServerSocket(port, 100, InetAddress.getByName("localhost"));
+        } catch (Exception e1) {
+            e = e1;
+        } finally {
+            try {
+                if (s != null) {
+                    s.close();
+                }
+            } catch (Exception e2) { /* Ignore */ }
+        }
+        assertNull(e);
+        c.start();
+    }
 }